@@ -0,0 +1,276 @@
+package frc.lib.config;
+
+import edu.wpi.first.networktables.DoubleEntry;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableEvent;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.wpilibj.DriverStation;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tunable values (gains, offsets, limits) that can change without a redeploy. Each value is a
+ * {@link Key} with a default, usually the old compile time constant, and a valid range. At boot a
+ * properties file from the deploy directory overrides the defaults, and afterwards every value is
+ * live under {@code Tuning} in NetworkTables.
+ *
+ * <p>All values live in one immutable {@link Snapshot} behind an {@link AtomicReference}. Reading
+ * a value on the robot loop is a volatile read and an array index; a change builds a new snapshot
+ * and swaps it in, so a reader never sees half of an update. Dashboard edits arrive on the
+ * NetworkTables thread and are range checked there; a rejected edit is reported and the dashboard
+ * is put back to the current value.
+ *
+ * <p>Code that has to push a value somewhere (a Spark MAX gain, an encoder offset) subscribes to
+ * the keys it uses. {@link #dispatch} runs those callbacks on the robot thread, and only for
+ * subscribers whose own keys changed since their last call.
+ */
+public final class TunableConfig {
+  private static TunableConfig instance;
+
+  /** A tunable value. Define keys with {@link TunableConfig#define}. */
+  public static final class Key {
+    public final String name;
+    public final double defaultValue;
+    public final double min;
+    public final double max;
+    private final int index;
+    private DoubleEntry entry;
+
+    private Key(String name, double defaultValue, double min, double max, int index) {
+      this.name = name;
+      this.defaultValue = defaultValue;
+      this.min = min;
+      this.max = max;
+      this.index = index;
+    }
+
+    public boolean isValid(double value) {
+      return value >= min && value <= max;
+    }
+  }
+
+  /** Every value at one point in time. Never modified once published. */
+  public static final class Snapshot {
+    /* Bumped by every change */
+    public final long version;
+    private final double[] values;
+    /* The snapshot version that last changed each value */
+    private final long[] changedAt;
+
+    private Snapshot(long version, double[] values, long[] changedAt) {
+      this.version = version;
+      this.values = values;
+      this.changedAt = changedAt;
+    }
+
+    public double get(Key key) {
+      return values[key.index];
+    }
+
+    public int getInt(Key key) {
+      return (int) Math.round(values[key.index]);
+    }
+
+    private Snapshot with(int index, double value) {
+      double[] newValues = values.clone();
+      long[] newChangedAt = changedAt.clone();
+      newValues[index] = value;
+      newChangedAt[index] = version + 1;
+      return new Snapshot(version + 1, newValues, newChangedAt);
+    }
+
+    private Snapshot append(double value) {
+      double[] newValues = new double[values.length + 1];
+      long[] newChangedAt = new long[changedAt.length + 1];
+      System.arraycopy(values, 0, newValues, 0, values.length);
+      System.arraycopy(changedAt, 0, newChangedAt, 0, changedAt.length);
+      newValues[values.length] = value;
+      newChangedAt[values.length] = version + 1;
+      return new Snapshot(version + 1, newValues, newChangedAt);
+    }
+  }
+
+  /** Called on the robot thread with the snapshot holding the new values. */
+  public interface Listener {
+    void onChange(Snapshot snapshot);
+  }
+
+  private static final class Subscription {
+    final Listener listener;
+    final Key[] keys;
+    long seenVersion;
+
+    Subscription(Listener listener, Key[] keys, long seenVersion) {
+      this.listener = listener;
+      this.keys = keys;
+      this.seenVersion = seenVersion;
+    }
+  }
+
+  private final AtomicReference<Snapshot> current = new AtomicReference<>(new Snapshot(0, new double[0], new long[0]));
+  private final List<Key> keys = new ArrayList<>();
+  private final List<Subscription> subscriptions = new ArrayList<>();
+  private final Map<String, String> fileValues = new HashMap<>();
+  private final NetworkTable table = NetworkTableInstance.getDefault().getTable("Tuning");
+  private long dispatchedVersion = 0;
+
+  private TunableConfig() {}
+
+  public static synchronized TunableConfig getInstance() {
+    if (instance == null) {
+      instance = new TunableConfig();
+    }
+    return instance;
+  }
+
+  /**
+   * Reads overrides from a properties file of {@code name=value} lines. Keys defined before and
+   * after loading both pick them up. A missing file leaves the defaults; bad values are reported
+   * and ignored.
+   */
+  public synchronized void load(File file) {
+    Properties properties = new Properties();
+    try (InputStream in = new FileInputStream(file)) {
+      properties.load(in);
+    } catch (IOException e) {
+      DriverStation.reportWarning("Tuning: using defaults, could not read " + file + ": " + e.getMessage(), false);
+      return;
+    }
+    for (String name : properties.stringPropertyNames()) {
+      fileValues.put(name, properties.getProperty(name).trim());
+    }
+    for (Key key : keys) {
+      String text = fileValues.get(key.name);
+      if (text != null) {
+        double value = parse(key, text);
+        if (!Double.isNaN(value)) {
+          set(key, value);
+          key.entry.set(value);
+        }
+      }
+    }
+  }
+
+  /**
+   * Defines a tunable value. Call during startup, typically from static initializers.
+   *
+   * @throws IllegalArgumentException if the name is taken or the default is out of range.
+   */
+  public synchronized Key define(String name, double defaultValue, double min, double max) {
+    for (Key key : keys) {
+      if (key.name.equals(name)) {
+        throw new IllegalArgumentException("tunable " + name + " is already defined");
+      }
+    }
+    Key key = new Key(name, defaultValue, min, max, keys.size());
+    if (!key.isValid(defaultValue)) {
+      throw new IllegalArgumentException("default for " + name + " is outside [" + min + ", " + max + "]");
+    }
+    double value = defaultValue;
+    String text = fileValues.get(name);
+    if (text != null) {
+      double parsed = parse(key, text);
+      if (!Double.isNaN(parsed)) {
+        value = parsed;
+      }
+    }
+    keys.add(key);
+    Snapshot snapshot;
+    do {
+      snapshot = current.get();
+    } while (!current.compareAndSet(snapshot, snapshot.append(value)));
+
+    key.entry = table.getDoubleTopic(name).getEntry(value);
+    key.entry.set(value);
+    NetworkTableInstance.getDefault().addListener(key.entry, EnumSet.of(NetworkTableEvent.Kind.kValueRemote),
+        event -> onRemoteChange(key, event.valueData.value.getDouble()));
+    return key;
+  }
+
+  private static double parse(Key key, String text) {
+    try {
+      double value = Double.parseDouble(text);
+      if (key.isValid(value)) {
+        return value;
+      }
+    } catch (NumberFormatException e) {
+      // Reported below.
+    }
+    DriverStation.reportWarning("Tuning: ignoring " + key.name + "=" + text + ", expected a number in ["
+        + key.min + ", " + key.max + "]", false);
+    return Double.NaN;
+  }
+
+  /* Runs on the NetworkTables listener thread. */
+  private void onRemoteChange(Key key, double value) {
+    if (!set(key, value)) {
+      DriverStation.reportWarning("Tuning: rejected " + key.name + "=" + value + ", outside [" + key.min + ", "
+          + key.max + "]", false);
+      key.entry.set(get(key));
+    }
+  }
+
+  /**
+   * Changes a value. Safe from any thread.
+   *
+   * @return False if the value is out of range, in which case nothing changes.
+   */
+  public boolean set(Key key, double value) {
+    if (!key.isValid(value)) {
+      return false;
+    }
+    Snapshot snapshot;
+    do {
+      snapshot = current.get();
+      if (snapshot.values[key.index] == value) {
+        return true;
+      }
+    } while (!current.compareAndSet(snapshot, snapshot.with(key.index, value)));
+    return true;
+  }
+
+  /** @return The current value. Lock free, for the robot loop. */
+  public double get(Key key) {
+    return current.get().get(key);
+  }
+
+  /** @return Every current value, consistent with each other. */
+  public Snapshot getSnapshot() {
+    return current.get();
+  }
+
+  /**
+   * Calls the listener from {@link #dispatch} whenever one of the keys changes. It is not called
+   * for the values at the time of subscribing.
+   */
+  public synchronized void subscribe(Listener listener, Key... keys) {
+    subscriptions.add(new Subscription(listener, keys.clone(), current.get().version));
+  }
+
+  /** Notifies the subscribers whose keys changed. Call once per loop from the robot thread. */
+  public synchronized void dispatch() {
+    Snapshot snapshot = current.get();
+    if (snapshot.version == dispatchedVersion) {
+      return;
+    }
+    dispatchedVersion = snapshot.version;
+    for (Subscription subscription : subscriptions) {
+      for (Key key : subscription.keys) {
+        if (snapshot.changedAt[key.index] > subscription.seenVersion) {
+          subscription.listener.onChange(snapshot);
+          break;
+        }
+      }
+      subscription.seenVersion = snapshot.version;
+    }
+  }
+}
@@ -0,0 +1,120 @@
+package frc.lib.math;
+
+/**
+ * Drives a robot onto the charge station and levels it. The station is a platform on a center
+ * hinge: the robot's weight ahead of the hinge tips it one way and behind the hinge the other, so
+ * the robot's position is what sets the pitch acceleration.
+ *
+ * <p>Until the pitch passes the climbing angle the robot drives at the approach speed. On the
+ * station the output is a PD on pitch, driving uphill and backing off as the pitch rate shows the
+ * station coming down. When the station is already falling toward level faster than the tipping
+ * rate the robot has crossed the hinge, and the pitch term would only drive it further past, so
+ * only the rate term is used: the robot backs up by about as much as it overshot while the station
+ * comes down. The robot counts as balanced once it has stayed level and still for the settle time.
+ *
+ * <p>Pitch is positive nose up and the output is a robot relative forward velocity. There are no
+ * hardware dependencies, so the controller runs unchanged in the charge station simulation.
+ */
+public class BalanceController {
+  /* Below this pitch rate a level station is also still, in degrees per second, above IMU noise */
+  private static final double kSettledRate = 4.0;
+
+  private final double maxSpeed;
+  private final double tippingRate;
+  private final double levelTolerance;
+  private final double settleSeconds;
+  private final double climbingDegrees;
+  private double kP;
+  private double kD;
+
+  private double approachSpeed;
+  private boolean onStation;
+  private boolean tipping;
+  private double levelSince;
+  private boolean balanced;
+
+  /**
+   * @param maxSpeed Largest output on the station, in meters per second.
+   * @param tippingRate Pitch rate toward level above which the pitch term is dropped, in degrees
+   *     per second.
+   * @param levelTolerance Pitch that counts as level, in degrees.
+   * @param settleSeconds How long the station must stay level to count as balanced.
+   * @param climbingDegrees Pitch that means the robot is on the station.
+   */
+  public BalanceController(
+      double maxSpeed, double tippingRate, double levelTolerance, double settleSeconds, double climbingDegrees) {
+    this.maxSpeed = maxSpeed;
+    this.tippingRate = tippingRate;
+    this.levelTolerance = levelTolerance;
+    this.settleSeconds = settleSeconds;
+    this.climbingDegrees = climbingDegrees;
+  }
+
+  /**
+   * @param kP Meters per second per degree of pitch.
+   * @param kD Meters per second per degree per second of pitch rate.
+   */
+  public void setGains(double kP, double kD) {
+    this.kP = kP;
+    this.kD = kD;
+  }
+
+  /**
+   * Starts a new attempt.
+   *
+   * @param approachSpeed Robot relative speed to drive at until the robot is on the station,
+   *     signed for the direction. Zero if the robot is already on it.
+   */
+  public void reset(double approachSpeed) {
+    this.approachSpeed = approachSpeed;
+    onStation = approachSpeed == 0;
+    tipping = false;
+    levelSince = Double.NaN;
+    balanced = false;
+  }
+
+  /**
+   * @param pitchDegrees The pitch, positive nose up.
+   * @param pitchRate The pitch rate, in degrees per second.
+   * @param timestampSeconds When the pitch was measured.
+   * @return The robot relative forward velocity, in meters per second.
+   */
+  public double calculate(double pitchDegrees, double pitchRate, double timestampSeconds) {
+    if (!onStation) {
+      if (Math.abs(pitchDegrees) < climbingDegrees) {
+        return approachSpeed;
+      }
+      onStation = true;
+    }
+
+    boolean level = Math.abs(pitchDegrees) < levelTolerance;
+    if (level && Math.abs(pitchRate) < kSettledRate) {
+      if (Double.isNaN(levelSince)) {
+        levelSince = timestampSeconds;
+      }
+      balanced = timestampSeconds - levelSince >= settleSeconds;
+    } else {
+      levelSince = Double.NaN;
+      balanced = false;
+    }
+
+    tipping = pitchDegrees * pitchRate < 0 && Math.abs(pitchRate) > tippingRate;
+    double speed = tipping ? kD * pitchRate : kP * pitchDegrees + kD * pitchRate;
+    return Math.max(-maxSpeed, Math.min(maxSpeed, speed));
+  }
+
+  /** @return Whether the robot has driven far enough to tilt the station. */
+  public boolean isOnStation() {
+    return onStation;
+  }
+
+  /** @return Whether the last output ignored the pitch because the station is tipping. */
+  public boolean isTipping() {
+    return tipping;
+  }
+
+  /** @return Whether the station has been level and still for the settle time. */
+  public boolean isBalanced() {
+    return balanced;
+  }
+}
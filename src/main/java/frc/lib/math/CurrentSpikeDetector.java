@@ -0,0 +1,105 @@
+package frc.lib.math;
+
+/**
+ * Detects a game piece being pulled into a roller intake from the motor current. A free spinning
+ * roller draws a steady current; a piece loading the rollers makes it climb and stay up. The raw
+ * current is low pass filtered to take out commutation noise, and a much slower filter tracks the
+ * free spinning baseline while nothing is detected. A piece is reported once the filtered current
+ * has stayed more than a threshold above the baseline for the debounce time.
+ *
+ * <p>The start up inrush looks exactly like a piece, so samples in the first part of a run are
+ * ignored; the baseline is seeded from the first sample after that. The detector has no hardware
+ * dependencies, so recorded or synthetic traces can be replayed through it on the desktop.
+ */
+public class CurrentSpikeDetector {
+  private final double filterTimeConstant;
+  private final double baselineTimeConstant;
+  private final double thresholdAmps;
+  private final double inrushSeconds;
+  private double debounceSeconds;
+
+  private double startTime;
+  private double lastTime;
+  private double filtered;
+  private double baseline;
+  private boolean seeded;
+  private double aboveSince;
+  private boolean detected;
+
+  /**
+   * @param filterTimeConstant Time constant of the current filter, in seconds.
+   * @param baselineTimeConstant Time constant of the free spinning baseline, in seconds.
+   * @param thresholdAmps How far above the baseline the filtered current must rise.
+   * @param inrushSeconds How long after {@link #reset} samples are ignored.
+   * @param debounceSeconds How long the current must stay above the threshold.
+   */
+  public CurrentSpikeDetector(
+      double filterTimeConstant,
+      double baselineTimeConstant,
+      double thresholdAmps,
+      double inrushSeconds,
+      double debounceSeconds) {
+    this.filterTimeConstant = filterTimeConstant;
+    this.baselineTimeConstant = baselineTimeConstant;
+    this.thresholdAmps = thresholdAmps;
+    this.inrushSeconds = inrushSeconds;
+    this.debounceSeconds = debounceSeconds;
+  }
+
+  public void setDebounceSeconds(double debounceSeconds) {
+    this.debounceSeconds = debounceSeconds;
+  }
+
+  /** Starts a new run, for when the motor is switched on. */
+  public void reset(double timestampSeconds) {
+    startTime = timestampSeconds;
+    lastTime = timestampSeconds;
+    seeded = false;
+    aboveSince = Double.NaN;
+    detected = false;
+  }
+
+  /**
+   * @param timestampSeconds When the current was sampled.
+   * @param amps The motor current.
+   * @return Whether a piece has been detected in this run. Stays true until {@link #reset}.
+   */
+  public boolean update(double timestampSeconds, double amps) {
+    double dt = timestampSeconds - lastTime;
+    lastTime = timestampSeconds;
+    if (detected || timestampSeconds - startTime < inrushSeconds) {
+      return detected;
+    }
+    if (!seeded) {
+      filtered = amps;
+      baseline = amps;
+      seeded = true;
+      return false;
+    }
+
+    filtered += (amps - filtered) * Math.min(1.0, dt / filterTimeConstant);
+    if (filtered - baseline > thresholdAmps) {
+      if (Double.isNaN(aboveSince)) {
+        aboveSince = timestampSeconds;
+      }
+      detected = timestampSeconds - aboveSince >= debounceSeconds;
+    } else {
+      aboveSince = Double.NaN;
+      // Only learn the baseline while the rollers are running free.
+      baseline += (filtered - baseline) * Math.min(1.0, dt / baselineTimeConstant);
+    }
+    return detected;
+  }
+
+  public boolean isDetected() {
+    return detected;
+  }
+
+  public double getFilteredAmps() {
+    return filtered;
+  }
+
+  public double getBaselineAmps() {
+    return baseline;
+  }
+}
@@ -0,0 +1,118 @@
+package frc.lib.math;
+
+import edu.wpi.first.math.geometry.Translation2d;
+
+/**
+ * Closed form swerve kinematics for four modules laid out symmetrically about the robot center,
+ * such as the rectangle in {@code Constants.Swerve}. Everything works on caller owned primitive
+ * arrays with constants precomputed from the layout, so no call allocates.
+ *
+ * <p>Because the module positions sum to zero, the least squares forward kinematics that {@code
+ * SwerveDriveKinematics} solves with a pseudo-inverse reduces to averages: vx and vy are the mean
+ * module velocity components and omega is the mean moment divided by the mean squared radius. The
+ * results match WPILib to rounding; see {@code FastSwerveKinematicsTest}.
+ *
+ * <p>Like WPILib, a request for zero chassis speed keeps the previous module angles. An instance is
+ * not thread safe because of that memory.
+ */
+public class FastSwerveKinematics {
+  public static final int kModuleCount = 4;
+
+  private final double[] moduleX = new double[kModuleCount];
+  private final double[] moduleY = new double[kModuleCount];
+  private final double inverseRadiusSquaredSum;
+  private final double[] lastAngles = new double[kModuleCount];
+
+  /**
+   * @param modules The four module locations relative to the robot center.
+   * @throws IllegalArgumentException if the layout is not centered on the robot.
+   */
+  public FastSwerveKinematics(Translation2d... modules) {
+    if (modules.length != kModuleCount) {
+      throw new IllegalArgumentException("expected " + kModuleCount + " modules, got " + modules.length);
+    }
+    double sumX = 0;
+    double sumY = 0;
+    double radiusSquaredSum = 0;
+    for (int i = 0; i < kModuleCount; i++) {
+      moduleX[i] = modules[i].getX();
+      moduleY[i] = modules[i].getY();
+      sumX += moduleX[i];
+      sumY += moduleY[i];
+      radiusSquaredSum += moduleX[i] * moduleX[i] + moduleY[i] * moduleY[i];
+    }
+    if (Math.abs(sumX) > 1e-9 || Math.abs(sumY) > 1e-9) {
+      throw new IllegalArgumentException("module layout must be centered on the robot");
+    }
+    inverseRadiusSquaredSum = 1.0 / radiusSquaredSum;
+  }
+
+  /**
+   * Inverse kinematics.
+   *
+   * @param speeds Receives each module's speed in meters per second.
+   * @param angles Receives each module's angle in radians, (-pi, pi].
+   */
+  public void toModuleStates(double vx, double vy, double omega, double[] speeds, double[] angles) {
+    if (vx == 0 && vy == 0 && omega == 0) {
+      for (int i = 0; i < kModuleCount; i++) {
+        speeds[i] = 0;
+        angles[i] = lastAngles[i];
+      }
+      return;
+    }
+    for (int i = 0; i < kModuleCount; i++) {
+      double moduleVx = vx - omega * moduleY[i];
+      double moduleVy = vy + omega * moduleX[i];
+      speeds[i] = Math.hypot(moduleVx, moduleVy);
+      angles[i] = Math.atan2(moduleVy, moduleVx);
+      lastAngles[i] = angles[i];
+    }
+  }
+
+  /** Scales every speed down so none exceeds the maximum, keeping their ratios. */
+  public static void desaturate(double[] speeds, double maxSpeed) {
+    double fastest = 0;
+    for (double speed : speeds) {
+      fastest = Math.max(fastest, Math.abs(speed));
+    }
+    if (fastest > maxSpeed) {
+      double scale = maxSpeed / fastest;
+      for (int i = 0; i < speeds.length; i++) {
+        speeds[i] *= scale;
+      }
+    }
+  }
+
+  /**
+   * Forward kinematics. Also used for odometry with distance deltas in place of speeds, which gives
+   * the twist (dx, dy, dtheta).
+   *
+   * @param speeds Module speeds (or distance deltas).
+   * @param angles Module angles in radians.
+   * @param out Receives vx, vy, omega (or dx, dy, dtheta).
+   */
+  public void toChassisSpeeds(double[] speeds, double[] angles, double[] out) {
+    double sumVx = 0;
+    double sumVy = 0;
+    double sumMoment = 0;
+    for (int i = 0; i < kModuleCount; i++) {
+      double moduleVx = speeds[i] * Math.cos(angles[i]);
+      double moduleVy = speeds[i] * Math.sin(angles[i]);
+      sumVx += moduleVx;
+      sumVy += moduleVy;
+      sumMoment += moduleX[i] * moduleVy - moduleY[i] * moduleVx;
+    }
+    out[0] = sumVx / kModuleCount;
+    out[1] = sumVy / kModuleCount;
+    out[2] = sumMoment * inverseRadiusSquaredSum;
+  }
+
+  public double getModuleX(int module) {
+    return moduleX[module];
+  }
+
+  public double getModuleY(int module) {
+    return moduleY[module];
+  }
+}
@@ -0,0 +1,103 @@
+package frc.lib.math;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+
+/**
+ * Swerve odometry on primitives, matching {@code SwerveDriveOdometry}: module distance deltas give
+ * a twist through {@link FastSwerveKinematics}, the gyro replaces the twist's rotation, and the
+ * twist is integrated with the same exponential map as {@code Pose2d.exp}. Updating does not
+ * allocate; {@link #getPoseMeters} builds a {@link Pose2d} only when the pose has changed.
+ */
+public class FastSwerveOdometry {
+  private final FastSwerveKinematics kinematics;
+  private final double[] previousDistances = new double[FastSwerveKinematics.kModuleCount];
+  private final double[] deltas = new double[FastSwerveKinematics.kModuleCount];
+  private final double[] twist = new double[3];
+
+  private double x;
+  private double y;
+  private double heading;
+  private double gyroOffset;
+  private double previousAngle;
+  private Pose2d pose;
+
+  /**
+   * @param gyroRadians The current gyro angle.
+   * @param distances The current module distances in meters.
+   */
+  public FastSwerveOdometry(FastSwerveKinematics kinematics, double gyroRadians, double[] distances, Pose2d initial) {
+    this.kinematics = kinematics;
+    resetPosition(gyroRadians, distances, initial);
+  }
+
+  public void resetPosition(double gyroRadians, double[] distances, Pose2d pose) {
+    x = pose.getX();
+    y = pose.getY();
+    heading = pose.getRotation().getRadians();
+    gyroOffset = heading - gyroRadians;
+    previousAngle = heading;
+    System.arraycopy(distances, 0, previousDistances, 0, previousDistances.length);
+    this.pose = pose;
+  }
+
+  /**
+   * @param gyroRadians The current gyro angle.
+   * @param distances The current module distances in meters.
+   * @param angles The current module angles in radians.
+   */
+  public void update(double gyroRadians, double[] distances, double[] angles) {
+    double angle = MathUtil.angleModulus(gyroRadians + gyroOffset);
+    for (int i = 0; i < deltas.length; i++) {
+      deltas[i] = distances[i] - previousDistances[i];
+      previousDistances[i] = distances[i];
+    }
+    kinematics.toChassisSpeeds(deltas, angles, twist);
+    double dx = twist[0];
+    double dy = twist[1];
+    double dtheta = MathUtil.angleModulus(angle - previousAngle);
+    previousAngle = angle;
+
+    // Pose2d.exp
+    double sinTheta = Math.sin(dtheta);
+    double cosTheta = Math.cos(dtheta);
+    double s;
+    double c;
+    if (Math.abs(dtheta) < 1e-9) {
+      s = 1.0 - 1.0 / 6.0 * dtheta * dtheta;
+      c = 0.5 * dtheta;
+    } else {
+      s = sinTheta / dtheta;
+      c = (1 - cosTheta) / dtheta;
+    }
+    double localX = dx * s - dy * c;
+    double localY = dx * c + dy * s;
+    double cos = Math.cos(heading);
+    double sin = Math.sin(heading);
+    x += localX * cos - localY * sin;
+    y += localX * sin + localY * cos;
+    heading = angle;
+    pose = null;
+  }
+
+  public double getX() {
+    return x;
+  }
+
+  public double getY() {
+    return y;
+  }
+
+  /** @return The heading in radians, (-pi, pi]. */
+  public double getHeading() {
+    return heading;
+  }
+
+  public Pose2d getPoseMeters() {
+    if (pose == null) {
+      pose = new Pose2d(x, y, new Rotation2d(heading));
+    }
+    return pose;
+  }
+}
@@ -0,0 +1,105 @@
+package frc.lib.math;
+
+import com.pathplanner.lib.PathPlannerTrajectory;
+import com.pathplanner.lib.PathPlannerTrajectory.PathPlannerState;
+import edu.wpi.first.math.trajectory.Trajectory;
+import java.util.List;
+
+/**
+ * A time parameterized path for a holonomic drivetrain, stored as parallel primitive arrays so
+ * that following it never allocates. Translation and heading are independent: {@code vx}/{@code
+ * vy} are field relative velocities and {@code heading}/{@code omega} are where the robot faces.
+ */
+public class HolonomicTrajectory {
+  public final double[] time;
+  public final double[] x;
+  public final double[] y;
+  public final double[] heading;
+  public final double[] vx;
+  public final double[] vy;
+  public final double[] omega;
+
+  public HolonomicTrajectory(int length) {
+    time = new double[length];
+    x = new double[length];
+    y = new double[length];
+    heading = new double[length];
+    vx = new double[length];
+    vy = new double[length];
+    omega = new double[length];
+  }
+
+  public int length() {
+    return time.length;
+  }
+
+  public double getTotalTime() {
+    return time[time.length - 1];
+  }
+
+  /**
+   * Finds the sample at or before a time. The search starts from the previous result, so a
+   * follower that only moves forward in time does constant work per loop instead of searching from
+   * the start.
+   *
+   * @param cursor The index returned by the previous call, or 0.
+   * @return The index of the last sample whose time is at or before {@code t}.
+   */
+  public int seek(double t, int cursor) {
+    if (cursor < 0 || cursor >= time.length || time[cursor] > t) {
+      cursor = 0;
+    }
+    while (cursor < time.length - 1 && time[cursor + 1] <= t) {
+      cursor++;
+    }
+    return cursor;
+  }
+
+  /**
+   * Linearly interpolates one of the sample arrays at a time.
+   *
+   * @param values One of this trajectory's arrays, e.g. {@link #x}.
+   * @param cursor The result of {@link #seek} for the same time.
+   */
+  public double interpolate(double[] values, int cursor, double t) {
+    if (cursor >= time.length - 1) {
+      return values[time.length - 1];
+    }
+    double span = time[cursor + 1] - time[cursor];
+    double fraction = span > 1e-9 ? Math.max(0, Math.min(1, (t - time[cursor]) / span)) : 0;
+    return values[cursor] + (values[cursor + 1] - values[cursor]) * fraction;
+  }
+
+  /**
+   * Interpolates the heading at a time, taking the short way around between samples.
+   *
+   * @param cursor The result of {@link #seek} for the same time.
+   */
+  public double interpolateHeading(int cursor, double t) {
+    if (cursor >= time.length - 1) {
+      return heading[time.length - 1];
+    }
+    double span = time[cursor + 1] - time[cursor];
+    double fraction = span > 1e-9 ? Math.max(0, Math.min(1, (t - time[cursor]) / span)) : 0;
+    double delta = Math.IEEEremainder(heading[cursor + 1] - heading[cursor], 2 * Math.PI);
+    return Math.IEEEremainder(heading[cursor] + delta * fraction, 2 * Math.PI);
+  }
+
+  /** Converts a PathPlanner trajectory, keeping its holonomic rotation as the heading. */
+  public static HolonomicTrajectory fromPathPlanner(PathPlannerTrajectory trajectory) {
+    List<Trajectory.State> states = trajectory.getStates();
+    HolonomicTrajectory result = new HolonomicTrajectory(states.size());
+    for (int i = 0; i < states.size(); i++) {
+      PathPlannerState state = (PathPlannerState) states.get(i);
+      double direction = state.poseMeters.getRotation().getRadians();
+      result.time[i] = state.timeSeconds;
+      result.x[i] = state.poseMeters.getX();
+      result.y[i] = state.poseMeters.getY();
+      result.heading[i] = state.holonomicRotation.getRadians();
+      result.vx[i] = state.velocityMetersPerSecond * Math.cos(direction);
+      result.vy[i] = state.velocityMetersPerSecond * Math.sin(direction);
+      result.omega[i] = state.holonomicAngularVelocityRadPerSec;
+    }
+    return result;
+  }
+}
@@ -0,0 +1,169 @@
+package frc.lib.math;
+
+/**
+ * Estimates a drive wheel's velocity and acceleration with a two state (position, velocity) Kalman
+ * filter. The Spark MAX velocity reading is averaged onboard and arrives late; its position reading
+ * is not filtered, so this filter predicts with the drive's kS/kV/kA model from the voltage it was
+ * commanded and corrects with each new position frame. The velocity responds as soon as the
+ * voltage changes, and the position frames keep it honest when the model is off.
+ *
+ * <p>Frames carry no timestamp, so a new frame is recognized by the position changing and is taken
+ * as measured when it was seen; the measurement noise grows with speed to cover that timing
+ * uncertainty. A wheel that stands still sends the same position, so once no change has been seen
+ * for longer than a frame period the unchanged position is used as a measurement too.
+ *
+ * <p>Call {@link #update} with each position reading, then {@link #setVoltage} with the voltage
+ * that is commanded until the next call. There are no hardware dependencies, so logged traces can
+ * be replayed through it on the desktop.
+ */
+public class ModuleVelocityEstimator {
+  private final double accelStdDev;
+  private final double positionStdDev;
+  private final double timingStdDev;
+  private final double framePeriod;
+  private double kS;
+  private double kV;
+  private double kA;
+
+  private double lastTime = Double.NaN;
+  private double volts;
+  private double lastMeasurement;
+  private double lastMeasurementTime;
+
+  /* State and its covariance */
+  private double position;
+  private double velocity;
+  private double acceleration;
+  private double p00;
+  private double p01;
+  private double p11;
+
+  /**
+   * @param accelStdDev Unmodeled acceleration (carpet, contact, current limiting), in meters per
+   *     second squared.
+   * @param positionStdDev Position measurement noise, in meters.
+   * @param timingStdDev Uncertainty of when a position frame was measured, in seconds.
+   * @param framePeriod How often the position frame is sent, in seconds.
+   */
+  public ModuleVelocityEstimator(double accelStdDev, double positionStdDev, double timingStdDev, double framePeriod) {
+    this.accelStdDev = accelStdDev;
+    this.positionStdDev = positionStdDev;
+    this.timingStdDev = timingStdDev;
+    this.framePeriod = framePeriod;
+  }
+
+  /**
+   * @param kS Volts to overcome static friction.
+   * @param kV Volts per meter per second.
+   * @param kA Volts per meter per second squared.
+   */
+  public void setPlant(double kS, double kV, double kA) {
+    this.kS = kS;
+    this.kV = Math.max(kV, 1e-3);
+    this.kA = Math.max(kA, 1e-3);
+  }
+
+  /** Starts over at rest at a known position. */
+  public void reset(double timestampSeconds, double measuredPosition) {
+    lastTime = timestampSeconds;
+    lastMeasurement = measuredPosition;
+    lastMeasurementTime = timestampSeconds;
+    position = measuredPosition;
+    velocity = 0;
+    acceleration = 0;
+    volts = 0;
+    p00 = positionStdDev * positionStdDev;
+    p01 = 0;
+    p11 = 0;
+  }
+
+  /** @param volts The voltage commanded from now until the next {@link #update}. */
+  public void setVoltage(double volts) {
+    this.volts = volts;
+  }
+
+  /**
+   * Advances the estimate to a new position reading.
+   *
+   * @param timestampSeconds When the position was read.
+   * @param measuredPosition The latest position the motor controller has sent, in meters.
+   */
+  public void update(double timestampSeconds, double measuredPosition) {
+    if (Double.isNaN(lastTime)) {
+      reset(timestampSeconds, measuredPosition);
+      return;
+    }
+    double dt = timestampSeconds - lastTime;
+    lastTime = timestampSeconds;
+    if (dt > 0) {
+      predict(dt);
+    }
+
+    boolean newFrame = measuredPosition != lastMeasurement;
+    if (newFrame || timestampSeconds - lastMeasurementTime > 1.5 * framePeriod) {
+      double timing = velocity * timingStdDev;
+      correct(measuredPosition, positionStdDev * positionStdDev + timing * timing);
+      lastMeasurement = measuredPosition;
+      lastMeasurementTime = timestampSeconds;
+    }
+    acceleration = (drivingVolts() - kV * velocity) / kA;
+  }
+
+  /* The voltage left to accelerate the wheel once static friction is paid */
+  private double drivingVolts() {
+    if (Math.abs(velocity) > 1e-3) {
+      return volts - Math.copySign(kS, velocity);
+    }
+    if (Math.abs(volts) > kS) {
+      return volts - Math.copySign(kS, volts);
+    }
+    return 0;
+  }
+
+  private void predict(double dt) {
+    // Exact discretization of dv/dt = (u - kV v) / kA for a constant u over dt.
+    double rate = kV / kA;
+    double decay = Math.exp(-rate * dt);
+    double gain = (1 - decay) / rate;
+    double steady = drivingVolts() / kV;
+    position += velocity * gain + steady * (dt - gain);
+    velocity = velocity * decay + steady * (1 - decay);
+
+    // P = F P F' + Q, with F = [1 gain; 0 decay] and white acceleration noise.
+    double q = accelStdDev * accelStdDev;
+    double dt2 = dt * dt;
+    double n00 = p00 + 2 * gain * p01 + gain * gain * p11 + q * dt2 * dt2 / 4;
+    double n01 = decay * (p01 + gain * p11) + q * dt2 * dt / 2;
+    double n11 = decay * decay * p11 + q * dt2;
+    p00 = n00;
+    p01 = n01;
+    p11 = n11;
+  }
+
+  private void correct(double measuredPosition, double variance) {
+    double innovation = measuredPosition - position;
+    double s = p00 + variance;
+    double k0 = p00 / s;
+    double k1 = p01 / s;
+    position += k0 * innovation;
+    velocity += k1 * innovation;
+    double n11 = p11 - k1 * p01;
+    p00 = (1 - k0) * p00;
+    p01 = (1 - k0) * p01;
+    p11 = n11;
+  }
+
+  public double getPosition() {
+    return position;
+  }
+
+  /** @return The estimated velocity, in meters per second. */
+  public double getVelocity() {
+    return velocity;
+  }
+
+  /** @return The estimated acceleration from the model, in meters per second squared. */
+  public double getAcceleration() {
+    return acceleration;
+  }
+}
@@ -0,0 +1,146 @@
+package frc.lib.math;
+
+/**
+ * Two node lumped thermal model of a brushless motor: the windings heat from I^2 R losses and shed
+ * heat into the housing, which sheds heat into the air. The motor's own temperature sensor sits on
+ * the housing side, so it is used to pull the housing node back into line at a low rate while the
+ * winding node is driven by the measured current every loop.
+ *
+ * <p>The model has no hardware dependencies, so it can be driven with a synthetic current and
+ * temperature profile in simulation.
+ */
+public class MotorThermalModel {
+  /* Prediction is integrated forward in fixed steps assuming the present current holds. */
+  private static final double kPredictionStepSeconds = 0.1;
+  /* How hard a temperature reading pulls the housing node toward it. */
+  private static final double kSensorCorrectionGain = 0.2;
+
+  private final double windingResistanceOhms;
+  private final double windingCapacitance;
+  private final double housingCapacitance;
+  private final double windingToHousingResistance;
+  private final double housingToAmbientResistance;
+  private final double derateStartCelsius;
+  private final double limitCelsius;
+  private final double minDerate;
+
+  private double ambientCelsius;
+  private double windingCelsius;
+  private double housingCelsius;
+  private double currentAmps;
+  private double predictedCelsius;
+  private final double[] nodes = new double[2];
+
+  /**
+   * @param windingResistanceOhms Phase resistance of the motor.
+   * @param windingCapacitance Heat capacity of the windings, in J/C.
+   * @param housingCapacitance Heat capacity of the housing, in J/C.
+   * @param windingToHousingResistance Thermal resistance from windings to housing, in C/W.
+   * @param housingToAmbientResistance Thermal resistance from housing to air, in C/W.
+   * @param derateStartCelsius Predicted winding temperature where derating begins.
+   * @param limitCelsius Predicted winding temperature where the derate reaches its minimum.
+   * @param minDerate The derate factor applied at and beyond the limit.
+   * @param ambientCelsius Starting temperature for every node.
+   */
+  public MotorThermalModel(
+      double windingResistanceOhms,
+      double windingCapacitance,
+      double housingCapacitance,
+      double windingToHousingResistance,
+      double housingToAmbientResistance,
+      double derateStartCelsius,
+      double limitCelsius,
+      double minDerate,
+      double ambientCelsius) {
+    this.windingResistanceOhms = windingResistanceOhms;
+    this.windingCapacitance = windingCapacitance;
+    this.housingCapacitance = housingCapacitance;
+    this.windingToHousingResistance = windingToHousingResistance;
+    this.housingToAmbientResistance = housingToAmbientResistance;
+    this.derateStartCelsius = derateStartCelsius;
+    this.limitCelsius = limitCelsius;
+    this.minDerate = minDerate;
+    this.ambientCelsius = ambientCelsius;
+    this.windingCelsius = ambientCelsius;
+    this.housingCelsius = ambientCelsius;
+    this.predictedCelsius = ambientCelsius;
+  }
+
+  /**
+   * Advances the model with the latest measured current.
+   *
+   * @param currentAmps Measured phase current.
+   * @param dtSeconds Time since the previous update.
+   * @param horizonSeconds How far ahead to predict the winding temperature.
+   */
+  public void update(double currentAmps, double dtSeconds, double horizonSeconds) {
+    this.currentAmps = Math.abs(currentAmps);
+    nodes[0] = windingCelsius;
+    nodes[1] = housingCelsius;
+    step(nodes, this.currentAmps, dtSeconds);
+    windingCelsius = nodes[0];
+    housingCelsius = nodes[1];
+
+    double remaining = horizonSeconds;
+    while (remaining > 0) {
+      double dt = Math.min(kPredictionStepSeconds, remaining);
+      step(nodes, this.currentAmps, dt);
+      remaining -= dt;
+    }
+    predictedCelsius = nodes[0];
+  }
+
+  /**
+   * Corrects the housing node with a temperature reading from the motor. Readings of zero or less
+   * are ignored, since that is what the controller reports before it has a value (and in sim).
+   */
+  public void correct(double measuredCelsius) {
+    if (measuredCelsius <= 0.0) {
+      return;
+    }
+    double error = measuredCelsius - housingCelsius;
+    housingCelsius += kSensorCorrectionGain * error;
+    // The windings are never cooler than the housing they heat.
+    windingCelsius = Math.max(windingCelsius + kSensorCorrectionGain * error, housingCelsius);
+  }
+
+  private void step(double[] nodes, double amps, double dt) {
+    double heatIn = amps * amps * windingResistanceOhms;
+    double windingToHousing = (nodes[0] - nodes[1]) / windingToHousingResistance;
+    double housingToAmbient = (nodes[1] - ambientCelsius) / housingToAmbientResistance;
+    nodes[0] += (heatIn - windingToHousing) / windingCapacitance * dt;
+    nodes[1] += (windingToHousing - housingToAmbient) / housingCapacitance * dt;
+  }
+
+  /**
+   * @return A factor from 1 down to the minimum derate that smoothly falls as the predicted winding
+   *     temperature moves from the derate start to the limit.
+   */
+  public double getDerate() {
+    double x = (predictedCelsius - derateStartCelsius) / (limitCelsius - derateStartCelsius);
+    x = Math.max(0.0, Math.min(1.0, x));
+    double smooth = x * x * (3.0 - 2.0 * x);
+    return 1.0 - (1.0 - minDerate) * smooth;
+  }
+
+  /** @return Degrees left before the predicted winding temperature reaches the limit. */
+  public double getHeadroomCelsius() {
+    return limitCelsius - predictedCelsius;
+  }
+
+  public double getWindingCelsius() {
+    return windingCelsius;
+  }
+
+  public double getHousingCelsius() {
+    return housingCelsius;
+  }
+
+  public double getPredictedCelsius() {
+    return predictedCelsius;
+  }
+
+  public void setAmbientCelsius(double ambientCelsius) {
+    this.ambientCelsius = ambientCelsius;
+  }
+}
@@ -0,0 +1,473 @@
+package frc.lib.math;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Occupancy grid of the field for path planning. The obstacle map is rasterized once at startup and
+ * grown by the robot's radius, so a search only has to treat the robot as a point. Searches are A*
+ * over the 8-connected grid followed by line of sight smoothing, which gives the same any-angle
+ * paths as Theta* on open fields without its per-expansion line checks.
+ *
+ * <p>All search state is preallocated and reset with a generation stamp, so a query does not
+ * allocate. An instance is not thread safe.
+ *
+ * <p>Map file format, one shape per line, '#' starts a comment, all units meters:
+ *
+ * <pre>
+ * field 16.54 8.02                  # length (x) and width (y)
+ * rect 2.92 1.51 4.85 3.98          # minX minY maxX maxY
+ * circle 8.27 4.01 0.3              # centerX centerY radius
+ * polygon 0 0 1 0 1 1               # x y pairs, at least three
+ * </pre>
+ */
+public class NavigationGrid {
+  private static final double kSqrt2 = Math.sqrt(2.0);
+  /* How far (in cells) to look for a free cell when a query starts or ends inside an obstacle. */
+  private static final int kMaxSnapRadius = 10;
+
+  public final double resolution;
+  public final int width;
+  public final int height;
+  private final boolean[] blocked;
+
+  /* Search scratch, valid only where the stamp matches the current generation. */
+  private final float[] gScore;
+  private final int[] parent;
+  private final int[] seenStamp;
+  private final int[] closedStamp;
+  private final int[] heapNodes;
+  private final int[] heapPos;
+  private final float[] fScore;
+  private int heapSize;
+  private int generation = 0;
+  private final int[] pathCells;
+
+  private NavigationGrid(double resolution, int width, int height, boolean[] blocked) {
+    this.resolution = resolution;
+    this.width = width;
+    this.height = height;
+    this.blocked = blocked;
+    int cells = width * height;
+    gScore = new float[cells];
+    parent = new int[cells];
+    seenStamp = new int[cells];
+    closedStamp = new int[cells];
+    heapNodes = new int[cells];
+    heapPos = new int[cells];
+    fScore = new float[cells];
+    pathCells = new int[cells];
+  }
+
+  /**
+   * Loads and rasterizes an obstacle map file.
+   *
+   * @param resolution Cell size in meters.
+   * @param robotRadius Obstacles and field walls are grown by this much.
+   */
+  public static NavigationGrid load(File file, double resolution, double robotRadius) throws IOException {
+    return parse(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8), resolution, robotRadius);
+  }
+
+  /** @see #load */
+  public static NavigationGrid parse(String text, double resolution, double robotRadius) {
+    String[] lines = text.split("\n");
+    double length = -1;
+    double widthMeters = -1;
+    for (String line : lines) {
+      String[] tokens = tokens(line);
+      if (tokens.length == 3 && tokens[0].equals("field")) {
+        length = Double.parseDouble(tokens[1]);
+        widthMeters = Double.parseDouble(tokens[2]);
+      }
+    }
+    if (length <= 0 || widthMeters <= 0) {
+      throw new IllegalArgumentException("obstacle map has no 'field <length> <width>' line");
+    }
+
+    int width = (int) Math.ceil(length / resolution);
+    int height = (int) Math.ceil(widthMeters / resolution);
+    boolean[] obstacle = new boolean[width * height];
+    for (int lineNumber = 0; lineNumber < lines.length; lineNumber++) {
+      String[] tokens = tokens(lines[lineNumber]);
+      if (tokens.length == 0 || tokens[0].equals("field")) {
+        continue;
+      }
+      double[] values = new double[tokens.length - 1];
+      for (int i = 0; i < values.length; i++) {
+        values[i] = Double.parseDouble(tokens[i + 1]);
+      }
+      switch (tokens[0]) {
+        case "rect":
+          requireArgs(values, 4, lineNumber);
+          for (int cy = 0; cy < height; cy++) {
+            for (int cx = 0; cx < width; cx++) {
+              double x = (cx + 0.5) * resolution;
+              double y = (cy + 0.5) * resolution;
+              if (x >= values[0] && x <= values[2] && y >= values[1] && y <= values[3]) {
+                obstacle[cy * width + cx] = true;
+              }
+            }
+          }
+          break;
+        case "circle":
+          requireArgs(values, 3, lineNumber);
+          for (int cy = 0; cy < height; cy++) {
+            for (int cx = 0; cx < width; cx++) {
+              double dx = (cx + 0.5) * resolution - values[0];
+              double dy = (cy + 0.5) * resolution - values[1];
+              if (dx * dx + dy * dy <= values[2] * values[2]) {
+                obstacle[cy * width + cx] = true;
+              }
+            }
+          }
+          break;
+        case "polygon":
+          if (values.length < 6 || values.length % 2 != 0) {
+            throw new IllegalArgumentException("line " + (lineNumber + 1) + ": polygon needs three or more x y pairs");
+          }
+          for (int cy = 0; cy < height; cy++) {
+            for (int cx = 0; cx < width; cx++) {
+              if (insidePolygon(values, (cx + 0.5) * resolution, (cy + 0.5) * resolution)) {
+                obstacle[cy * width + cx] = true;
+              }
+            }
+          }
+          break;
+        default:
+          throw new IllegalArgumentException("line " + (lineNumber + 1) + ": unknown shape '" + tokens[0] + "'");
+      }
+    }
+
+    return new NavigationGrid(resolution, width, height, inflate(obstacle, width, height, robotRadius / resolution));
+  }
+
+  private static String[] tokens(String line) {
+    int comment = line.indexOf('#');
+    String trimmed = (comment >= 0 ? line.substring(0, comment) : line).trim();
+    return trimmed.isEmpty() ? new String[0] : trimmed.split("\\s+");
+  }
+
+  private static void requireArgs(double[] values, int count, int lineNumber) {
+    if (values.length != count) {
+      throw new IllegalArgumentException("line " + (lineNumber + 1) + ": expected " + count + " numbers");
+    }
+  }
+
+  private static boolean insidePolygon(double[] xy, double x, double y) {
+    boolean inside = false;
+    int n = xy.length / 2;
+    for (int i = 0, j = n - 1; i < n; j = i++) {
+      double xi = xy[2 * i];
+      double yi = xy[2 * i + 1];
+      double xj = xy[2 * j];
+      double yj = xy[2 * j + 1];
+      if ((yi > y) != (yj > y) && x < (xj - xi) * (y - yi) / (yj - yi) + xi) {
+        inside = !inside;
+      }
+    }
+    return inside;
+  }
+
+  /**
+   * Grows obstacles (and the field walls) by a radius using a two pass chamfer distance transform.
+   */
+  private static boolean[] inflate(boolean[] obstacle, int width, int height, double radiusCells) {
+    float[] dist = new float[width * height];
+    for (int i = 0; i < dist.length; i++) {
+      dist[i] = obstacle[i] ? 0f : Float.MAX_VALUE;
+    }
+    float diagonal = (float) kSqrt2;
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        int i = y * width + x;
+        if (x > 0) dist[i] = Math.min(dist[i], dist[i - 1] + 1f);
+        if (y > 0) dist[i] = Math.min(dist[i], dist[i - width] + 1f);
+        if (x > 0 && y > 0) dist[i] = Math.min(dist[i], dist[i - width - 1] + diagonal);
+        if (x < width - 1 && y > 0) dist[i] = Math.min(dist[i], dist[i - width + 1] + diagonal);
+      }
+    }
+    for (int y = height - 1; y >= 0; y--) {
+      for (int x = width - 1; x >= 0; x--) {
+        int i = y * width + x;
+        if (x < width - 1) dist[i] = Math.min(dist[i], dist[i + 1] + 1f);
+        if (y < height - 1) dist[i] = Math.min(dist[i], dist[i + width] + 1f);
+        if (x < width - 1 && y < height - 1) dist[i] = Math.min(dist[i], dist[i + width + 1] + diagonal);
+        if (x > 0 && y < height - 1) dist[i] = Math.min(dist[i], dist[i + width - 1] + diagonal);
+      }
+    }
+
+    boolean[] blocked = new boolean[width * height];
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        // Distance from the cell center to the nearest wall, in cells.
+        double wall = Math.min(Math.min(x + 0.5, width - x - 0.5), Math.min(y + 0.5, height - y - 0.5));
+        int i = y * width + x;
+        blocked[i] = dist[i] < radiusCells || wall < radiusCells;
+      }
+    }
+    return blocked;
+  }
+
+  public int cellOf(double x, double y) {
+    int cx = Math.max(0, Math.min(width - 1, (int) (x / resolution)));
+    int cy = Math.max(0, Math.min(height - 1, (int) (y / resolution)));
+    return cy * width + cx;
+  }
+
+  public boolean isBlocked(double x, double y) {
+    if (x < 0 || y < 0 || x >= width * resolution || y >= height * resolution) {
+      return true;
+    }
+    return blocked[cellOf(x, y)];
+  }
+
+  /** @return Whether a straight line between two points stays in free cells. */
+  public boolean hasLineOfSight(double x0, double y0, double x1, double y1) {
+    double dx = x1 - x0;
+    double dy = y1 - y0;
+    int steps = (int) Math.ceil(Math.hypot(dx, dy) / (resolution * 0.5));
+    for (int i = 1; i < steps; i++) {
+      double t = (double) i / steps;
+      if (isBlocked(x0 + dx * t, y0 + dy * t)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** @return The nearest free cell to a cell, or -1 if there is none nearby. */
+  private int snapToFree(int cell) {
+    if (!blocked[cell]) {
+      return cell;
+    }
+    int cx = cell % width;
+    int cy = cell / width;
+    for (int r = 1; r <= kMaxSnapRadius; r++) {
+      for (int dy = -r; dy <= r; dy++) {
+        for (int dx = -r; dx <= r; dx++) {
+          if (Math.max(Math.abs(dx), Math.abs(dy)) != r) {
+            continue;
+          }
+          int x = cx + dx;
+          int y = cy + dy;
+          if (x >= 0 && y >= 0 && x < width && y < height && !blocked[y * width + x]) {
+            return y * width + x;
+          }
+        }
+      }
+    }
+    return -1;
+  }
+
+  /** @return The start and goal cells after snapping, packed as start * cells + goal, or -1. */
+  public long snappedKey(double startX, double startY, double goalX, double goalY) {
+    int start = snapToFree(cellOf(startX, startY));
+    int goal = snapToFree(cellOf(goalX, goalY));
+    if (start < 0 || goal < 0) {
+      return -1;
+    }
+    return (long) start * (width * height) + goal;
+  }
+
+  /**
+   * Finds a smoothed path between two points.
+   *
+   * @param out Receives x, y pairs of waypoints, including the exact start and goal.
+   * @return The number of waypoints written, or -1 if there is no path (or {@code out} is full).
+   */
+  public int findPath(double startX, double startY, double goalX, double goalY, double[] out) {
+    int start = snapToFree(cellOf(startX, startY));
+    int goal = snapToFree(cellOf(goalX, goalY));
+    if (start < 0 || goal < 0) {
+      return -1;
+    }
+    int cells = search(start, goal);
+    if (cells < 0) {
+      return -1;
+    }
+
+    // String pulling: from each anchor, jump to the farthest cell still in line of sight.
+    int count = 0;
+    if (out.length < 4) {
+      return -1;
+    }
+    out[count++] = startX;
+    out[count++] = startY;
+    double anchorX = startX;
+    double anchorY = startY;
+    int i = 0;
+    while (i < cells - 1) {
+      int next = i + 1;
+      for (int j = cells - 1; j > i + 1; j--) {
+        if (hasLineOfSight(anchorX, anchorY, centerX(pathCells[j]), centerY(pathCells[j]))) {
+          next = j;
+          break;
+        }
+      }
+      if (next == cells - 1) {
+        break;
+      }
+      if (count + 4 > out.length) {
+        return -1;
+      }
+      anchorX = centerX(pathCells[next]);
+      anchorY = centerY(pathCells[next]);
+      out[count++] = anchorX;
+      out[count++] = anchorY;
+      i = next;
+    }
+    out[count++] = goalX;
+    out[count++] = goalY;
+    return count / 2;
+  }
+
+  private double centerX(int cell) {
+    return (cell % width + 0.5) * resolution;
+  }
+
+  private double centerY(int cell) {
+    return (cell / width + 0.5) * resolution;
+  }
+
+  /**
+   * A* from start to goal. Fills {@link #pathCells} from start to goal.
+   *
+   * @return The number of cells in the path, or -1 if the goal cannot be reached.
+   */
+  private int search(int start, int goal) {
+    generation++;
+    heapSize = 0;
+    int goalX = goal % width;
+    int goalY = goal / width;
+
+    seenStamp[start] = generation;
+    gScore[start] = 0f;
+    parent[start] = -1;
+    push(start, heuristic(start % width, start / width, goalX, goalY));
+
+    while (heapSize > 0) {
+      int node = pop();
+      if (node == goal) {
+        int length = 0;
+        for (int n = goal; n >= 0; n = parent[n]) {
+          pathCells[length++] = n;
+        }
+        // Reverse into start to goal order.
+        for (int a = 0, b = length - 1; a < b; a++, b--) {
+          int swap = pathCells[a];
+          pathCells[a] = pathCells[b];
+          pathCells[b] = swap;
+        }
+        return length;
+      }
+      closedStamp[node] = generation;
+
+      int x = node % width;
+      int y = node / width;
+      for (int dy = -1; dy <= 1; dy++) {
+        for (int dx = -1; dx <= 1; dx++) {
+          if (dx == 0 && dy == 0) {
+            continue;
+          }
+          int nx = x + dx;
+          int ny = y + dy;
+          if (nx < 0 || ny < 0 || nx >= width || ny >= height) {
+            continue;
+          }
+          int neighbor = ny * width + nx;
+          if (blocked[neighbor] || closedStamp[neighbor] == generation) {
+            continue;
+          }
+          // No cutting corners past blocked cells.
+          if (dx != 0 && dy != 0 && (blocked[y * width + nx] || blocked[ny * width + x])) {
+            continue;
+          }
+          float tentative = gScore[node] + (dx != 0 && dy != 0 ? (float) kSqrt2 : 1f);
+          if (seenStamp[neighbor] != generation) {
+            seenStamp[neighbor] = generation;
+            gScore[neighbor] = tentative;
+            parent[neighbor] = node;
+            push(neighbor, tentative + heuristic(nx, ny, goalX, goalY));
+          } else if (tentative < gScore[neighbor]) {
+            gScore[neighbor] = tentative;
+            parent[neighbor] = node;
+            decreaseKey(neighbor, tentative + heuristic(nx, ny, goalX, goalY));
+          }
+        }
+      }
+    }
+    return -1;
+  }
+
+  /** Octile distance, admissible for 8-connected moves. */
+  private static float heuristic(int x, int y, int goalX, int goalY) {
+    int dx = Math.abs(x - goalX);
+    int dy = Math.abs(y - goalY);
+    return (float) (Math.max(dx, dy) + (kSqrt2 - 1.0) * Math.min(dx, dy));
+  }
+
+  /* Indexed binary min-heap on fScore. */
+
+  private void push(int node, float f) {
+    fScore[node] = f;
+    heapNodes[heapSize] = node;
+    heapPos[node] = heapSize;
+    siftUp(heapSize++);
+  }
+
+  private void decreaseKey(int node, float f) {
+    fScore[node] = f;
+    siftUp(heapPos[node]);
+  }
+
+  private int pop() {
+    int top = heapNodes[0];
+    heapSize--;
+    if (heapSize > 0) {
+      heapNodes[0] = heapNodes[heapSize];
+      heapPos[heapNodes[0]] = 0;
+      siftDown(0);
+    }
+    return top;
+  }
+
+  private void siftUp(int index) {
+    int node = heapNodes[index];
+    while (index > 0) {
+      int parentIndex = (index - 1) >> 1;
+      int parentNode = heapNodes[parentIndex];
+      if (fScore[parentNode] <= fScore[node]) {
+        break;
+      }
+      heapNodes[index] = parentNode;
+      heapPos[parentNode] = index;
+      index = parentIndex;
+    }
+    heapNodes[index] = node;
+    heapPos[node] = index;
+  }
+
+  private void siftDown(int index) {
+    int node = heapNodes[index];
+    while (true) {
+      int child = 2 * index + 1;
+      if (child >= heapSize) {
+        break;
+      }
+      if (child + 1 < heapSize && fScore[heapNodes[child + 1]] < fScore[heapNodes[child]]) {
+        child++;
+      }
+      if (fScore[heapNodes[child]] >= fScore[node]) {
+        break;
+      }
+      heapNodes[index] = heapNodes[child];
+      heapPos[heapNodes[index]] = index;
+      index = child;
+    }
+    heapNodes[index] = node;
+    heapPos[node] = index;
+  }
+}
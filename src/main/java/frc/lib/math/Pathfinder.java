@@ -0,0 +1,276 @@
+package frc.lib.math;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.trajectory.TrapezoidProfile;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Plans collision free trajectories across the field from a {@link NavigationGrid}. A query finds
+ * the grid path, rounds its corners, and time parameterizes it with the speed and acceleration
+ * limits (including centripetal acceleration in the corners). Heading follows its own trapezoid
+ * profile, since a swerve can turn independently of where it is going.
+ *
+ * <p>Grid paths are cached by start and goal cell, so asking for the same goal again only redoes
+ * the (cheap) time parameterization. Plan times and cache counts are kept for the robot's
+ * diagnostics; {@code frc.robot.sim.PathfinderBenchmark} measures them off the robot. Not thread
+ * safe.
+ */
+public class Pathfinder {
+  private static final int kMaxWaypoints = 64;
+  private static final int kCacheSize = 16;
+  private static final double kSampleSpacing = 0.05;
+  private static final double kCornerRadius = 0.4;
+  /* Spacing of the extra samples added when turning takes longer than driving. */
+  private static final double kHoldSampleSeconds = 0.02;
+
+  private final NavigationGrid grid;
+  private final double maxSpeed;
+  private final double maxAcceleration;
+  private final TrapezoidProfile.Constraints headingConstraints;
+
+  private final double[] waypoints = new double[kMaxWaypoints * 2];
+  private final Map<Long, double[]> cache = new LinkedHashMap<Long, double[]>(kCacheSize, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Long, double[]> eldest) {
+      return size() > kCacheSize;
+    }
+  };
+
+  /* Sampling scratch, grown as needed and reused between queries. */
+  private double[] sampleX = new double[512];
+  private double[] sampleY = new double[512];
+  private int sampleCount;
+
+  private double lastPlanMillis;
+  private double worstPlanMillis;
+  private int cacheHits;
+  private int cacheMisses;
+
+  /**
+   * @param maxSpeed Translation speed limit in meters per second.
+   * @param maxAcceleration Translation acceleration limit in meters per second squared, also used
+   *     as the centripetal limit in corners.
+   * @param headingConstraints Angular speed and acceleration limits in radians.
+   */
+  public Pathfinder(NavigationGrid grid, double maxSpeed, double maxAcceleration,
+      TrapezoidProfile.Constraints headingConstraints) {
+    this.grid = grid;
+    this.maxSpeed = maxSpeed;
+    this.maxAcceleration = maxAcceleration;
+    this.headingConstraints = headingConstraints;
+  }
+
+  public NavigationGrid getGrid() {
+    return grid;
+  }
+
+  /**
+   * Plans a trajectory from the current pose to a goal pose. A start or goal inside an obstacle
+   * (or too close to one) is moved to the nearest free cell for the search.
+   *
+   * @return The trajectory, or null if the goal cannot be reached.
+   */
+  public HolonomicTrajectory plan(Pose2d start, Pose2d goal) {
+    long startNanos = System.nanoTime();
+    HolonomicTrajectory trajectory = null;
+    double[] path = findWaypoints(start.getX(), start.getY(), goal.getX(), goal.getY());
+    if (path != null) {
+      trajectory = parameterize(path, start.getX(), start.getY(), goal.getX(), goal.getY(),
+          start.getRotation().getRadians(), goal.getRotation().getRadians());
+    }
+    lastPlanMillis = (System.nanoTime() - startNanos) / 1e6;
+    worstPlanMillis = Math.max(worstPlanMillis, lastPlanMillis);
+    return trajectory;
+  }
+
+  /** @return How long the last {@link #plan} call took, in milliseconds. */
+  public double getLastPlanMillis() {
+    return lastPlanMillis;
+  }
+
+  /** @return How long the slowest {@link #plan} call so far took, in milliseconds. */
+  public double getWorstPlanMillis() {
+    return worstPlanMillis;
+  }
+
+  public int getCacheHits() {
+    return cacheHits;
+  }
+
+  public int getCacheMisses() {
+    return cacheMisses;
+  }
+
+  private double[] findWaypoints(double startX, double startY, double goalX, double goalY) {
+    long key = grid.snappedKey(startX, startY, goalX, goalY);
+    if (key < 0) {
+      return null;
+    }
+    double[] path = cache.get(key);
+    if (path != null) {
+      cacheHits++;
+      return path;
+    }
+    cacheMisses++;
+    int count = grid.findPath(startX, startY, goalX, goalY, waypoints);
+    if (count < 0) {
+      return null;
+    }
+    path = Arrays.copyOf(waypoints, count * 2);
+    cache.put(key, path);
+    return path;
+  }
+
+  /**
+   * Turns a waypoint polyline into a trajectory. The first and last waypoints are replaced by the
+   * exact start and goal, since a cached path may have been planned from elsewhere in the same
+   * cell.
+   */
+  private HolonomicTrajectory parameterize(double[] path, double startX, double startY,
+      double goalX, double goalY, double startHeading, double goalHeading) {
+    int n = path.length / 2;
+    sampleCount = 0;
+    addSample(startX, startY);
+    double prevOffset = 0;
+    for (int i = 0; i < n - 1; i++) {
+      double ax = i == 0 ? startX : path[2 * i];
+      double ay = i == 0 ? startY : path[2 * i + 1];
+      double bx = i == n - 2 ? goalX : path[2 * i + 2];
+      double by = i == n - 2 ? goalY : path[2 * i + 3];
+      double length = Math.hypot(bx - ax, by - ay);
+      if (length < 1e-9) {
+        continue;
+      }
+      double ux = (bx - ax) / length;
+      double uy = (by - ay) / length;
+
+      // How far before the corner at b the blend starts.
+      double nextOffset = 0;
+      double cx = 0;
+      double cy = 0;
+      if (i < n - 2) {
+        cx = i + 1 == n - 2 ? goalX : path[2 * i + 4];
+        cy = i + 1 == n - 2 ? goalY : path[2 * i + 5];
+        double nextLength = Math.hypot(cx - bx, cy - by);
+        nextOffset = Math.min(kCornerRadius, 0.5 * Math.min(length, nextLength));
+      }
+
+      // Straight part.
+      double straight = length - prevOffset - nextOffset;
+      int pieces = Math.max(1, (int) Math.ceil(straight / kSampleSpacing));
+      for (int p = 1; p <= pieces; p++) {
+        double s = prevOffset + straight * p / pieces;
+        addSample(ax + ux * s, ay + uy * s);
+      }
+
+      // Quadratic blend around the corner at b.
+      if (nextOffset > 0) {
+        double nextLength = Math.hypot(cx - bx, cy - by);
+        double ex = bx + (cx - bx) / nextLength * nextOffset;
+        double ey = by + (cy - by) / nextLength * nextOffset;
+        double sx = bx - ux * nextOffset;
+        double sy = by - uy * nextOffset;
+        int blendPieces = Math.max(2, (int) Math.ceil(2 * nextOffset / kSampleSpacing));
+        for (int p = 1; p <= blendPieces; p++) {
+          double t = (double) p / blendPieces;
+          double u = 1 - t;
+          addSample(u * u * sx + 2 * u * t * bx + t * t * ex, u * u * sy + 2 * u * t * by + t * t * ey);
+        }
+      }
+      prevOffset = nextOffset;
+    }
+    if (sampleCount < 2) {
+      addSample(goalX, goalY);
+    }
+
+    // Speed limit from curvature, then forward (acceleration) and backward (braking) passes.
+    int m = sampleCount;
+    double[] speed = new double[m];
+    double[] distance = new double[m];
+    for (int i = 1; i < m; i++) {
+      distance[i] = Math.hypot(sampleX[i] - sampleX[i - 1], sampleY[i] - sampleY[i - 1]);
+    }
+    for (int i = 1; i < m - 1; i++) {
+      double curvature = curvature(i);
+      speed[i] = curvature > 1e-6 ? Math.min(maxSpeed, Math.sqrt(maxAcceleration / curvature)) : maxSpeed;
+    }
+    speed[0] = 0;
+    speed[m - 1] = 0;
+    for (int i = 1; i < m; i++) {
+      speed[i] = Math.min(speed[i], Math.sqrt(speed[i - 1] * speed[i - 1] + 2 * maxAcceleration * distance[i]));
+    }
+    for (int i = m - 2; i >= 0; i--) {
+      speed[i] = Math.min(speed[i], Math.sqrt(speed[i + 1] * speed[i + 1] + 2 * maxAcceleration * distance[i + 1]));
+    }
+
+    double[] time = new double[m];
+    for (int i = 1; i < m; i++) {
+      double sum = speed[i - 1] + speed[i];
+      time[i] = time[i - 1] + (sum > 1e-9 ? 2 * distance[i] / sum : 2 * Math.sqrt(distance[i] / maxAcceleration));
+    }
+
+    TrapezoidProfile headingProfile = new TrapezoidProfile(headingConstraints,
+        new TrapezoidProfile.State(startHeading + MathUtil.angleModulus(goalHeading - startHeading), 0),
+        new TrapezoidProfile.State(startHeading, 0));
+    double driveTime = time[m - 1];
+    int holdSamples = (int) Math.ceil(Math.max(0, headingProfile.totalTime() - driveTime) / kHoldSampleSeconds);
+
+    HolonomicTrajectory trajectory = new HolonomicTrajectory(m + holdSamples);
+    for (int i = 0; i < m; i++) {
+      int before = Math.max(0, i - 1);
+      int after = Math.min(m - 1, i + 1);
+      double dx = sampleX[after] - sampleX[before];
+      double dy = sampleY[after] - sampleY[before];
+      double norm = Math.hypot(dx, dy);
+      trajectory.time[i] = time[i];
+      trajectory.x[i] = sampleX[i];
+      trajectory.y[i] = sampleY[i];
+      trajectory.vx[i] = norm > 1e-9 ? dx / norm * speed[i] : 0;
+      trajectory.vy[i] = norm > 1e-9 ? dy / norm * speed[i] : 0;
+      TrapezoidProfile.State heading = headingProfile.calculate(time[i]);
+      trajectory.heading[i] = MathUtil.angleModulus(heading.position);
+      trajectory.omega[i] = heading.velocity;
+    }
+    for (int h = 1; h <= holdSamples; h++) {
+      int i = m - 1 + h;
+      double t = Math.min(driveTime + h * kHoldSampleSeconds, headingProfile.totalTime());
+      trajectory.time[i] = t;
+      trajectory.x[i] = goalX;
+      trajectory.y[i] = goalY;
+      TrapezoidProfile.State heading = headingProfile.calculate(t);
+      trajectory.heading[i] = MathUtil.angleModulus(heading.position);
+      trajectory.omega[i] = heading.velocity;
+    }
+    return trajectory;
+  }
+
+  private void addSample(double x, double y) {
+    if (sampleCount > 0
+        && Math.abs(x - sampleX[sampleCount - 1]) < 1e-6 && Math.abs(y - sampleY[sampleCount - 1]) < 1e-6) {
+      return;
+    }
+    if (sampleCount == sampleX.length) {
+      sampleX = Arrays.copyOf(sampleX, sampleCount * 2);
+      sampleY = Arrays.copyOf(sampleY, sampleCount * 2);
+    }
+    sampleX[sampleCount] = x;
+    sampleY[sampleCount] = y;
+    sampleCount++;
+  }
+
+  /** Curvature of the circle through a sample and its neighbours. */
+  private double curvature(int i) {
+    double ax = sampleX[i - 1];
+    double ay = sampleY[i - 1];
+    double bx = sampleX[i];
+    double by = sampleY[i];
+    double cx = sampleX[i + 1];
+    double cy = sampleY[i + 1];
+    double cross = Math.abs((bx - ax) * (cy - ay) - (by - ay) * (cx - ax));
+    double product = Math.hypot(bx - ax, by - ay) * Math.hypot(cx - bx, cy - by) * Math.hypot(cx - ax, cy - ay);
+    return product > 1e-12 ? 2 * cross / product : 0;
+  }
+}
@@ -0,0 +1,96 @@
+package frc.lib.math;
+
+/**
+ * Limits the commanded chassis acceleration to what the robot can take without tipping. A rigid
+ * robot accelerating at a tips over the edge of its wheel rectangle once a * h exceeds g * d,
+ * where h is the height of the center of gravity and d its horizontal distance to that edge, so
+ * the fore/aft and sideways limits are g * d / h scaled by a safety factor.
+ *
+ * <p>Each call to {@link #limit} moves the previous command toward the requested velocity by at
+ * most what those limits allow in the elapsed time, scaling both axes together so the direction of
+ * the change is kept. Velocities are robot relative, since the wheel rectangle turns with the
+ * robot. While the robot turns, a constant field velocity swings around in the robot frame without
+ * any real acceleration, so the previous command is first turned with the robot.
+ */
+public class TippingLimiter {
+  private static final double kGravity = 9.81;
+
+  private final double halfLength;
+  private final double halfWidth;
+  private final double safetyFactor;
+
+  private double maxAccelX;
+  private double maxAccelY;
+  private double lastVx;
+  private double lastVy;
+
+  /**
+   * @param halfLength Distance from the center of gravity to the front and back wheel contacts.
+   * @param halfWidth Distance from the center of gravity to the left and right wheel contacts.
+   * @param safetyFactor Fraction of the tipping acceleration to allow, for bumps and slop.
+   * @param cgHeight The initial center of gravity height.
+   */
+  public TippingLimiter(double halfLength, double halfWidth, double safetyFactor, double cgHeight) {
+    this.halfLength = halfLength;
+    this.halfWidth = halfWidth;
+    this.safetyFactor = safetyFactor;
+    setCgHeight(cgHeight);
+  }
+
+  /** @param cgHeight The center of gravity height above the floor, in meters. */
+  public void setCgHeight(double cgHeight) {
+    double perMeter = safetyFactor * kGravity / Math.max(cgHeight, 1e-3);
+    maxAccelX = perMeter * halfLength;
+    maxAccelY = perMeter * halfWidth;
+  }
+
+  public double getMaxAccelX() {
+    return maxAccelX;
+  }
+
+  public double getMaxAccelY() {
+    return maxAccelY;
+  }
+
+  /** Forgets the previous command, for when the robot is known to be at a given velocity. */
+  public void reset(double vx, double vy) {
+    lastVx = vx;
+    lastVy = vy;
+  }
+
+  /** @return Whether the last limited command was a standstill. */
+  public boolean isStopped() {
+    return lastVx == 0 && lastVy == 0;
+  }
+
+  /**
+   * @param vx Requested robot relative x velocity.
+   * @param vy Requested robot relative y velocity.
+   * @param omega Requested angular velocity, in radians per second counterclockwise.
+   * @param dtSeconds Time since the previous call.
+   * @param out Receives the limited vx and vy.
+   */
+  public void limit(double vx, double vy, double omega, double dtSeconds, double[] out) {
+    // The previous command as seen from where the robot will have turned to.
+    double turn = -omega * dtSeconds;
+    double cos = Math.cos(turn);
+    double sin = Math.sin(turn);
+    double turnedVx = lastVx * cos - lastVy * sin;
+    lastVy = lastVx * sin + lastVy * cos;
+    lastVx = turnedVx;
+
+    double dvx = vx - lastVx;
+    double dvy = vy - lastVy;
+    double scale = 1.0;
+    if (Math.abs(dvx) > maxAccelX * dtSeconds) {
+      scale = maxAccelX * dtSeconds / Math.abs(dvx);
+    }
+    if (Math.abs(dvy) * scale > maxAccelY * dtSeconds) {
+      scale = maxAccelY * dtSeconds / Math.abs(dvy);
+    }
+    lastVx += dvx * scale;
+    lastVy += dvy * scale;
+    out[0] = lastVx;
+    out[1] = lastVy;
+  }
+}
@@ -0,0 +1,60 @@
+package frc.lib.sensors;
+
+import edu.wpi.first.wpilibj.AnalogGyro;
+import edu.wpi.first.wpilibj.Timer;
+
+/** The single axis analog gyro, yaw only. Pitch and roll read zero. */
+public class AnalogGyroImu implements Imu {
+  private final AnalogGyro gyro;
+  private double timestamp = 0;
+  private double yaw;
+  /* Added to the gyro angle, since the gyro itself can only be zeroed */
+  private double yawOffset = 0;
+
+  public AnalogGyroImu(int channel) {
+    gyro = new AnalogGyro(channel);
+  }
+
+  @Override
+  public void update() {
+    yaw = gyro.getAngle() + yawOffset;
+    timestamp = Timer.getFPGATimestamp();
+  }
+
+  @Override
+  public double getTimestampSeconds() {
+    return timestamp;
+  }
+
+  @Override
+  public double getYawDegrees() {
+    return yaw;
+  }
+
+  @Override
+  public double getPitchDegrees() {
+    return 0;
+  }
+
+  @Override
+  public double getRollDegrees() {
+    return 0;
+  }
+
+  @Override
+  public double getPitchRate() {
+    return 0;
+  }
+
+  @Override
+  public void setYaw(double degrees) {
+    gyro.reset();
+    yawOffset = degrees;
+    yaw = degrees;
+  }
+
+  @Override
+  public boolean hasPitchAndRoll() {
+    return false;
+  }
+}
@@ -0,0 +1,78 @@
+package frc.lib.sensors;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Timer;
+
+/**
+ * A primary IMU with a fallback for when it stops reading. Once the primary's sample is older than
+ * the stale period the fallback's readings are used instead, and the primary's again as soon as it
+ * reads. The heading carries over each way, so the yaw does not jump at the switch. Both are
+ * updated every loop so the fallback is current when it takes over. Each switch is reported to the
+ * driver station.
+ */
+public class FallbackImu implements Imu {
+  private final Imu primary;
+  private final Imu fallback;
+  private final double stalePeriodSeconds;
+  private Imu active;
+
+  public FallbackImu(Imu primary, Imu fallback, double stalePeriodSeconds) {
+    this.primary = primary;
+    this.fallback = fallback;
+    this.stalePeriodSeconds = stalePeriodSeconds;
+    active = primary;
+  }
+
+  @Override
+  public void update() {
+    primary.update();
+    fallback.update();
+    double age = Timer.getFPGATimestamp() - primary.getTimestampSeconds();
+    if (active == primary && age > stalePeriodSeconds) {
+      fallback.setYaw(primary.getYawDegrees());
+      active = fallback;
+      DriverStation.reportWarning("IMU: no good read for " + String.format("%.2f", age)
+          + " s, using the fallback", false);
+    } else if (active == fallback && age <= stalePeriodSeconds) {
+      primary.setYaw(fallback.getYawDegrees());
+      active = primary;
+      DriverStation.reportWarning("IMU: reading again, back from the fallback", false);
+    }
+  }
+
+  @Override
+  public double getTimestampSeconds() {
+    return active.getTimestampSeconds();
+  }
+
+  @Override
+  public double getYawDegrees() {
+    return active.getYawDegrees();
+  }
+
+  @Override
+  public double getPitchDegrees() {
+    return active.getPitchDegrees();
+  }
+
+  @Override
+  public double getRollDegrees() {
+    return active.getRollDegrees();
+  }
+
+  @Override
+  public double getPitchRate() {
+    return active.getPitchRate();
+  }
+
+  @Override
+  public void setYaw(double degrees) {
+    primary.setYaw(degrees);
+    fallback.setYaw(degrees);
+  }
+
+  @Override
+  public boolean hasPitchAndRoll() {
+    return active.hasPitchAndRoll();
+  }
+}
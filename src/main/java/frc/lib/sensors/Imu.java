@@ -0,0 +1,33 @@
+package frc.lib.sensors;
+
+/**
+ * An inertial sensor for the drivetrain. {@link #update} reads one sample from the device and
+ * stamps it; the getters then return that sample, so yaw, pitch and roll read in the same loop
+ * always belong together. Angles and rates follow the device's own axes and signs; {@code Swerve}
+ * applies the inversions in {@code Constants}.
+ */
+public interface Imu {
+  /** Reads a new sample. Call once per loop, from the robot thread. */
+  void update();
+
+  /** @return When the current sample was read, in FPGA seconds. Not advanced by failed reads. */
+  double getTimestampSeconds();
+
+  double getYawDegrees();
+
+  double getPitchDegrees();
+
+  double getRollDegrees();
+
+  /** @return The rate about the pitch axis, in degrees per second. */
+  double getPitchRate();
+
+  /**
+   * Sets the current yaw, for zeroing the heading. {@link #getYawDegrees} returns it straight away,
+   * so the heading can be used in the same loop.
+   */
+  void setYaw(double degrees);
+
+  /** @return False if pitch and roll always read zero. */
+  boolean hasPitchAndRoll();
+}
@@ -0,0 +1,105 @@
+package frc.lib.sensors;
+
+import com.ctre.phoenix.ErrorCode;
+import com.ctre.phoenix.sensors.Pigeon2;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Timer;
+
+/**
+ * A Pigeon 2 on the CAN bus. Yaw, pitch and roll come from its fused attitude and the pitch rate
+ * from its gyro, which has none of the lag of differencing the pitch. Both are about the same axes
+ * with the same right hand signs. A read that fails keeps the previous sample and timestamp, so the
+ * timestamp shows how stale the sample is. Failed reads are reported to the driver station at most
+ * once every few seconds, with how many there were.
+ *
+ * <p>The yaw is set with an offset kept here rather than on the Pigeon: setting it on the device is
+ * a CAN write that the next reads do not reflect yet, so the heading would jump a sample later.
+ */
+public class Pigeon2Imu implements Imu {
+  private static final double kWarningPeriodSeconds = 5.0;
+
+  private final Pigeon2 pigeon;
+  private final double[] yawPitchRoll = new double[3];
+  private final double[] rates = new double[3];
+  private double timestamp = 0;
+  private double yaw;
+  /* Added to the Pigeon's yaw, and the Pigeon's yaw from the last good read */
+  private double yawOffset = 0;
+  private double rawYaw;
+  private double pitch;
+  private double roll;
+  private double pitchRate;
+  /* Failed reads since the last warning */
+  private int failedReads = 0;
+  private double lastWarning = Double.NEGATIVE_INFINITY;
+
+  public Pigeon2Imu(int canId) {
+    pigeon = new Pigeon2(canId);
+    pigeon.configFactoryDefault();
+  }
+
+  @Override
+  public void update() {
+    double now = Timer.getFPGATimestamp();
+    ErrorCode error = pigeon.getYawPitchRoll(yawPitchRoll);
+    if (error == ErrorCode.OK) {
+      error = pigeon.getRawGyro(rates);
+    }
+    if (error != ErrorCode.OK) {
+      failedReads++;
+      if (now - lastWarning >= kWarningPeriodSeconds) {
+        DriverStation.reportWarning("Pigeon2: " + failedReads + " failed reads, the last with " + error
+            + ", the sample is " + String.format("%.2f", now - timestamp) + " s old", false);
+        failedReads = 0;
+        lastWarning = now;
+      }
+      return;
+    }
+    rawYaw = yawPitchRoll[0];
+    yaw = rawYaw + yawOffset;
+    pitch = yawPitchRoll[1];
+    roll = yawPitchRoll[2];
+    pitchRate = rates[1];
+    timestamp = now;
+  }
+
+  @Override
+  public double getTimestampSeconds() {
+    return timestamp;
+  }
+
+  @Override
+  public double getYawDegrees() {
+    return yaw;
+  }
+
+  @Override
+  public double getPitchDegrees() {
+    return pitch;
+  }
+
+  @Override
+  public double getRollDegrees() {
+    return roll;
+  }
+
+  @Override
+  public double getPitchRate() {
+    return pitchRate;
+  }
+
+  @Override
+  public void setYaw(double degrees) {
+    // Against the Pigeon's latest yaw, in case this is before the first update.
+    if (pigeon.getYawPitchRoll(yawPitchRoll) == ErrorCode.OK) {
+      rawYaw = yawPitchRoll[0];
+    }
+    yawOffset = degrees - rawYaw;
+    yaw = degrees;
+  }
+
+  @Override
+  public boolean hasPitchAndRoll() {
+    return true;
+  }
+}
@@ -0,0 +1,72 @@
+package frc.lib.sensors;
+
+import edu.wpi.first.wpilibj.Timer;
+
+/**
+ * An IMU whose readings are set by a simulation. Values set between updates show up at the next
+ * {@link #update}, as a device's would.
+ */
+public class SimImu implements Imu {
+  private double timestamp = 0;
+  private double yaw;
+  private double pitch;
+  private double roll;
+  private double pitchRate;
+  private double nextYaw;
+  private double nextPitch;
+  private double nextRoll;
+  private double nextPitchRate;
+
+  @Override
+  public void update() {
+    yaw = nextYaw;
+    pitch = nextPitch;
+    roll = nextRoll;
+    pitchRate = nextPitchRate;
+    timestamp = Timer.getFPGATimestamp();
+  }
+
+  /** Sets all the readings for the next sample. */
+  public void set(double yawDegrees, double pitchDegrees, double rollDegrees, double pitchRate) {
+    nextYaw = yawDegrees;
+    nextPitch = pitchDegrees;
+    nextRoll = rollDegrees;
+    nextPitchRate = pitchRate;
+  }
+
+  @Override
+  public double getTimestampSeconds() {
+    return timestamp;
+  }
+
+  @Override
+  public double getYawDegrees() {
+    return yaw;
+  }
+
+  @Override
+  public double getPitchDegrees() {
+    return pitch;
+  }
+
+  @Override
+  public double getRollDegrees() {
+    return roll;
+  }
+
+  @Override
+  public double getPitchRate() {
+    return pitchRate;
+  }
+
+  @Override
+  public void setYaw(double degrees) {
+    yaw = degrees;
+    nextYaw = degrees;
+  }
+
+  @Override
+  public boolean hasPitchAndRoll() {
+    return true;
+  }
+}
@@ -0,0 +1,120 @@
+package frc.lib.util;
+
+/**
+ * Keeps the drivetrain out of brownout by estimating the battery's internal resistance online and
+ * predicting the bus voltage for the commanded setpoints. When the prediction falls below a
+ * configurable margin, the drive current is cut to what holds the bus at the margin.
+ *
+ * <p>The battery is modelled as an open circuit voltage behind a series resistance, {@code V = Voc
+ * - R * I}. Both terms are tracked with a small recursive least squares estimator fed with the
+ * measured bus voltage and the total current drawn by the swerve motors.
+ *
+ * <p>The cut is a fraction of the predicted drive current, on the battery side; turning it into a
+ * motor controller current limit needs each motor's duty, so that is left to the caller.
+ */
+public class BatteryPowerManager {
+  /* Bounds keep the estimate sane when the current barely changes (no excitation). */
+  private static final double kMinResistanceOhms = 0.005;
+  private static final double kMaxResistanceOhms = 0.1;
+  private static final double kMinOpenCircuitVolts = 10.0;
+  private static final double kMaxOpenCircuitVolts = 13.5;
+  private static final double kMaxCovariance = 1000.0;
+  private static final double kForgettingFactor = 0.995;
+  /* Only learn from samples where the current actually moved. */
+  private static final double kMinCurrentStepAmps = 2.0;
+  /* Cuts are applied at once and given back by this much per update, so they do not chatter. */
+  private static final double kScaleRaiseStep = 0.01;
+
+  private final double brownoutMarginVolts;
+
+  private double openCircuitVolts = 12.5;
+  private double resistanceOhms = 0.02;
+  private double p00 = 10.0;
+  private double p01 = 0.0;
+  private double p11 = 10.0;
+  private double lastCurrentAmps = 0.0;
+
+  private double predictedVolts = openCircuitVolts;
+  private double driveCurrentScale = 1.0;
+
+  /** @param brownoutMarginVolts The lowest bus voltage the drivetrain is allowed to pull down to. */
+  public BatteryPowerManager(double brownoutMarginVolts) {
+    this.brownoutMarginVolts = brownoutMarginVolts;
+  }
+
+  /**
+   * Feeds one measurement into the resistance estimator.
+   *
+   * @param busVolts The measured battery voltage.
+   * @param totalCurrentAmps The total current drawn from the battery at the same time.
+   */
+  public void addSample(double busVolts, double totalCurrentAmps) {
+    if (Math.abs(totalCurrentAmps - lastCurrentAmps) < kMinCurrentStepAmps) {
+      return;
+    }
+    lastCurrentAmps = totalCurrentAmps;
+
+    // Regressor is [1, -I] so that V = [1, -I] . [Voc, R]
+    double phi0 = 1.0;
+    double phi1 = -totalCurrentAmps;
+    double pPhi0 = p00 * phi0 + p01 * phi1;
+    double pPhi1 = p01 * phi0 + p11 * phi1;
+    double denom = kForgettingFactor + phi0 * pPhi0 + phi1 * pPhi1;
+    double k0 = pPhi0 / denom;
+    double k1 = pPhi1 / denom;
+
+    double error = busVolts - (phi0 * openCircuitVolts + phi1 * resistanceOhms);
+    openCircuitVolts = clamp(openCircuitVolts + k0 * error, kMinOpenCircuitVolts, kMaxOpenCircuitVolts);
+    resistanceOhms = clamp(resistanceOhms + k1 * error, kMinResistanceOhms, kMaxResistanceOhms);
+
+    p00 = clamp((p00 - k0 * pPhi0) / kForgettingFactor, 0.0, kMaxCovariance);
+    p01 = clamp((p01 - k0 * pPhi1) / kForgettingFactor, -kMaxCovariance, kMaxCovariance);
+    p11 = clamp((p11 - k1 * pPhi1) / kForgettingFactor, 0.0, kMaxCovariance);
+  }
+
+  /**
+   * Predicts the bus voltage for the commanded setpoints and decides how far to cut the drive.
+   *
+   * @param predictedDriveAmps The battery current the drive motors are expected to pull for the
+   *     commanded setpoints, uncut.
+   * @param otherLoadAmps Everything else on the battery (steer motors, controllers, radio).
+   * @return The fraction of the predicted drive current to allow, 1 for no cut.
+   */
+  public double update(double predictedDriveAmps, double otherLoadAmps) {
+    predictedVolts = predictVoltage(predictedDriveAmps + otherLoadAmps);
+
+    double target = 1.0;
+    if (predictedVolts < brownoutMarginVolts && predictedDriveAmps > 0) {
+      double allowedDriveAmps = (openCircuitVolts - brownoutMarginVolts) / resistanceOhms - otherLoadAmps;
+      target = clamp(allowedDriveAmps / predictedDriveAmps, 0.0, 1.0);
+    }
+    driveCurrentScale = target < driveCurrentScale ? target : Math.min(target, driveCurrentScale + kScaleRaiseStep);
+    return driveCurrentScale;
+  }
+
+  /** @return The expected bus voltage while drawing the given total current. */
+  public double predictVoltage(double totalCurrentAmps) {
+    return openCircuitVolts - resistanceOhms * totalCurrentAmps;
+  }
+
+  public double getPredictedVoltage() {
+    return predictedVolts;
+  }
+
+  public double getResistanceOhms() {
+    return resistanceOhms;
+  }
+
+  public double getOpenCircuitVolts() {
+    return openCircuitVolts;
+  }
+
+  /** @return The fraction of the predicted drive current allowed by the last update. */
+  public double getDriveCurrentScale() {
+    return driveCurrentScale;
+  }
+
+  private static double clamp(double value, double low, double high) {
+    return Math.max(low, Math.min(high, value));
+  }
+}
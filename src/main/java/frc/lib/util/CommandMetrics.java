@@ -0,0 +1,221 @@
+package frc.lib.util;
+
+import edu.wpi.first.networktables.DoubleArrayPublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.StringArrayPublisher;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Execution metrics for commands and subsystems. Command metrics are collected through the {@link
+ * CommandScheduler} hooks and grouped by command class.
+ *
+ * <p>Every key is registered up front (normally from {@code RobotContainer}), so recording a metric
+ * is a map lookup and a few atomic increments and never allocates. Commands whose class was not
+ * registered are counted under "other". The whole registry is published as a single NetworkTables
+ * array once per second; the matching key names are published alongside it whenever they change.
+ *
+ * <p>Timing is tracked per scheduled command instance, since several instances of one class (two
+ * bindings' {@code RunCommand}s, say) can run at once, and only the results are grouped by class.
+ */
+public class CommandMetrics {
+  private static final long kPublishPeriodNanos = 1_000_000_000L;
+
+  /** Values published per key, in order. */
+  public static final String[] kFields = {
+    "initializes", "executes", "finishes", "interrupts",
+    "firstExecuteP50Ms", "firstExecuteMaxMs",
+    "periodP50Ms", "periodP99Ms", "periodMaxMs",
+    "durationMeanMs", "durationMaxMs"
+  };
+
+  private static CommandMetrics instance;
+
+  /* Per instance timing: initialize time, last execute time, and 1 while awaiting the first execute */
+  private static final int kInitializeNanos = 0;
+  private static final int kLastExecuteNanos = 1;
+  private static final int kAwaitingFirstExecute = 2;
+  private static final int kMaxRunningCommands = 64;
+
+  /** Metrics for a single command class or subsystem. */
+  public static final class Entry {
+    public final String name;
+    private final AtomicLong initializes = new AtomicLong();
+    private final AtomicLong executes = new AtomicLong();
+    private final AtomicLong finishes = new AtomicLong();
+    private final AtomicLong interrupts = new AtomicLong();
+    /* Scheduling (initialize) to first execute delay. */
+    private final LatencyHistogram firstExecute = new LatencyHistogram();
+    /* Time between consecutive executes, or the time spent in periodic() for subsystems. */
+    private final LatencyHistogram period = new LatencyHistogram();
+    /* Initialize to finish or interrupt. */
+    private final LatencyHistogram duration = new LatencyHistogram();
+
+    private Entry(String name) {
+      this.name = name;
+    }
+
+    /** Records one pass of a subsystem's periodic work that took the given time. */
+    public void recordPeriodic(long nanos) {
+      executes.incrementAndGet();
+      period.record(nanos);
+    }
+
+    private void onInitialize(long now, long[] timing) {
+      initializes.incrementAndGet();
+      timing[kInitializeNanos] = now;
+      timing[kAwaitingFirstExecute] = 1;
+    }
+
+    /* Timing is null for an instance that was running before the hooks were installed. */
+    private void onExecute(long now, long[] timing) {
+      executes.incrementAndGet();
+      if (timing == null) {
+        return;
+      }
+      if (timing[kAwaitingFirstExecute] != 0) {
+        timing[kAwaitingFirstExecute] = 0;
+        firstExecute.record(now - timing[kInitializeNanos]);
+      } else {
+        period.record(now - timing[kLastExecuteNanos]);
+      }
+      timing[kLastExecuteNanos] = now;
+    }
+
+    private void onEnd(long now, long[] timing, AtomicLong counter) {
+      counter.incrementAndGet();
+      if (timing != null) {
+        duration.record(now - timing[kInitializeNanos]);
+      }
+    }
+
+    private int writeSnapshot(double[] out, int offset) {
+      out[offset++] = initializes.get();
+      out[offset++] = executes.get();
+      out[offset++] = finishes.get();
+      out[offset++] = interrupts.get();
+      out[offset++] = firstExecute.getQuantileMillis(0.5);
+      out[offset++] = firstExecute.getMaxMillis();
+      out[offset++] = period.getQuantileMillis(0.5);
+      out[offset++] = period.getQuantileMillis(0.99);
+      out[offset++] = period.getMaxMillis();
+      out[offset++] = duration.getMeanMillis();
+      out[offset++] = duration.getMaxMillis();
+      return offset;
+    }
+  }
+
+  private final Map<Class<?>, Entry> commandEntries = new IdentityHashMap<>();
+  private final List<Entry> entries = new ArrayList<>();
+  private final Entry other;
+  /* Scheduler thread only. Neither allocates while fewer than kMaxRunningCommands are running. */
+  private final IdentityHashMap<Command, long[]> running = new IdentityHashMap<>(kMaxRunningCommands);
+  private final ArrayDeque<long[]> spareTimings = new ArrayDeque<>(kMaxRunningCommands);
+
+  private final NetworkTable table = NetworkTableInstance.getDefault().getTable("Metrics");
+  private final StringArrayPublisher namesPublisher = table.getStringArrayTopic("names").publish();
+  private final StringArrayPublisher fieldsPublisher = table.getStringArrayTopic("fields").publish();
+  private final DoubleArrayPublisher snapshotPublisher = table.getDoubleArrayTopic("snapshot").publish();
+  private double[] snapshot = new double[0];
+  private boolean namesDirty = true;
+  private long lastPublishNanos = 0;
+
+  private CommandMetrics() {
+    other = addEntry("other");
+    for (int i = 0; i < kMaxRunningCommands; i++) {
+      spareTimings.push(new long[3]);
+    }
+    fieldsPublisher.set(kFields);
+  }
+
+  public static synchronized CommandMetrics getInstance() {
+    if (instance == null) {
+      instance = new CommandMetrics();
+    }
+    return instance;
+  }
+
+  /** Hooks the scheduler's command lifecycle callbacks. Call once at startup. */
+  public void install(CommandScheduler scheduler) {
+    scheduler.onCommandInitialize(command -> {
+      long[] timing = spareTimings.isEmpty() ? new long[3] : spareTimings.pop();
+      long[] replaced = running.put(command, timing);
+      if (replaced != null) {
+        spareTimings.push(replaced);
+      }
+      lookup(command).onInitialize(System.nanoTime(), timing);
+    });
+    scheduler.onCommandExecute(command -> lookup(command).onExecute(System.nanoTime(), running.get(command)));
+    scheduler.onCommandFinish(command -> {
+      Entry entry = lookup(command);
+      entry.onEnd(System.nanoTime(), release(command), entry.finishes);
+    });
+    scheduler.onCommandInterrupt(command -> {
+      Entry entry = lookup(command);
+      entry.onEnd(System.nanoTime(), release(command), entry.interrupts);
+    });
+  }
+
+  /* Stops tracking an instance. The returned array is only reused at a later initialize. */
+  private long[] release(Command command) {
+    long[] timing = running.remove(command);
+    if (timing != null) {
+      spareTimings.push(timing);
+    }
+    return timing;
+  }
+
+  /** Pre-registers a command class. Must be called from the main thread during startup. */
+  public Entry registerCommand(Class<? extends Command> commandClass) {
+    return commandEntries.computeIfAbsent(commandClass, c -> addEntry(c.getSimpleName()));
+  }
+
+  /** Pre-registers a subsystem (or any other periodic work) by name. */
+  public Entry registerSubsystem(String name) {
+    return addEntry(name);
+  }
+
+  private Entry addEntry(String name) {
+    Entry entry = new Entry(name);
+    entries.add(entry);
+    snapshot = new double[entries.size() * kFields.length];
+    namesDirty = true;
+    return entry;
+  }
+
+  private Entry lookup(Command command) {
+    Entry entry = commandEntries.get(command.getClass());
+    return entry != null ? entry : other;
+  }
+
+  /** Publishes the snapshot if a second has passed since the last one. Call every loop. */
+  public void publish() {
+    long now = System.nanoTime();
+    if (now - lastPublishNanos < kPublishPeriodNanos) {
+      return;
+    }
+    lastPublishNanos = now;
+
+    if (namesDirty) {
+      String[] names = new String[entries.size()];
+      for (int i = 0; i < names.length; i++) {
+        names[i] = entries.get(i).name;
+      }
+      namesPublisher.set(names);
+      namesDirty = false;
+    }
+
+    int offset = 0;
+    for (int i = 0; i < entries.size(); i++) {
+      offset = entries.get(i).writeSnapshot(snapshot, offset);
+    }
+    snapshotPublisher.set(snapshot);
+  }
+}
@@ -0,0 +1,228 @@
+package frc.lib.util;
+
+import edu.wpi.first.networktables.DoubleArrayPublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.wpilibj.DriverStation;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadInfo;
+import java.util.List;
+
+/**
+ * Samples garbage collector and allocation statistics once per robot loop and lines them up with
+ * the measured loop time, so stutters can be blamed (or not) on GC. Heap and metaspace usage are
+ * read when the report is built.
+ *
+ * <p>A rolling report over the last few seconds is published as one NetworkTables array. When a GC
+ * pause above the threshold lands in a loop that overran its budget, a short allocation trace
+ * (recent loops plus the threads that allocated the most) is written to the driver station log.
+ */
+public class JvmHealthMonitor {
+  private static final long kDumpCooldownNanos = 10_000_000_000L;
+  private static final long kPublishPeriodNanos = 1_000_000_000L;
+  private static final int kTraceLoops = 10;
+  private static final int kTraceThreads = 5;
+  /*
+   * Loops are timed start to start, and TimedRobot's wake up jitters around the period even when
+   * nothing ran long, so only a loop this much past the budget counts as an overrun.
+   */
+  private static final double kOverrunMarginSeconds = 0.001;
+
+  /** Values published in the report, in order. */
+  public static final String[] kFields = {
+    "loops", "overruns", "gcEvents", "overrunsWithGc", "gcTimeMs", "maxGcPauseMs",
+    "maxLoopMs", "heapUsedMb", "heapCommittedMb", "metaspaceUsedMb", "mainAllocMbPerSec"
+  };
+
+  private final double overrunSeconds;
+  private final double pauseThresholdMs;
+  private final int window;
+
+  private final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+  private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+  private final MemoryPoolMXBean metaspace;
+  private final com.sun.management.ThreadMXBean threads;
+  private final long mainThreadId = Thread.currentThread().getId();
+
+  private final long[] lastGcCounts;
+  private final long[] lastGcTimes;
+  private long lastMainAllocated;
+
+  /* Per loop rings, indexed by loop number modulo the window. */
+  private final double[] loopMs;
+  private final double[] gcMs;
+  private final int[] gcEvents;
+  private final long[] mainAllocBytes;
+  private long loopCount = 0;
+
+  private final double[] report = new double[kFields.length];
+  private final NetworkTable table = NetworkTableInstance.getDefault().getTable("JVM");
+  private final DoubleArrayPublisher reportPublisher = table.getDoubleArrayTopic("report").publish();
+  private long lastPublishNanos = 0;
+  private long lastDumpNanos = 0;
+
+  /**
+   * @param loopBudgetSeconds The robot loop period; loops more than a millisecond longer count as
+   *     overruns.
+   * @param pauseThresholdMs GC time within one loop that, together with an overrun, triggers a trace.
+   * @param windowLoops How many loops the rolling report covers.
+   */
+  public JvmHealthMonitor(double loopBudgetSeconds, double pauseThresholdMs, int windowLoops) {
+    this.overrunSeconds = loopBudgetSeconds + kOverrunMarginSeconds;
+    this.pauseThresholdMs = pauseThresholdMs;
+    this.window = windowLoops;
+    loopMs = new double[windowLoops];
+    gcMs = new double[windowLoops];
+    gcEvents = new int[windowLoops];
+    mainAllocBytes = new long[windowLoops];
+
+    MemoryPoolMXBean metaspacePool = null;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getName().contains("Metaspace")) {
+        metaspacePool = pool;
+      }
+    }
+    metaspace = metaspacePool;
+
+    java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    if (threadBean instanceof com.sun.management.ThreadMXBean
+        && ((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemorySupported()) {
+      threads = (com.sun.management.ThreadMXBean) threadBean;
+      threads.setThreadAllocatedMemoryEnabled(true);
+      lastMainAllocated = threads.getThreadAllocatedBytes(mainThreadId);
+    } else {
+      threads = null;
+    }
+
+    lastGcCounts = new long[collectors.size()];
+    lastGcTimes = new long[collectors.size()];
+    for (int i = 0; i < collectors.size(); i++) {
+      lastGcCounts[i] = collectors.get(i).getCollectionCount();
+      lastGcTimes[i] = collectors.get(i).getCollectionTime();
+    }
+
+    table.getEntry("fields").setStringArray(kFields);
+  }
+
+  /**
+   * Records one robot loop. Call at the top of robotPeriodic() with the time since the previous
+   * call, so the GC activity sampled here is the activity that happened during that loop.
+   */
+  public void sample(double loopSeconds) {
+    int slot = (int) (loopCount++ % window);
+
+    int events = 0;
+    long gcTime = 0;
+    for (int i = 0; i < lastGcCounts.length; i++) {
+      GarbageCollectorMXBean collector = collectors.get(i);
+      long count = collector.getCollectionCount();
+      long time = collector.getCollectionTime();
+      events += count - lastGcCounts[i];
+      gcTime += time - lastGcTimes[i];
+      lastGcCounts[i] = count;
+      lastGcTimes[i] = time;
+    }
+
+    long allocated = 0;
+    if (threads != null) {
+      long total = threads.getThreadAllocatedBytes(mainThreadId);
+      allocated = total - lastMainAllocated;
+      lastMainAllocated = total;
+    }
+
+    loopMs[slot] = loopSeconds * 1e3;
+    gcMs[slot] = gcTime;
+    gcEvents[slot] = events;
+    mainAllocBytes[slot] = allocated;
+
+    boolean overrun = loopSeconds > overrunSeconds;
+    long now = System.nanoTime();
+    if (overrun && gcTime >= pauseThresholdMs && now - lastDumpNanos > kDumpCooldownNanos) {
+      lastDumpNanos = now;
+      dumpTrace(slot);
+    }
+  }
+
+  /** Publishes the rolling report if a second has passed since the last one. */
+  public void publish() {
+    long now = System.nanoTime();
+    if (now - lastPublishNanos < kPublishPeriodNanos) {
+      return;
+    }
+    lastPublishNanos = now;
+
+    int loops = (int) Math.min(loopCount, window);
+    double overruns = 0;
+    double events = 0;
+    double overrunsWithGc = 0;
+    double totalGcMs = 0;
+    double maxPause = 0;
+    double maxLoop = 0;
+    double totalLoopMs = 0;
+    long totalAlloc = 0;
+    for (int i = 0; i < loops; i++) {
+      boolean overrun = loopMs[i] > overrunSeconds * 1e3;
+      if (overrun) {
+        overruns++;
+        if (gcEvents[i] > 0) {
+          overrunsWithGc++;
+        }
+      }
+      events += gcEvents[i];
+      totalGcMs += gcMs[i];
+      maxPause = Math.max(maxPause, gcMs[i]);
+      maxLoop = Math.max(maxLoop, loopMs[i]);
+      totalLoopMs += loopMs[i];
+      totalAlloc += mainAllocBytes[i];
+    }
+
+    MemoryUsage heap = memory.getHeapMemoryUsage();
+    report[0] = loops;
+    report[1] = overruns;
+    report[2] = events;
+    report[3] = overrunsWithGc;
+    report[4] = totalGcMs;
+    report[5] = maxPause;
+    report[6] = maxLoop;
+    report[7] = heap.getUsed() / 1e6;
+    report[8] = heap.getCommitted() / 1e6;
+    report[9] = metaspace != null ? metaspace.getUsage().getUsed() / 1e6 : 0.0;
+    report[10] = totalLoopMs > 0 ? totalAlloc / 1e6 / (totalLoopMs / 1e3) : 0.0;
+    reportPublisher.set(report);
+  }
+
+  private void dumpTrace(int slot) {
+    StringBuilder trace = new StringBuilder("GC pause during loop overrun. Recent loops (loopMs/gcMs/mainAllocKb):");
+    int loops = (int) Math.min(loopCount, Math.min(window, kTraceLoops));
+    for (int i = loops - 1; i >= 0; i--) {
+      int index = Math.floorMod(slot - i, window);
+      trace.append(String.format(" %.1f/%.0f/%d", loopMs[index], gcMs[index], mainAllocBytes[index] / 1024));
+    }
+
+    if (threads != null) {
+      long[] ids = threads.getAllThreadIds();
+      long[] bytes = threads.getThreadAllocatedBytes(ids);
+      ThreadInfo[] infos = threads.getThreadInfo(ids);
+      trace.append(". Top allocating threads (MB total):");
+      boolean[] used = new boolean[ids.length];
+      for (int n = 0; n < Math.min(kTraceThreads, ids.length); n++) {
+        int best = -1;
+        for (int i = 0; i < ids.length; i++) {
+          if (!used[i] && infos[i] != null && (best < 0 || bytes[i] > bytes[best])) {
+            best = i;
+          }
+        }
+        if (best < 0) {
+          break;
+        }
+        used[best] = true;
+        trace.append(String.format(" %s=%.1f", infos[best].getThreadName(), bytes[best] / 1e6));
+      }
+    }
+    DriverStation.reportWarning(trace.toString(), false);
+  }
+}
@@ -0,0 +1,70 @@
+package frc.lib.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed bucket latency histogram. Recording is a bucket scan plus a couple of atomic increments,
+ * so it never allocates or locks and can be called from any thread.
+ */
+public class LatencyHistogram {
+  /** Upper bounds of each bucket in microseconds. The last bucket catches everything else. */
+  private static final long[] kBucketBoundsMicros = {
+    50, 100, 200, 500, 1_000, 2_000, 5_000, 10_000, 20_000, 50_000, 100_000, 200_000, 500_000, 1_000_000
+  };
+
+  private final AtomicLongArray counts = new AtomicLongArray(kBucketBoundsMicros.length + 1);
+  private final AtomicLong total = new AtomicLong();
+  private final AtomicLong sumNanos = new AtomicLong();
+  private final AtomicLong maxNanos = new AtomicLong();
+
+  public void record(long nanos) {
+    long micros = nanos / 1_000;
+    int bucket = 0;
+    while (bucket < kBucketBoundsMicros.length && micros > kBucketBoundsMicros[bucket]) {
+      bucket++;
+    }
+    counts.incrementAndGet(bucket);
+    total.incrementAndGet();
+    sumNanos.addAndGet(nanos);
+
+    long max = maxNanos.get();
+    while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+      max = maxNanos.get();
+    }
+  }
+
+  public long getCount() {
+    return total.get();
+  }
+
+  public double getMeanMillis() {
+    long count = total.get();
+    return count == 0 ? 0.0 : sumNanos.get() / 1e6 / count;
+  }
+
+  public double getMaxMillis() {
+    return maxNanos.get() / 1e6;
+  }
+
+  /**
+   * @param quantile The quantile to look up, from 0 to 1.
+   * @return The upper bound of the bucket containing the quantile, in milliseconds. Values in the
+   *     overflow bucket report the largest sample seen.
+   */
+  public double getQuantileMillis(double quantile) {
+    long count = total.get();
+    if (count == 0) {
+      return 0.0;
+    }
+    long rank = (long) Math.ceil(quantile * count);
+    long seen = 0;
+    for (int i = 0; i < kBucketBoundsMicros.length; i++) {
+      seen += counts.get(i);
+      if (seen >= rank) {
+        return kBucketBoundsMicros[i] / 1e3;
+      }
+    }
+    return getMaxMillis();
+  }
+}
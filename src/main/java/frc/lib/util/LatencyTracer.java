@@ -0,0 +1,136 @@
+package frc.lib.util;
+
+import edu.wpi.first.networktables.DoubleArrayPublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+
+/**
+ * End to end latency tracing from driver input to actuation. A command stamps the moment it reads
+ * the joystick ({@link #now()}) and carries that stamp through {@code Swerve.drive()} and {@code
+ * SwerveModule.setDesiredState()}; each stage records into its own histogram.
+ *
+ * <p>Response is detected by watching the measured module state after a setpoint change, so it is
+ * only as fine grained as the loop that checks it. A stamp of {@link #kUntraced} means the caller
+ * had no input to trace (autonomous, setX) and nothing is recorded.
+ */
+public class LatencyTracer {
+  public static final long kUntraced = 0;
+  private static final long kPublishPeriodNanos = 1_000_000_000L;
+  /* Give up waiting for a response after this long. */
+  private static final long kResponseTimeoutNanos = 1_000_000_000L;
+
+  /** Traced stages, in publish order. */
+  public enum Stage {
+    kInputToDrive,
+    kDriveToWrite,
+    kInputToWrite,
+    kWriteToResponse,
+    kInputToResponse
+  }
+
+  /** Values published per stage, in order. */
+  public static final String[] kFields = {"count", "p50Ms", "p95Ms", "maxMs"};
+
+  private final LatencyHistogram[] histograms = new LatencyHistogram[Stage.values().length];
+
+  /* Per module pending response, armed by a CAN write that changed the setpoint. */
+  private final long[] pendingInput;
+  private final long[] pendingWrite;
+
+  private final NetworkTable table = NetworkTableInstance.getDefault().getTable("Latency");
+  private final DoubleArrayPublisher snapshotPublisher = table.getDoubleArrayTopic("snapshot").publish();
+  private final double[] snapshot = new double[Stage.values().length * kFields.length];
+  private long lastPublishNanos = 0;
+
+  public LatencyTracer(int numModules) {
+    for (int i = 0; i < histograms.length; i++) {
+      histograms[i] = new LatencyHistogram();
+    }
+    pendingInput = new long[numModules];
+    pendingWrite = new long[numModules];
+
+    String[] stages = new String[Stage.values().length];
+    for (Stage stage : Stage.values()) {
+      stages[stage.ordinal()] = stage.name();
+    }
+    table.getEntry("stages").setStringArray(stages);
+    table.getEntry("fields").setStringArray(kFields);
+  }
+
+  /** @return The timestamp to carry through the pipeline. Never equal to {@link #kUntraced}. */
+  public static long now() {
+    long now = System.nanoTime();
+    return now == kUntraced ? 1 : now;
+  }
+
+  public void record(Stage stage, long startNanos, long endNanos) {
+    if (startNanos != kUntraced) {
+      histograms[stage.ordinal()].record(endNanos - startNanos);
+    }
+  }
+
+  /**
+   * Records that a module's setpoint frames went out.
+   *
+   * @param module The module number.
+   * @param inputNanos The input stamp carried from the command.
+   * @param driveNanos When {@code Swerve.drive()} received the request.
+   * @param setpointChanged Whether the write changed the setpoint enough to expect a response.
+   */
+  public void recordWrite(int module, long inputNanos, long driveNanos, boolean setpointChanged) {
+    if (inputNanos == kUntraced) {
+      return;
+    }
+    long now = System.nanoTime();
+    record(Stage.kDriveToWrite, driveNanos, now);
+    record(Stage.kInputToWrite, inputNanos, now);
+    if (setpointChanged && pendingWrite[module] == kUntraced) {
+      pendingInput[module] = inputNanos;
+      pendingWrite[module] = now;
+    }
+  }
+
+  /** @return Whether the module is waiting for its measured state to respond. */
+  public boolean isAwaitingResponse(int module) {
+    return pendingWrite[module] != kUntraced;
+  }
+
+  /**
+   * Closes out a pending response for a module.
+   *
+   * @param module The module number.
+   * @param responded Whether the measured state has now moved toward the setpoint.
+   */
+  public void checkResponse(int module, boolean responded) {
+    long write = pendingWrite[module];
+    if (write == kUntraced) {
+      return;
+    }
+    long now = System.nanoTime();
+    if (responded) {
+      record(Stage.kWriteToResponse, write, now);
+      record(Stage.kInputToResponse, pendingInput[module], now);
+      pendingWrite[module] = kUntraced;
+    } else if (now - write > kResponseTimeoutNanos) {
+      pendingWrite[module] = kUntraced;
+    }
+  }
+
+  /** Publishes every stage's histogram summary if a second has passed since the last one. */
+  public void publish() {
+    long now = System.nanoTime();
+    if (now - lastPublishNanos < kPublishPeriodNanos) {
+      return;
+    }
+    lastPublishNanos = now;
+
+    int offset = 0;
+    for (LatencyHistogram histogram : histograms) {
+      snapshot[offset++] = histogram.getCount();
+      snapshot[offset++] = histogram.getQuantileMillis(0.5);
+      snapshot[offset++] = histogram.getQuantileMillis(0.95);
+      snapshot[offset++] = histogram.getMaxMillis();
+    }
+    snapshotPublisher.set(snapshot);
+  }
+}
@@ -0,0 +1,145 @@
+package frc.lib.util;
+
+import edu.wpi.first.networktables.IntegerPublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.StringPublisher;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Priority based load shedding for periodic work. Work is registered in tiers; when the measured
+ * loop time gets close to its budget the lowest priority tiers are decimated and then skipped, one
+ * shed level at a time. Levels are only given back after the loop has stayed comfortably under
+ * budget for a while, so the robot does not flap between levels.
+ *
+ * <p>Control work is never shed. Most of it lives in the command scheduler, so the control tier is
+ * mainly there to report "only control is running at full rate".
+ */
+public class LoadShedder {
+  /** Work tiers, highest priority first. */
+  public enum Tier {
+    kControl,
+    kOdometry,
+    kTelemetry,
+    kDiagnostics
+  }
+
+  /* Run one in N calls for each tier at each shed level. 0 means skipped entirely. */
+  private static final int[][] kDecimation = {
+    // control, odometry, telemetry, diagnostics
+    {1, 1, 1, 1},
+    {1, 1, 1, 10},
+    {1, 1, 5, 0},
+    {1, 2, 0, 0}
+  };
+  private static final double kLoopTimeFilterGain = 0.2;
+  private static final double kShedThreshold = 0.9;
+  private static final double kRestoreThreshold = 0.7;
+  private static final int kRestoreLoops = 50;
+  /* Loops to wait after shedding before shedding more, long enough for a 1 in 10 tier to skip */
+  private static final int kShedHoldLoops = 10;
+
+  private static final class Task {
+    private final Tier tier;
+    private final Runnable work;
+    private int counter = 0;
+
+    private Task(Tier tier, Runnable work) {
+      this.tier = tier;
+      this.work = work;
+    }
+  }
+
+  private final double budgetSeconds;
+  private final List<Task> tasks = new ArrayList<>();
+  private double filteredLoopSeconds;
+  private int level = 0;
+  private int loopsUnderRestore = 0;
+  private int shedHoldLoops = 0;
+
+  private final NetworkTable table = NetworkTableInstance.getDefault().getTable("LoadShedding");
+  private final IntegerPublisher levelPublisher = table.getIntegerTopic("level").publish();
+  private final StringPublisher tierPublisher = table.getStringTopic("activeTier").publish();
+
+  /** @param budgetSeconds The loop period the robot is trying to hold. */
+  public LoadShedder(double budgetSeconds) {
+    this.budgetSeconds = budgetSeconds;
+    this.filteredLoopSeconds = budgetSeconds * 0.5;
+    publishLevel();
+  }
+
+  /** Registers work to be run from {@link #run()} at the rate its tier currently allows. */
+  public void register(Tier tier, Runnable work) {
+    tasks.add(new Task(tier, work));
+  }
+
+  /**
+   * Feeds the latest measured loop time and moves between shed levels.
+   *
+   * @param loopSeconds Time the robot spent working in the last loop (not the loop period, which
+   *     TimedRobot holds at the budget until it overruns).
+   */
+  public void update(double loopSeconds) {
+    filteredLoopSeconds += kLoopTimeFilterGain * (loopSeconds - filteredLoopSeconds);
+    if (shedHoldLoops > 0) {
+      shedHoldLoops--;
+    }
+
+    if (filteredLoopSeconds > budgetSeconds * kShedThreshold) {
+      loopsUnderRestore = 0;
+      // Give the new level a chance to show in the filtered time before shedding more.
+      if (level < kDecimation.length - 1 && shedHoldLoops == 0) {
+        level++;
+        shedHoldLoops = kShedHoldLoops;
+        publishLevel();
+      }
+    } else if (filteredLoopSeconds < budgetSeconds * kRestoreThreshold && level > 0) {
+      if (++loopsUnderRestore >= kRestoreLoops) {
+        loopsUnderRestore = 0;
+        level--;
+        publishLevel();
+      }
+    } else {
+      loopsUnderRestore = 0;
+    }
+  }
+
+  /** Runs every registered task whose tier is due this loop. */
+  public void run() {
+    int[] decimation = kDecimation[level];
+    for (int i = 0; i < tasks.size(); i++) {
+      Task task = tasks.get(i);
+      int every = decimation[task.tier.ordinal()];
+      if (every == 0) {
+        continue;
+      }
+      if (++task.counter >= every) {
+        task.counter = 0;
+        task.work.run();
+      }
+    }
+  }
+
+  public int getLevel() {
+    return level;
+  }
+
+  /** @return The lowest priority tier still running at full rate. */
+  public Tier getActiveTier() {
+    int[] decimation = kDecimation[level];
+    Tier active = Tier.kControl;
+    for (Tier tier : Tier.values()) {
+      if (decimation[tier.ordinal()] != 1) {
+        break;
+      }
+      active = tier;
+    }
+    return active;
+  }
+
+  private void publishLevel() {
+    levelPublisher.set(level);
+    tierPublisher.set(getActiveTier().name());
+  }
+}
@@ -0,0 +1,68 @@
+package frc.lib.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Hands the latest fixed width record of doubles from one writer to one reader without locks.
+ * There are two slots: the writer fills the one the reader is not directed to and then publishes
+ * it, so a reader normally copies a slot nobody is touching. Each slot also has a sequence number
+ * that is odd while it is being written; a reader that was lapped twice during its copy sees the
+ * sequence move and copies again. The writer never waits.
+ *
+ * <p>Values are stored as raw long bits in atomic arrays so every element read is ordered with
+ * the sequence checks.
+ */
+public final class LockFreeDoubleBuffer {
+  private final int width;
+  private final AtomicLongArray slots;
+  private final AtomicLongArray sequence = new AtomicLongArray(2);
+  /* The slot holding the latest record, -1 before the first write */
+  private final AtomicInteger published = new AtomicInteger(-1);
+
+  public LockFreeDoubleBuffer(int width) {
+    this.width = width;
+    slots = new AtomicLongArray(2 * width);
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  /** Publishes a record. Only one thread may write. */
+  public void write(double[] values) {
+    int slot = published.get() == 0 ? 1 : 0;
+    int base = slot * width;
+    sequence.incrementAndGet(slot);
+    for (int i = 0; i < width; i++) {
+      slots.set(base + i, Double.doubleToRawLongBits(values[i]));
+    }
+    sequence.incrementAndGet(slot);
+    published.set(slot);
+  }
+
+  /**
+   * Copies the latest record. Only one thread may read.
+   *
+   * @return False if nothing has been written yet, in which case out is untouched.
+   */
+  public boolean read(double[] out) {
+    while (true) {
+      int slot = published.get();
+      if (slot < 0) {
+        return false;
+      }
+      long before = sequence.get(slot);
+      if ((before & 1) != 0) {
+        continue;
+      }
+      int base = slot * width;
+      for (int i = 0; i < width; i++) {
+        out[i] = Double.longBitsToDouble(slots.get(base + i));
+      }
+      if (sequence.get(slot) == before) {
+        return true;
+      }
+    }
+  }
+}
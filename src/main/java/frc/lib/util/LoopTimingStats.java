@@ -0,0 +1,71 @@
+package frc.lib.util;
+
+/**
+ * Achieved rate and jitter of a periodic callback, over fixed windows. Call {@link #sample} at the
+ * start of every run; the getters hold the figures for the last complete window.
+ */
+public class LoopTimingStats {
+  private final double nominalPeriodSeconds;
+  private final long windowNanos;
+
+  private long lastNanos = 0;
+  private long windowStartNanos = 0;
+  private int count = 0;
+  private double sum = 0;
+  private double sumSquares = 0;
+  private double maxDeviation = 0;
+
+  private double rateHz = 0;
+  private double jitterMs = 0;
+  private double maxJitterMs = 0;
+
+  /**
+   * @param nominalPeriodSeconds The period the callback was scheduled at.
+   * @param windowSeconds How long each reported window is.
+   */
+  public LoopTimingStats(double nominalPeriodSeconds, double windowSeconds) {
+    this.nominalPeriodSeconds = nominalPeriodSeconds;
+    this.windowNanos = (long) (windowSeconds * 1e9);
+  }
+
+  /** @param nanos The current {@link System#nanoTime()}. */
+  public void sample(long nanos) {
+    if (lastNanos == 0) {
+      lastNanos = nanos;
+      windowStartNanos = nanos;
+      return;
+    }
+    double period = (nanos - lastNanos) * 1e-9;
+    lastNanos = nanos;
+    count++;
+    sum += period;
+    sumSquares += period * period;
+    maxDeviation = Math.max(maxDeviation, Math.abs(period - nominalPeriodSeconds));
+
+    if (nanos - windowStartNanos >= windowNanos) {
+      double mean = sum / count;
+      rateHz = 1.0 / mean;
+      jitterMs = Math.sqrt(Math.max(0.0, sumSquares / count - mean * mean)) * 1000.0;
+      maxJitterMs = maxDeviation * 1000.0;
+      windowStartNanos = nanos;
+      count = 0;
+      sum = 0;
+      sumSquares = 0;
+      maxDeviation = 0;
+    }
+  }
+
+  public double getRateHz() {
+    return rateHz;
+  }
+
+  /** @return The standard deviation of the period in milliseconds. */
+  public double getJitterMs() {
+    return jitterMs;
+  }
+
+  /** @return The largest distance of a period from the nominal one, in milliseconds. */
+  public double getMaxJitterMs() {
+    return maxJitterMs;
+  }
+}
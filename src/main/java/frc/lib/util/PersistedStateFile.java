@@ -0,0 +1,149 @@
+package frc.lib.util;
+
+import edu.wpi.first.wpilibj.Notifier;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps a fixed width record of doubles in a memory-mapped file so it survives the program or the
+ * roboRIO restarting. Saving is a few puts into the mapping, cheap enough for every loop, and a
+ * save identical to the last record is skipped. A background {@link Notifier} forces the mapping
+ * out to flash when something was saved since its last run, so a power loss costs at most one
+ * flush period and an idle robot does not wear the flash.
+ *
+ * <p>There are two slots and each save goes to the one not holding the latest record, so a save
+ * torn by a reset leaves the previous record intact. A slot holds a sequence number that grows
+ * with every save, the layout version and width, the values and a CRC32 over all of them. {@link
+ * #load} takes the valid slot with the highest sequence number.
+ *
+ * <p>Records carry no time: the roboRIO has no battery backed clock and only gets the wall time
+ * from the Driver Station, which has not connected yet when a rebooted robot loads its state.
+ * Whether a record is still relevant is for the caller to decide from the values it saved.
+ */
+public final class PersistedStateFile {
+  private static final int kSequence = 0;
+  private static final int kVersion = 8;
+  private static final int kWidth = 12;
+  private static final int kValues = 16;
+
+  private final int version;
+  private final int width;
+  private final int checkedLength;
+  private final int slotLength;
+  private final MappedByteBuffer buffer;
+  /* Shares the mapping with its own position and limit, so the flush never sees them move */
+  private final ByteBuffer crcView;
+  private final CRC32 crc = new CRC32();
+  private final Notifier flusher;
+  private final double[] lastSaved;
+  private boolean hasSaved = false;
+  private long sequence;
+  /* Set by a save, cleared by the flusher */
+  private volatile boolean dirty = false;
+
+  /**
+   * Maps the file, creating it if needed. Nothing is read until {@link #load}.
+   *
+   * @param version Layout version; records saved with another version or width are ignored.
+   * @param width Number of values in a record.
+   */
+  public PersistedStateFile(File file, int version, int width) throws IOException {
+    this.version = version;
+    this.width = width;
+    checkedLength = kValues + width * 8;
+    slotLength = checkedLength + 4;
+    try (FileChannel channel = FileChannel.open(file.toPath(),
+        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      // The mapping stays valid after the channel is closed.
+      buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, 2L * slotLength);
+    }
+    lastSaved = new double[width];
+    crcView = buffer.duplicate();
+    flusher = new Notifier(this::flush);
+    flusher.setName("PersistedStateFile");
+  }
+
+  /**
+   * Copies the latest valid record, and carries on its sequence so the next save supersedes it.
+   *
+   * @return False if there is no valid record, in which case out is untouched.
+   */
+  public boolean load(double[] out) {
+    int newest = -1;
+    for (int slot = 0; slot < 2; slot++) {
+      if (isValid(slot) && (newest < 0 || buffer.getLong(slot * slotLength + kSequence)
+          > buffer.getLong(newest * slotLength + kSequence))) {
+        newest = slot;
+      }
+    }
+    if (newest < 0) {
+      return false;
+    }
+    int base = newest * slotLength;
+    sequence = buffer.getLong(base + kSequence);
+    for (int i = 0; i < width; i++) {
+      out[i] = buffer.getDouble(base + kValues + i * 8);
+    }
+    return true;
+  }
+
+  private boolean isValid(int slot) {
+    int base = slot * slotLength;
+    return buffer.getInt(base + kVersion) == version
+        && buffer.getInt(base + kWidth) == width
+        && buffer.getInt(base + checkedLength) == checksum(base);
+  }
+
+  /** Saves a record, unless it is the same as the last one saved. Only one thread may save. */
+  public void save(double[] values) {
+    if (hasSaved && sameAsLastSaved(values)) {
+      return;
+    }
+    System.arraycopy(values, 0, lastSaved, 0, width);
+    hasSaved = true;
+    sequence++;
+    int base = (int) (sequence & 1) * slotLength;
+    buffer.putLong(base + kSequence, sequence);
+    buffer.putInt(base + kVersion, version);
+    buffer.putInt(base + kWidth, width);
+    for (int i = 0; i < width; i++) {
+      buffer.putDouble(base + kValues + i * 8, values[i]);
+    }
+    buffer.putInt(base + checkedLength, checksum(base));
+    dirty = true;
+  }
+
+  private boolean sameAsLastSaved(double[] values) {
+    for (int i = 0; i < width; i++) {
+      if (Double.doubleToRawLongBits(values[i]) != Double.doubleToRawLongBits(lastSaved[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /* Flusher thread */
+  private void flush() {
+    if (dirty) {
+      dirty = false;
+      buffer.force();
+    }
+  }
+
+  private int checksum(int base) {
+    crcView.limit(base + checkedLength).position(base);
+    crc.reset();
+    crc.update(crcView);
+    return (int) crc.getValue();
+  }
+
+  /** Starts forcing saved records out to flash, at most once a period and only after a save. */
+  public void startFlushing(double periodSeconds) {
+    flusher.startPeriodic(periodSeconds);
+  }
+}
@@ -0,0 +1,112 @@
+package frc.lib.util;
+
+import com.revrobotics.CANSparkMax;
+import com.revrobotics.CANSparkMax.ControlType;
+import com.revrobotics.REVLibError;
+import com.revrobotics.SparkMaxPIDController;
+
+/**
+ * Suppresses redundant setpoint frames to a Spark MAX. A frame is only sent when the control type
+ * or PID slot changes, when the reference or arbitrary feedforward moves by more than its
+ * tolerance, or when the keep-alive period has expired since the last frame actually sent.
+ *
+ * <p>The Spark MAX holds its last setpoint, so skipping an identical frame changes nothing on the
+ * motor; the keep-alive just bounds how stale the controller's copy can get. Call {@link
+ * #invalidate()} after anything that changes what a setpoint means (e.g. re-seeding the encoder),
+ * so the next frame always goes out.
+ */
+public class SparkMaxSetpointCache {
+  private final CANSparkMax motor;
+  private final SparkMaxPIDController controller;
+  private final double referenceTolerance;
+  private final double feedforwardTolerance;
+  private final long keepAliveNanos;
+
+  private boolean valid = false;
+  private ControlType lastType;
+  private int lastSlot;
+  private double lastReference;
+  private double lastFeedforward;
+  private long lastSentNanos;
+
+  private long sentFrames = 0;
+  private long suppressedFrames = 0;
+
+  /**
+   * @param motor The motor, used for duty cycle {@link #set(double)} calls.
+   * @param referenceTolerance Reference changes at or below this are not sent.
+   * @param feedforwardTolerance Arbitrary feedforward changes at or below this are not sent.
+   * @param keepAliveSeconds A frame is always sent when this long has passed since the last one.
+   */
+  public SparkMaxSetpointCache(
+      CANSparkMax motor, double referenceTolerance, double feedforwardTolerance, double keepAliveSeconds) {
+    this.motor = motor;
+    this.controller = motor.getPIDController();
+    this.referenceTolerance = referenceTolerance;
+    this.feedforwardTolerance = feedforwardTolerance;
+    this.keepAliveNanos = (long) (keepAliveSeconds * 1e9);
+  }
+
+  /** Duty cycle output, equivalent to {@link CANSparkMax#set(double)}. */
+  public void set(double speed) {
+    if (isRedundant(speed, ControlType.kDutyCycle, 0, 0.0)) {
+      return;
+    }
+    motor.set(speed);
+    remember(speed, ControlType.kDutyCycle, 0, 0.0);
+  }
+
+  public REVLibError setReference(double value, ControlType type) {
+    return setReference(value, type, 0, 0.0);
+  }
+
+  /** Equivalent to {@link SparkMaxPIDController#setReference(double, ControlType, int, double)}. */
+  public REVLibError setReference(double value, ControlType type, int pidSlot, double arbFeedforward) {
+    if (isRedundant(value, type, pidSlot, arbFeedforward)) {
+      return REVLibError.kOk;
+    }
+    REVLibError error = controller.setReference(value, type, pidSlot, arbFeedforward);
+    if (error == REVLibError.kOk) {
+      remember(value, type, pidSlot, arbFeedforward);
+    } else {
+      valid = false;
+    }
+    return error;
+  }
+
+  /** Forces the next setpoint to be sent. */
+  public void invalidate() {
+    valid = false;
+  }
+
+  private boolean isRedundant(double value, ControlType type, int pidSlot, double arbFeedforward) {
+    boolean redundant = valid
+        && type == lastType
+        && pidSlot == lastSlot
+        && Math.abs(value - lastReference) <= referenceTolerance
+        && Math.abs(arbFeedforward - lastFeedforward) <= feedforwardTolerance
+        && System.nanoTime() - lastSentNanos < keepAliveNanos;
+    if (redundant) {
+      suppressedFrames++;
+    }
+    return redundant;
+  }
+
+  private void remember(double value, ControlType type, int pidSlot, double arbFeedforward) {
+    valid = true;
+    lastType = type;
+    lastSlot = pidSlot;
+    lastReference = value;
+    lastFeedforward = arbFeedforward;
+    lastSentNanos = System.nanoTime();
+    sentFrames++;
+  }
+
+  public long getSentFrames() {
+    return sentFrames;
+  }
+
+  public long getSuppressedFrames() {
+    return suppressedFrames;
+  }
+}
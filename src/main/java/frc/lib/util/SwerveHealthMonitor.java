@@ -0,0 +1,204 @@
+package frc.lib.util;
+
+import com.ctre.phoenix.ErrorCode;
+import com.ctre.phoenix.sensors.CANCoder;
+import com.ctre.phoenix.sensors.CANCoderFaults;
+import com.ctre.phoenix.sensors.MagnetFieldStrength;
+import com.revrobotics.CANSparkMax;
+import com.revrobotics.REVLibError;
+import edu.wpi.first.networktables.IntegerArrayPublisher;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.Timer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Polls the swerve CAN devices for faults on a background {@link Notifier}, so the robot loop
+ * never waits on a status read. Each module's health is a bitfield kept in an {@link
+ * AtomicIntegerArray}; the robot loop reads it with {@link #getHealth} without locking. The
+ * bitfields are also published as one integer array under {@code Swerve/health}, and changes are
+ * reported to the driver station.
+ *
+ * <p>A Spark MAX only reports a failed read through its last error, which every call on the device
+ * overwrites, including the robot loop's setpoints and encoder reads. So the motors are sampled on
+ * the robot thread with {@link #sampleMotors}, where nothing can run between a read and its error
+ * check, and the notifier only merges in the result. A motor counts as not responding once it has
+ * gone the stale period without a good read, so one failed read does not stop a module. The
+ * CANCoder is read entirely on the notifier, from its fault frame's return code and the age of its
+ * sensor frame, neither of which the robot loop can disturb.
+ *
+ * <p>Sticky and active motor faults are reported but do not make a module unusable on their own
+ * (a brownout or current limit fault is normal in a pushing match). Devices that stop answering or
+ * an absolute encoder that cannot be trusted do.
+ */
+public class SwerveHealthMonitor {
+  public static final int kDriveNoResponse = 1 << 0;
+  public static final int kAngleNoResponse = 1 << 1;
+  public static final int kDriveFault = 1 << 2;
+  public static final int kAngleFault = 1 << 3;
+  public static final int kDriveStickyFault = 1 << 4;
+  public static final int kAngleStickyFault = 1 << 5;
+  public static final int kEncoderNoResponse = 1 << 6;
+  public static final int kEncoderStale = 1 << 7;
+  public static final int kEncoderFault = 1 << 8;
+  public static final int kEncoderMagnet = 1 << 9;
+
+  /** Bits that make a module's position useless for odometry. */
+  public static final int kOdometryMask = kDriveNoResponse | kEncoderNoResponse | kEncoderStale | kEncoderFault
+      | kEncoderMagnet;
+  /** Bits that mean a module cannot be driven. */
+  public static final int kDriveMask = kDriveNoResponse | kAngleNoResponse;
+
+  private final CANSparkMax[] driveMotors;
+  private final CANSparkMax[] angleMotors;
+  private final CANCoder[] encoders;
+  private final CANCoderFaults[] encoderFaults;
+  private final double[] lastEncoderTimestamp;
+  private final double[] encoderTimestampAge;
+  private final double stalePeriodSeconds;
+  private final double periodSeconds;
+
+  /* Robot thread */
+  private final double[] lastDriveResponse;
+  private final double[] lastAngleResponse;
+  private double lastMotorSample = Double.NEGATIVE_INFINITY;
+  /* Handed from the robot thread to the notifier */
+  private final AtomicIntegerArray motorHealth;
+
+  private final AtomicIntegerArray health;
+  private final long[] published;
+  private final IntegerArrayPublisher publisher =
+      NetworkTableInstance.getDefault().getTable("Swerve").getIntegerArrayTopic("health").publish();
+  private final Notifier notifier = new Notifier(this::poll);
+
+  /**
+   * @param moduleCount Modules are registered with {@link #register} before {@link #start}.
+   * @param stalePeriodSeconds How long an encoder may go without a new frame before it is stale,
+   *     and a motor without a good read before it is not responding.
+   */
+  public SwerveHealthMonitor(int moduleCount, double periodSeconds, double stalePeriodSeconds) {
+    driveMotors = new CANSparkMax[moduleCount];
+    angleMotors = new CANSparkMax[moduleCount];
+    encoders = new CANCoder[moduleCount];
+    encoderFaults = new CANCoderFaults[moduleCount];
+    lastEncoderTimestamp = new double[moduleCount];
+    encoderTimestampAge = new double[moduleCount];
+    lastDriveResponse = new double[moduleCount];
+    lastAngleResponse = new double[moduleCount];
+    motorHealth = new AtomicIntegerArray(moduleCount);
+    health = new AtomicIntegerArray(moduleCount);
+    published = new long[moduleCount];
+    this.periodSeconds = periodSeconds;
+    this.stalePeriodSeconds = stalePeriodSeconds;
+    notifier.setName("SwerveHealth");
+  }
+
+  public void register(int module, CANSparkMax driveMotor, CANSparkMax angleMotor, CANCoder encoder) {
+    driveMotors[module] = driveMotor;
+    angleMotors[module] = angleMotor;
+    encoders[module] = encoder;
+    encoderFaults[module] = new CANCoderFaults();
+  }
+
+  public void start() {
+    double now = Timer.getFPGATimestamp();
+    Arrays.fill(lastDriveResponse, now);
+    Arrays.fill(lastAngleResponse, now);
+    notifier.startPeriodic(periodSeconds);
+  }
+
+  /**
+   * Reads the motors' faults, at most once a poll period. Must be called from the thread that
+   * commands the motors, so no other call on them lands between a read and its error check.
+   */
+  public void sampleMotors(double now) {
+    if (now - lastMotorSample < periodSeconds) {
+      return;
+    }
+    lastMotorSample = now;
+    for (int i = 0; i < driveMotors.length; i++) {
+      if (driveMotors[i] == null) {
+        continue;
+      }
+      motorHealth.set(i,
+          sampleMotor(driveMotors[i], lastDriveResponse, i, now, kDriveNoResponse, kDriveFault, kDriveStickyFault)
+          | sampleMotor(angleMotors[i], lastAngleResponse, i, now, kAngleNoResponse, kAngleFault, kAngleStickyFault));
+    }
+  }
+
+  /** @return The module's health bits, 0 when healthy. Safe to call from any thread. */
+  public int getHealth(int module) {
+    return health.get(module);
+  }
+
+  public boolean isUsableForOdometry(int module) {
+    return (health.get(module) & kOdometryMask) == 0;
+  }
+
+  public boolean isDrivable(int module) {
+    return (health.get(module) & kDriveMask) == 0;
+  }
+
+  /* Runs on the notifier thread. */
+  private void poll() {
+    for (int i = 0; i < encoders.length; i++) {
+      if (encoders[i] == null) {
+        continue;
+      }
+      int bits = motorHealth.get(i) | pollEncoder(i);
+
+      int previous = health.getAndSet(i, bits);
+      if (previous != bits) {
+        DriverStation.reportWarning("Swerve module " + i + " health 0x" + Integer.toHexString(previous)
+            + " -> 0x" + Integer.toHexString(bits), false);
+      }
+      published[i] = bits;
+    }
+    publisher.set(published);
+  }
+
+  private int sampleMotor(CANSparkMax motor, double[] lastResponse, int module, double now,
+      int noResponseBit, int faultBit, int stickyBit) {
+    short faults = motor.getFaults();
+    if (motor.getLastError() != REVLibError.kOk) {
+      return now - lastResponse[module] > stalePeriodSeconds ? noResponseBit : 0;
+    }
+    lastResponse[module] = now;
+    int bits = 0;
+    if (faults != 0) {
+      bits |= faultBit;
+    }
+    if (motor.getStickyFaults() != 0) {
+      bits |= stickyBit;
+    }
+    return bits;
+  }
+
+  private int pollEncoder(int module) {
+    CANCoder encoder = encoders[module];
+    int bits = 0;
+    double timestamp = encoder.getLastTimestamp();
+    if (timestamp != lastEncoderTimestamp[module]) {
+      lastEncoderTimestamp[module] = timestamp;
+      encoderTimestampAge[module] = 0;
+    } else {
+      encoderTimestampAge[module] += periodSeconds;
+      if (encoderTimestampAge[module] > stalePeriodSeconds) {
+        bits |= kEncoderStale;
+      }
+    }
+    // The returned code belongs to this call, unlike getLastError(), which the robot loop also sets.
+    if (encoder.getFaults(encoderFaults[module]) != ErrorCode.OK) {
+      bits |= kEncoderNoResponse;
+    } else if (encoderFaults[module].hasAnyFault()) {
+      bits |= kEncoderFault;
+    }
+    MagnetFieldStrength magnet = encoder.getMagnetFieldStrength();
+    if (magnet == MagnetFieldStrength.BadRange_RedLED || magnet == MagnetFieldStrength.Invalid_Unknown) {
+      bits |= kEncoderMagnet;
+    }
+    return bits;
+  }
+}
@@ -0,0 +1,147 @@
+package frc.lib.util;
+
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Packed swerve telemetry. Each module publishes its whole state as one {@code double[]} topic and
+ * the chassis publishes one more, instead of a NetworkTables entry per value. The arrays go through
+ * the {@link TelemetryDispatcher}, so the robot loop only copies them into its ring.
+ *
+ * <p>Element 0 of every array is the schema version. The field names for each layout are published
+ * once under {@code Swerve/schema} so dashboards can decode the arrays with {@link #decode} (or any
+ * tool that reads the schema topic) without hard coding the indices. Bump {@link #kSchemaVersion}
+ * whenever a layout changes.
+ */
+public final class SwerveTelemetry {
+  public static final int kSchemaVersion = 7;
+
+  /* Module layout */
+  public static final int kModVersion = 0;
+  public static final int kModSetpointAngle = 1;
+  public static final int kModSetpointSpeed = 2;
+  public static final int kModMeasuredAngle = 3;
+  public static final int kModVelocity = 4;
+  public static final int kModCanCoderAngle = 5;
+  public static final int kModIntegratedAngle = 6;
+  public static final int kModAppliedOutput = 7;
+  public static final int kModDriveCurrentLimit = 8;
+  public static final int kModDriveThermalHeadroom = 9;
+  public static final int kModAngleThermalHeadroom = 10;
+  public static final int kModSentFrames = 11;
+  public static final int kModSuppressedFrames = 12;
+  public static final int kModSetpointAcceleration = 13;
+  public static final int kModVelocityError = 14;
+  public static final int kModVelocityErrorRms = 15;
+  public static final int kModEstimatedVelocity = 16;
+  public static final int kModEstimatedAcceleration = 17;
+  public static final int kModCoupledVelocity = 18;
+  public static final String[] kModuleFields = {
+    "version",
+    "setpointAngleDeg",
+    "setpointSpeedMps",
+    "measuredAngleDeg",
+    "velocityMps",
+    "canCoderAngleDeg",
+    "integratedAngleDeg",
+    "appliedOutput",
+    "driveCurrentLimitAmps",
+    "driveThermalHeadroomC",
+    "angleThermalHeadroomC",
+    "sentFrames",
+    "suppressedFrames",
+    "setpointAccelMps2",
+    "velocityErrorMps",
+    "velocityErrorRmsMps",
+    "estVelocityMps",
+    "estAccelMps2",
+    "coupledVelocityMps"
+  };
+
+  /* Chassis layout */
+  public static final int kChassisVersion = 0;
+  public static final int kChassisPoseX = 1;
+  public static final int kChassisPoseY = 2;
+  public static final int kChassisPoseDegrees = 3;
+  public static final int kChassisYawDegrees = 4;
+  public static final int kChassisPredictedVolts = 5;
+  public static final int kChassisBatteryResistance = 6;
+  public static final int kChassisControlRateHz = 7;
+  public static final int kChassisControlJitterMs = 8;
+  public static final int kChassisControlMaxJitterMs = 9;
+  public static final int kChassisPitchDegrees = 10;
+  public static final int kChassisRollDegrees = 11;
+  public static final int kChassisPitchRate = 12;
+  public static final String[] kChassisFields = {
+    "version",
+    "poseXMeters",
+    "poseYMeters",
+    "poseDeg",
+    "yawDeg",
+    "predictedBusVolts",
+    "batteryResistanceOhms",
+    "controlRateHz",
+    "controlJitterMs",
+    "controlMaxJitterMs",
+    "pitchDeg",
+    "rollDeg",
+    "pitchRateDps"
+  };
+
+  private static final NetworkTable table = NetworkTableInstance.getDefault().getTable("Swerve");
+  private static boolean schemaPublished = false;
+
+  private SwerveTelemetry() {}
+
+  /**
+   * Registers the dispatcher channel for one packed topic, and publishes the schema the first time
+   * it is called.
+   *
+   * @param name The topic name under the Swerve table, e.g. "Module 0" or "Chassis".
+   * @param fields The layout published on the topic.
+   * @return The channel for {@link TelemetryDispatcher#publish}.
+   */
+  public static synchronized int channel(String name, String[] fields) {
+    if (!schemaPublished) {
+      NetworkTable schema = table.getSubTable("schema");
+      schema.getEntry("version").setDouble(kSchemaVersion);
+      schema.getEntry("module").setStringArray(kModuleFields);
+      schema.getEntry("chassis").setStringArray(kChassisFields);
+      schemaPublished = true;
+    }
+    return TelemetryDispatcher.getInstance().register(table.getPath() + "/" + name, fields.length);
+  }
+
+  /** @return A new module array with the version already filled in. */
+  public static double[] newModuleArray() {
+    double[] data = new double[kModuleFields.length];
+    data[kModVersion] = kSchemaVersion;
+    return data;
+  }
+
+  /** @return A new chassis array with the version already filled in. */
+  public static double[] newChassisArray() {
+    double[] data = new double[kChassisFields.length];
+    data[kChassisVersion] = kSchemaVersion;
+    return data;
+  }
+
+  /**
+   * Decodes a packed array into named values, for dashboard and log tooling. Arrays from an older
+   * or newer schema are decoded as far as the field lists overlap.
+   *
+   * @param data The packed array as read from NetworkTables.
+   * @param fields The field names, normally {@link #kModuleFields} or {@link #kChassisFields}.
+   * @return The values keyed by field name, in schema order.
+   */
+  public static Map<String, Double> decode(double[] data, String[] fields) {
+    Map<String, Double> values = new LinkedHashMap<>();
+    int count = Math.min(data.length, fields.length);
+    for (int i = 0; i < count; i++) {
+      values.put(fields[i], data[i]);
+    }
+    return values;
+  }
+}
@@ -0,0 +1,202 @@
+package frc.lib.util;
+
+import edu.wpi.first.networktables.DoubleArrayPublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.StringArrayPublisher;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Moves telemetry publishing off the robot loop. The robot thread writes primitive records into a
+ * preallocated single producer / single consumer ring, and a low priority daemon thread drains the
+ * ring and does all the NetworkTables (or dashboard) work.
+ *
+ * <p>Channels are registered up front. Each record is a channel id plus up to {@link #kMaxWidth}
+ * doubles, so publishing is a bounds check, an array copy and an ordered store. When the ring is
+ * full the record is dropped and counted rather than blocking the robot thread; drop counts are
+ * published per channel under {@code Telemetry}.
+ *
+ * <p>Only one thread may publish: the robot main thread. Background threads that already run off
+ * the loop (such as {@link SwerveHealthMonitor}) publish directly.
+ */
+public final class TelemetryDispatcher {
+  public static final int kMaxWidth = 24;
+  private static final int kCapacity = 1024; // records, a power of two
+  private static final long kIdleNanos = 5_000_000L;
+  private static final long kStatsPeriodNanos = 1_000_000_000L;
+
+  private static TelemetryDispatcher instance;
+
+  private final NetworkTable table = NetworkTableInstance.getDefault().getTable("Telemetry");
+
+  /* Ring storage, slot i holds one record */
+  private final int[] recordChannel = new int[kCapacity];
+  private final int[] recordLength = new int[kCapacity];
+  private final double[] recordValues = new double[kCapacity * kMaxWidth];
+  /* Next slot to write (producer) and next slot to read (consumer) */
+  private final AtomicLong tail = new AtomicLong();
+  private final AtomicLong head = new AtomicLong();
+  private long cachedHead = 0;
+
+  /* Channels; registration happens before the consumer sees any record of the channel */
+  private final List<String> names = new ArrayList<>();
+  private final List<Consumer<double[]>> sinks = new ArrayList<>();
+  private final List<double[]> scratch = new ArrayList<>();
+  private static final int kMaxChannels = 64;
+  private final AtomicLongArray dropped = new AtomicLongArray(kMaxChannels);
+  private final AtomicLongArray delivered = new AtomicLongArray(kMaxChannels);
+
+  private final StringArrayPublisher channelPublisher = table.getStringArrayTopic("channels").publish();
+  private final DoubleArrayPublisher droppedPublisher = table.getDoubleArrayTopic("dropped").publish();
+  private final DoubleArrayPublisher deliveredPublisher = table.getDoubleArrayTopic("delivered").publish();
+
+  private TelemetryDispatcher() {
+    Thread consumer = new Thread(this::drainLoop, "TelemetryDispatcher");
+    consumer.setDaemon(true);
+    consumer.setPriority(Thread.MIN_PRIORITY);
+    consumer.start();
+  }
+
+  public static synchronized TelemetryDispatcher getInstance() {
+    if (instance == null) {
+      instance = new TelemetryDispatcher();
+    }
+    return instance;
+  }
+
+  /**
+   * Registers a channel that publishes its records as a double array topic.
+   *
+   * @param topic The full topic name, e.g. "/Swerve/Module 0".
+   * @return The channel id to pass to {@link #publish}.
+   */
+  public int register(String topic, int width) {
+    DoubleArrayPublisher publisher = NetworkTableInstance.getDefault().getDoubleArrayTopic(topic).publish();
+    return register(topic, width, publisher::set);
+  }
+
+  /**
+   * Registers a channel with a custom sink, for dashboard calls that are not a plain array topic.
+   * The sink runs on the dispatcher thread and must not keep the array it is given.
+   *
+   * @param name Shown in the drop statistics.
+   */
+  public synchronized int register(String name, int width, Consumer<double[]> sink) {
+    if (width < 1 || width > kMaxWidth) {
+      throw new IllegalArgumentException("telemetry channel " + name + " is " + width + " wide, max " + kMaxWidth);
+    }
+    if (sinks.size() == kMaxChannels) {
+      throw new IllegalStateException("too many telemetry channels, max " + kMaxChannels);
+    }
+    names.add(name);
+    sinks.add(sink);
+    scratch.add(new double[width]);
+    return sinks.size() - 1;
+  }
+
+  /**
+   * Queues a record. Robot thread only.
+   *
+   * @param data At least as many values as the channel's width; extra values are ignored.
+   * @return False if the ring was full and the record was dropped.
+   */
+  public boolean publish(int channel, double[] data) {
+    long t = tail.get();
+    if (t - cachedHead >= kCapacity) {
+      cachedHead = head.get();
+      if (t - cachedHead >= kCapacity) {
+        dropped.lazySet(channel, dropped.get(channel) + 1);
+        return false;
+      }
+    }
+    int slot = (int) (t & (kCapacity - 1));
+    int length = Math.min(data.length, kMaxWidth);
+    recordChannel[slot] = channel;
+    recordLength[slot] = length;
+    System.arraycopy(data, 0, recordValues, slot * kMaxWidth, length);
+    // Ordered store: the consumer sees the slot contents before the new tail.
+    tail.lazySet(t + 1);
+    return true;
+  }
+
+  /** Queues a single value record. Robot thread only. */
+  public boolean publish(int channel, double value) {
+    long t = tail.get();
+    if (t - cachedHead >= kCapacity) {
+      cachedHead = head.get();
+      if (t - cachedHead >= kCapacity) {
+        dropped.lazySet(channel, dropped.get(channel) + 1);
+        return false;
+      }
+    }
+    int slot = (int) (t & (kCapacity - 1));
+    recordChannel[slot] = channel;
+    recordLength[slot] = 1;
+    recordValues[slot * kMaxWidth] = value;
+    tail.lazySet(t + 1);
+    return true;
+  }
+
+  public long getDropped(int channel) {
+    return dropped.get(channel);
+  }
+
+  /* Dispatcher thread */
+
+  private void drainLoop() {
+    long lastStats = System.nanoTime();
+    while (true) {
+      long h = head.get();
+      long t = tail.get();
+      if (h == t) {
+        LockSupport.parkNanos(kIdleNanos);
+      }
+      for (; h < t; h++) {
+        int slot = (int) (h & (kCapacity - 1));
+        int channel = recordChannel[slot];
+        Consumer<double[]> sink;
+        double[] values;
+        synchronized (this) {
+          sink = sinks.get(channel);
+          values = scratch.get(channel);
+        }
+        System.arraycopy(recordValues, slot * kMaxWidth, values, 0, Math.min(recordLength[slot], values.length));
+        // The slot can be reused as soon as it has been copied out.
+        head.lazySet(h + 1);
+        try {
+          sink.accept(values);
+        } catch (RuntimeException e) {
+          // A broken sink must not stop the others.
+        }
+        delivered.lazySet(channel, delivered.get(channel) + 1);
+      }
+
+      long now = System.nanoTime();
+      if (now - lastStats >= kStatsPeriodNanos) {
+        lastStats = now;
+        publishStats();
+      }
+    }
+  }
+
+  private void publishStats() {
+    String[] channelNames;
+    synchronized (this) {
+      channelNames = names.toArray(new String[0]);
+    }
+    double[] droppedCounts = new double[channelNames.length];
+    double[] deliveredCounts = new double[channelNames.length];
+    for (int i = 0; i < channelNames.length; i++) {
+      droppedCounts[i] = dropped.get(i);
+      deliveredCounts[i] = delivered.get(i);
+    }
+    channelPublisher.set(channelNames);
+    droppedPublisher.set(droppedCounts);
+    deliveredPublisher.set(deliveredCounts);
+  }
+}
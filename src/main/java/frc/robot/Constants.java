@@ -9,7 +9,6 @@ import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
 import edu.wpi.first.math.trajectory.TrapezoidProfile;
 import edu.wpi.first.math.util.Units;
 import frc.lib.config.SwerveModuleConstants;
-import edu.wpi.first.wpilibj.DigitalInput;
 
 public final class Constants {
 
@@ -18,6 +17,17 @@ public final class Constants {
 
     public static final boolean invertGyro = false; // Always ensure Gyro is CCW+ CW-
 
+    /*
+     * IMU: the Pigeon 2 measures pitch and roll for balancing, the analog gyro only yaw. Off until
+     * the Pigeon is confirmed on the robot; with it on, the analog gyro takes over the yaw whenever
+     * the Pigeon has gone imuStalePeriod without a good read.
+     */
+    public static final boolean usePigeon2 = false;
+    public static final int pigeonID = 15;
+    public static final int analogGyroChannel = 0;
+    public static final double imuStalePeriod = 0.5; // seconds
+    public static final boolean invertPitch = false; // Always ensure pitch is positive nose up
+
     /* Drivetrain Constants */
     public static final double trackWidth = Units.inchesToMeters(22.75);
     public static final double wheelBase = Units.inchesToMeters(23);
@@ -29,12 +39,19 @@ public final class Constants {
 
     public static final double driveGearRatio = (50.0 / 14.0) * (17.0 / 27.0) * (45.0 / 15.0); // 6.75:1
     public static final double angleGearRatio = (12.8 / 1);// (150.0 / 7.0); //
-
-    public static final SwerveDriveKinematics swerveKinematics = new SwerveDriveKinematics(
+    /*
+     * Turning the module turns the drive gearing after the first stage, so the drive motor turns
+     * this many times per module turn with the wheel held still. Calibrated per module with
+     * CalibrateCouplingCommand, the sign follows the motor inverts.
+     */
+    public static final double couplingRatio = 50.0 / 14.0;
+
+    public static final Translation2d[] moduleLocations = {
         new Translation2d(wheelBase / 2.0, trackWidth / 2.0),
         new Translation2d(wheelBase / 2.0, -trackWidth / 2.0),
         new Translation2d(-wheelBase / 2.0, trackWidth / 2.0),
-        new Translation2d(-wheelBase / 2.0, -trackWidth / 2.0));
+        new Translation2d(-wheelBase / 2.0, -trackWidth / 2.0)};
+    public static final SwerveDriveKinematics swerveKinematics = new SwerveDriveKinematics(moduleLocations);
 
     /* Swerve Voltage Compensation 1 */
     public static final double voltageComp = 12.0;
@@ -43,6 +60,48 @@ public final class Constants {
     public static final int angleContinuousCurrentLimit = 20;
     public static final int driveContinuousCurrentLimit = 80;
 
+    /* Battery Power Management */
+    public static final double brownoutMarginVolts = 7.5; // roboRIO brownout is 6.8V
+    public static final int minDriveCurrentLimit = 30;
+    public static final double currentLimitUpdatePeriod = 0.1; // seconds between raises of the limit
+    public static final double baseLoadAmps = 5.0; // roboRIO, radio, CANCoders etc
+
+    /* Motor Thermal Model (NEO) */
+    public static final double thermalWindingCapacitance = 80.0; // J/C
+    public static final double thermalHousingCapacitance = 400.0; // J/C
+    public static final double thermalWindingToHousing = 0.3; // C/W
+    public static final double thermalHousingToAmbient = 0.8; // C/W
+    public static final double thermalAmbientCelsius = 25.0;
+    public static final double thermalDerateStartCelsius = 70.0;
+    public static final double thermalLimitCelsius = 100.0;
+    public static final double thermalMinDerate = 0.3;
+    public static final double thermalHorizonSeconds = 3.0;
+    public static final int thermalSensorPeriodLoops = 25; // read motor temperature at 2Hz
+
+    /* Setpoint frame coalescing: changes at or below these are not resent */
+    public static final double angleSetpointTolerance = 0.05; // degrees
+    public static final double driveSetpointTolerance = 0.001; // duty cycle or meters per second
+    public static final double feedforwardTolerance = 0.01; // volts
+    public static final double setpointKeepAlive = 0.1; // seconds
+
+    /* CAN health monitoring, polled off the main thread */
+    public static final double healthPollPeriod = 0.2; // seconds
+    public static final double encoderStalePeriod = 0.5; // CANCoder sensor frames come every 100ms
+    /* Wait after a live angle offset change before trusting the CANCoder again */
+    public static final double angleOffsetSettleSeconds = 0.3;
+
+    /* Pose and gyro state kept across a roboRIO reboot, see frc.lib.util.PersistedStateFile */
+    public static final String persistedStateFile = "swerve_state.bin"; // in the operating directory
+    public static final double persistedStateMatchInfoWait = 2.0; // seconds after the DS connects
+    public static final double persistedStateFlushPeriod = 0.1; // seconds between writes to flash
+
+    /* Drivetrain control loop, run on its own callback between scheduler runs */
+    public static final double controlLoopPeriod = 0.005; // seconds, 0.005 to 0.01
+    public static final double controlLoopStatsWindow = 1.0; // seconds
+
+    /* Drive acceleration limit, scaled down by the drive motor's thermal derate */
+    public static final double maxDriveAcceleration = 15.0; // meters per second squared
+
     /* Angle Motor PID Values */
     public static final double angleKP = 0.01;
     public static final double angleKI = 0.0;
@@ -55,6 +114,26 @@ public final class Constants {
     public static final double driveKD = 0.0;
     public static final double driveKFF = 0.0;
 
+    /* Teleop drives closed loop on wheel velocity, with the feedforward below */
+    public static final boolean teleopOpenLoop = false;
+    public static final double velocityErrorWindow = 0.5; // seconds
+
+    /* Wheel velocity from a Kalman filter on the position frames and the drive model */
+    public static final boolean useEstimatedVelocity = true;
+    public static final double velocityEstimatorAccelStdDev = 10.0; // meters per second squared
+    public static final double velocityEstimatorPositionStdDev = 0.002; // meters
+    public static final double velocityEstimatorTimingStdDev = 0.0015; // seconds, a frame is seen within a control loop
+    public static final double drivePositionFramePeriod = 0.02; // seconds, status 2 in CANSparkMaxUtil
+    /* Write the estimator inputs to the data log for frc.robot.sim.VelocityEstimatorReplay */
+    public static final boolean recordVelocityTraces = false;
+    /* Integrated angle encoder position, status 2 in CANSparkMaxUtil, for the steer rate */
+    public static final double anglePositionFramePeriod = 0.02; // seconds
+
+    /* CalibrateCouplingCommand turns every module in place this far at this rate */
+    public static final double couplingCalibrationTurns = 3.0;
+    public static final double couplingCalibrationRate = 180.0; // degrees per second
+    public static final double couplingCalibrationSettle = 0.5; // seconds at the end before measuring
+
     /* Drive Motor Characterization Values */
     public static final double driveKS = 0.667;
     public static final double driveKV = 2.44;
@@ -134,6 +213,23 @@ public final class Constants {
       // public static final int kEncoderCPR = 42;
       // public static final double kEnocderDistancePerPulse = 1.0 / (double) kEncoderCPR;
 
+      public static final int kIntakeMotorID = 13;
+      public static final int kIntakeCurrentLimit = 30;
+      public static final double kIntakeDuty = 1.0;
+      public static final double kEjectDuty = -1.0;
+
+      /* Game piece detection from the motor current, sampled off the robot loop */
+      public static final double kCurrentSamplePeriod = 0.005; // seconds
+      public static final int kCurrentStatusFramePeriodMs = 5;
+      public static final double kCurrentFilterTimeConstant = 0.02; // seconds
+      public static final double kBaselineTimeConstant = 0.5; // seconds
+      public static final double kSpikeThresholdAmps = 8.0; // above the free spinning current
+      public static final double kInrushIgnoreSeconds = 0.25;
+      public static final double kDetectionDebounceSeconds = 0.04;
+      /* Write every current sample to the data log for frc.robot.sim.IntakeTraceReplay */
+      public static final boolean kRecordCurrentTraces = false;
+
+      public static final double kAcquiredRumbleSeconds = 0.5;
     }
   }
 
@@ -153,11 +249,24 @@ public final class Constants {
       public static final int kEncoderChannelA = 14;
       public static final int kEncoderChannelB = 15;
 
-      /* Lifter Motor PID Values */
-      public static final double angleKP = 0.01;
-      public static final double angleKI = 0.0;
-      public static final double angleKD = 0.0;
-      public static final double angleKFF = 0.0;
+      /* Lifter Motor PID Values (Spark MAX position loop, duty cycle per meter) */
+      public static final double kP = 10.0;
+      public static final double kI = 0.0;
+      public static final double kD = 0.0;
+
+      /* Motion profile, as a fraction of the NEO's free speed through the gearing and drum */
+      public static final double kProfileSpeedFraction = 0.8;
+      public static final double kProfileAccelerationTime = 0.25; // seconds to reach profile speed
+      public static final double kHeightTolerance = 0.005; // meters
+
+      /* Named heights */
+      public static final double kStowHeight = kLifterMinHeight;
+      public static final double kLowHeight = Units.inchesToMeters(12.0);
+      public static final double kMidHeight = Units.inchesToMeters(32.0);
+      public static final double kHighHeight = Units.inchesToMeters(48.0);
+
+      /* Open loop push()/pull() duty cycle */
+      public static final double kManualDuty = 0.25;
 
       
 
@@ -167,13 +276,46 @@ public final class Constants {
       public static final double kLifterMotorPositionFactor = 1;
       public static final double kLifterMotorVelocityFactor = 1;
 
-      public static final DigitalInput toplimitSwitch = new DigitalInput(0);
-      public static final DigitalInput bottomlimitSwitch = new DigitalInput(1);
+      /* Limit switch DIO channels; the switches pull the input low when pressed */
+      public static final int kTopLimitSwitchChannel = 0;
+      public static final int kBottomLimitSwitchChannel = 1;
+      public static final boolean kLimitSwitchPressedValue = false;
       // PWMVictorSPX motor = new PWMVictorSPX(0);
       // Joystick joystick = new Joystick(0);
     }
   }
 
+  public static final class SuperstructureConstants {
+    /* Mass properties for the center of gravity, heights above the floor */
+    public static final double kChassisMass = 45.0; // kg, everything but the lift carriage
+    public static final double kChassisCgHeight = Units.inchesToMeters(7.0);
+    public static final double kCarriageCgHeight = Units.inchesToMeters(14.0); // with the lift down
+
+    /* Fraction of the tipping acceleration the drive may use */
+    public static final double kTippingSafetyFactor = 0.6;
+    /* A drive request after a longer gap starts from rest */
+    public static final double kDriveCommandTimeout = 0.25; // seconds
+  }
+
+  public static final class BalanceConstants {
+    /* Tuned with BalanceBenchmark against the charge station simulation */
+    public static final double kP = 0.04; // meters per second per degree
+    public static final double kD = 0.01; // meters per second per degree per second
+    public static final double kTippingRate = 5.0; // degrees per second toward level
+    public static final double kMaxSpeed = 1.0; // meters per second, on the station
+
+    public static final double kApproachSpeed = 1.5; // meters per second, until the robot climbs
+    public static final double kClimbingDegrees = 10.0;
+    public static final double kLevelTolerance = 2.5; // degrees, from the game manual
+    public static final double kSettleSeconds = 0.3;
+  }
+
+  public static final class DiagnosticsConstants {
+    public static final double loopBudgetSeconds = 0.02;
+    public static final double gcPauseTraceThresholdMs = 10.0;
+    public static final int jvmReportWindowLoops = 250; // 5 seconds
+  }
+
   public static final class AutoConstants {
     public static final double kMaxSpeedMetersPerSecond = 4; // 3
     public static final double kMaxAccelerationMetersPerSecondSquared = 3; // 3
@@ -184,6 +326,23 @@ public final class Constants {
     public static final double kPYController = 1;
     public static final double kPThetaController = 1;
 
+    /* Declarative routines, relative to the deploy and operating directories */
+    public static final String kRoutineDirectory = "autos";
+    public static final String kRoutineCacheDirectory = "autocache";
+
+    /* Pathfinding, the map is relative to the deploy directory */
+    public static final String kFieldMapFile = "field/obstacles.txt";
+    public static final double kNavGridResolution = 0.1;
+    public static final double kRobotRadiusMeters = Units.inchesToMeters(18); // half the bumper width
+    public static final double kPlanBudgetMillis = 2.0; // a plan runs inside one robot loop
+    public static final double kFieldLengthMeters = 16.54;
+    public static final double kFieldWidthMeters = 8.02;
+
+    /* Trajectory following */
+    public static final double kTrajectoryPositionTolerance = 0.05; // meters
+    public static final double kTrajectoryHeadingTolerance = Math.toRadians(2);
+    public static final double kTrajectorySettleTimeout = 0.5; // seconds past the end of the trajectory
+
     // Constraint for the motion profilied robot angle controller
     public static final TrapezoidProfile.Constraints kThetaControllerConstraints = new TrapezoidProfile.Constraints(
         kMaxAngularSpeedRadiansPerSecond, kMaxAngularSpeedRadiansPerSecondSquared);
@@ -4,10 +4,21 @@
 
 package frc.robot;
 
+import java.io.File;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.wpilibj.Filesystem;
 import edu.wpi.first.wpilibj.TimedRobot;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.CommandScheduler;
 import frc.lib.config.CTREConfigs;
+import frc.lib.config.TunableConfig;
+import frc.lib.util.CommandMetrics;
+import frc.lib.util.JvmHealthMonitor;
+import frc.lib.util.LoadShedder;
+import frc.lib.util.LoadShedder.Tier;
+import frc.robot.Constants.DiagnosticsConstants;
 
 /**
  * The VM is configured to automatically run this class, and to call the functions corresponding to
@@ -23,6 +34,11 @@ public class Robot extends TimedRobot {
   private Command m_autonomousCommand;
   // CB: The RobotContainer class contains subsystems, commands, joystick buttons, and glue logic between them.
   private RobotContainer m_robotContainer;
+  // Correlates GC activity with the measured loop time below.
+  private JvmHealthMonitor m_jvmHealth;
+  private double m_lastLoopStart = 0;
+  // Decimates odometry, telemetry and diagnostics when the loop runs long.
+  private LoadShedder m_loadShedder;
 
   /**
    * This function is run when the robot is first started up and should be used for any
@@ -31,9 +47,24 @@ public class Robot extends TimedRobot {
   @Override
   public void robotInit() {
     ctreConfigs = new CTREConfigs();
+    // Tunable overrides have to be in place before any subsystem reads them.
+    TunableConfig.getInstance().load(new File(Filesystem.getDeployDirectory(), Tunables.kFile));
+    CommandMetrics.getInstance().install(CommandScheduler.getInstance());
+    m_jvmHealth = new JvmHealthMonitor(
+        DiagnosticsConstants.loopBudgetSeconds,
+        DiagnosticsConstants.gcPauseTraceThresholdMs,
+        DiagnosticsConstants.jvmReportWindowLoops);
     // Instantiate our RobotContainer.  This will perform all our button bindings, and put our
     // autonomous chooser on the dashboard.
     m_robotContainer = new RobotContainer();
+    // Drivetrain setpoints are written faster than the 20 ms scheduler. addPeriodic callbacks run on
+    // this thread between loops, so the modules are never touched from two threads.
+    addPeriodic(m_robotContainer.s_Swerve::runControlLoop,
+        MathUtil.clamp(Constants.Swerve.controlLoopPeriod, 0.005, 0.01));
+
+    m_loadShedder = new LoadShedder(DiagnosticsConstants.loopBudgetSeconds);
+    m_robotContainer.registerLoadShedding(m_loadShedder);
+    m_loadShedder.register(Tier.kDiagnostics, m_jvmHealth::publish);
   }
 
   /**
@@ -45,13 +76,29 @@ public class Robot extends TimedRobot {
    */
   @Override
   public void robotPeriodic() {
+    // Time since the previous loop started, including everything TimedRobot ran in between.
+    double loopStart = Timer.getFPGATimestamp();
+    if (m_lastLoopStart > 0) {
+      m_jvmHealth.sample(loopStart - m_lastLoopStart);
+    }
+    m_lastLoopStart = loopStart;
+
+    // One IMU sample per loop, then odometry and telemetry, so commands see this loop's pose.
+    m_robotContainer.s_Swerve.updateImu();
+    m_loadShedder.run();
+
+    // Push tuning changes made since the last loop to the subsystems that use them.
+    TunableConfig.getInstance().dispatch();
+
     // Runs the Scheduler.  This is responsible for polling buttons, adding newly-scheduled
     // commands, running already-scheduled commands, removing finished or interrupted commands,
     // and running subsystem periodic() methods.  This must be called from the robot's periodic
     // block in order for anything in the Command-based framework to work.
     CommandScheduler.getInstance().run();
     m_robotContainer.periodic();
-    
+
+    // Shed levels follow the time this loop actually spent working.
+    m_loadShedder.update(Timer.getFPGATimestamp() - loopStart);
   }
 
   /** This function is called once each time the robot enters Disabled mode. */
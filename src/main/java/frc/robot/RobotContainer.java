@@ -4,21 +4,40 @@
 
 package frc.robot;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
 import edu.wpi.first.util.sendable.SendableRegistry;
 import edu.wpi.first.wpilibj.DigitalInput;
 import edu.wpi.first.wpilibj.DigitalOutput;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Filesystem;
 import edu.wpi.first.wpilibj.GenericHID;
 import edu.wpi.first.wpilibj.Joystick;
+import edu.wpi.first.wpilibj.GenericHID.RumbleType;
 import edu.wpi.first.wpilibj.XboxController;
 import edu.wpi.first.wpilibj.XboxController.Axis;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.InstantCommand;
+import edu.wpi.first.wpilibj2.command.ParallelRaceGroup;
 import edu.wpi.first.wpilibj2.command.RunCommand;
 import edu.wpi.first.wpilibj2.command.StartEndCommand;
 import edu.wpi.first.wpilibj2.command.RepeatCommand;
+import edu.wpi.first.wpilibj2.command.SequentialCommandGroup;
+import edu.wpi.first.wpilibj2.command.WaitCommand;
+import edu.wpi.first.wpilibj2.command.WaitUntilCommand;
 import edu.wpi.first.wpilibj2.command.button.JoystickButton;
 import edu.wpi.first.wpilibj2.command.button.POVButton;
 import edu.wpi.first.wpilibj2.command.button.Trigger;
+import frc.lib.math.NavigationGrid;
+import frc.lib.math.Pathfinder;
+import frc.lib.util.CommandMetrics;
+import frc.lib.util.LoadShedder;
+import frc.lib.util.LoadShedder.Tier;
+import frc.robot.Constants.AutoConstants;
+import frc.robot.Constants.IntakeConstants;
 import frc.robot.autos.*;
 import frc.robot.commands.*;
 import frc.robot.subsystems.*;
@@ -56,21 +75,27 @@ public class RobotContainer {
   // private final JoystickButton fastSpeed = new JoystickButton(driver,
   // XboxController.Button.kRightBumper.value);
   private final SendableChooser<String> chooser;
+  private final Set<String> chooserIds = new HashSet<>();
+  /* Worst plan time already reported as over the budget */
+  private double reportedPlanMillis = AutoConstants.kPlanBudgetMillis;
+  private final AutoLibrary autoLibrary = new AutoLibrary(
+      new File(Filesystem.getDeployDirectory(), AutoConstants.kRoutineDirectory),
+      new File(Filesystem.getOperatingDirectory(), AutoConstants.kRoutineCacheDirectory));
   private final JoystickButton slowSpeed = new JoystickButton(driver, XboxController.Button.kLeftBumper.value);
   private final JoystickButton m_intakeIn = new JoystickButton(driver, XboxController.Button.kX.value);
   private final JoystickButton m_intakeOut = new JoystickButton(driver, XboxController.Button.kY.value);
   private final JoystickButton m_push = new JoystickButton(driver, XboxController.Button.kA.value);
   private final JoystickButton m_pull = new JoystickButton(driver, XboxController.Button.kB.value);
   private final JoystickButton turbo = new JoystickButton(driver, XboxController.Button.kRightBumper.value);
+  private final JoystickButton m_stow = new JoystickButton(driver, XboxController.Button.kBack.value);
 
   /* Subsystems */
   public final Swerve s_Swerve = new Swerve();
-  // public final Intaker s_Intaker = new Intaker();
-  // public final Lifter s_Lifter = new Lifter();
-
-  // /* Commands */
-  // public final IntakeIn c_IntakeIn = new IntakeIn(s_Intaker);
-  // public final IntakeOut c_IntakeOut = new IntakeOut(s_Intaker);
+  /* Null if the field map could not be loaded */
+  public final Pathfinder pathfinder = loadPathfinder();
+  public final Intaker s_Intaker = new Intaker();
+  public final Lifter s_Lifter = new Lifter();
+  public final Superstructure s_Superstructure = new Superstructure(s_Swerve, s_Lifter);
 
   /**
    * The container for the robot. Contains subsystems, OI devices, and commands.
@@ -82,11 +107,57 @@ public class RobotContainer {
     chooser.addOption("straight right", "right"); // etc
     chooser.addOption("straight left", "left");
     chooser.addOption("does nothing", "stand still");
+    chooserIds.addAll(Set.of("straight", "right", "left", "stand still"));
+    // Routines in the deploy directory are added to the chooser once they have loaded.
+    autoLibrary.loadAsync();
 
     SmartDashboard.putData("Auto Selector", chooser);
     // SendableRegistry.setName(chooser, "Auto Selector");
 
     new ShuffleboardWrapper(chooser);
+    // Run with the robot on the carpet; see CalibrateCouplingCommand.
+    SmartDashboard.putData("Calibrate Coupling", new CalibrateCouplingCommand(s_Swerve));
+
+    // Once only: a trigger binding lasts for the life of the robot program, so binding again on
+    // every enable would stack another copy of each command on the same button.
+    configureButtonBindings();
+
+    registerCommandMetrics();
+  }
+
+  /**
+   * Registers every command class we schedule so the metrics registry never has to allocate a
+   * key while the robot is running.
+   */
+  private void registerCommandMetrics() {
+    CommandMetrics metrics = CommandMetrics.getInstance();
+    metrics.registerCommand(TeleopSwerve.class);
+    metrics.registerCommand(TurnToAngleCommand.class);
+    metrics.registerCommand(FollowTrajectoryCommand.class);
+    metrics.registerCommand(BalanceCommand.class);
+    metrics.registerCommand(CalibrateCouplingCommand.class);
+    metrics.registerCommand(RunCommand.class);
+    metrics.registerCommand(InstantCommand.class);
+    metrics.registerCommand(WaitCommand.class);
+    metrics.registerCommand(SequentialCommandGroup.class);
+    metrics.registerCommand(StartEndCommand.class);
+    metrics.registerCommand(WaitUntilCommand.class);
+    metrics.registerCommand(ParallelRaceGroup.class);
+    metrics.registerCommand(IntakeIn.class);
+    metrics.registerCommand(IntakeOut.class);
+    metrics.registerCommand(BusterAuto.class);
+  }
+
+  private static Pathfinder loadPathfinder() {
+    File map = new File(Filesystem.getDeployDirectory(), AutoConstants.kFieldMapFile);
+    try {
+      NavigationGrid grid = NavigationGrid.load(map, AutoConstants.kNavGridResolution, AutoConstants.kRobotRadiusMeters);
+      return new Pathfinder(grid, AutoConstants.kMaxSpeedMetersPerSecond,
+          AutoConstants.kMaxAccelerationMetersPerSecondSquared, AutoConstants.kThetaControllerConstraints);
+    } catch (IOException | IllegalArgumentException e) {
+      DriverStation.reportError("Pathfinding disabled, could not load " + map + ": " + e.getMessage(), false);
+      return null;
+    }
   }
 
   public void teleopInit() {
@@ -110,10 +181,6 @@ public class RobotContainer {
             // at a slower speed
             () -> slowSpeed.getAsBoolean(),
             () -> turbo.getAsBoolean()));
-
-    // Configure the button bindings
-    configureButtonBindings();
-
   }
 
   /**
@@ -127,25 +194,22 @@ public class RobotContainer {
   private void configureButtonBindings() {
     /* Driver Buttons */
 
-    // m_intakeIn.whileTrue(new RunCommand(() -> s_Intaker.pull()));
-    // m_intakeIn.whileTrue(new StartEndCommand(() -> s_Intaker.pull(), () ->
-    // s_Intaker.stop()));
-    // m_intakeIn.whileTrue(c_IntakeIn);
-    // m_intakeOut.whileTrue(c_IntakeOut);
-    // m_intakeIn.whileTrue(new IntakeIn(s_Intaker));
-    // m_intakeOut.whileTrue(new IntakeOut(s_Intaker));
-    // m_pull.whileTrue(new RunCommand(() -> s_Lifter.pull()));
-    // m_push.whileTrue(new RunCommand(() -> s_Lifter.push()));
-    // m_pull.whileTrue(new RepeatCommand(new RunCommand(() -> s_Lifter.pull())));
-    // m_push.whileTrue(new RepeatCommand(new RunCommand(() -> s_Lifter.push())));
-    // m_pull.whileTrue(new StartEndCommand(() -> s_Lifter.pull(), () -> s_Lifter.stop()));
-    // m_push.whileTrue(new StartEndCommand(() -> s_Lifter.push(), () -> s_Lifter.stop()));
-
-    // // //TODO: Test position method for the lifter
-    // dPad_Left.onTrue(new InstantCommand(() -> s_Lifter.setToPosition(2)));
-    // dPad_Top.onTrue(new InstantCommand(() -> s_Lifter.setToPosition(4)));
-    // dPad_Right.onTrue(new InstantCommand(() -> s_Lifter.setToPosition(6)));
-    // resetPosition.onTrue(new InstantCommand(() -> s_Lifter.setToPosition(0)));
+    m_intakeIn.whileTrue(new IntakeIn(s_Intaker));
+    m_intakeOut.whileTrue(new IntakeOut(s_Intaker));
+    // Intaking stops by itself on a game piece; the rumble tells the driver it can let go.
+    new Trigger(s_Intaker::hasGamePiece).onTrue(
+        new StartEndCommand(
+            () -> driver.setRumble(RumbleType.kBothRumble, 1.0),
+            () -> driver.setRumble(RumbleType.kBothRumble, 0.0))
+            .withTimeout(IntakeConstants.Mod4.kAcquiredRumbleSeconds));
+
+    m_pull.whileTrue(new StartEndCommand(() -> s_Lifter.pull(), () -> s_Lifter.stop(), s_Lifter));
+    m_push.whileTrue(new StartEndCommand(() -> s_Lifter.push(), () -> s_Lifter.stop(), s_Lifter));
+
+    dPad_Left.onTrue(s_Lifter.goTo(Lifter.Height.kLow));
+    dPad_Top.onTrue(s_Lifter.goTo(Lifter.Height.kMid));
+    dPad_Right.onTrue(s_Lifter.goTo(Lifter.Height.kHigh));
+    m_stow.onTrue(s_Lifter.goTo(Lifter.Height.kStow));
 
     dPad_Down.whileTrue(new RunCommand(() -> s_Swerve.setX(), s_Swerve));
 
@@ -153,13 +217,46 @@ public class RobotContainer {
     // InstantCommand(()->s_Swerve.resetToAbsoluteNorth()));
   }
 
+  /**
+   * Registers the work that may be decimated or skipped when the robot loop overruns. Control
+   * work stays in the command scheduler and is never shed.
+   */
+  public void registerLoadShedding(LoadShedder shedder) {
+    shedder.register(Tier.kOdometry, s_Swerve::updateOdometry);
+    shedder.register(Tier.kTelemetry, s_Swerve::updateField);
+    shedder.register(Tier.kTelemetry, s_Swerve::updateTelemetry);
+    shedder.register(Tier.kTelemetry, () -> SmartDashboard.putString("Choosen Auto", chooser.getSelected()));
+    shedder.register(Tier.kDiagnostics, CommandMetrics.getInstance()::publish);
+    if (pathfinder != null) {
+      shedder.register(Tier.kDiagnostics, this::publishPathfinderDiagnostics);
+    }
+  }
+
+  /* Plans run inside a command's initialize(), so one over the budget delays that whole loop. */
+  private void publishPathfinderDiagnostics() {
+    double worst = pathfinder.getWorstPlanMillis();
+    if (worst > reportedPlanMillis) {
+      reportedPlanMillis = worst;
+      DriverStation.reportWarning("Pathfinder: a plan took " + worst + " ms, over the "
+          + AutoConstants.kPlanBudgetMillis + " ms budget", false);
+    }
+    SmartDashboard.putNumber("Pathfinder/lastPlanMs", pathfinder.getLastPlanMillis());
+    SmartDashboard.putNumber("Pathfinder/worstPlanMs", worst);
+    SmartDashboard.putNumber("Pathfinder/cacheHits", pathfinder.getCacheHits());
+    SmartDashboard.putNumber("Pathfinder/cacheMisses", pathfinder.getCacheMisses());
+  }
+
   /**
    * Use this to pass the autonomous command to the main {@link Robot} class.
    *
    * @return the command to run in autonomous
    */
   public Command getAutonomousCommand() {
-    // An ExampleCommand will run in autonomous
+    // Routines from the deploy directory take precedence over the built in ones.
+    Command routine = autoLibrary.getCommand(chooser.getSelected());
+    if (routine != null) {
+      return routine;
+    }
     return new BusterAuto(this, this.chooser);
   }
 
@@ -171,9 +268,11 @@ public class RobotContainer {
    * This is run constantly as soon as the robot is plugged in.
    */
   public void periodic() {
-    // s_Lifter.checkLimits();
-    // s_Intaker.periodic();
-    SmartDashboard.putString("Choosen Auto", chooser.getSelected());
+    for (AutoRoutine routine : autoLibrary.poll(s_Swerve, pathfinder)) {
+      if (chooserIds.add(routine.id)) {
+        chooser.addOption(routine.name, routine.id);
+      }
+    }
   }
 
   public void killTeleop() {
@@ -0,0 +1,63 @@
+package frc.robot;
+
+import frc.lib.config.TunableConfig;
+import frc.lib.config.TunableConfig.Key;
+
+/**
+ * The values that can be tuned without a redeploy, defaulting to their {@link Constants}. They are
+ * overridden at boot from {@link #kFile} in the deploy directory and can be changed live under
+ * {@code Tuning} in NetworkTables; see {@link TunableConfig}.
+ */
+public final class Tunables {
+  /* Relative to the deploy directory */
+  public static final String kFile = "tuning.properties";
+
+  private static final TunableConfig config = TunableConfig.getInstance();
+
+  /* Teleop */
+  public static final Key stickDeadband = config.define("swerve.stickDeadband", Constants.Swerve.stickDeadband, 0.0, 0.5);
+
+  /* Angle Motor PID Values */
+  public static final Key angleKP = config.define("swerve.angleKP", Constants.Swerve.angleKP, 0.0, 1.0);
+  public static final Key angleKI = config.define("swerve.angleKI", Constants.Swerve.angleKI, 0.0, 0.1);
+  public static final Key angleKD = config.define("swerve.angleKD", Constants.Swerve.angleKD, 0.0, 1.0);
+  public static final Key angleKFF = config.define("swerve.angleKFF", Constants.Swerve.angleKFF, 0.0, 1.0);
+
+  /* Drive Motor PID Values */
+  public static final Key driveKP = config.define("swerve.driveKP", Constants.Swerve.driveKP, 0.0, 1.0);
+  public static final Key driveKI = config.define("swerve.driveKI", Constants.Swerve.driveKI, 0.0, 0.1);
+  public static final Key driveKD = config.define("swerve.driveKD", Constants.Swerve.driveKD, 0.0, 1.0);
+  public static final Key driveKFF = config.define("swerve.driveKFF", Constants.Swerve.driveKFF, 0.0, 1.0);
+
+  /* Drive Motor Characterization Values */
+  public static final Key driveKS = config.define("swerve.driveKS", Constants.Swerve.driveKS, 0.0, 2.0);
+  public static final Key driveKV = config.define("swerve.driveKV", Constants.Swerve.driveKV, 0.0, 6.0);
+  public static final Key driveKA = config.define("swerve.driveKA", Constants.Swerve.driveKA, 0.0, 2.0);
+
+  /* Module angle offsets in degrees, indexed by module number */
+  public static final Key[] angleOffset = {
+      config.define("swerve.mod0.angleOffset", Constants.Swerve.Mod0.angleOffset, -360, 360),
+      config.define("swerve.mod1.angleOffset", Constants.Swerve.Mod1.angleOffset, -360, 360),
+      config.define("swerve.mod2.angleOffset", Constants.Swerve.Mod2.angleOffset, -360, 360),
+      config.define("swerve.mod3.angleOffset", Constants.Swerve.Mod3.angleOffset, -360, 360)};
+
+  /* Drive motor turns per module turn, indexed by module number, see CalibrateCouplingCommand */
+  public static final Key[] couplingRatio = {
+      config.define("swerve.mod0.couplingRatio", Constants.Swerve.couplingRatio, -10, 10),
+      config.define("swerve.mod1.couplingRatio", Constants.Swerve.couplingRatio, -10, 10),
+      config.define("swerve.mod2.couplingRatio", Constants.Swerve.couplingRatio, -10, 10),
+      config.define("swerve.mod3.couplingRatio", Constants.Swerve.couplingRatio, -10, 10)};
+
+  /* Lifter */
+  public static final Key liftKP = config.define("lift.kP", Constants.LiftConstants.Mod5.kP, 0.0, 100.0);
+
+  /* Intake */
+  public static final Key intakeDebounce = config.define(
+      "intake.detectionDebounceSeconds", Constants.IntakeConstants.Mod4.kDetectionDebounceSeconds, 0.0, 0.5);
+
+  /* Charge station balancing */
+  public static final Key balanceKP = config.define("balance.kP", Constants.BalanceConstants.kP, 0.0, 0.2);
+  public static final Key balanceKD = config.define("balance.kD", Constants.BalanceConstants.kD, 0.0, 0.1);
+
+  private Tunables() {}
+}
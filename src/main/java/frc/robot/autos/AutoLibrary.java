@@ -0,0 +1,255 @@
+package frc.robot.autos;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.InstantCommand;
+import edu.wpi.first.wpilibj2.command.RunCommand;
+import edu.wpi.first.wpilibj2.command.SequentialCommandGroup;
+import edu.wpi.first.wpilibj2.command.WaitCommand;
+import frc.lib.math.Pathfinder;
+import frc.robot.commands.BalanceCommand;
+import frc.robot.commands.FollowTrajectoryCommand;
+import frc.robot.commands.TurnToAngleCommand;
+import frc.robot.subsystems.Swerve;
+import frc.robot.subsystems.SwerveDrive;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Loads the autonomous routines in the deploy directory on a background thread at boot. Each file
+ * is hashed together with the limits it is validated against ({@link
+ * AutoRoutine#getValidationLimits}); a routine whose hash has a cached binary is loaded from the
+ * cache, otherwise it is parsed, validated and cached. Cache entries no file hashed to this time are
+ * deleted. Once loading is done the routines are compiled into command groups on the main thread
+ * and kept, so scheduling a routine never rebuilds it.
+ */
+public class AutoLibrary {
+  public static final String kFileExtension = ".auto";
+  private static final String kCacheExtension = ".bin";
+
+  private final File routineDirectory;
+  private final File cacheDirectory;
+  private final AtomicReference<List<AutoRoutine>> loaded = new AtomicReference<>();
+  private final Map<String, Command> commands = new LinkedHashMap<>();
+  private boolean ready = false;
+
+  /**
+   * @param routineDirectory Where the *.auto files live.
+   * @param cacheDirectory Where compiled routines are cached, keyed by file hash.
+   */
+  public AutoLibrary(File routineDirectory, File cacheDirectory) {
+    this.routineDirectory = routineDirectory;
+    this.cacheDirectory = cacheDirectory;
+  }
+
+  /** Starts loading on a background thread. Results are picked up by {@link #poll}. */
+  public void loadAsync() {
+    Thread loader = new Thread(
+        () -> loaded.set(loadAll(routineDirectory, cacheDirectory, message -> DriverStation.reportError(message, false))),
+        "AutoLibrary");
+    loader.setDaemon(true);
+    loader.setPriority(Thread.MIN_PRIORITY);
+    loader.start();
+  }
+
+  /**
+   * Called from the main thread. The first call after loading finishes compiles every routine into
+   * its command group.
+   *
+   * @param pathfinder Plans the routine's goto steps, or null if pathfinding is unavailable.
+   * @return The routines that became available on this call, or an empty list.
+   */
+  public List<AutoRoutine> poll(Swerve swerve, Pathfinder pathfinder) {
+    if (ready) {
+      return Collections.emptyList();
+    }
+    List<AutoRoutine> result = loaded.getAndSet(null);
+    if (result == null) {
+      return Collections.emptyList();
+    }
+    ready = true;
+    for (AutoRoutine routine : result) {
+      commands.put(routine.id, compile(routine, swerve, pathfinder));
+    }
+    return result;
+  }
+
+  /** @return The compiled command for a routine id, or null if there is no such routine (yet). */
+  public Command getCommand(String id) {
+    return commands.get(id);
+  }
+
+  public boolean isReady() {
+    return ready;
+  }
+
+  /**
+   * Loads every routine file in a directory without touching robot hardware, so it can also be
+   * used off the robot. Bad files are reported and skipped.
+   *
+   * @param cacheDirectory Where compiled routines are cached, or null to always parse.
+   * @param errors Receives a message for every file that could not be loaded or cached.
+   */
+  public static List<AutoRoutine> loadAll(File routineDirectory, File cacheDirectory, Consumer<String> errors) {
+    List<AutoRoutine> result = new ArrayList<>();
+    File[] files = routineDirectory.listFiles((dir, name) -> name.endsWith(kFileExtension));
+    if (files == null) {
+      return result;
+    }
+    Arrays.sort(files);
+    if (cacheDirectory != null) {
+      cacheDirectory.mkdirs();
+    }
+
+    Set<String> cacheNames = new HashSet<>();
+    for (File file : files) {
+      String id = file.getName().substring(0, file.getName().length() - kFileExtension.length());
+      try {
+        byte[] contents = Files.readAllBytes(file.toPath());
+        File cached = cacheDirectory != null ? new File(cacheDirectory, hash(id, contents) + kCacheExtension) : null;
+        if (cached != null) {
+          cacheNames.add(cached.getName());
+        }
+        AutoRoutine routine = cached != null ? readCache(cached) : null;
+        if (routine == null) {
+          routine = AutoRoutine.parse(id, new String(contents, StandardCharsets.UTF_8));
+          if (cached != null) {
+            writeCache(cached, routine, errors);
+          }
+        }
+        result.add(routine);
+      } catch (IOException | IllegalArgumentException e) {
+        errors.accept("Skipping auto routine " + file.getName() + ": " + e.getMessage());
+      }
+    }
+    if (cacheDirectory != null) {
+      pruneCache(cacheDirectory, cacheNames, errors);
+    }
+    return result;
+  }
+
+  /* Deletes entries for routine files that changed or are gone, or for limits that changed. */
+  private static void pruneCache(File cacheDirectory, Set<String> keep, Consumer<String> errors) {
+    File[] entries = cacheDirectory.listFiles((dir, name) -> name.endsWith(kCacheExtension));
+    if (entries == null) {
+      return;
+    }
+    for (File entry : entries) {
+      if (!keep.contains(entry.getName()) && !entry.delete()) {
+        errors.accept("Could not delete stale auto cache entry " + entry.getName());
+      }
+    }
+  }
+
+  /** Builds the command group for a routine. */
+  public static Command compile(AutoRoutine routine, SwerveDrive swerve, Pathfinder pathfinder) {
+    SequentialCommandGroup group = new SequentialCommandGroup();
+    if (routine.start != null) {
+      Pose2d start = new Pose2d(routine.start[0], routine.start[1], Rotation2d.fromDegrees(routine.start[2]));
+      group.addCommands(new InstantCommand(() -> swerve.resetOdometry(start)));
+    }
+    for (int step = 0; step < routine.getStepCount(); step++) {
+      group.addCommands(compileStep(routine, step, swerve, pathfinder));
+    }
+    group.setName(routine.name);
+    return group;
+  }
+
+  private static Command compileStep(AutoRoutine routine, int step, SwerveDrive swerve, Pathfinder pathfinder) {
+    switch (routine.getOp(step)) {
+      case AutoRoutine.kOpDrive:
+        Translation2d translation = new Translation2d(routine.getArg(step, 0), routine.getArg(step, 1));
+        double rotation = routine.getArg(step, 2);
+        boolean fieldRelative = routine.getArg(step, AutoRoutine.kArgFieldRelative) != 0;
+        boolean openLoop = routine.getArg(step, AutoRoutine.kArgOpenLoop) != 0;
+        return new InstantCommand(() -> swerve.drive(translation, rotation, fieldRelative, openLoop));
+      case AutoRoutine.kOpWait:
+        return new WaitCommand(routine.getArg(step, 0));
+      case AutoRoutine.kOpTurn:
+        return new TurnToAngleCommand(swerve, routine.getArg(step, 0), routine.getArg(step, 1));
+      case AutoRoutine.kOpSetX:
+        return new RunCommand(swerve::setX, swerve).withTimeout(routine.getArg(step, 0));
+      case AutoRoutine.kOpStop:
+        return new InstantCommand(() -> swerve.drive(new Translation2d(0, 0), 0, false, false));
+      case AutoRoutine.kOpGoto:
+        // Planned when the step starts, from wherever the robot actually is.
+        Pose2d goal = new Pose2d(routine.getArg(step, 0), routine.getArg(step, 1),
+            Rotation2d.fromDegrees(routine.getArg(step, 2)));
+        return new FollowTrajectoryCommand(swerve,
+            () -> pathfinder != null ? pathfinder.plan(swerve.getPose(), goal) : null);
+      case AutoRoutine.kOpBalance:
+        return new BalanceCommand(swerve, routine.getArg(step, 0)).withTimeout(routine.getArg(step, 1));
+      default:
+        throw new IllegalStateException("Unknown auto op " + routine.getOp(step));
+    }
+  }
+
+  private static AutoRoutine readCache(File cached) {
+    if (!cached.isFile()) {
+      return null;
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cached)))) {
+      return AutoRoutine.read(in);
+    } catch (IOException e) {
+      // A stale or corrupt cache entry just means parsing again.
+      return null;
+    }
+  }
+
+  private static void writeCache(File cached, AutoRoutine routine, Consumer<String> errors) {
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(cached)))) {
+      routine.write(out);
+    } catch (IOException e) {
+      errors.accept("Could not cache auto routine " + routine.id + ": " + e.getMessage());
+    }
+  }
+
+  /**
+   * The cache key covers the id too, since the id comes from the file name, and the validation
+   * limits, so a routine that would now be rejected is parsed again rather than loaded.
+   */
+  private static String hash(String id, byte[] contents) {
+    try {
+      MessageDigest sha = MessageDigest.getInstance("SHA-256");
+      for (double limit : AutoRoutine.getValidationLimits()) {
+        long bits = Double.doubleToLongBits(limit);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+          sha.update((byte) (bits >>> shift));
+        }
+      }
+      sha.update(id.getBytes(StandardCharsets.UTF_8));
+      sha.update((byte) 0);
+      byte[] digest = sha.digest(contents);
+      StringBuilder hex = new StringBuilder();
+      for (byte b : digest) {
+        hex.append(String.format("%02x", b));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
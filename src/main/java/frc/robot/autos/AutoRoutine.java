@@ -0,0 +1,294 @@
+package frc.robot.autos;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import frc.robot.Constants;
+
+/**
+ * An autonomous routine compiled from a deploy directory file. The compiled form is a flat list of
+ * steps (an op code plus up to {@link #kArgsPerStep} numeric arguments) so it can be cached in a
+ * compact binary form and turned into commands without parsing again.
+ *
+ * <p>File format, one step per line, '#' starts a comment:
+ *
+ * <pre>
+ * name straight forward            # chooser label (defaults to the file name)
+ * start 1.8 4.4 0                  # optional: starting pose, odometry is reset to it
+ * target 4.0 4.4 0                 # optional: where the routine should end, for evaluation
+ * drive 2.2 0 0 robot closed       # vx vy omega [field|robot] [open|closed]
+ * wait 2                           # seconds
+ * turn 90 3                        # degrees, timeout seconds
+ * setx 1.5                         # hold the X formation for seconds
+ * stop                             # drive(0, 0, 0)
+ * goto 5.5 4.2 180                 # pathfind to x y (field meters) and heading degrees
+ * balance 1.5 12                   # climb the charge station at a speed (signed), level it, timeout
+ * </pre>
+ */
+public class AutoRoutine {
+  /** Bump when the step layout or op codes change; stale cache files are then ignored. */
+  public static final int kFormatVersion = 4;
+  public static final int kArgsPerStep = 5;
+
+  public static final int kOpDrive = 0;
+  public static final int kOpWait = 1;
+  public static final int kOpTurn = 2;
+  public static final int kOpSetX = 3;
+  public static final int kOpStop = 4;
+  public static final int kOpGoto = 5;
+  public static final int kOpBalance = 6;
+
+  /* Drive flags, stored as 0/1 in the step arguments. */
+  public static final int kArgFieldRelative = 3;
+  public static final int kArgOpenLoop = 4;
+
+  private static final double kMaxWaitSeconds = 15.0;
+
+  /**
+   * @return The limits {@link #parse} checks steps against, with the format version. A cached
+   *     routine was only validated against the values it was parsed with, so these belong in its
+   *     cache key.
+   */
+  public static double[] getValidationLimits() {
+    return new double[] {
+      kFormatVersion,
+      kMaxWaitSeconds,
+      Constants.Swerve.maxSpeed,
+      Constants.Swerve.maxAngularVelocity,
+      Constants.AutoConstants.kFieldLengthMeters,
+      Constants.AutoConstants.kFieldWidthMeters,
+    };
+  }
+
+  public final String id;
+  public final String name;
+  /* x, y, degrees, or null when the file does not declare them */
+  public final double[] start;
+  public final double[] target;
+  private final int[] ops;
+  private final double[] args;
+
+  public AutoRoutine(String id, String name, double[] start, double[] target, int[] ops, double[] args) {
+    this.id = id;
+    this.name = name;
+    this.start = start;
+    this.target = target;
+    this.ops = ops;
+    this.args = args;
+  }
+
+  public int getStepCount() {
+    return ops.length;
+  }
+
+  public int getOp(int step) {
+    return ops[step];
+  }
+
+  public double getArg(int step, int index) {
+    return args[step * kArgsPerStep + index];
+  }
+
+  /**
+   * Parses and validates a routine file.
+   *
+   * @param id The routine's id, normally the file name without extension.
+   * @param text The file contents.
+   * @throws IllegalArgumentException describing the first bad line.
+   */
+  public static AutoRoutine parse(String id, String text) {
+    String name = id;
+    double[] start = null;
+    double[] target = null;
+    List<Integer> ops = new ArrayList<>();
+    List<double[]> args = new ArrayList<>();
+
+    try (BufferedReader reader = new BufferedReader(new StringReader(text))) {
+      String line;
+      int lineNumber = 0;
+      while ((line = reader.readLine()) != null) {
+        lineNumber++;
+        int comment = line.indexOf('#');
+        if (comment >= 0) {
+          line = line.substring(0, comment);
+        }
+        line = line.trim();
+        if (line.isEmpty()) {
+          continue;
+        }
+        String[] tokens = line.split("\\s+");
+        String where = id + ":" + lineNumber + ": ";
+        double[] step = new double[kArgsPerStep];
+
+        switch (tokens[0]) {
+          case "name":
+            name = line.substring(4).trim();
+            continue;
+          case "start":
+            start = pose(tokens, where);
+            continue;
+          case "target":
+            target = pose(tokens, where);
+            continue;
+          case "drive":
+            expectArgs(tokens, 3, 5, where);
+            step[0] = number(tokens[1], -Constants.Swerve.maxSpeed, Constants.Swerve.maxSpeed, where);
+            step[1] = number(tokens[2], -Constants.Swerve.maxSpeed, Constants.Swerve.maxSpeed, where);
+            step[2] = number(tokens[3],
+                -Constants.Swerve.maxAngularVelocity, Constants.Swerve.maxAngularVelocity, where);
+            step[kArgFieldRelative] = tokens.length > 4 ? flag(tokens[4], "field", "robot", where) : 0;
+            step[kArgOpenLoop] = tokens.length > 5 ? flag(tokens[5], "open", "closed", where) : 0;
+            ops.add(kOpDrive);
+            break;
+          case "wait":
+            expectArgs(tokens, 1, 1, where);
+            step[0] = number(tokens[1], 0, kMaxWaitSeconds, where);
+            ops.add(kOpWait);
+            break;
+          case "turn":
+            expectArgs(tokens, 2, 2, where);
+            step[0] = number(tokens[1], -360, 360, where);
+            step[1] = number(tokens[2], 0, kMaxWaitSeconds, where);
+            ops.add(kOpTurn);
+            break;
+          case "setx":
+            expectArgs(tokens, 1, 1, where);
+            step[0] = number(tokens[1], 0, kMaxWaitSeconds, where);
+            ops.add(kOpSetX);
+            break;
+          case "stop":
+            expectArgs(tokens, 0, 0, where);
+            ops.add(kOpStop);
+            break;
+          case "goto":
+            expectArgs(tokens, 3, 3, where);
+            step[0] = number(tokens[1], 0, Constants.AutoConstants.kFieldLengthMeters, where);
+            step[1] = number(tokens[2], 0, Constants.AutoConstants.kFieldWidthMeters, where);
+            step[2] = number(tokens[3], -360, 360, where);
+            ops.add(kOpGoto);
+            break;
+          case "balance":
+            expectArgs(tokens, 2, 2, where);
+            step[0] = number(tokens[1], -Constants.Swerve.maxSpeed, Constants.Swerve.maxSpeed, where);
+            step[1] = number(tokens[2], 0, kMaxWaitSeconds, where);
+            ops.add(kOpBalance);
+            break;
+          default:
+            throw new IllegalArgumentException(where + "unknown step '" + tokens[0] + "'");
+        }
+        args.add(step);
+      }
+    } catch (IOException e) {
+      // Reading from a string cannot fail.
+      throw new IllegalStateException(e);
+    }
+
+    int[] opArray = new int[ops.size()];
+    double[] argArray = new double[ops.size() * kArgsPerStep];
+    for (int i = 0; i < opArray.length; i++) {
+      opArray[i] = ops.get(i);
+      System.arraycopy(args.get(i), 0, argArray, i * kArgsPerStep, kArgsPerStep);
+    }
+    return new AutoRoutine(id, name, start, target, opArray, argArray);
+  }
+
+  private static double[] pose(String[] tokens, String where) {
+    expectArgs(tokens, 3, 3, where);
+    return new double[] {
+      number(tokens[1], 0, Constants.AutoConstants.kFieldLengthMeters, where),
+      number(tokens[2], 0, Constants.AutoConstants.kFieldWidthMeters, where),
+      number(tokens[3], -360, 360, where)
+    };
+  }
+
+  private static void expectArgs(String[] tokens, int min, int max, String where) {
+    int count = tokens.length - 1;
+    if (count < min || count > max) {
+      throw new IllegalArgumentException(
+          where + "'" + tokens[0] + "' takes " + (min == max ? min : min + " to " + max) + " arguments");
+    }
+  }
+
+  private static double number(String token, double min, double max, String where) {
+    double value;
+    try {
+      value = Double.parseDouble(token);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(where + "'" + token + "' is not a number");
+    }
+    if (value < min || value > max) {
+      throw new IllegalArgumentException(where + value + " is outside " + min + " to " + max);
+    }
+    return value;
+  }
+
+  private static double flag(String token, String whenTrue, String whenFalse, String where) {
+    if (token.equals(whenTrue)) {
+      return 1;
+    } else if (token.equals(whenFalse)) {
+      return 0;
+    }
+    throw new IllegalArgumentException(where + "expected '" + whenTrue + "' or '" + whenFalse + "'");
+  }
+
+  /** Writes the compiled routine in the binary cache format. */
+  public void write(DataOutputStream out) throws IOException {
+    out.writeInt(kFormatVersion);
+    out.writeUTF(id);
+    out.writeUTF(name);
+    writePose(out, start);
+    writePose(out, target);
+    out.writeInt(ops.length);
+    for (int i = 0; i < ops.length; i++) {
+      out.writeByte(ops[i]);
+      for (int a = 0; a < kArgsPerStep; a++) {
+        out.writeDouble(args[i * kArgsPerStep + a]);
+      }
+    }
+  }
+
+  /**
+   * Reads a routine written by {@link #write}.
+   *
+   * @throws IOException if the data is truncated or from another format version.
+   */
+  public static AutoRoutine read(DataInputStream in) throws IOException {
+    if (in.readInt() != kFormatVersion) {
+      throw new IOException("auto cache format version mismatch");
+    }
+    String id = in.readUTF();
+    String name = in.readUTF();
+    double[] start = readPose(in);
+    double[] target = readPose(in);
+    int count = in.readInt();
+    int[] ops = new int[count];
+    double[] args = new double[count * kArgsPerStep];
+    for (int i = 0; i < count; i++) {
+      ops[i] = in.readByte();
+      for (int a = 0; a < kArgsPerStep; a++) {
+        args[i * kArgsPerStep + a] = in.readDouble();
+      }
+    }
+    return new AutoRoutine(id, name, start, target, ops, args);
+  }
+
+  private static void writePose(DataOutputStream out, double[] pose) throws IOException {
+    out.writeBoolean(pose != null);
+    if (pose != null) {
+      for (double value : pose) {
+        out.writeDouble(value);
+      }
+    }
+  }
+
+  private static double[] readPose(DataInputStream in) throws IOException {
+    if (!in.readBoolean()) {
+      return null;
+    }
+    return new double[] {in.readDouble(), in.readDouble(), in.readDouble()};
+  }
+}
@@ -0,0 +1,87 @@
+package frc.robot.commands;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj2.command.CommandBase;
+import frc.lib.config.TunableConfig;
+import frc.lib.math.BalanceController;
+import frc.lib.util.TelemetryDispatcher;
+import frc.robot.Constants.BalanceConstants;
+import frc.robot.Tunables;
+import frc.robot.subsystems.SwerveDrive;
+
+/**
+ * Drives onto the charge station and levels it with a {@link BalanceController}. The wheels are
+ * locked in the X formation while the station is balanced and when the command ends; if the station
+ * tips again the controller takes over again, so the command runs until it is interrupted or times
+ * out. Without an IMU that measures pitch it ends immediately.
+ *
+ * <p>Publishes [pitch, pitch rate, output, state] under {@code /Balance/state} every loop, where the
+ * state is 0 approaching, 1 on the station, 2 tipping and 3 balanced.
+ */
+public class BalanceCommand extends CommandBase {
+  private static final TelemetryDispatcher telemetry = TelemetryDispatcher.getInstance();
+  private static final int stateChannel = telemetry.register("/Balance/state", 4);
+
+  private final SwerveDrive s_Swerve;
+  private final double approachSpeed;
+  private final BalanceController controller = new BalanceController(
+      BalanceConstants.kMaxSpeed,
+      BalanceConstants.kTippingRate,
+      BalanceConstants.kLevelTolerance,
+      BalanceConstants.kSettleSeconds,
+      BalanceConstants.kClimbingDegrees);
+  private final double[] state = new double[4];
+  private boolean locked;
+
+  /**
+   * @param approachSpeed Robot relative speed to drive at until the robot is on the station,
+   *     negative to climb backwards, or zero if it is already on the station.
+   */
+  public BalanceCommand(SwerveDrive s_Swerve, double approachSpeed) {
+    this.s_Swerve = s_Swerve;
+    this.approachSpeed = approachSpeed;
+    addRequirements(s_Swerve);
+  }
+
+  @Override
+  public void initialize() {
+    if (!s_Swerve.canMeasurePitch()) {
+      DriverStation.reportWarning("BalanceCommand: the IMU does not measure pitch", false);
+    }
+    TunableConfig config = TunableConfig.getInstance();
+    controller.setGains(config.get(Tunables.balanceKP), config.get(Tunables.balanceKD));
+    controller.reset(approachSpeed);
+    locked = false;
+  }
+
+  @Override
+  public void execute() {
+    double pitch = s_Swerve.getPitchDegrees();
+    double pitchRate = s_Swerve.getPitchRate();
+    double speed = controller.calculate(pitch, pitchRate, s_Swerve.getImuTimestamp());
+    if (!controller.isBalanced()) {
+      s_Swerve.setChassisSpeeds(speed, 0, 0);
+      locked = false;
+    } else if (!locked) {
+      // The request stays in force, so the wheels only need locking once.
+      s_Swerve.setX();
+      locked = true;
+    }
+
+    state[0] = pitch;
+    state[1] = pitchRate;
+    state[2] = controller.isBalanced() ? 0 : speed;
+    state[3] = controller.isBalanced() ? 3 : controller.isTipping() ? 2 : controller.isOnStation() ? 1 : 0;
+    telemetry.publish(stateChannel, state);
+  }
+
+  @Override
+  public void end(boolean interrupted) {
+    s_Swerve.setX();
+  }
+
+  @Override
+  public boolean isFinished() {
+    return !s_Swerve.canMeasurePitch();
+  }
+}
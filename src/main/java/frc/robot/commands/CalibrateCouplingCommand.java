@@ -0,0 +1,82 @@
+package frc.robot.commands;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.CommandBase;
+import frc.lib.config.TunableConfig;
+import frc.robot.Constants;
+import frc.robot.Tunables;
+import frc.robot.subsystems.Swerve;
+
+/**
+ * Measures each module's steer-to-drive coupling ratio. With the robot on the carpet the wheels
+ * cannot roll as a module turns in place, so a coasting drive motor is turned by the gearing; the
+ * ratio is how many times it turned per module turn. Every module is turned {@link
+ * Constants.Swerve#couplingCalibrationTurns} at {@link Constants.Swerve#couplingCalibrationRate},
+ * then held for {@link Constants.Swerve#couplingCalibrationSettle} before measuring.
+ *
+ * <p>The measured ratios are applied live to {@code swerve.modN.couplingRatio} and reported on the
+ * driver station; copy them into the tuning file to keep them. An interrupted run changes nothing.
+ */
+public class CalibrateCouplingCommand extends CommandBase {
+  /* Below this much module turn the ratio would be mostly encoder noise, in degrees */
+  private static final double kMinSteerDegrees = 180.0;
+
+  private final Swerve s_Swerve;
+  private final Timer timer = new Timer();
+  private final double[] startDriveRotations = new double[4];
+  private final double[] startSteerDegrees = new double[4];
+  private final double steerDegrees = Constants.Swerve.couplingCalibrationTurns * 360.0;
+  private final double steerSeconds = steerDegrees / Constants.Swerve.couplingCalibrationRate;
+
+  public CalibrateCouplingCommand(Swerve s_Swerve) {
+    this.s_Swerve = s_Swerve;
+    addRequirements(s_Swerve);
+  }
+
+  @Override
+  public void initialize() {
+    for (int i = 0; i < 4; i++) {
+      startDriveRotations[i] = s_Swerve.getDriveMotorRotations(i);
+      startSteerDegrees[i] = s_Swerve.getModuleAngleDegrees(i);
+    }
+    s_Swerve.setDriveCoast(true);
+    timer.reset();
+    timer.start();
+  }
+
+  @Override
+  public void execute() {
+    s_Swerve.steerInPlace(Math.min(timer.get(), steerSeconds) * Constants.Swerve.couplingCalibrationRate);
+  }
+
+  @Override
+  public void end(boolean interrupted) {
+    s_Swerve.setDriveCoast(false);
+    s_Swerve.setChassisSpeeds(0, 0, 0);
+    if (interrupted) {
+      return;
+    }
+    TunableConfig config = TunableConfig.getInstance();
+    for (int i = 0; i < 4; i++) {
+      double turns = (s_Swerve.getModuleAngleDegrees(i) - startSteerDegrees[i]) / 360.0;
+      if (Math.abs(turns) < kMinSteerDegrees / 360.0) {
+        DriverStation.reportError("CalibrateCoupling: module " + i + " only turned " + turns * 360.0
+            + " degrees, ratio left unchanged", false);
+        continue;
+      }
+      double ratio = (s_Swerve.getDriveMotorRotations(i) - startDriveRotations[i]) / turns;
+      if (config.set(Tunables.couplingRatio[i], ratio)) {
+        DriverStation.reportWarning("CalibrateCoupling: " + Tunables.couplingRatio[i].name + "=" + ratio, false);
+      } else {
+        DriverStation.reportError("CalibrateCoupling: module " + i + " measured " + ratio
+            + ", out of range, ratio left unchanged", false);
+      }
+    }
+  }
+
+  @Override
+  public boolean isFinished() {
+    return timer.hasElapsed(steerSeconds + Constants.Swerve.couplingCalibrationSettle);
+  }
+}
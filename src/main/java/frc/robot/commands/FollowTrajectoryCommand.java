@@ -0,0 +1,160 @@
+package frc.robot.commands;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.controller.PIDController;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.CommandBase;
+import frc.lib.math.HolonomicTrajectory;
+import frc.lib.util.TelemetryDispatcher;
+import frc.robot.Constants.AutoConstants;
+import frc.robot.subsystems.SwerveDrive;
+import java.util.function.Supplier;
+
+/**
+ * Follows a {@link HolonomicTrajectory} with the trajectory's velocity and angular rate as
+ * feedforward plus PID on the pose error. The trajectory is sampled through a cursor that only
+ * moves forward, and all per loop state is kept in fields.
+ *
+ * <p>Tracking error is published every loop under {@code Trajectory/tracking} as [time, x error, y
+ * error, heading error] and summarized under {@code Trajectory/summary} when the command ends.
+ */
+public class FollowTrajectoryCommand extends CommandBase {
+  public static final int kSummaryDuration = 0;
+  public static final int kSummaryRmsError = 1;
+  public static final int kSummaryMaxError = 2;
+  public static final int kSummaryMaxHeadingError = 3;
+  public static final int kSummaryFinalError = 4;
+  public static final int kSummaryOvertime = 5;
+
+  /* Shared by every instance, so each goto step does not add its own topic */
+  private static final TelemetryDispatcher telemetry = TelemetryDispatcher.getInstance();
+  private static final int trackingChannel = telemetry.register("/Trajectory/tracking", 4);
+  private static final int summaryChannel = telemetry.register("/Trajectory/summary", 6);
+
+  private final SwerveDrive s_Swerve;
+  private final Supplier<HolonomicTrajectory> trajectorySupplier;
+
+  private final PIDController xController = new PIDController(AutoConstants.kPXController, 0, 0);
+  private final PIDController yController = new PIDController(AutoConstants.kPYController, 0, 0);
+  private final PIDController thetaController = new PIDController(AutoConstants.kPThetaController, 0, 0);
+
+  private final double[] tracking = new double[4];
+  private final double[] summary = new double[6];
+
+  private HolonomicTrajectory trajectory;
+  private int cursor;
+  private double startTime;
+  private double elapsed;
+  private double positionError;
+  private double headingError;
+  private double sumSquaredError;
+  private int samples;
+  private double maxError;
+  private double maxHeadingError;
+
+  /**
+   * @param trajectorySupplier Called when the command starts, so the trajectory can be planned from
+   *     wherever the robot is then. A null trajectory ends the command immediately.
+   */
+  public FollowTrajectoryCommand(SwerveDrive s_Swerve, Supplier<HolonomicTrajectory> trajectorySupplier) {
+    this.s_Swerve = s_Swerve;
+    this.trajectorySupplier = trajectorySupplier;
+    thetaController.enableContinuousInput(-Math.PI, Math.PI);
+    addRequirements(s_Swerve);
+  }
+
+  public FollowTrajectoryCommand(SwerveDrive s_Swerve, HolonomicTrajectory trajectory) {
+    this(s_Swerve, () -> trajectory);
+  }
+
+  @Override
+  public void initialize() {
+    trajectory = trajectorySupplier.get();
+    if (trajectory == null) {
+      DriverStation.reportWarning("FollowTrajectoryCommand: no trajectory to follow", false);
+      return;
+    }
+    cursor = 0;
+    startTime = Timer.getFPGATimestamp();
+    elapsed = 0;
+    sumSquaredError = 0;
+    samples = 0;
+    maxError = 0;
+    maxHeadingError = 0;
+    xController.reset();
+    yController.reset();
+    thetaController.reset();
+  }
+
+  @Override
+  public void execute() {
+    if (trajectory == null) {
+      return;
+    }
+    elapsed = Timer.getFPGATimestamp() - startTime;
+    cursor = trajectory.seek(elapsed, cursor);
+
+    double x = trajectory.interpolate(trajectory.x, cursor, elapsed);
+    double y = trajectory.interpolate(trajectory.y, cursor, elapsed);
+    double heading = trajectory.interpolateHeading(cursor, elapsed);
+    double vx = trajectory.interpolate(trajectory.vx, cursor, elapsed);
+    double vy = trajectory.interpolate(trajectory.vy, cursor, elapsed);
+    double omega = trajectory.interpolate(trajectory.omega, cursor, elapsed);
+
+    Pose2d pose = s_Swerve.getPose();
+    double robotHeading = pose.getRotation().getRadians();
+    double fieldVx = vx + xController.calculate(pose.getX(), x);
+    double fieldVy = vy + yController.calculate(pose.getY(), y);
+    double rotation = omega + thetaController.calculate(robotHeading, heading);
+
+    // Field to robot relative, done by hand to avoid the Rotation2d and ChassisSpeeds allocations.
+    double cos = Math.cos(robotHeading);
+    double sin = Math.sin(robotHeading);
+    s_Swerve.setChassisSpeeds(fieldVx * cos + fieldVy * sin, -fieldVx * sin + fieldVy * cos, rotation);
+
+    double errorX = x - pose.getX();
+    double errorY = y - pose.getY();
+    positionError = Math.hypot(errorX, errorY);
+    headingError = MathUtil.angleModulus(heading - robotHeading);
+    sumSquaredError += positionError * positionError;
+    samples++;
+    maxError = Math.max(maxError, positionError);
+    maxHeadingError = Math.max(maxHeadingError, Math.abs(headingError));
+
+    tracking[0] = elapsed;
+    tracking[1] = errorX;
+    tracking[2] = errorY;
+    tracking[3] = headingError;
+    telemetry.publish(trackingChannel, tracking);
+  }
+
+  @Override
+  public void end(boolean interrupted) {
+    s_Swerve.setChassisSpeeds(0, 0, 0);
+    if (trajectory == null) {
+      return;
+    }
+    summary[kSummaryDuration] = elapsed;
+    summary[kSummaryRmsError] = samples > 0 ? Math.sqrt(sumSquaredError / samples) : 0;
+    summary[kSummaryMaxError] = maxError;
+    summary[kSummaryMaxHeadingError] = maxHeadingError;
+    summary[kSummaryFinalError] = positionError;
+    summary[kSummaryOvertime] = Math.max(0, elapsed - trajectory.getTotalTime());
+    telemetry.publish(summaryChannel, summary);
+  }
+
+  @Override
+  public boolean isFinished() {
+    if (trajectory == null) {
+      return true;
+    }
+    if (elapsed < trajectory.getTotalTime()) {
+      return false;
+    }
+    boolean settled = positionError < AutoConstants.kTrajectoryPositionTolerance
+        && Math.abs(headingError) < AutoConstants.kTrajectoryHeadingTolerance;
+    return settled || elapsed > trajectory.getTotalTime() + AutoConstants.kTrajectorySettleTimeout;
+  }
+}
@@ -1,28 +1,30 @@
-// package frc.robot.commands;
+package frc.robot.commands;
 
-// import edu.wpi.first.wpilibj2.command.CommandBase;
-// import frc.robot.subsystems.Intaker;
+import edu.wpi.first.wpilibj2.command.CommandBase;
+import frc.robot.subsystems.Intaker;
 
-// public class IntakeIn extends CommandBase {
-//     Intaker m_Intaker;
+/** Runs the intake until a game piece is detected, or until interrupted. */
+public class IntakeIn extends CommandBase {
+    Intaker m_Intaker;
 
-//     public IntakeIn(Intaker intake) {
-//         m_Intaker = intake;
-//         addRequirements(m_Intaker);
-//     }
+    public IntakeIn(Intaker intake) {
+        m_Intaker = intake;
+        addRequirements(m_Intaker);
+    }
 
-//     @Override
-//     public void execute() {
-//         m_Intaker.pull();
-//     }
+    @Override
+    public void initialize() {
+        m_Intaker.pull();
+    }
 
-//     @Override
-//     public boolean isFinished() {
-//         return false;
-//     }
+    @Override
+    public boolean isFinished() {
+        // The intake stops itself on detection.
+        return m_Intaker.hasGamePiece();
+    }
 
-//     @Override
-//     public void end(boolean interrupted) {
-//         m_Intaker.stop();
-//     }
-// }
+    @Override
+    public void end(boolean interrupted) {
+        m_Intaker.stop();
+    }
+}
@@ -1,28 +1,28 @@
-// package frc.robot.commands;
+package frc.robot.commands;
 
-// import edu.wpi.first.wpilibj2.command.CommandBase;
-// import frc.robot.subsystems.Intaker;
+import edu.wpi.first.wpilibj2.command.CommandBase;
+import frc.robot.subsystems.Intaker;
 
-// public class IntakeOut extends CommandBase {
-//     Intaker m_Intaker;
+public class IntakeOut extends CommandBase {
+    Intaker m_Intaker;
 
-//     public IntakeOut(Intaker intake) {
-//         m_Intaker = intake;
-//         addRequirements(m_Intaker);
-//     }
+    public IntakeOut(Intaker intake) {
+        m_Intaker = intake;
+        addRequirements(m_Intaker);
+    }
 
-//     @Override
-//     public void execute() {
-//         m_Intaker.push();
-//     }
+    @Override
+    public void initialize() {
+        m_Intaker.push();
+    }
 
-//     @Override
-//     public boolean isFinished() {
-//         return false;
-//     }
+    @Override
+    public boolean isFinished() {
+        return false;
+    }
 
-//     @Override
-//     public void end(boolean interrupted) {
-//         m_Intaker.stop();
-//     }
-// }
\ No newline at end of file
+    @Override
+    public void end(boolean interrupted) {
+        m_Intaker.stop();
+    }
+}
@@ -4,7 +4,10 @@ import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.filter.SlewRateLimiter;
 import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.wpilibj2.command.CommandBase;
+import frc.lib.config.TunableConfig;
+import frc.lib.util.LatencyTracer;
 import frc.robot.Constants;
+import frc.robot.Tunables;
 import frc.robot.subsystems.Swerve;
 import java.util.function.BooleanSupplier;
 import java.util.function.DoubleSupplier;
@@ -43,6 +46,9 @@ public class TeleopSwerve extends CommandBase {
 
   @Override
   public void execute() {
+    // Stamp the moment the driver's input is read, for end to end latency tracing.
+    long inputTimestamp = LatencyTracer.now();
+    double deadband = TunableConfig.getInstance().get(Tunables.stickDeadband);
 
     double defaultSpeedMultiplier = 0.7;
     double speedMultiplier = defaultSpeedMultiplier;
@@ -67,14 +73,14 @@ public class TeleopSwerve extends CommandBase {
             // applyDeadband() clamps values that are near 0 to 0.0. This ensures that the
             // joystick when at a neutral position will result in a halted robot, even if
             // the joystick leans slightly in one direction.
-                MathUtil.applyDeadband(translationSup.getAsDouble(), Constants.Swerve.stickDeadband));
+                MathUtil.applyDeadband(translationSup.getAsDouble(), deadband));
     double strafeVal = // right/left
         strafeLimiter.calculate(
             speedMultiplier *
-                MathUtil.applyDeadband(strafeSup.getAsDouble(), Constants.Swerve.stickDeadband));
+                MathUtil.applyDeadband(strafeSup.getAsDouble(), deadband));
     double rotationVal = rotationLimiter.calculate(
         speedMultiplier *
-            MathUtil.applyDeadband(rotationSup.getAsDouble(), Constants.Swerve.stickDeadband));
+            MathUtil.applyDeadband(rotationSup.getAsDouble(), deadband));
 
     /* Drive */
     // Instruct the Swerve subsystem to apply the calculated values.
@@ -85,7 +91,9 @@ public class TeleopSwerve extends CommandBase {
         new Translation2d(translationVal, strafeVal).times(Constants.Swerve.maxSpeed),
         rotationVal * Constants.Swerve.maxAngularVelocity,
         robotCentricSup.getAsBoolean(),
-        // Pass isOpenLoop as true
-        true);
+        // Closed loop on wheel velocity unless configured otherwise, so the response does not
+        // change with battery voltage.
+        Constants.Swerve.teleopOpenLoop,
+        inputTimestamp);
   }
 }
@@ -1,7 +1,8 @@
 package frc.robot.commands;
 
+import frc.lib.util.TelemetryDispatcher;
 import frc.robot.Constants;
-import frc.robot.subsystems.Swerve;
+import frc.robot.subsystems.SwerveDrive;
 import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.CommandBase;
@@ -11,13 +12,16 @@ import edu.wpi.first.math.geometry.Translation2d;
 
 
 public class TurnToAngleCommand extends CommandBase {
+    private static final TelemetryDispatcher telemetry = TelemetryDispatcher.getInstance();
+    private static final int gyroAngleChannel = telemetry.register("gyroAngle", 1,
+        value -> SmartDashboard.putNumber("gyroAngle", value[0]));
 
-    private final Swerve m_robotDrive;
+    private final SwerveDrive m_robotDrive;
     private boolean complete = false;
     private double angle;
     private Timer timer = new Timer();
     private double timeout;
-    public TurnToAngleCommand(Swerve subsystem, double degrees, double timeoutS){
+    public TurnToAngleCommand(SwerveDrive subsystem, double degrees, double timeoutS){
         m_robotDrive = subsystem;
         angle = degrees;
         timeout = timeoutS;
@@ -36,15 +40,10 @@ public class TurnToAngleCommand extends CommandBase {
         double gyroAngle = m_robotDrive.getYaw().getDegrees();
 
         final double kP = 0.2;
-        SmartDashboard.putNumber("gyroAngle", gyroAngle);
+        telemetry.publish(gyroAngleChannel, gyroAngle);
     
-        if (angle > 180) {
-            angle = -(360 - angle);
-        } else if (angle < -180) {
-            angle = 360 + angle;
-        }
-    
-        double err = angle - gyroAngle;
+        // The yaw is continuous (and 360 at rest with an inverted gyro), so turn the short way.
+        double err = MathUtil.inputModulus(angle - gyroAngle, -180, 180);
         double speed = MathUtil.clamp(err * kP, -Constants.Swerve.maxAngularVelocity*0.5, Constants.Swerve.maxAngularVelocity*0.5);
     
         if (Math.abs(err) > 2 && timer.get() < timeout) {
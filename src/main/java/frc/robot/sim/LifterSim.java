@@ -0,0 +1,72 @@
+package frc.robot.sim;
+
+import edu.wpi.first.math.system.plant.DCMotor;
+import edu.wpi.first.wpilibj.simulation.ElevatorSim;
+import frc.robot.Constants.LiftConstants;
+
+/**
+ * The lift from {@link LiftConstants.Mod5} as an {@link ElevatorSim}, driven either open loop or
+ * by an emulation of the Spark MAX onboard position loop (P on the position error plus the
+ * arbitrary feedforward), since REVLib does not simulate its closed loop. Used by the Lifter in
+ * simulation and by {@code LifterBenchmark} (in the test sources) on the desktop.
+ */
+public class LifterSim {
+  private final ElevatorSim elevator = new ElevatorSim(
+      DCMotor.getNEO(1),
+      LiftConstants.Mod5.kLiftGearing,
+      LiftConstants.Mod5.kCarriageMass,
+      LiftConstants.Mod5.kLifterDrumRadius,
+      LiftConstants.Mod5.kLifterMinHeight,
+      LiftConstants.Mod5.kLifterMaxHeight,
+      true);
+
+  private boolean closedLoop = false;
+  private double duty = 0;
+  private double reference = 0;
+  private double feedforwardVolts = 0;
+  private double appliedVolts = 0;
+
+  public void setDuty(double duty) {
+    closedLoop = false;
+    this.duty = duty;
+  }
+
+  public void setPositionReference(double meters, double feedforwardVolts) {
+    closedLoop = true;
+    reference = meters;
+    this.feedforwardVolts = feedforwardVolts;
+  }
+
+  /**
+   * Advances the simulation. Call at the Spark MAX loop rate (1 ms) for a faithful closed loop, or
+   * at the robot loop rate when that is good enough.
+   */
+  public void update(double dtSeconds) {
+    double volts = closedLoop
+        ? LiftConstants.Mod5.kP * (reference - elevator.getPositionMeters()) * 12.0 + feedforwardVolts
+        : duty * 12.0;
+    appliedVolts = Math.max(-12.0, Math.min(12.0, volts));
+    elevator.setInputVoltage(appliedVolts);
+    elevator.update(dtSeconds);
+  }
+
+  public double getPositionMeters() {
+    return elevator.getPositionMeters();
+  }
+
+  public double getVelocityMetersPerSecond() {
+    return elevator.getVelocityMetersPerSecond();
+  }
+
+  public double getAppliedVolts() {
+    return appliedVolts;
+  }
+
+  public boolean hasHitUpperLimit() {
+    return elevator.hasHitUpperLimit();
+  }
+
+  public boolean hasHitLowerLimit() {
+    return elevator.hasHitLowerLimit();
+  }
+}
@@ -1,49 +1,156 @@
-// package frc.robot.subsystems;
-
-// import com.revrobotics.CANSparkMax;
-// import com.revrobotics.CANSparkMaxLowLevel.MotorType;
-
-// import edu.wpi.first.wpilibj.DigitalInput;
-// import edu.wpi.first.wpilibj.motorcontrol.PWMSparkMax;
-// import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
-// import edu.wpi.first.wpilibj2.command.SubsystemBase;
-// import frc.robot.Constants;
-// //import frc.robot.Constants.IntakeConstants;
-
-
-// public class Intaker extends SubsystemBase {
-
-//     /*Config motors and encoders */
-//     //private final CANSparkMax m_intake = new CANSparkMax(Constants.IntakeConstants.Mod4.intakeMotorID,MotorType.kBrushless);
-//     //private Encoder intakeEncoder = new Encoder(Constants.IntakeConstants.Mod4.intakeMotorID1, Constants.IntakeConstants.Mod4.intakeMotorID2, Constants.IntakeConstants.Mod4.kEncoderReversed);
-//     //private final CANSparkMax intakeMotor = new CANSparkMax(13, MotorType.kBrushless);
-//     private final PWMSparkMax intakeMotor = new PWMSparkMax(6);
-  
-//     public void periodic() {
-//         SmartDashboard.putNumber("Intake speed", intakeMotor.get());
-//     }
-
-//     // turn on the intake motor to pull in objects.
-//     public void pull() {
-//         SmartDashboard.putString("Intake Status", "PULL");
-//         //intakeMotor.setInverted(false);
-//         intakeMotor.set(1);
-//     }
-
-//     // turn on the intake motor to push out objects.
-//     public void push() {
-//         SmartDashboard.putString("Intake Status", "PUSH");
-//         // intakeMotor.setInverted(true);
-//         intakeMotor.set(-1.0);
-//     }
-
-//     // this is the default state of the intake motor - do not move.
-//     public void stop() {
-//         SmartDashboard.putString("Intake Status", "STOP");
-//         intakeMotor.set(0);
-//     }
-
-    
-
-
-// }
+package frc.robot.subsystems;
+
+import com.revrobotics.CANSparkMax;
+import com.revrobotics.CANSparkMax.IdleMode;
+import com.revrobotics.CANSparkMaxLowLevel.MotorType;
+import com.revrobotics.CANSparkMaxLowLevel.PeriodicFrame;
+import edu.wpi.first.util.datalog.DoubleLogEntry;
+import edu.wpi.first.wpilibj.DataLogManager;
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import java.util.concurrent.atomic.AtomicInteger;
+import frc.lib.config.TunableConfig;
+import frc.lib.math.CurrentSpikeDetector;
+import frc.lib.util.TelemetryDispatcher;
+import frc.robot.Constants;
+import frc.robot.Constants.IntakeConstants.Mod4;
+import frc.robot.Tunables;
+
+/**
+ * The roller intake, on a Spark MAX so its current can be read. While pulling, a {@link Notifier}
+ * samples the current every {@link Mod4#kCurrentSamplePeriod} seconds, well above the robot loop
+ * rate, and feeds a {@link CurrentSpikeDetector}. When it sees a game piece the notifier stops the
+ * motor itself, without waiting for the next loop, and {@link #hasGamePiece} turns true so the
+ * driver can be told.
+ *
+ * <p>Every pull(), push() and stop() starts a new generation, with its motor write under the same
+ * lock. The sampler only stops the motor if the generation it sampled is still the current one, so
+ * a detection that lands just after the driver has let go or started an eject changes nothing.
+ *
+ * <p>With {@link Mod4#kRecordCurrentTraces} set, every sample is written to the data log as
+ * {@code /Intake/current} for replay with {@code frc.robot.sim.IntakeTraceReplay}.
+ */
+public class Intaker extends SubsystemBase {
+    private final CANSparkMax intakeMotor = new CANSparkMax(Mod4.kIntakeMotorID, MotorType.kBrushless);
+    private final CurrentSpikeDetector detector = new CurrentSpikeDetector(
+        Mod4.kCurrentFilterTimeConstant,
+        Mod4.kBaselineTimeConstant,
+        Mod4.kSpikeThresholdAmps,
+        Mod4.kInrushIgnoreSeconds,
+        Mod4.kDetectionDebounceSeconds);
+    private final Notifier sampler = new Notifier(this::sample);
+    private final DoubleLogEntry currentLog =
+        Mod4.kRecordCurrentTraces ? new DoubleLogEntry(DataLogManager.getLog(), "/Intake/current") : null;
+
+    /* Shared with the sampler thread */
+    private final Object motorLock = new Object();
+    private final AtomicInteger generation = new AtomicInteger();
+    private volatile boolean intaking = false;
+    private volatile boolean hasGamePiece = false;
+    private volatile double debounceSeconds = TunableConfig.getInstance().get(Tunables.intakeDebounce);
+    /* Sampler thread only: the generation the detector was last reset for */
+    private int detectorGeneration = -1;
+
+    private final TelemetryDispatcher telemetryDispatcher = TelemetryDispatcher.getInstance();
+    private final int telemetryChannel = telemetryDispatcher.register("/Intake/state", 4);
+    private final double[] telemetry = new double[4];
+
+    public Intaker() {
+        intakeMotor.restoreFactoryDefaults();
+        intakeMotor.setIdleMode(IdleMode.kBrake);
+        intakeMotor.setSmartCurrentLimit(Mod4.kIntakeCurrentLimit);
+        intakeMotor.enableVoltageCompensation(Constants.Swerve.voltageComp);
+        // Status 1 carries the output current; the default 20 ms would throw away most samples.
+        intakeMotor.setPeriodicFramePeriod(PeriodicFrame.kStatus1, Mod4.kCurrentStatusFramePeriodMs);
+        intakeMotor.burnFlash();
+
+        TunableConfig.getInstance().subscribe(
+            snapshot -> setDetectionDebounce(snapshot.get(Tunables.intakeDebounce)), Tunables.intakeDebounce);
+
+        sampler.setName("IntakeCurrent");
+        sampler.startPeriodic(Mod4.kCurrentSamplePeriod);
+    }
+
+    /* Runs on the sampler thread. */
+    private void sample() {
+        double now = Timer.getFPGATimestamp();
+        // pull() sets intaking before it moves the generation on, so a new generation seen here
+        // always comes with its intaking, and the detector starts over for it.
+        int run = generation.get();
+        if (run != detectorGeneration) {
+            detectorGeneration = run;
+            detector.setDebounceSeconds(debounceSeconds);
+            detector.reset(now);
+        }
+        if (!intaking) {
+            return;
+        }
+        double amps = intakeMotor.getOutputCurrent();
+        if (currentLog != null) {
+            currentLog.append(amps);
+        }
+        if (detector.update(now, amps)) {
+            synchronized (motorLock) {
+                // Ends the run as stop() would, unless a command has already replaced it.
+                if (generation.compareAndSet(run, run + 1)) {
+                    intakeMotor.stopMotor();
+                    intaking = false;
+                    hasGamePiece = true;
+                }
+            }
+        }
+    }
+
+    /** Sets how long the current must stay up before a piece counts, from the next pull() on. */
+    public void setDetectionDebounce(double seconds) {
+        debounceSeconds = seconds;
+    }
+
+    /** @return Whether the last pull() stopped on a game piece. Cleared by pull() and push(). */
+    public boolean hasGamePiece() {
+        return hasGamePiece;
+    }
+
+    public boolean isIntaking() {
+        return intaking;
+    }
+
+    @Override
+    public void periodic() {
+        telemetry[0] = intakeMotor.getOutputCurrent();
+        telemetry[1] = intakeMotor.getAppliedOutput();
+        telemetry[2] = intaking ? 1 : 0;
+        telemetry[3] = hasGamePiece ? 1 : 0;
+        telemetryDispatcher.publish(telemetryChannel, telemetry);
+    }
+
+    // turn on the intake motor to pull in objects, until one is detected.
+    public void pull() {
+        synchronized (motorLock) {
+            hasGamePiece = false;
+            intaking = true;
+            generation.incrementAndGet();
+            intakeMotor.set(Mod4.kIntakeDuty);
+        }
+    }
+
+    // turn on the intake motor to push out objects.
+    public void push() {
+        synchronized (motorLock) {
+            intaking = false;
+            hasGamePiece = false;
+            generation.incrementAndGet();
+            intakeMotor.set(Mod4.kEjectDuty);
+        }
+    }
+
+    // this is the default state of the intake motor - do not move.
+    public void stop() {
+        synchronized (motorLock) {
+            intaking = false;
+            generation.incrementAndGet();
+            intakeMotor.set(0);
+        }
+    }
+}
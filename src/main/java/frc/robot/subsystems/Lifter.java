@@ -1,57 +1,275 @@
-// package frc.robot.subsystems;
-
-// //import edu.wpi.first.wpilibj.XboxController;
-// import com.revrobotics.CANSparkMax;
-// //import com.revrobotics.RelativeEncoder;
-// import com.revrobotics.CANSparkMaxLowLevel.MotorType;
-// import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
-// import edu.wpi.first.wpilibj2.command.SubsystemBase;
-
-// public class Lifter extends SubsystemBase {
-//     /* Config motors and encoders */
-//     // private final CANSparkMax m_intake = new
-//     // CANSparkMax(Constants.IntakeConstants.Mod4.intakeMotorID,MotorType.kBrushless);
-//     // private Encoder intakeEncoder = new
-//     // Encoder(Constants.IntakeConstants.Mod4.intakeMotorID1,
-//     // Constants.IntakeConstants.Mod4.intakeMotorID2,
-//     // Constants.IntakeConstants.Mod4.kEncoderReversed);
-//     private CANSparkMax lifterMotor;
-
-//     public Lifter() {
-//         lifterMotor = new CANSparkMax(14, MotorType.kBrushless);
-//     }
-
-//     public void junk() {
-//         lifterMotor.getPIDController().getP();
-//         lifterMotor.getPIDController().getI();
-//         lifterMotor.getPIDController().getD();
-//         SmartDashboard.putNumber("P value", lifterMotor.getPIDController().getP());
-//         SmartDashboard.putNumber("I value", lifterMotor.getPIDController().getI());
-//         SmartDashboard.putNumber("D value", lifterMotor.getPIDController().getD());
-//     }
-
-//     // turn on the intake motor to pull in objects.
-//     public void push() {
-//         lifterMotor.set(0.25);
-//         SmartDashboard.putString("Lifter Status", "PUSHING");
-//     }
-
-//     // turn on the intake motor to push out objects.
-//     public void pull() {
-//         lifterMotor.set(-0.25);
-//         SmartDashboard.putString("Lifter Status", "PULLING");
-//     }
-
-//     // this is the default state of the intake motor - do not move.
-//     public void stop() {
-//         lifterMotor.set(0);
-//         SmartDashboard.putString("Lifter Status", "STOPPED");
-//     }
-
-//     public Object setToPosition(int position) {
-//         return null;
-//     }
-
-//     public void checkLimits() {
-//     }
-// }
+package frc.robot.subsystems;
+
+import com.revrobotics.CANSparkMax;
+import com.revrobotics.CANSparkMax.ControlType;
+import com.revrobotics.CANSparkMax.IdleMode;
+import com.revrobotics.CANSparkMax.SoftLimitDirection;
+import com.revrobotics.CANSparkMaxLowLevel.MotorType;
+import com.revrobotics.RelativeEncoder;
+import edu.wpi.first.math.system.plant.DCMotor;
+import edu.wpi.first.math.trajectory.TrapezoidProfile;
+import edu.wpi.first.wpilibj.AsynchronousInterrupt;
+import edu.wpi.first.wpilibj.DigitalInput;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.simulation.DIOSim;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import edu.wpi.first.wpilibj2.command.WaitUntilCommand;
+import frc.lib.config.TunableConfig;
+import frc.lib.util.SparkMaxSetpointCache;
+import frc.lib.util.TelemetryDispatcher;
+import frc.robot.Constants;
+import frc.robot.Constants.LiftConstants.Mod5;
+import frc.robot.Tunables;
+import frc.robot.sim.LifterSim;
+
+/**
+ * The lift. Named heights are reached with a trapezoid profile whose setpoints go to the Spark MAX
+ * onboard position loop, with gravity and velocity feedforward from a NEO model of the lift sent
+ * as the arbitrary feedforward. push()/pull() still drive it open loop.
+ *
+ * <p>The limit switches raise interrupts instead of being polled. The interrupt thread only records
+ * what happened, so every motor command comes from the robot thread: hitting the switch in the
+ * direction of travel stops the motor on the next loop, with the soft limits as the backstop in
+ * between, and the bottom switch re-zeroes the encoder.
+ *
+ * <p>The profile runs on the FPGA clock, so after the robot has been disabled the lift holds
+ * wherever it measures on enable instead of jumping to where the profile has got to.
+ */
+public class Lifter extends SubsystemBase {
+    public enum Height {
+        kStow(Mod5.kStowHeight),
+        kLow(Mod5.kLowHeight),
+        kMid(Mod5.kMidHeight),
+        kHigh(Mod5.kHighHeight);
+
+        public final double meters;
+
+        Height(double meters) {
+            this.meters = meters;
+        }
+    }
+
+    private static final DCMotor kMotor = DCMotor.getNEO(1);
+    /* Carriage travel per motor rotation */
+    public static final double kMetersPerRotation = 2.0 * Math.PI * Mod5.kLifterDrumRadius / Mod5.kLiftGearing;
+    public static final double kMaxVelocity =
+        Mod5.kProfileSpeedFraction * kMotor.freeSpeedRadPerSec / (2.0 * Math.PI) * kMetersPerRotation;
+    public static final TrapezoidProfile.Constraints kConstraints =
+        new TrapezoidProfile.Constraints(kMaxVelocity, kMaxVelocity / Mod5.kProfileAccelerationTime);
+    /* Volts to hold the carriage: the torque m*g*r/G through the motor's torque constant and winding */
+    public static final double kG = Mod5.kCarriageMass * 9.81 * Mod5.kLifterDrumRadius / Mod5.kLiftGearing
+        / kMotor.KtNMPerAmp * kMotor.rOhms;
+    /* Volts per meter per second of carriage speed, from the motor's velocity constant */
+    public static final double kV = Mod5.kLiftGearing / Mod5.kLifterDrumRadius / kMotor.KvRadPerSecPerVolt;
+
+    private final CANSparkMax lifterMotor = new CANSparkMax(Mod5.kLiftMotorID, MotorType.kBrushless);
+    private final RelativeEncoder encoder = lifterMotor.getEncoder();
+    private final SparkMaxSetpointCache setpoints;
+
+    private final DigitalInput topLimit = new DigitalInput(Mod5.kTopLimitSwitchChannel);
+    private final DigitalInput bottomLimit = new DigitalInput(Mod5.kBottomLimitSwitchChannel);
+    private final AsynchronousInterrupt topInterrupt = new AsynchronousInterrupt(topLimit, (rising, falling) -> onLimitEdge());
+    private final AsynchronousInterrupt bottomInterrupt =
+        new AsynchronousInterrupt(bottomLimit, (rising, falling) -> onLimitEdge());
+
+    /* Shared with the interrupt thread */
+    private volatile boolean atTop = false;
+    private volatile boolean atBottom = false;
+    private volatile int direction = 0;
+    private volatile boolean limitTripped = false;
+    private volatile boolean homeRequested = false;
+
+    private boolean closedLoop = false;
+    private boolean wasDisabled = true;
+    private double openLoopDuty = 0;
+    private double goal;
+    private TrapezoidProfile profile;
+    private double profileStart;
+    private TrapezoidProfile.State setpoint;
+    private double feedforwardVolts = 0;
+
+    private final TelemetryDispatcher telemetryDispatcher = TelemetryDispatcher.getInstance();
+    private final int telemetryChannel = telemetryDispatcher.register("/Lifter/state", 6);
+    private final double[] telemetry = new double[6];
+
+    private LifterSim sim;
+    private DIOSim topLimitSim;
+    private DIOSim bottomLimitSim;
+
+    public Lifter() {
+        lifterMotor.restoreFactoryDefaults();
+        lifterMotor.setIdleMode(IdleMode.kBrake);
+        lifterMotor.setSmartCurrentLimit(30);
+        lifterMotor.enableVoltageCompensation(Constants.Swerve.voltageComp);
+        encoder.setPositionConversionFactor(kMetersPerRotation);
+        encoder.setVelocityConversionFactor(kMetersPerRotation / 60.0);
+        lifterMotor.getPIDController().setP(TunableConfig.getInstance().get(Tunables.liftKP));
+        lifterMotor.getPIDController().setI(Mod5.kI);
+        lifterMotor.getPIDController().setD(Mod5.kD);
+        lifterMotor.setSoftLimit(SoftLimitDirection.kForward, (float) Mod5.kLifterMaxHeight);
+        lifterMotor.setSoftLimit(SoftLimitDirection.kReverse, (float) Mod5.kLifterMinHeight);
+        lifterMotor.enableSoftLimit(SoftLimitDirection.kForward, true);
+        lifterMotor.enableSoftLimit(SoftLimitDirection.kReverse, true);
+        lifterMotor.burnFlash();
+        // The lift starts down.
+        encoder.setPosition(Mod5.kLifterMinHeight);
+        goal = Mod5.kLifterMinHeight;
+        setpoint = new TrapezoidProfile.State(goal, 0);
+
+        setpoints = new SparkMaxSetpointCache(lifterMotor, 0.0005, Constants.Swerve.feedforwardTolerance,
+            Constants.Swerve.setpointKeepAlive);
+
+        if (RobotBase.isSimulation()) {
+            sim = new LifterSim();
+            topLimitSim = new DIOSim(topLimit);
+            bottomLimitSim = new DIOSim(bottomLimit);
+            topLimitSim.setValue(!Mod5.kLimitSwitchPressedValue);
+            bottomLimitSim.setValue(Mod5.kLimitSwitchPressedValue);
+        }
+
+        TunableConfig.getInstance().subscribe(
+            snapshot -> lifterMotor.getPIDController().setP(snapshot.get(Tunables.liftKP)), Tunables.liftKP);
+
+        onLimitEdge();
+        topInterrupt.setInterruptEdges(true, true);
+        bottomInterrupt.setInterruptEdges(true, true);
+        topInterrupt.enable();
+        bottomInterrupt.enable();
+    }
+
+    /** @return The arbitrary feedforward for a profile velocity, in volts. */
+    public static double feedforwardVolts(double velocity) {
+        return kG + kV * velocity;
+    }
+
+    /* Runs on the interrupt thread. */
+    private void onLimitEdge() {
+        atTop = topLimit.get() == Mod5.kLimitSwitchPressedValue;
+        atBottom = bottomLimit.get() == Mod5.kLimitSwitchPressedValue;
+        if ((atTop && direction > 0) || (atBottom && direction < 0)) {
+            limitTripped = true;
+        }
+        if (atBottom) {
+            homeRequested = true;
+        }
+    }
+
+    /** Starts a profiled move to a height, clamped to the lift's travel. */
+    public void setGoal(double meters) {
+        goal = Math.max(Mod5.kLifterMinHeight, Math.min(Mod5.kLifterMaxHeight, meters));
+        TrapezoidProfile.State current = closedLoop
+            ? setpoint
+            : new TrapezoidProfile.State(encoder.getPosition(), encoder.getVelocity());
+        profile = new TrapezoidProfile(kConstraints, new TrapezoidProfile.State(goal, 0), current);
+        profileStart = Timer.getFPGATimestamp();
+        closedLoop = true;
+    }
+
+    /** @return A command that moves to a named height and ends when it gets there. */
+    public Command goTo(Height height) {
+        return runOnce(() -> setGoal(height.meters)).andThen(new WaitUntilCommand(this::atGoal));
+    }
+
+    public boolean atGoal() {
+        return closedLoop && profile != null && profile.isFinished(Timer.getFPGATimestamp() - profileStart)
+            && Math.abs(getHeight() - goal) < Mod5.kHeightTolerance;
+    }
+
+    public double getHeight() {
+        return encoder.getPosition();
+    }
+
+    // Drive the lift up open loop.
+    public void push() {
+        setOpenLoop(Mod5.kManualDuty);
+    }
+
+    // Drive the lift down open loop.
+    public void pull() {
+        setOpenLoop(-Mod5.kManualDuty);
+    }
+
+    // Hold still: closed loop at the current height.
+    public void stop() {
+        setGoal(getHeight());
+    }
+
+    /* Restarts the profile from the measured state rather than the last setpoint. */
+    private void holdMeasuredHeight() {
+        closedLoop = false;
+        setGoal(getHeight());
+    }
+
+    private void setOpenLoop(double duty) {
+        closedLoop = false;
+        if ((duty > 0 && atTop) || (duty < 0 && atBottom)) {
+            duty = 0;
+        }
+        openLoopDuty = duty;
+        direction = (int) Math.signum(duty);
+        setpoints.set(duty);
+    }
+
+    @Override
+    public void periodic() {
+        if (homeRequested) {
+            homeRequested = false;
+            encoder.setPosition(Mod5.kLifterMinHeight);
+            setpoints.invalidate();
+        }
+        if (limitTripped) {
+            limitTripped = false;
+            direction = 0;
+            if (closedLoop) {
+                holdMeasuredHeight();
+            } else {
+                openLoopDuty = 0;
+                setpoints.set(0);
+            }
+        }
+
+        boolean disabled = DriverStation.isDisabled();
+        if (wasDisabled && !disabled && closedLoop) {
+            holdMeasuredHeight();
+        }
+        wasDisabled = disabled;
+
+        if (closedLoop && !disabled) {
+            TrapezoidProfile.State next = profile.calculate(Timer.getFPGATimestamp() - profileStart);
+            if ((atTop && next.position > setpoint.position) || (atBottom && next.position < setpoint.position)) {
+                next = setpoint;
+            }
+            direction = (int) Math.signum(next.position - setpoint.position);
+            setpoint = next;
+            feedforwardVolts = feedforwardVolts(setpoint.velocity);
+            setpoints.setReference(setpoint.position, ControlType.kPosition, 0, feedforwardVolts);
+        }
+
+        telemetry[0] = getHeight();
+        telemetry[1] = setpoint.position;
+        telemetry[2] = goal;
+        telemetry[3] = encoder.getVelocity();
+        telemetry[4] = atTop ? 1 : 0;
+        telemetry[5] = atBottom ? 1 : 0;
+        telemetryDispatcher.publish(telemetryChannel, telemetry);
+    }
+
+    @Override
+    public void simulationPeriodic() {
+        if (closedLoop) {
+            sim.setPositionReference(setpoint.position, feedforwardVolts);
+        } else {
+            sim.setDuty(openLoopDuty);
+        }
+        // The Spark MAX loop runs at 1 kHz.
+        for (int i = 0; i < 20; i++) {
+            sim.update(0.001);
+        }
+        encoder.setPosition(sim.getPositionMeters());
+        topLimitSim.setValue(sim.hasHitUpperLimit() == Mod5.kLimitSwitchPressedValue);
+        bottomLimitSim.setValue(sim.hasHitLowerLimit() == Mod5.kLimitSwitchPressedValue);
+    }
+}
@@ -0,0 +1,51 @@
+package frc.robot.subsystems;
+
+import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.lib.util.TelemetryDispatcher;
+import frc.robot.Constants.LiftConstants;
+import frc.robot.Constants.SuperstructureConstants;
+
+/**
+ * Coordinates the drive with the lift. Every loop it works out the robot's center of gravity height
+ * from the lift position and hands it to {@link Swerve}, which limits the chassis acceleration to
+ * what that height allows without tipping. With the lift down the drive keeps nearly its full
+ * acceleration; it only gives some up as the carriage goes up.
+ *
+ * <p>Registered after the lift and the drive so its periodic() sees this loop's lift height and
+ * runs before any command drives.
+ */
+public class Superstructure extends SubsystemBase {
+  private static final double kTotalMass = SuperstructureConstants.kChassisMass + LiftConstants.Mod5.kCarriageMass;
+
+  private final Swerve s_Swerve;
+  private final Lifter s_Lifter;
+
+  private final TelemetryDispatcher telemetryDispatcher = TelemetryDispatcher.getInstance();
+  private final int telemetryChannel = telemetryDispatcher.register("/Superstructure/tipping", 4);
+  private final double[] telemetry = new double[4];
+
+  public Superstructure(Swerve s_Swerve, Lifter s_Lifter) {
+    this.s_Swerve = s_Swerve;
+    this.s_Lifter = s_Lifter;
+  }
+
+  /** @return The center of gravity height above the floor with the lift at a given height. */
+  public static double centerOfGravityHeight(double liftHeight) {
+    return (SuperstructureConstants.kChassisMass * SuperstructureConstants.kChassisCgHeight
+        + LiftConstants.Mod5.kCarriageMass * (SuperstructureConstants.kCarriageCgHeight + liftHeight))
+        / kTotalMass;
+  }
+
+  @Override
+  public void periodic() {
+    double liftHeight = s_Lifter.getHeight();
+    double cgHeight = centerOfGravityHeight(liftHeight);
+    s_Swerve.setCenterOfGravityHeight(cgHeight);
+
+    telemetry[0] = liftHeight;
+    telemetry[1] = cgHeight;
+    telemetry[2] = s_Swerve.getMaxAccelX();
+    telemetry[3] = s_Swerve.getMaxAccelY();
+    telemetryDispatcher.publish(telemetryChannel, telemetry);
+  }
+}
@@ -1,110 +1,348 @@
 package frc.robot.subsystems;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Date;
 
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Transform2d;
 import edu.wpi.first.math.geometry.Translation2d;
-import edu.wpi.first.math.kinematics.ChassisSpeeds;
-import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
-import edu.wpi.first.math.kinematics.SwerveDriveOdometry;
 import edu.wpi.first.math.kinematics.SwerveModulePosition;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
-import edu.wpi.first.wpilibj.AnalogGyro;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.DriverStation.MatchType;
+import edu.wpi.first.wpilibj.Filesystem;
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.smartdashboard.Field2d;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.lib.config.TunableConfig;
+import frc.lib.math.FastSwerveKinematics;
+import frc.lib.math.FastSwerveOdometry;
+import frc.lib.math.TippingLimiter;
+import frc.lib.sensors.AnalogGyroImu;
+import frc.lib.sensors.FallbackImu;
+import frc.lib.sensors.Imu;
+import frc.lib.sensors.Pigeon2Imu;
+import frc.lib.sensors.SimImu;
+import frc.lib.util.BatteryPowerManager;
+import frc.lib.util.CommandMetrics;
+import frc.lib.util.LatencyTracer;
+import frc.lib.util.LatencyTracer.Stage;
+import frc.lib.util.LockFreeDoubleBuffer;
+import frc.lib.util.LoopTimingStats;
+import frc.lib.util.PersistedStateFile;
+import frc.lib.util.SwerveHealthMonitor;
+import frc.lib.util.SwerveTelemetry;
+import frc.lib.util.TelemetryDispatcher;
 import frc.robot.Constants;
+import frc.robot.Constants.SuperstructureConstants;
+import frc.robot.Robot;
+import frc.robot.Tunables;
 
-public class Swerve extends SubsystemBase {
-  private final AnalogGyro gyro;
+/**
+ * The drivetrain. Commands call {@link #drive} or {@link #setChassisSpeeds} from the 20 ms
+ * scheduler, which only records the request; {@link #runControlLoop}, registered by {@code Robot}
+ * at {@link Constants.Swerve#controlLoopPeriod}, picks up the latest request and does the control
+ * work (tipping limit, kinematics, current budget, module writes). The request stays in force until
+ * it is replaced, as a module setpoint would, and is cleared while disabled.
+ */
+public class Swerve extends SubsystemBase implements SwerveDrive {
+  private final Imu imu;
 
-  private SwerveDriveOdometry swerveOdometry;
+  private final FastSwerveKinematics kinematics = new FastSwerveKinematics(Constants.Swerve.moduleLocations);
+  private FastSwerveOdometry swerveOdometry;
   private SwerveModule[] mSwerveMods;
 
   private Field2d field;
 
+  private final BatteryPowerManager powerManager = new BatteryPowerManager(Constants.Swerve.brownoutMarginVolts);
+  private double lastPeriodicTimestamp = Timer.getFPGATimestamp();
+  private final CommandMetrics.Entry periodicMetrics = CommandMetrics.getInstance().registerSubsystem("Swerve");
+
+  private final LatencyTracer latencyTracer = new LatencyTracer(4);
+
+  private final SwerveHealthMonitor healthMonitor = new SwerveHealthMonitor(
+      4, Constants.Swerve.healthPollPeriod, Constants.Swerve.encoderStalePeriod);
+  /* Module positions as fed to odometry, which differ from the measured ones after an outage */
+  private final double[] odometryDistanceOffset = new double[4];
+  private final double[] odometryDistances = new double[4];
+  private final double[] odometryAngles = new double[4];
+  private final boolean[] excludedFromOdometry = new boolean[4];
+
+  /* Chassis acceleration limit for the center of gravity height set by the Superstructure */
+  private final TippingLimiter tippingLimiter = new TippingLimiter(
+      Constants.Swerve.wheelBase / 2.0,
+      Constants.Swerve.trackWidth / 2.0,
+      SuperstructureConstants.kTippingSafetyFactor,
+      Superstructure.centerOfGravityHeight(0));
+  private final double[] limitedVelocity = new double[2];
+  private double lastDriveTimestamp = 0;
+
+  /* Requests from the scheduler to the control loop */
+  private static final int kRequestVx = 0;
+  private static final int kRequestVy = 1;
+  private static final int kRequestOmega = 2;
+  private static final int kRequestOpenLoop = 3;
+  private static final int kRequestMode = 4;
+  private static final int kRequestInputTimestamp = 5;
+  private static final int kRequestDriveTimestamp = 6;
+  /* Counts submitted requests, so the control loop can tell a new one from one still in force */
+  private static final int kRequestSequence = 7;
+  private static final double kModeDrive = 0;
+  private static final double kModeLockWheels = 1;
+  private static final double kModeSteerInPlace = 2;
+  private final LockFreeDoubleBuffer requestBuffer = new LockFreeDoubleBuffer(8);
+  private final double[] pendingRequest = new double[8];
+  private final double[] activeRequest = new double[8];
+  private double lastAppliedSequence = 0;
+  /* Module angles when steering in place started, NaN when not steering in place */
+  private final double[] steerInPlaceStart = {Double.NaN, Double.NaN, Double.NaN, Double.NaN};
+  private final LoopTimingStats controlLoopTiming =
+      new LoopTimingStats(Constants.Swerve.controlLoopPeriod, Constants.Swerve.controlLoopStatsWindow);
+
+  /* Drive scratch, reused every loop */
+  private final double[] moduleSpeeds = new double[4];
+  private final double[] moduleAngles = new double[4];
+  private final double[] moduleBatteryAmps = new double[4];
+  private final SwerveModuleState[] desiredStates = {
+      new SwerveModuleState(), new SwerveModuleState(), new SwerveModuleState(), new SwerveModuleState()};
+
+  private final TelemetryDispatcher telemetryDispatcher = TelemetryDispatcher.getInstance();
+  private final int chassisTelemetryChannel = SwerveTelemetry.channel("Chassis", SwerveTelemetry.kChassisFields);
+  private final int fieldChannel;
+  private final double[] fieldPose = new double[3];
+  private final double[] chassisTelemetry = SwerveTelemetry.newChassisArray();
+
+  /* State saved every enabled loop so a reboot mid-match can pick up where it left off */
+  private static final int kPersistedVersion = 2;
+  private static final int kPersistedX = 0;
+  private static final int kPersistedY = 1;
+  private static final int kPersistedHeading = 2;
+  private static final int kPersistedYaw = 3;
+  private static final int kPersistedMatchType = 4;
+  private static final int kPersistedMatchNumber = 5;
+  private static final int kPersistedReplayNumber = 6;
+  private static final int kPersistedAngleOffsets = 7;
+  private final double[] persistedState = new double[kPersistedAngleOffsets + 4];
+  private final double[] restoredState = new double[kPersistedAngleOffsets + 4];
+  /* Null if the file could not be mapped */
+  private final PersistedStateFile persistedStateFile = openPersistedState();
+  /* A record was loaded at boot and is waiting for the match info to decide whether it applies */
+  private boolean restorePending = false;
+  private double dsAttachedTimestamp = Double.NaN;
+
   public Swerve() {
-    gyro = new AnalogGyro(0);
-    // gyro.configFactoryDefault();
+    if (RobotBase.isSimulation()) {
+      imu = new SimImu();
+    } else if (Constants.Swerve.usePigeon2) {
+      imu = new FallbackImu(new Pigeon2Imu(Constants.Swerve.pigeonID),
+          new AnalogGyroImu(Constants.Swerve.analogGyroChannel), Constants.Swerve.imuStalePeriod);
+    } else {
+      imu = new AnalogGyroImu(Constants.Swerve.analogGyroChannel);
+    }
     zeroGyro();
 
     mSwerveMods = new SwerveModule[] {
-        new SwerveModule(0, Constants.Swerve.Mod0.constants),
-        new SwerveModule(1, Constants.Swerve.Mod1.constants),
-        new SwerveModule(2, Constants.Swerve.Mod2.constants),
-        new SwerveModule(3, Constants.Swerve.Mod3.constants)
+        new SwerveModule(0, Constants.Swerve.Mod0.constants, latencyTracer),
+        new SwerveModule(1, Constants.Swerve.Mod1.constants, latencyTracer),
+        new SwerveModule(2, Constants.Swerve.Mod2.constants, latencyTracer),
+        new SwerveModule(3, Constants.Swerve.Mod3.constants, latencyTracer)
     };
-    swerveOdometry = new SwerveDriveOdometry(Constants.Swerve.swerveKinematics, getYaw(), getPositions());
+    for (SwerveModule mod : mSwerveMods) {
+      mod.registerHealth(healthMonitor);
+    }
+    healthMonitor.start();
+
+    for (SwerveModule mod : mSwerveMods) {
+      odometryDistances[mod.moduleNumber] = mod.getDriveDistance();
+      odometryAngles[mod.moduleNumber] = mod.getPositionAngle();
+    }
+    swerveOdometry = new FastSwerveOdometry(kinematics, getYawRadians(), odometryDistances, new Pose2d());
+    restorePending = persistedStateFile != null && persistedStateFile.load(restoredState);
 
     field = new Field2d();
     SmartDashboard.putData("Field", field);
+    fieldChannel = telemetryDispatcher.register("Field", fieldPose.length,
+        pose -> field.setRobotPose(pose[0], pose[1], Rotation2d.fromDegrees(pose[2])));
   }
 
   public void drive(
 
       Translation2d translation, double rotation, boolean fieldRelative, boolean isOpenLoop) {
-    SmartDashboard.putNumber("wheel 1 speede", translation.getX());
-    SmartDashboard.putNumber("drive() translation X", translation.getX());
-    SmartDashboard.putNumber("drive() translation Y", translation.getY());
-    SmartDashboard.putNumber("drive() rotation", rotation);
-    SmartDashboard.putNumber("drive() fieldRelative", fieldRelative ? 1.0 : 0.0);
-    // Each SwerveModuleState contains an angle and a speedMetersPerSecond for the
-    // module.
-    // Calculate new values for these based on the values from the joystick. The
-    // values defined in
-    // the Constants for this are critical.
-    //ChassisSpeeds speeds = new ChassisSpeeds(translation.getX(), translation.getY(), rotation);
-    ChassisSpeeds fieldRelativeSpeeds = ChassisSpeeds.fromFieldRelativeSpeeds(
-      translation.getX(), translation.getY(), rotation, getYaw());
-    ChassisSpeeds robotCentricSpeeds = new ChassisSpeeds(translation.getX(), translation.getY(), rotation);
-    ChassisSpeeds speeds = fieldRelative ? fieldRelativeSpeeds : robotCentricSpeeds;
-
-    SwerveModuleState[] swerveModuleStates = Constants.Swerve.swerveKinematics.toSwerveModuleStates(
-        // If the fieldRelative/robotCentric button is pressed, calculate individual
-        // module
-        // angles and speeds from an absolute/field point of view.
-        // Otherwise, calculate them relative to the robot.
-        // The calculated ChassisSpeeds object contains the intended x and y velocities
-        // of
-        // the robot (in m/s) as well as the intended angular velocity of the robot.
-        speeds);
-        /*fieldRelative
-            ? ChassisSpeeds.fromFieldRelativeSpeeds(
-                translation.getX(), translation.getY(), rotation, getYaw())
-            : new ChassisSpeeds(translation.getX(), translation.getY(), rotation));*/
-    // This function ensures that no individual Swerve module wheel is driven faster
-    // than it
-    // can physically handle. If any of the individual module speeds are above the
-    // defined
-    // constant, all speeds are readjusted accordingly.
-    SwerveDriveKinematics.desaturateWheelSpeeds(swerveModuleStates, Constants.Swerve.maxSpeed);
+    drive(translation, rotation, fieldRelative, isOpenLoop, LatencyTracer.kUntraced);
+  }
 
-    // Updated each module with our desired speed and angle for it
+  /**
+   * @param inputTimestamp When the driver input behind this request was read (from {@link
+   *     LatencyTracer#now()}), or {@link LatencyTracer#kUntraced}.
+   */
+  public void drive(
+      Translation2d translation, double rotation, boolean fieldRelative, boolean isOpenLoop, long inputTimestamp) {
+    long driveTimestamp = System.nanoTime();
+    latencyTracer.record(Stage.kInputToDrive, inputTimestamp, driveTimestamp);
+    double vx = translation.getX();
+    double vy = translation.getY();
+    if (fieldRelative) {
+      // Same as ChassisSpeeds.fromFieldRelativeSpeeds, without the allocations.
+      double yaw = getYawRadians();
+      double cos = Math.cos(yaw);
+      double sin = Math.sin(yaw);
+      double fieldVx = vx;
+      vx = fieldVx * cos + vy * sin;
+      vy = -fieldVx * sin + vy * cos;
+    }
+    submit(kModeDrive, vx, vy, rotation, isOpenLoop, inputTimestamp, driveTimestamp);
+  }
+
+  /**
+   * Drives closed loop at robot relative chassis speeds, for trajectory following.
+   */
+  public void setChassisSpeeds(double vx, double vy, double omega) {
+    submit(kModeDrive, vx, vy, omega, false, LatencyTracer.kUntraced, LatencyTracer.kUntraced);
+  }
+
+  /* Hands a request to the control loop. Scheduler thread only. */
+  private void submit(
+      double mode, double vx, double vy, double omega, boolean isOpenLoop, long inputTimestamp, long driveTimestamp) {
+    pendingRequest[kRequestMode] = mode;
+    pendingRequest[kRequestVx] = vx;
+    pendingRequest[kRequestVy] = vy;
+    pendingRequest[kRequestOmega] = omega;
+    pendingRequest[kRequestOpenLoop] = isOpenLoop ? 1 : 0;
+    // System.nanoTime() values are well inside a double's exact integer range.
+    pendingRequest[kRequestInputTimestamp] = inputTimestamp;
+    pendingRequest[kRequestDriveTimestamp] = driveTimestamp;
+    pendingRequest[kRequestSequence]++;
+    requestBuffer.write(pendingRequest);
+  }
+
+  /**
+   * The control stage: applies the latest request to the modules. Runs on its own periodic
+   * callback, faster than the scheduler.
+   */
+  public void runControlLoop() {
+    controlLoopTiming.sample(System.nanoTime());
+    double now = Timer.getFPGATimestamp();
     for (SwerveModule mod : mSwerveMods) {
-      mod.setDesiredState(swerveModuleStates[mod.moduleNumber], isOpenLoop);
+      mod.updateCoupling(now);
+      mod.updateVelocityEstimate(now);
+    }
+    if (!requestBuffer.read(activeRequest)) {
+      return;
+    }
+    // Only the first application of a request is traced; later ones would only add its age.
+    boolean newRequest = activeRequest[kRequestSequence] != lastAppliedSequence;
+    lastAppliedSequence = activeRequest[kRequestSequence];
+    boolean stopping = activeRequest[kRequestMode] != kModeDrive;
+    if (stopping && !tippingLimiter.isStopped()) {
+      // Locking or turning in place at speed would stop the robot at once; come down first.
+      driveModules(0, 0, 0, false, LatencyTracer.kUntraced, LatencyTracer.kUntraced);
+      return;
+    }
+    if (activeRequest[kRequestMode] == kModeSteerInPlace) {
+      turnModulesInPlace(activeRequest[kRequestOmega]);
+      return;
     }
+    steerInPlaceStart[0] = Double.NaN;
+    if (activeRequest[kRequestMode] == kModeLockWheels) {
+      lockWheels();
+      return;
+    }
+    driveModules(
+        activeRequest[kRequestVx],
+        activeRequest[kRequestVy],
+        activeRequest[kRequestOmega],
+        activeRequest[kRequestOpenLoop] != 0,
+        newRequest ? (long) activeRequest[kRequestInputTimestamp] : LatencyTracer.kUntraced,
+        newRequest ? (long) activeRequest[kRequestDriveTimestamp] : LatencyTracer.kUntraced);
   }
 
-  /* Used by SwerveControllerCommand in Auto */
-  public void setModuleStates(SwerveModuleState[] desiredStates) {
-    SwerveDriveKinematics.desaturateWheelSpeeds(desiredStates, Constants.Swerve.maxSpeed);
+  private void driveModules(
+      double vx, double vy, double omega, boolean isOpenLoop, long inputTimestamp, long driveTimestamp) {
+    double now = Timer.getFPGATimestamp();
+    double dt = now - lastDriveTimestamp;
+    lastDriveTimestamp = now;
+    if (dt > SuperstructureConstants.kDriveCommandTimeout) {
+      // Nothing has driven for a while, so the robot is at rest.
+      tippingLimiter.reset(0, 0);
+      dt = Robot.kDefaultPeriod;
+    }
+    tippingLimiter.limit(vx, vy, omega, dt, limitedVelocity);
+    vx = limitedVelocity[0];
+    vy = limitedVelocity[1];
 
+    kinematics.toModuleStates(vx, vy, omega, moduleSpeeds, moduleAngles);
+    // This ensures that no individual Swerve module wheel is driven faster than it can physically
+    // handle. If any module is above the limit, all speeds are scaled down together.
+    FastSwerveKinematics.desaturate(moduleSpeeds, Constants.Swerve.maxSpeed);
+    for (int i = 0; i < desiredStates.length; i++) {
+      desiredStates[i].speedMetersPerSecond = moduleSpeeds[i];
+      desiredStates[i].angle = new Rotation2d(moduleAngles[i]);
+    }
+    applyCurrentBudget(desiredStates, isOpenLoop);
+
+    // Updated each module with our desired speed and angle for it
+    for (SwerveModule mod : mSwerveMods) {
+      SwerveModuleState state = drivableState(mod, desiredStates[mod.moduleNumber]);
+      mod.setDesiredState(state, isOpenLoop, true, inputTimestamp, driveTimestamp);
+    }
+  }
+
+  /**
+   * Predicts the battery sag for the commanded module states and, when it would pull the bus below
+   * the brownout margin, cuts each drive to its share of what the battery can supply.
+   */
+  private void applyCurrentBudget(SwerveModuleState[] desiredStates, boolean isOpenLoop) {
+    double predictedDriveAmps = 0.0;
+    double otherLoadAmps = Constants.Swerve.baseLoadAmps;
+    for (SwerveModule mod : mSwerveMods) {
+      moduleBatteryAmps[mod.moduleNumber] = mod.predictDriveBatteryCurrent(desiredStates[mod.moduleNumber], isOpenLoop);
+      predictedDriveAmps += moduleBatteryAmps[mod.moduleNumber];
+      otherLoadAmps += mod.getAngleBatteryCurrent();
+    }
+    double scale = powerManager.update(predictedDriveAmps, otherLoadAmps);
     for (SwerveModule mod : mSwerveMods) {
-      mod.setDesiredState(desiredStates[mod.moduleNumber], false); // false
+      mod.setDriveBatteryBudget(scale < 1.0
+          ? moduleBatteryAmps[mod.moduleNumber] * scale
+          : Double.POSITIVE_INFINITY);
     }
   }
 
+  /** Sets the center of gravity height the chassis acceleration is limited for, in meters. */
+  public void setCenterOfGravityHeight(double meters) {
+    tippingLimiter.setCgHeight(meters);
+  }
+
+  public double getMaxAccelX() {
+    return tippingLimiter.getMaxAccelX();
+  }
+
+  public double getMaxAccelY() {
+    return tippingLimiter.getMaxAccelY();
+  }
+
+  /** A module that has dropped off the bus is asked to stop rather than fight the others. */
+  private SwerveModuleState drivableState(SwerveModule mod, SwerveModuleState state) {
+    return healthMonitor.isDrivable(mod.moduleNumber) ? state : new SwerveModuleState(0, state.angle);
+  }
+
+  /** @return The module's health bits from {@link SwerveHealthMonitor}, 0 when healthy. */
+  public int getModuleHealth(int moduleNumber) {
+    return healthMonitor.getHealth(moduleNumber);
+  }
+
   // note: pose and odometry are only used for status readouts
   public Pose2d getPose() {
-    SmartDashboard.putNumber("pose X", swerveOdometry.getPoseMeters().getX());
-    SmartDashboard.putNumber("pose Y", swerveOdometry.getPoseMeters().getY());
-    SmartDashboard.putNumber("gyro angle", gyro.getAngle());
     return swerveOdometry.getPoseMeters();
   }
 
   public void resetOdometry(Pose2d pose) {
-    swerveOdometry.resetPosition(getYaw(), getPositions(), pose);
+    refreshOdometryPositions();
+    swerveOdometry.resetPosition(getYawRadians(), odometryDistances, pose);
   }
 
   public SwerveModuleState[] getStates() {
@@ -118,36 +356,276 @@ public class Swerve extends SubsystemBase {
   public SwerveModulePosition[] getPositions() {
     SwerveModulePosition[] positions = new SwerveModulePosition[4];
     for (SwerveModule mod : mSwerveMods) {
-      SmartDashboard.putNumber("position: module " + mod.moduleNumber, mod.getPosition().distanceMeters);
-      SmartDashboard.putNumber("angle: module " + mod.moduleNumber, mod.getPosition().angle.getDegrees());
       positions[mod.moduleNumber] = mod.getPosition();
     }
     return positions;
   }
 
   public void zeroGyro() {
-    gyro.reset();
+    imu.setYaw(0);
+  }
+
+  /**
+   * Reads this loop's IMU sample. Robot calls it before odometry and the scheduler, so everything
+   * in a loop sees the same yaw and pitch.
+   */
+  public void updateImu() {
+    imu.update();
   }
 
   public Rotation2d getYaw() {
     return (Constants.Swerve.invertGyro)
-        ? Rotation2d.fromDegrees(360 - gyro.getAngle())
-        : Rotation2d.fromDegrees(gyro.getAngle());
+        ? Rotation2d.fromDegrees(360 - imu.getYawDegrees())
+        : Rotation2d.fromDegrees(imu.getYawDegrees());
+  }
+
+  private double getYawRadians() {
+    return yawToRadians(imu.getYawDegrees());
+  }
+
+  private static double yawToRadians(double yawDegrees) {
+    return Math.toRadians(Constants.Swerve.invertGyro ? 360 - yawDegrees : yawDegrees);
+  }
+
+  /** @return The chassis pitch, positive nose up, in degrees. */
+  public double getPitchDegrees() {
+    return Constants.Swerve.invertPitch ? -imu.getPitchDegrees() : imu.getPitchDegrees();
+  }
+
+  /** @return The chassis pitch rate, positive nose rising, in degrees per second. */
+  public double getPitchRate() {
+    return Constants.Swerve.invertPitch ? -imu.getPitchRate() : imu.getPitchRate();
+  }
+
+  /**
+   * @return When the IMU sample behind the yaw and pitch was read, in FPGA seconds. It stops
+   *     advancing while reads fail, so its age is how stale the sample is.
+   */
+  public double getImuTimestamp() {
+    return imu.getTimestampSeconds();
+  }
+
+  /** @return False if the IMU cannot measure pitch, in which case it always reads zero. */
+  public boolean canMeasurePitch() {
+    return imu.hasPitchAndRoll();
   }
 
   @Override
   public void periodic() {
-    swerveOdometry.update(getYaw(), getPositions());
-    field.setRobotPose(getPose());
+    long periodicStart = System.nanoTime();
+    if (restorePending) {
+      restorePersistedState();
+    }
+    if (DriverStation.isDisabled()) {
+      // Do not pick up where the last request left off when re-enabled.
+      submit(kModeDrive, 0, 0, 0, true, LatencyTracer.kUntraced, LatencyTracer.kUntraced);
+    }
+    double totalCurrent = Constants.Swerve.baseLoadAmps;
+    for (SwerveModule mod : mSwerveMods) {
+      totalCurrent += mod.getDriveBatteryCurrent() + mod.getAngleBatteryCurrent();
+    }
+    powerManager.addSample(RobotController.getBatteryVoltage(), totalCurrent);
+
+    double now = Timer.getFPGATimestamp();
+    healthMonitor.sampleMotors(now);
+    for (SwerveModule mod : mSwerveMods) {
+      mod.updateThermal(now - lastPeriodicTimestamp);
+      mod.updateVelocityError(now - lastPeriodicTimestamp);
+    }
+    lastPeriodicTimestamp = now;
+
+    for (SwerveModule mod : mSwerveMods) {
+      mod.checkResponse();
+      mod.reseedIfPending(now);
+    }
+    periodicMetrics.recordPeriodic(System.nanoTime() - periodicStart);
+  }
+
+  /*
+   * Odometry, the field widget and telemetry are registered with the robot's LoadShedder rather
+   * than run from periodic(), so they can be decimated when the loop is overrunning.
+   */
+
+  public void updateOdometry() {
+    refreshOdometryPositions();
+    swerveOdometry.update(getYawRadians(), odometryDistances, odometryAngles);
+    savePersistedState();
+  }
+
+  private static PersistedStateFile openPersistedState() {
+    File file = new File(Filesystem.getOperatingDirectory(), Constants.Swerve.persistedStateFile);
+    try {
+      PersistedStateFile state = new PersistedStateFile(file, kPersistedVersion, kPersistedAngleOffsets + 4);
+      state.startFlushing(Constants.Swerve.persistedStateFlushPeriod);
+      return state;
+    } catch (IOException e) {
+      DriverStation.reportError("Swerve state will not survive a reboot, could not map " + file + ": "
+          + e.getMessage(), false);
+      return null;
+    }
+  }
+
+  /**
+   * Picks up the pose, yaw and angle offsets saved before a reboot, once the Driver Station says
+   * which match this is. The roboRIO's clock cannot tell how old a record is (it has no battery
+   * backed clock and is only set by the Driver Station), so a record is used only when it was saved
+   * in the same FMS match; a redeploy, a practice session or a power up in the pits starts fresh.
+   * Call every loop while {@link #restorePending}.
+   *
+   * <p>The robot may already have been driven since boot, so that motion is carried over on top of
+   * the restored pose and yaw.
+   */
+  private void restorePersistedState() {
+    if (!DriverStation.isDSAttached()) {
+      return;
+    }
+    double now = Timer.getFPGATimestamp();
+    if (Double.isNaN(dsAttachedTimestamp)) {
+      dsAttachedTimestamp = now;
+    }
+    MatchType matchType = DriverStation.getMatchType();
+    // Match info comes in its own packet, so give it a moment before deciding there is no match.
+    if (matchType == MatchType.None && now - dsAttachedTimestamp < Constants.Swerve.persistedStateMatchInfoWait) {
+      return;
+    }
+    restorePending = false;
+    if (matchType == MatchType.None
+        || restoredState[kPersistedMatchType] != matchType.ordinal()
+        || restoredState[kPersistedMatchNumber] != DriverStation.getMatchNumber()
+        || restoredState[kPersistedReplayNumber] != DriverStation.getReplayNumber()) {
+      return;
+    }
+
+    Pose2d sinceBoot = swerveOdometry.getPoseMeters();
+    Pose2d pose = new Pose2d(restoredState[kPersistedX], restoredState[kPersistedY],
+        new Rotation2d(restoredState[kPersistedHeading]))
+        .plus(new Transform2d(sinceBoot.getTranslation(), sinceBoot.getRotation()));
+    // The gyro was zeroed at boot, so its yaw is the turn since then.
+    double yaw = restoredState[kPersistedYaw] + imu.getYawDegrees();
+    imu.setYaw(yaw);
+    // From the restored yaw itself, whatever the IMU has taken in yet.
+    swerveOdometry.resetPosition(yawToRadians(yaw), odometryDistances, pose);
+    // The modules pick these up on the next dispatch and re-seed their integrated encoders.
+    TunableConfig tuning = TunableConfig.getInstance();
+    for (int i = 0; i < 4; i++) {
+      tuning.set(Tunables.angleOffset[i], restoredState[kPersistedAngleOffsets + i]);
+    }
+    DriverStation.reportWarning("Swerve: restored the pose and yaw saved earlier in " + matchType
+        + " match " + DriverStation.getMatchNumber(), false);
+  }
+
+  /*
+   * Only while enabled, since that is when a reboot loses anything, and not until a loaded record
+   * has been decided on, so it is not overwritten first. Unchanged records are not rewritten.
+   */
+  private void savePersistedState() {
+    if (persistedStateFile == null || restorePending || !DriverStation.isEnabled()) {
+      return;
+    }
+    persistedState[kPersistedX] = swerveOdometry.getX();
+    persistedState[kPersistedY] = swerveOdometry.getY();
+    persistedState[kPersistedHeading] = swerveOdometry.getHeading();
+    persistedState[kPersistedYaw] = imu.getYawDegrees();
+    persistedState[kPersistedMatchType] = DriverStation.getMatchType().ordinal();
+    persistedState[kPersistedMatchNumber] = DriverStation.getMatchNumber();
+    persistedState[kPersistedReplayNumber] = DriverStation.getReplayNumber();
+    TunableConfig tuning = TunableConfig.getInstance();
+    for (int i = 0; i < 4; i++) {
+      persistedState[kPersistedAngleOffsets + i] = tuning.get(Tunables.angleOffset[i]);
+    }
+    persistedStateFile.save(persistedState);
+  }
+
+  /**
+   * Module positions for odometry. A module the health monitor does not trust is given the motion
+   * the trusted modules imply at its location, from a least squares fit of a rigid body motion.
+   * When it recovers, its measured distance is re-based so odometry does not see a jump.
+   */
+  private void refreshOdometryPositions() {
+    int healthy = 0;
+    double sumX = 0, sumY = 0, sumR = 0, sumDx = 0, sumDy = 0, sumMoment = 0;
+    for (int i = 0; i < 4; i++) {
+      if (!healthMonitor.isUsableForOdometry(i)) {
+        continue;
+      }
+      double measured = mSwerveMods[i].getDriveDistance();
+      double angle = mSwerveMods[i].getPositionAngle();
+      if (excludedFromOdometry[i]) {
+        odometryDistanceOffset[i] = odometryDistances[i] - measured;
+        excludedFromOdometry[i] = false;
+      }
+      double distance = measured + odometryDistanceOffset[i];
+      double delta = distance - odometryDistances[i];
+      double dx = delta * Math.cos(angle);
+      double dy = delta * Math.sin(angle);
+      double moduleX = kinematics.getModuleX(i);
+      double moduleY = kinematics.getModuleY(i);
+      healthy++;
+      sumX += moduleX;
+      sumY += moduleY;
+      sumR += moduleX * moduleX + moduleY * moduleY;
+      sumDx += dx;
+      sumDy += dy;
+      sumMoment += moduleX * dy - moduleY * dx;
+      odometryDistances[i] = distance;
+      odometryAngles[i] = angle;
+    }
+    if (healthy == 4) {
+      return;
+    }
+
+    // Least squares fit of dx = vx - w * y, dy = vy + w * x over the healthy modules.
+    double vx = 0, vy = 0, w = 0;
+    double denominator = healthy * sumR - sumX * sumX - sumY * sumY;
+    if (healthy >= 2 && Math.abs(denominator) > 1e-12) {
+      w = (healthy * sumMoment + sumY * sumDx - sumX * sumDy) / denominator;
+      vx = (sumDx + w * sumY) / healthy;
+      vy = (sumDy - w * sumX) / healthy;
+    }
+    for (int i = 0; i < 4; i++) {
+      if (healthMonitor.isUsableForOdometry(i)) {
+        continue;
+      }
+      excludedFromOdometry[i] = true;
+      double dx = vx - w * kinematics.getModuleY(i);
+      double dy = vy + w * kinematics.getModuleX(i);
+      double delta = Math.hypot(dx, dy);
+      odometryDistances[i] += delta;
+      if (delta > 1e-6) {
+        odometryAngles[i] = Math.atan2(dy, dx);
+      }
+    }
+  }
+
+  public void updateField() {
+    Pose2d pose = getPose();
+    fieldPose[0] = pose.getX();
+    fieldPose[1] = pose.getY();
+    fieldPose[2] = pose.getRotation().getDegrees();
+    telemetryDispatcher.publish(fieldChannel, fieldPose);
+  }
+
+  /** Queues the chassis and every module as packed telemetry arrays. */
+  public void updateTelemetry() {
+    Pose2d pose = swerveOdometry.getPoseMeters();
+    chassisTelemetry[SwerveTelemetry.kChassisPoseX] = pose.getX();
+    chassisTelemetry[SwerveTelemetry.kChassisPoseY] = pose.getY();
+    chassisTelemetry[SwerveTelemetry.kChassisPoseDegrees] = pose.getRotation().getDegrees();
+    chassisTelemetry[SwerveTelemetry.kChassisYawDegrees] = imu.getYawDegrees();
+    chassisTelemetry[SwerveTelemetry.kChassisPitchDegrees] = getPitchDegrees();
+    chassisTelemetry[SwerveTelemetry.kChassisRollDegrees] = imu.getRollDegrees();
+    chassisTelemetry[SwerveTelemetry.kChassisPitchRate] = getPitchRate();
+    chassisTelemetry[SwerveTelemetry.kChassisPredictedVolts] = powerManager.getPredictedVoltage();
+    chassisTelemetry[SwerveTelemetry.kChassisBatteryResistance] = powerManager.getResistanceOhms();
+    chassisTelemetry[SwerveTelemetry.kChassisControlRateHz] = controlLoopTiming.getRateHz();
+    chassisTelemetry[SwerveTelemetry.kChassisControlJitterMs] = controlLoopTiming.getJitterMs();
+    chassisTelemetry[SwerveTelemetry.kChassisControlMaxJitterMs] = controlLoopTiming.getMaxJitterMs();
+    telemetryDispatcher.publish(chassisTelemetryChannel, chassisTelemetry);
 
     for (SwerveModule mod : mSwerveMods) {
-      SmartDashboard.putNumber(
-          "Mod " + mod.moduleNumber + " Cancoder", mod.getCanCoderAbsolutePosition());
-      SmartDashboard.putNumber(
-          "Mod " + mod.moduleNumber + " Integrated", mod.getInternalAngle());
-      SmartDashboard.putNumber(
-          "Mod " + mod.moduleNumber + " Velocity", mod.getState().speedMetersPerSecond);
+      mod.updateTelemetry();
     }
+    latencyTracer.publish();
   }
 
   public void resetToAbsoluteNorth() {
@@ -158,9 +636,51 @@ public class Swerve extends SubsystemBase {
     }
   }
 
+  /**
+   * Turns every module in place from where it was when steering in place started, with no drive
+   * output. The request stays in force like any other, until a drive or lock request replaces it.
+   *
+   * @param degrees How far to turn each module, past a full turn if need be.
+   */
+  public void steerInPlace(double degrees) {
+    submit(kModeSteerInPlace, 0, 0, degrees, false, LatencyTracer.kUntraced, LatencyTracer.kUntraced);
+  }
+
+  private void turnModulesInPlace(double degrees) {
+    if (Double.isNaN(steerInPlaceStart[0])) {
+      for (SwerveModule mod : mSwerveMods) {
+        steerInPlaceStart[mod.moduleNumber] = mod.getInternalAngle();
+      }
+    }
+    for (SwerveModule mod : mSwerveMods) {
+      mod.steerInPlace(steerInPlaceStart[mod.moduleNumber] + degrees);
+    }
+  }
+
+  /** @return Drive motor turns since boot for a module, coupling included. */
+  public double getDriveMotorRotations(int moduleNumber) {
+    return mSwerveMods[moduleNumber].getDriveMotorRotations();
+  }
+
+  /** @return A module's angle from its integrated encoder, in degrees, not wrapped. */
+  public double getModuleAngleDegrees(int moduleNumber) {
+    return mSwerveMods[moduleNumber].getInternalAngle();
+  }
+
+  /** Lets the drive motors coast, or puts back their neutral mode. */
+  public void setDriveCoast(boolean coast) {
+    for (SwerveModule mod : mSwerveMods) {
+      mod.setDriveCoast(coast);
+    }
+  }
+
    public void setX() {
      //removeDefaultCommand();
      SmartDashboard.putString("Last X?", new Date().toString());
+     submit(kModeLockWheels, 0, 0, 0, false, LatencyTracer.kUntraced, LatencyTracer.kUntraced);
+   }
+
+   private void lockWheels() {
      mSwerveMods[0].setDesiredState(new SwerveModuleState(0, Rotation2d.fromDegrees(-45)), false, false); //Front Left
      mSwerveMods[1].setDesiredState(new SwerveModuleState(0, Rotation2d.fromDegrees(45)), false, false); //Front Right
      mSwerveMods[2].setDesiredState(new SwerveModuleState(0, Rotation2d.fromDegrees(45)), false, false); //Back Left
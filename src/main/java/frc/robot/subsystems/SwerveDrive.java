@@ -0,0 +1,39 @@
+package frc.robot.subsystems;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.wpilibj2.command.Subsystem;
+
+/**
+ * The drivetrain as the autonomous commands see it. {@link Swerve} is the robot's; the desktop
+ * autonomous evaluator runs the same commands against a simulated one. Requests stay in force until
+ * they are replaced, as they do in {@link Swerve}.
+ */
+public interface SwerveDrive extends Subsystem {
+  void drive(Translation2d translation, double rotation, boolean fieldRelative, boolean isOpenLoop);
+
+  /** Drives closed loop at robot relative chassis speeds, for trajectory following. */
+  void setChassisSpeeds(double vx, double vy, double omega);
+
+  /** Locks the wheels in the X formation. */
+  void setX();
+
+  Pose2d getPose();
+
+  void resetOdometry(Pose2d pose);
+
+  Rotation2d getYaw();
+
+  /** @return The chassis pitch, positive nose up, in degrees. */
+  double getPitchDegrees();
+
+  /** @return The chassis pitch rate, positive nose rising, in degrees per second. */
+  double getPitchRate();
+
+  /** @return When the IMU sample behind the yaw and pitch was read, in FPGA seconds. */
+  double getImuTimestamp();
+
+  /** @return False if the IMU cannot measure pitch, in which case it always reads zero. */
+  boolean canMeasurePitch();
+}
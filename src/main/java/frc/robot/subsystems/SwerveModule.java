@@ -2,6 +2,7 @@ package frc.robot.subsystems;
 
 import com.ctre.phoenix.sensors.CANCoder;
 import com.revrobotics.CANSparkMax;
+import com.revrobotics.CANSparkMax.IdleMode;
 import com.revrobotics.CANSparkMax.ControlType;
 import com.revrobotics.CANSparkMaxLowLevel.MotorType;
 import com.revrobotics.RelativeEncoder;
@@ -11,17 +12,29 @@ import edu.wpi.first.math.estimator.AngleStatistics;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.kinematics.SwerveModulePosition;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
+import edu.wpi.first.math.system.plant.DCMotor;
+import edu.wpi.first.util.datalog.DoubleArrayLogEntry;
+import edu.wpi.first.wpilibj.DataLogManager;
 import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import frc.lib.config.SwerveModuleConstants;
+import frc.lib.config.TunableConfig;
+import frc.lib.math.ModuleVelocityEstimator;
+import frc.lib.math.MotorThermalModel;
 import frc.lib.math.OnboardModuleState;
 import frc.lib.util.CANCoderUtil;
 import frc.lib.util.CANCoderUtil.CCUsage;
 import frc.lib.util.CANSparkMaxUtil;
 import frc.lib.util.CANSparkMaxUtil.Usage;
+import frc.lib.util.LatencyTracer;
+import frc.lib.util.SparkMaxSetpointCache;
+import frc.lib.util.SwerveHealthMonitor;
+import frc.lib.util.SwerveTelemetry;
+import frc.lib.util.TelemetryDispatcher;
 import frc.robot.Constants;
 import frc.robot.Robot;
+import frc.robot.Tunables;
 
 public class SwerveModule {
   public int moduleNumber;
@@ -38,14 +51,92 @@ public class SwerveModule {
   private final SparkMaxPIDController driveController;
   private final SparkMaxPIDController angleController;
 
-  private final SimpleMotorFeedforward feedforward = new SimpleMotorFeedforward(
-      Constants.Swerve.driveKS, Constants.Swerve.driveKV, Constants.Swerve.driveKA);
+  /* Setpoints go through these so unchanged frames are not resent every loop. */
+  private final SparkMaxSetpointCache driveSetpoints;
+  private final SparkMaxSetpointCache angleSetpoints;
+
+  private final TunableConfig tuning = TunableConfig.getInstance();
+  private SimpleMotorFeedforward feedforward = new SimpleMotorFeedforward(
+      tuning.get(Tunables.driveKS), tuning.get(Tunables.driveKV), tuning.get(Tunables.driveKA));
+  /* When to re-seed the integrated angle encoder after an angle offset change, NaN if not pending */
+  private double reseedTimestamp = Double.NaN;
 
   private int encoderResetCounter = 0;
 
-  public SwerveModule(int moduleNumber, SwerveModuleConstants moduleConstants) {
+  /* Wheel velocity without the Spark MAX's averaging and frame delay, see getDriveVelocity() */
+  private final ModuleVelocityEstimator velocityEstimator = new ModuleVelocityEstimator(
+      Constants.Swerve.velocityEstimatorAccelStdDev,
+      Constants.Swerve.velocityEstimatorPositionStdDev,
+      Constants.Swerve.velocityEstimatorTimingStdDev,
+      Constants.Swerve.drivePositionFramePeriod);
+  /* Voltage the drive was last commanded, reconstructed since the applied output frame is slow */
+  private double driveVolts = 0.0;
+  private final DoubleArrayLogEntry velocityTraceLog;
+  private final double[] velocityTrace = new double[4];
+
+  /* Drive motor turns per module turn, see Constants.Swerve#couplingRatio */
+  private double couplingRatio;
+  private double lastSteerDegrees;
+  private double lastSteerChangeTime = Double.NaN;
+  private double steerRate = 0.0; // degrees per second
+  /* Until this time a steer change is the integrated encoder being re-seeded, not motion */
+  private double steerRebaseUntil = Double.NaN;
+  /* Drive motion that comes from turning the module rather than rolling the wheel */
+  private double coupledDistance = 0.0;
+  private double coupledVelocity = 0.0;
+
+  private static final DCMotor driveMotorModel = DCMotor.getNEO(1);
+  private int driveCurrentLimit = Constants.Swerve.driveContinuousCurrentLimit;
+  private double lastCurrentLimitWrite = 0.0;
+  /* Duty behind the last battery current prediction, for converting a battery budget */
+  private double predictedDriveDuty = 0.0;
+  /* Below this duty a battery budget says little about the motor current */
+  private static final double kMinBudgetDuty = 0.05;
+  private static final int kCurrentLimitHysteresisAmps = 3;
+
+  private final MotorThermalModel driveThermal = newNeoThermalModel();
+  private final MotorThermalModel angleThermal = newNeoThermalModel();
+  private int thermalSampleCounter = 0;
+  /* maxDriveAcceleration scaled by the drive motor's derate */
+  private double driveAccelLimit = Constants.Swerve.maxDriveAcceleration;
+  private double appliedAngleKP;
+  private double lastDriveSpeed = 0.0;
+  private double lastDriveSpeedTimestamp = Timer.getFPGATimestamp();
+  /*
+   * Acceleration between the last two speed setpoints that differed, for the kA feedforward term.
+   * Requests arrive every 20 ms but the loop runs every 5 ms, so it is taken over the time between
+   * changes and held in between rather than spiking on one loop and dropping to zero on the next.
+   */
+  private double lastDriveAcceleration = 0.0;
+  private double lastDriveSpeedChange = Timer.getFPGATimestamp();
+  /* Setpoint minus measured wheel speed, and its filtered RMS */
+  private double velocityError = 0.0;
+  private double velocityErrorMeanSquare = 0.0;
+
+  private final TelemetryDispatcher telemetryDispatcher = TelemetryDispatcher.getInstance();
+  private final int telemetryChannel;
+  private final double[] telemetry = SwerveTelemetry.newModuleArray();
+
+  /* Latency tracing: setpoint changes big enough to expect a measured response. */
+  private static final double kResponseSpeedThreshold = 0.05; // meters per second
+  private static final double kResponseAngleThreshold = 1.0; // degrees
+  private final LatencyTracer latencyTracer;
+  private double responseStartSpeed;
+  private double responseStartAngle;
+  private double responseTargetSpeed;
+  private double responseTargetAngle;
+
+  public SwerveModule(int moduleNumber, SwerveModuleConstants moduleConstants, LatencyTracer latencyTracer) {
     this.moduleNumber = moduleNumber;
-    angleOffset = moduleConstants.angleOffset;
+    this.latencyTracer = latencyTracer;
+    // The offset in moduleConstants is the compiled default; the tuned one wins.
+    angleOffset = tuning.get(Tunables.angleOffset[moduleNumber]);
+    telemetryChannel = SwerveTelemetry.channel("Module " + moduleNumber, SwerveTelemetry.kModuleFields);
+    velocityTraceLog = Constants.Swerve.recordVelocityTraces
+        ? new DoubleArrayLogEntry(DataLogManager.getLog(), "/Swerve/Module " + moduleNumber + "/velocityTrace")
+        : null;
+    velocityEstimator.setPlant(tuning.get(Tunables.driveKS), tuning.get(Tunables.driveKV), tuning.get(Tunables.driveKA));
+    couplingRatio = tuning.get(Tunables.couplingRatio[moduleNumber]);
 
     /* Angle Encoder Config */
     angleEncoder = new CANCoder(moduleConstants.cancoderID);
@@ -55,15 +146,74 @@ public class SwerveModule {
     angleMotor = new CANSparkMax(moduleConstants.angleMotorID, MotorType.kBrushless);
     integratedAngleEncoder = angleMotor.getEncoder();
     angleController = angleMotor.getPIDController();
+    angleSetpoints = new SparkMaxSetpointCache(angleMotor,
+        Constants.Swerve.angleSetpointTolerance, 0.0, Constants.Swerve.setpointKeepAlive);
     configAngleMotor();
 
     // /* Drive Motor Config */
     driveMotor = new CANSparkMax(moduleConstants.driveMotorID, MotorType.kBrushless);
     driveEncoder = driveMotor.getEncoder();
     driveController = driveMotor.getPIDController();
+    driveSetpoints = new SparkMaxSetpointCache(driveMotor,
+        Constants.Swerve.driveSetpointTolerance, Constants.Swerve.feedforwardTolerance,
+        Constants.Swerve.setpointKeepAlive);
     configDriveMotor();
 
     lastAngle = getState().angle.getDegrees();
+
+    tuning.subscribe(snapshot -> applyAnglePID(snapshot),
+        Tunables.angleKP, Tunables.angleKI, Tunables.angleKD, Tunables.angleKFF);
+    tuning.subscribe(snapshot -> applyDrivePID(snapshot),
+        Tunables.driveKP, Tunables.driveKI, Tunables.driveKD, Tunables.driveKFF);
+    tuning.subscribe(snapshot -> applyDriveFeedforward(snapshot),
+        Tunables.driveKS, Tunables.driveKV, Tunables.driveKA);
+    tuning.subscribe(snapshot -> applyAngleOffset(snapshot.get(Tunables.angleOffset[moduleNumber])),
+        Tunables.angleOffset[moduleNumber]);
+    tuning.subscribe(snapshot -> couplingRatio = snapshot.get(Tunables.couplingRatio[moduleNumber]),
+        Tunables.couplingRatio[moduleNumber]);
+  }
+
+  private void applyDrivePID(TunableConfig.Snapshot snapshot) {
+    driveController.setP(snapshot.get(Tunables.driveKP));
+    driveController.setI(snapshot.get(Tunables.driveKI));
+    driveController.setD(snapshot.get(Tunables.driveKD));
+    driveController.setFF(snapshot.get(Tunables.driveKFF));
+  }
+
+  private void applyDriveFeedforward(TunableConfig.Snapshot snapshot) {
+    double kS = snapshot.get(Tunables.driveKS);
+    double kV = snapshot.get(Tunables.driveKV);
+    double kA = snapshot.get(Tunables.driveKA);
+    feedforward = new SimpleMotorFeedforward(kS, kV, kA);
+    velocityEstimator.setPlant(kS, kV, kA);
+  }
+
+  private void applyAnglePID(TunableConfig.Snapshot snapshot) {
+    appliedAngleKP = snapshot.get(Tunables.angleKP) * angleThermal.getDerate();
+    angleController.setP(appliedAngleKP);
+    angleController.setI(snapshot.get(Tunables.angleKI));
+    angleController.setD(snapshot.get(Tunables.angleKD));
+    angleController.setFF(snapshot.get(Tunables.angleKFF));
+  }
+
+  /**
+   * Sends a new magnet offset to the CANCoder. The integrated encoder is re-seeded from it once the
+   * CANCoder has had time to report with the new offset, see {@link #reseedIfPending}.
+   */
+  private void applyAngleOffset(double offsetDegrees) {
+    angleOffset = offsetDegrees;
+    angleEncoder.configMagnetOffset(angleOffset);
+    reseedTimestamp = Timer.getFPGATimestamp() + Constants.Swerve.angleOffsetSettleSeconds;
+  }
+
+  /** Finishes an angle offset change. Call once per loop. */
+  public void reseedIfPending(double now) {
+    if (now >= reseedTimestamp) {
+      reseedTimestamp = Double.NaN;
+      resetToAbsolute(true);
+      // The encoder was just re-seeded, so the same reference means something new.
+      angleSetpoints.invalidate();
+    }
   }
 
   private void configAngleEncoder() {
@@ -85,10 +235,11 @@ public class SwerveModule {
     angleMotor.setInverted(Constants.Swerve.angleInvert);
     angleMotor.setIdleMode(Constants.Swerve.angleNeutralMode);
     integratedAngleEncoder.setPositionConversionFactor(Constants.Swerve.angleConversionFactor);
-    angleController.setP(Constants.Swerve.angleKP);
-    angleController.setI(Constants.Swerve.angleKI);
-    angleController.setD(Constants.Swerve.angleKD);
-    angleController.setFF(Constants.Swerve.angleKFF);
+    appliedAngleKP = tuning.get(Tunables.angleKP);
+    angleController.setP(appliedAngleKP);
+    angleController.setI(tuning.get(Tunables.angleKI));
+    angleController.setD(tuning.get(Tunables.angleKD));
+    angleController.setFF(tuning.get(Tunables.angleKFF));
     // TODO: Make this the CANCoder some day.
     // angleController.setFeedbackDevice(integratedAngleEncoder);
     angleMotor.enableVoltageCompensation(Constants.Swerve.voltageComp);
@@ -105,10 +256,7 @@ public class SwerveModule {
     driveMotor.setIdleMode(Constants.Swerve.driveNeutralMode);
     driveEncoder.setVelocityConversionFactor(Constants.Swerve.driveConversionVelocityFactor);
     driveEncoder.setPositionConversionFactor(Constants.Swerve.driveConversionPositionFactor);
-    driveController.setP(Constants.Swerve.angleKP);
-    driveController.setI(Constants.Swerve.angleKI);
-    driveController.setD(Constants.Swerve.angleKD);
-    driveController.setFF(Constants.Swerve.angleKFF);
+    applyDrivePID(tuning.getSnapshot());
     driveMotor.enableVoltageCompensation(Constants.Swerve.voltageComp);
     driveMotor.burnFlash();
     driveEncoder.setPosition(0.0);
@@ -129,7 +277,8 @@ public class SwerveModule {
     DriverStation.reportWarning("Module: " + moduleNumber + " CanCoderDegrees:  " + canCoderDegrees
         + " AngleOffset: " + angleOffset, false);
     integratedAngleEncoder.setPosition(canCoderDegrees);
-
+    // The jump shows up within a frame or two and must not count as the module turning.
+    steerRebaseUntil = Timer.getFPGATimestamp() + 2.0 * Constants.Swerve.anglePositionFramePeriod;
   }
 
   public void updateDashboardCancoders() {
@@ -149,25 +298,121 @@ public class SwerveModule {
     double angleDegrees = angleOffset;
     double absolutePosition = canCoderDegrees - angleDegrees;
     updateDashboardCancoders();
-    angleController.setReference(0, ControlType.kPosition);
+    // The encoder was just re-seeded, so the same reference means something new.
+    angleSetpoints.invalidate();
+    angleSetpoints.setReference(0, ControlType.kPosition);
     lastAngle = 0;
     // this.setDesiredState(new SwerveModuleState(0, new Rotation2d(0)), false);
   }
 
+  private static MotorThermalModel newNeoThermalModel() {
+    return new MotorThermalModel(
+        driveMotorModel.rOhms,
+        Constants.Swerve.thermalWindingCapacitance,
+        Constants.Swerve.thermalHousingCapacitance,
+        Constants.Swerve.thermalWindingToHousing,
+        Constants.Swerve.thermalHousingToAmbient,
+        Constants.Swerve.thermalDerateStartCelsius,
+        Constants.Swerve.thermalLimitCelsius,
+        Constants.Swerve.thermalMinDerate,
+        Constants.Swerve.thermalAmbientCelsius);
+  }
+
+  /**
+   * Advances the drive and angle thermal models and applies their derating. Motor temperatures
+   * are only read every few calls since they change slowly.
+   */
+  public void updateThermal(double dtSeconds) {
+    driveThermal.update(driveMotor.getOutputCurrent(), dtSeconds, Constants.Swerve.thermalHorizonSeconds);
+    angleThermal.update(angleMotor.getOutputCurrent(), dtSeconds, Constants.Swerve.thermalHorizonSeconds);
+    if (++thermalSampleCounter >= Constants.Swerve.thermalSensorPeriodLoops) {
+      thermalSampleCounter = 0;
+      driveThermal.correct(driveMotor.getMotorTemperature());
+      angleThermal.correct(angleMotor.getMotorTemperature());
+    }
+
+    double driveDerate = driveThermal.getDerate();
+    driveAccelLimit = Constants.Swerve.maxDriveAcceleration * driveDerate;
+    double angleKP = tuning.get(Tunables.angleKP) * angleThermal.getDerate();
+    // Only touch the Spark MAX when the gain has moved noticeably.
+    if (Math.abs(angleKP - appliedAngleKP) > appliedAngleKP * 0.02) {
+      angleController.setP(angleKP);
+      appliedAngleKP = angleKP;
+    }
+  }
+
+  /** Queues the module's whole state as one packed array. Call once per loop. */
+  public void updateTelemetry() {
+    telemetry[SwerveTelemetry.kModSetpointAngle] = lastAngle;
+    telemetry[SwerveTelemetry.kModSetpointSpeed] = lastDriveSpeed;
+    telemetry[SwerveTelemetry.kModMeasuredAngle] = angleEncoder.getPosition();
+    telemetry[SwerveTelemetry.kModVelocity] = driveEncoder.getVelocity();
+    telemetry[SwerveTelemetry.kModCanCoderAngle] = angleEncoder.getAbsolutePosition();
+    telemetry[SwerveTelemetry.kModIntegratedAngle] = integratedAngleEncoder.getPosition();
+    telemetry[SwerveTelemetry.kModAppliedOutput] = driveMotor.getAppliedOutput();
+    telemetry[SwerveTelemetry.kModDriveCurrentLimit] = driveCurrentLimit;
+    telemetry[SwerveTelemetry.kModDriveThermalHeadroom] = driveThermal.getHeadroomCelsius();
+    telemetry[SwerveTelemetry.kModAngleThermalHeadroom] = angleThermal.getHeadroomCelsius();
+    telemetry[SwerveTelemetry.kModSentFrames] = driveSetpoints.getSentFrames() + angleSetpoints.getSentFrames();
+    telemetry[SwerveTelemetry.kModSuppressedFrames] =
+        driveSetpoints.getSuppressedFrames() + angleSetpoints.getSuppressedFrames();
+    telemetry[SwerveTelemetry.kModSetpointAcceleration] = lastDriveAcceleration;
+    telemetry[SwerveTelemetry.kModVelocityError] = velocityError;
+    telemetry[SwerveTelemetry.kModVelocityErrorRms] = Math.sqrt(velocityErrorMeanSquare);
+    telemetry[SwerveTelemetry.kModEstimatedVelocity] = velocityEstimator.getVelocity();
+    telemetry[SwerveTelemetry.kModEstimatedAcceleration] = velocityEstimator.getAcceleration();
+    telemetry[SwerveTelemetry.kModCoupledVelocity] = coupledVelocity;
+    telemetryDispatcher.publish(telemetryChannel, telemetry);
+  }
+
+  /**
+   * Limits how quickly the drive speed magnitude may change, to maxDriveAcceleration scaled down as
+   * the drive motor is thermally derated, so the limit tightens smoothly rather than appearing at
+   * the first derate. Only the magnitude is limited so that a direction flip from optimize() is not
+   * mistaken for a hard stop.
+   */
+  private double limitDriveAcceleration(double desiredSpeed) {
+    double now = Timer.getFPGATimestamp();
+    double dt = Math.min(now - lastDriveSpeedTimestamp, 0.1);
+    double maxStep = Math.max(dt, 0.0) * driveAccelLimit;
+    lastDriveSpeedTimestamp = now;
+    double lastMagnitude = Math.abs(lastDriveSpeed);
+    double magnitude = Math.max(lastMagnitude - maxStep, Math.min(lastMagnitude + maxStep, Math.abs(desiredSpeed)));
+    // Also from the magnitudes, so a flip from optimize() is not a huge acceleration.
+    if (magnitude != lastMagnitude) {
+      // After a pause the change still only had the one request period to happen in.
+      double interval = Math.min(now - lastDriveSpeedChange, Robot.kDefaultPeriod);
+      lastDriveAcceleration = Math.copySign((magnitude - lastMagnitude) / interval, desiredSpeed);
+      lastDriveSpeedChange = now;
+    } else if (now - lastDriveSpeedChange > Robot.kDefaultPeriod * 1.5) {
+      // A whole request went by without a change, so the setpoint is holding its speed.
+      lastDriveAcceleration = 0.0;
+    }
+    lastDriveSpeed = Math.copySign(magnitude, desiredSpeed);
+    return lastDriveSpeed;
+  }
+
   private void setSpeed(SwerveModuleState desiredState, boolean isOpenLoop) {
+    // The drive motor also has to follow the module turning for the wheel to roll at this speed.
+    double speed = limitDriveAcceleration(desiredState.speedMetersPerSecond) + coupledVelocity;
+    double volts;
     if (isOpenLoop) {
-      double percentOutput = desiredState.speedMetersPerSecond / Constants.Swerve.maxSpeed;
-      if (moduleNumber == 1) {
-        SmartDashboard.putNumber("wheel 1 speed", percentOutput);
-      }
-      driveMotor.set(percentOutput);
+      double percentOutput = speed / Constants.Swerve.maxSpeed;
+      driveSetpoints.set(percentOutput);
+      volts = percentOutput * Constants.Swerve.voltageComp;
     } else {
-      driveController.setReference(
-          desiredState.speedMetersPerSecond,
+      double arbFF = feedforward.calculate(speed, lastDriveAcceleration);
+      driveSetpoints.setReference(
+          speed,
           ControlType.kVelocity,
           0,
-          feedforward.calculate(desiredState.speedMetersPerSecond));
+          arbFF);
+      // What the Spark MAX velocity loop outputs, with the estimate standing in for its velocity.
+      volts = arbFF + (tuning.get(Tunables.driveKP) * (speed - velocityEstimator.getVelocity())
+          + tuning.get(Tunables.driveKFF) * speed) * Constants.Swerve.voltageComp;
     }
+    driveVolts = Math.max(-Constants.Swerve.voltageComp, Math.min(Constants.Swerve.voltageComp, volts));
+    velocityEstimator.setVoltage(driveVolts);
   }
 
   private void setAngle(SwerveModuleState desiredState) {
@@ -175,8 +420,6 @@ public class SwerveModule {
   }
 
   private void setAngle(SwerveModuleState desiredState, boolean jitterCheck) {
-    SmartDashboard.putNumber("setAngle A: " + moduleNumber, desiredState.angle.getDegrees());
-    updateDashboardCancoders();
     // Prevent rotating module if speed is less then 1%. Prevents jittering.
     double angle = (jitterCheck && Math.abs(desiredState.speedMetersPerSecond) <= (Constants.Swerve.maxSpeed * 0.01))
         ? lastAngle
@@ -185,10 +428,7 @@ public class SwerveModule {
     // double cancoderAngle = this.getCanCoderAbsolutePosition();
     // this.integratedAngleEncoder.setPosition(cancoderAngle);
 
-    SmartDashboard.putNumber("Angle: " + moduleNumber, angle);
-    SmartDashboard.putNumber("Last Angle: " + moduleNumber,
-        lastAngle);
-    angleController.setReference(angle, ControlType.kPosition);
+    angleSetpoints.setReference(angle, ControlType.kPosition);
     lastAngle = angle;
   }
 
@@ -197,15 +437,188 @@ public class SwerveModule {
   }
 
   public void setDesiredState(SwerveModuleState desiredState, boolean isOpenLoop, boolean jitterCheck) {
+    setDesiredState(desiredState, isOpenLoop, jitterCheck, LatencyTracer.kUntraced, LatencyTracer.kUntraced);
+  }
+
+  /**
+   * @param inputTimestamp When the driver input behind this state was read, or {@link
+   *     LatencyTracer#kUntraced}.
+   * @param driveTimestamp When {@code Swerve.drive()} received the request.
+   */
+  public void setDesiredState(
+      SwerveModuleState desiredState, boolean isOpenLoop, boolean jitterCheck, long inputTimestamp, long driveTimestamp) {
+    double previousAngle = lastAngle;
+    double previousSpeed = lastDriveSpeed;
+
     // Custom optimize command, since default WPILib optimize assumes continuous
     // controller which
     // REV and CTRE are not
-    SmartDashboard.putNumber("setDesiredState: " + moduleNumber, desiredState.angle.getDegrees());
     desiredState = OnboardModuleState.optimize(desiredState, getState().angle);
-    SmartDashboard.putNumber("setDesiredState B: " + moduleNumber, desiredState.angle.getDegrees());
     setAngle(desiredState, jitterCheck);
     setSpeed(desiredState, isOpenLoop);
 
+    if (inputTimestamp != LatencyTracer.kUntraced) {
+      boolean changed = Math.abs(lastAngle - previousAngle) > kResponseAngleThreshold
+          || Math.abs(lastDriveSpeed - previousSpeed) > kResponseSpeedThreshold;
+      if (changed && !latencyTracer.isAwaitingResponse(moduleNumber)) {
+        responseStartSpeed = driveEncoder.getVelocity();
+        responseStartAngle = getInternalAngle();
+        responseTargetSpeed = lastDriveSpeed;
+        responseTargetAngle = lastAngle;
+      }
+      latencyTracer.recordWrite(moduleNumber, inputTimestamp, driveTimestamp, changed);
+    }
+  }
+
+  /**
+   * Tracks how far turning the module has turned the drive motor. Call once per control loop,
+   * before new setpoints are written. The steer rate comes from the integrated angle encoder's
+   * position frames, so it is one frame behind.
+   */
+  public void updateCoupling(double now) {
+    double steerDegrees = integratedAngleEncoder.getPosition();
+    double frame = Constants.Swerve.anglePositionFramePeriod;
+    if (Double.isNaN(lastSteerChangeTime) || now < steerRebaseUntil) {
+      steerRate = 0.0;
+      lastSteerDegrees = steerDegrees;
+      lastSteerChangeTime = now;
+    } else if (steerDegrees != lastSteerDegrees) {
+      // Frames are sent at a fixed period; when they were seen is only known to a loop.
+      steerRate = (steerDegrees - lastSteerDegrees) / frame;
+      coupledDistance += couplingRatio * (steerDegrees - lastSteerDegrees) / 360.0
+          * Constants.Swerve.driveConversionPositionFactor;
+      lastSteerDegrees = steerDegrees;
+      lastSteerChangeTime = now;
+    } else if (now - lastSteerChangeTime > 1.5 * frame) {
+      steerRate = 0.0;
+    }
+    coupledVelocity = couplingRatio * steerRate / 360.0 * Constants.Swerve.driveConversionPositionFactor;
+  }
+
+  /**
+   * Advances the wheel velocity estimate to the latest drive position frame. Call once per control
+   * loop, before new setpoints are written.
+   */
+  public void updateVelocityEstimate(double now) {
+    double position = driveEncoder.getPosition();
+    velocityEstimator.update(now, position);
+    if (!DriverStation.isEnabled()) {
+      // The Spark MAX drops its output while disabled, whatever was last commanded.
+      driveVolts = 0.0;
+    }
+    velocityEstimator.setVoltage(driveVolts);
+    if (velocityTraceLog != null) {
+      velocityTrace[0] = now;
+      velocityTrace[1] = position;
+      velocityTrace[2] = driveEncoder.getVelocity();
+      velocityTrace[3] = driveVolts;
+      velocityTraceLog.append(velocityTrace);
+    }
+  }
+
+  /**
+   * Tracks how far the wheel speed is from the speed setpoint. Call once per loop; the RMS is
+   * filtered over roughly {@link Constants.Swerve#velocityErrorWindow}.
+   */
+  public void updateVelocityError(double dtSeconds) {
+    velocityError = lastDriveSpeed - (driveEncoder.getVelocity() - coupledVelocity);
+    double alpha = Math.min(1.0, dtSeconds / Constants.Swerve.velocityErrorWindow);
+    velocityErrorMeanSquare += (velocityError * velocityError - velocityErrorMeanSquare) * alpha;
+  }
+
+  /**
+   * Checks whether the measured state has started moving toward the last traced setpoint change.
+   * Call once per loop.
+   */
+  public void checkResponse() {
+    if (!latencyTracer.isAwaitingResponse(moduleNumber)) {
+      return;
+    }
+    double speedMoved = Math.signum(responseTargetSpeed - responseStartSpeed)
+        * (driveEncoder.getVelocity() - responseStartSpeed);
+    double angleMoved = Math.signum(responseTargetAngle - responseStartAngle)
+        * (getInternalAngle() - responseStartAngle);
+    latencyTracer.checkResponse(moduleNumber,
+        speedMoved > kResponseSpeedThreshold || angleMoved > kResponseAngleThreshold);
+  }
+
+  /** Hands this module's CAN devices to the health monitor. */
+  public void registerHealth(SwerveHealthMonitor monitor) {
+    monitor.register(moduleNumber, driveMotor, angleMotor, angleEncoder);
+  }
+
+  /**
+   * Limits the drive motor to a share of the battery current. The Spark MAX limit is on the motor
+   * side, where the current is the battery current divided by the duty, so the share is converted
+   * with the duty from the last {@link #predictDriveBatteryCurrent}.
+   *
+   * @param batteryAmps The battery current the drive may pull, infinite for no cut.
+   */
+  public void setDriveBatteryBudget(double batteryAmps) {
+    double duty = Math.max(predictedDriveDuty, kMinBudgetDuty);
+    double motorAmps = Math.min(batteryAmps / duty, Constants.Swerve.driveContinuousCurrentLimit);
+    setDriveCurrentLimit((int) Math.max(Constants.Swerve.minDriveCurrentLimit, Math.floor(motorAmps)));
+  }
+
+  /*
+   * Setting the smart current limit is a parameter write, so a raise is only sent once it is more
+   * than a few amps and at most once per currentLimitUpdatePeriod. A cut, however small, is sent
+   * straight away.
+   */
+  private void setDriveCurrentLimit(int limitAmps) {
+    if (limitAmps == driveCurrentLimit) {
+      return;
+    }
+    double now = Timer.getFPGATimestamp();
+    if (limitAmps > driveCurrentLimit) {
+      boolean full = limitAmps == Constants.Swerve.driveContinuousCurrentLimit;
+      if (limitAmps - driveCurrentLimit < kCurrentLimitHysteresisAmps && !full) {
+        return;
+      }
+      if (now - lastCurrentLimitWrite < Constants.Swerve.currentLimitUpdatePeriod) {
+        return;
+      }
+    }
+    driveMotor.setSmartCurrentLimit(limitAmps);
+    driveCurrentLimit = limitAmps;
+    lastCurrentLimitWrite = now;
+  }
+
+  public int getDriveCurrentLimit() {
+    return driveCurrentLimit;
+  }
+
+  /**
+   * @return The current the drive motor pulls from the battery (motor current scaled by duty). The
+   *     duty is from the commanded voltage, since the applied output frame is only sent every 500 ms.
+   */
+  public double getDriveBatteryCurrent() {
+    return Math.abs(driveMotor.getOutputCurrent() * driveVolts / Constants.Swerve.voltageComp);
+  }
+
+  /** @return The current the angle motor pulls from the battery (motor current scaled by duty). */
+  public double getAngleBatteryCurrent() {
+    return Math.abs(angleMotor.getOutputCurrent() * angleMotor.getAppliedOutput());
+  }
+
+  /**
+   * Predicts the battery current the drive motor will pull for a desired state, using a NEO model
+   * at the current wheel speed. The result is capped by the full current limit, not the applied
+   * one, so it says what the drive would pull if it were not cut.
+   */
+  public double predictDriveBatteryCurrent(SwerveModuleState desiredState, boolean isOpenLoop) {
+    double appliedVolts;
+    if (isOpenLoop) {
+      appliedVolts = desiredState.speedMetersPerSecond / Constants.Swerve.maxSpeed * Constants.Swerve.voltageComp;
+    } else {
+      appliedVolts = feedforward.calculate(desiredState.speedMetersPerSecond);
+    }
+    appliedVolts = Math.max(-Constants.Swerve.voltageComp, Math.min(Constants.Swerve.voltageComp, appliedVolts));
+    double motorRadPerSec = getDriveMotorVelocity() / Constants.Swerve.driveConversionPositionFactor * 2.0 * Math.PI;
+    double motorAmps = Math.min(Math.abs(driveMotorModel.getCurrent(motorRadPerSec, appliedVolts)),
+        Constants.Swerve.driveContinuousCurrentLimit);
+    predictedDriveDuty = Math.abs(appliedVolts) / Constants.Swerve.voltageComp;
+    return motorAmps * predictedDriveDuty;
   }
 
   public double getInternalAngle() {
@@ -217,16 +630,62 @@ public class SwerveModule {
   }
 
   public SwerveModuleState getState() {
-    return new SwerveModuleState(driveEncoder.getVelocity(), Rotation2d.fromDegrees(getInternalAngle()));
+    return new SwerveModuleState(getDriveVelocity(), Rotation2d.fromDegrees(getInternalAngle()));
   }
 
   public SwerveModulePosition getPosition() {
-    SmartDashboard.putNumber("angleEncoder position " + moduleNumber, angleEncoder.getPosition());
-    SmartDashboard.putNumber("angleOffset degrees " + moduleNumber, angleOffset);
+    return new SwerveModulePosition(getDriveDistance(), new Rotation2d(getPositionAngle()));
+  }
+
+  /**
+   * @return The drive wheel's velocity in meters per second, without the motion from turning the
+   *     module: the estimate with {@link Constants.Swerve#useEstimatedVelocity}, otherwise the Spark
+   *     MAX reading.
+   */
+  public double getDriveVelocity() {
+    return getDriveMotorVelocity() - coupledVelocity;
+  }
+
+  /* The drive motor's own velocity in wheel meters per second, coupling included */
+  private double getDriveMotorVelocity() {
+    return Constants.Swerve.useEstimatedVelocity ? velocityEstimator.getVelocity() : driveEncoder.getVelocity();
+  }
+
+  /** @return The drive wheel's travelled distance in meters, without the coupled steer motion. */
+  public double getDriveDistance() {
+    return driveEncoder.getPosition() - coupledDistance;
+  }
+
+  /** @return Drive motor turns since boot, coupling included, for calibrating the coupling. */
+  public double getDriveMotorRotations() {
+    return driveEncoder.getPosition() / Constants.Swerve.driveConversionPositionFactor;
+  }
+
+  /**
+   * Points the module at an angle with no drive output, for calibrating the coupling. The angle
+   * is taken as is, so it can run past a full turn.
+   */
+  public void steerInPlace(double angleDegrees) {
+    angleSetpoints.setReference(angleDegrees, ControlType.kPosition);
+    lastAngle = angleDegrees;
+    driveSetpoints.set(0.0);
+    lastDriveSpeed = 0.0;
+    lastDriveAcceleration = 0.0;
+    driveVolts = 0.0;
+    velocityEstimator.setVoltage(0.0);
+  }
+
+  /**
+   * Lets the drive motor coast so it can be turned by the gearing, for calibrating the coupling.
+   * Changes a Spark MAX setting, so not for use every loop.
+   */
+  public void setDriveCoast(boolean coast) {
+    driveMotor.setIdleMode(coast ? IdleMode.kCoast : Constants.Swerve.driveNeutralMode);
+  }
 
-    return new SwerveModulePosition(
-        driveEncoder.getPosition(),
-        Rotation2d.fromDegrees(angleEncoder.getPosition()));
+  /** @return The module angle used for odometry, in radians. */
+  public double getPositionAngle() {
+    return Math.toRadians(angleEncoder.getPosition());
   }
 
   
@@ -0,0 +1,109 @@
+package frc.lib.math;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveDriveOdometry;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import frc.robot.Constants;
+import java.util.Random;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks {@link FastSwerveKinematics} and {@link FastSwerveOdometry} against WPILib for the layout
+ * in {@link Constants.Swerve}, on random speeds and module states with a fixed seed. Every result
+ * has to match to {@link #kTolerance}.
+ */
+class FastSwerveKinematicsTest {
+  private static final double kTolerance = 1e-9;
+  private static final int kSamples = 100_000;
+  private static final int kOdometrySteps = 10_000;
+
+  private final SwerveDriveKinematics wpilib = new SwerveDriveKinematics(Constants.Swerve.moduleLocations);
+  private final FastSwerveKinematics fast = new FastSwerveKinematics(Constants.Swerve.moduleLocations);
+  private Random random;
+
+  @BeforeEach
+  void seed() {
+    random = new Random(2023);
+  }
+
+  @Test
+  void inverseMatchesWpilib() {
+    double[] speeds = new double[4];
+    double[] angles = new double[4];
+    for (int n = 0; n < kSamples; n++) {
+      // Every tenth sample is a stop, to check that both keep the previous angles.
+      boolean stop = n % 10 == 0;
+      double vx = stop ? 0 : randomIn(Constants.Swerve.maxSpeed);
+      double vy = stop ? 0 : randomIn(Constants.Swerve.maxSpeed);
+      double omega = stop ? 0 : randomIn(Constants.Swerve.maxAngularVelocity);
+
+      SwerveModuleState[] expected = wpilib.toSwerveModuleStates(new ChassisSpeeds(vx, vy, omega));
+      fast.toModuleStates(vx, vy, omega, speeds, angles);
+      for (int i = 0; i < 4; i++) {
+        assertEquals(expected[i].speedMetersPerSecond, speeds[i], kTolerance, "speed");
+        assertEquals(0, MathUtil.angleModulus(expected[i].angle.getRadians() - angles[i]), kTolerance, "angle");
+      }
+    }
+  }
+
+  @Test
+  void forwardMatchesWpilib() {
+    double[] speeds = new double[4];
+    double[] angles = new double[4];
+    double[] chassis = new double[3];
+    SwerveModuleState[] states = new SwerveModuleState[4];
+    for (int n = 0; n < kSamples; n++) {
+      for (int i = 0; i < 4; i++) {
+        speeds[i] = randomIn(Constants.Swerve.maxSpeed);
+        angles[i] = randomIn(Math.PI);
+        states[i] = new SwerveModuleState(speeds[i], new Rotation2d(angles[i]));
+      }
+      ChassisSpeeds expected = wpilib.toChassisSpeeds(states);
+      fast.toChassisSpeeds(speeds, angles, chassis);
+      assertEquals(expected.vxMetersPerSecond, chassis[0], kTolerance, "vx");
+      assertEquals(expected.vyMetersPerSecond, chassis[1], kTolerance, "vy");
+      assertEquals(expected.omegaRadiansPerSecond, chassis[2], kTolerance, "omega");
+    }
+  }
+
+  @Test
+  void odometryMatchesWpilib() {
+    double[] distances = new double[4];
+    double[] angles = new double[4];
+    SwerveModulePosition[] positions = new SwerveModulePosition[4];
+    for (int i = 0; i < 4; i++) {
+      positions[i] = new SwerveModulePosition();
+    }
+    Pose2d start = new Pose2d(1.5, 2.5, Rotation2d.fromDegrees(30));
+    double gyro = 0.2;
+    SwerveDriveOdometry expected = new SwerveDriveOdometry(wpilib, new Rotation2d(gyro), positions, start);
+    FastSwerveOdometry actual = new FastSwerveOdometry(fast, gyro, distances, start);
+
+    for (int n = 0; n < kOdometrySteps; n++) {
+      gyro += randomIn(0.1);
+      for (int i = 0; i < 4; i++) {
+        distances[i] += randomIn(0.09);
+        angles[i] = randomIn(Math.PI);
+        positions[i] = new SwerveModulePosition(distances[i], new Rotation2d(angles[i]));
+      }
+      Pose2d pose = expected.update(new Rotation2d(gyro), positions);
+      actual.update(gyro, distances, angles);
+      assertEquals(pose.getX(), actual.getX(), kTolerance, "x");
+      assertEquals(pose.getY(), actual.getY(), kTolerance, "y");
+      assertEquals(0, MathUtil.angleModulus(pose.getRotation().getRadians() - actual.getHeading()), kTolerance,
+          "heading");
+    }
+  }
+
+  private double randomIn(double limit) {
+    return (random.nextDouble() * 2 - 1) * limit;
+  }
+}
@@ -0,0 +1,119 @@
+package frc.lib.math;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import frc.robot.Constants.AutoConstants;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/** Plans on the field map and checks that the trajectories are ones the robot can follow. */
+class PathfinderTest {
+  private static final int kQueries = 500;
+  private static final double kTolerance = 1e-6;
+
+  private NavigationGrid grid;
+  private Pathfinder pathfinder;
+
+  @BeforeEach
+  void load() throws IOException {
+    grid = NavigationGrid.load(new File("src/main/deploy/" + AutoConstants.kFieldMapFile),
+        AutoConstants.kNavGridResolution, AutoConstants.kRobotRadiusMeters);
+    pathfinder = newPathfinder(grid);
+  }
+
+  @Test
+  void trajectoriesStayClearAndWithinLimits() {
+    Random random = new Random(2023);
+    int planned = 0;
+    for (int n = 0; n < kQueries; n++) {
+      Pose2d start = randomFreePose(random);
+      Pose2d goal = randomFreePose(random);
+      HolonomicTrajectory trajectory = pathfinder.plan(start, goal);
+      if (trajectory == null) {
+        continue;
+      }
+      planned++;
+      int last = trajectory.length() - 1;
+      assertEquals(start.getX(), trajectory.x[0], kTolerance, "start x");
+      assertEquals(start.getY(), trajectory.y[0], kTolerance, "start y");
+      assertEquals(goal.getX(), trajectory.x[last], kTolerance, "goal x");
+      assertEquals(goal.getY(), trajectory.y[last], kTolerance, "goal y");
+      assertEquals(0, Math.hypot(trajectory.vx[last], trajectory.vy[last]), kTolerance, "speed at the goal");
+      for (int i = 0; i <= last; i++) {
+        assertTrue(isClear(trajectory.x[i], trajectory.y[i]),
+            "sample " + i + " at " + trajectory.x[i] + ", " + trajectory.y[i] + " is in an obstacle");
+        assertTrue(Math.hypot(trajectory.vx[i], trajectory.vy[i]) <= AutoConstants.kMaxSpeedMetersPerSecond + kTolerance,
+            "sample " + i + " is over the speed limit");
+        if (i > 0) {
+          assertTrue(trajectory.time[i] > trajectory.time[i - 1], "sample " + i + " does not move on in time");
+        }
+      }
+    }
+    // The free space is connected apart from a few pockets, so nearly every query has a path.
+    assertTrue(planned > kQueries * 0.9, planned + " of " + kQueries + " queries planned");
+  }
+
+  @Test
+  void sameQueryIsACacheHit() {
+    Pose2d start = new Pose2d(2.2, 0.7, new Rotation2d());
+    Pose2d goal = new Pose2d(14.3, 7.3, Rotation2d.fromDegrees(180));
+    HolonomicTrajectory first = pathfinder.plan(start, goal);
+    HolonomicTrajectory second = pathfinder.plan(start, goal);
+    assertNotNull(first);
+    assertEquals(1, pathfinder.getCacheMisses());
+    assertEquals(1, pathfinder.getCacheHits());
+    assertArrayEquals(first.x, second.x);
+    assertArrayEquals(first.y, second.y);
+    assertArrayEquals(first.time, second.time);
+  }
+
+  @Test
+  void walledOffGoalHasNoPath() {
+    NavigationGrid walled = NavigationGrid.parse("field 4 2\nrect 1.9 0 2.1 2\n",
+        AutoConstants.kNavGridResolution, AutoConstants.kRobotRadiusMeters);
+    Pathfinder blocked = newPathfinder(walled);
+    assertNull(blocked.plan(new Pose2d(0.8, 1.0, new Rotation2d()), new Pose2d(3.2, 1.0, new Rotation2d())));
+  }
+
+  /*
+   * Waypoints sit on cell corners and the rounded corners graze the cells they turn around, so a
+   * sample may be in a blocked cell by a few centimeters. The robot radius is added to the map, so
+   * anything within a cell of free space still keeps the bumpers off the obstacle.
+   */
+  private boolean isClear(double x, double y) {
+    if (!grid.isBlocked(x, y)) {
+      return true;
+    }
+    for (int k = 0; k < 8; k++) {
+      double angle = k * Math.PI / 4;
+      if (!grid.isBlocked(x + grid.resolution * Math.cos(angle), y + grid.resolution * Math.sin(angle))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static Pathfinder newPathfinder(NavigationGrid grid) {
+    return new Pathfinder(grid, AutoConstants.kMaxSpeedMetersPerSecond,
+        AutoConstants.kMaxAccelerationMetersPerSecondSquared, AutoConstants.kThetaControllerConstraints);
+  }
+
+  private Pose2d randomFreePose(Random random) {
+    double x;
+    double y;
+    do {
+      x = random.nextDouble() * grid.width * grid.resolution;
+      y = random.nextDouble() * grid.height * grid.resolution;
+    } while (grid.isBlocked(x, y));
+    return new Pose2d(x, y, Rotation2d.fromRadians((random.nextDouble() * 2 - 1) * Math.PI));
+  }
+}
@@ -0,0 +1,244 @@
+package frc.robot.sim;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import edu.wpi.first.wpilibj2.command.Command;
+import frc.lib.math.NavigationGrid;
+import frc.lib.math.Pathfinder;
+import frc.robot.Constants.AutoConstants;
+import frc.robot.autos.AutoLibrary;
+import frc.robot.autos.AutoRoutine;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Desktop harness that runs every routine in the deploy autos directory for a grid of parameter
+ * variants, and ranks the variants by how close to the routine's {@code target} they end, how long
+ * they take and how hard they drive the modules.
+ *
+ * <p>Each variant is compiled by {@link AutoLibrary#compile} into the command group the robot
+ * schedules, and run against a {@link SimSwerveDrive} on the HAL simulation clock: the group's
+ * initialize, execute, isFinished and end are called as the scheduler calls them, and after every
+ * loop the model and the paused clock are stepped by one loop period, so the commands' timers see
+ * simulated time and a routine takes milliseconds. The clock, the bookkeeping of composed commands
+ * and the telemetry the commands publish are process wide and single threaded, so the variants run
+ * one after another. No robot or network is needed. Balance steps end straight away, as they do on
+ * a robot whose IMU cannot measure pitch. Run it with {@code ./gradlew evaluateAutos}.
+ *
+ * <p>Arguments: [deploy directory] [csv report file] [speed scales] [wait scales], where the scales
+ * are comma separated lists (default 0.8,0.9,1,1.1,1.2 for both).
+ */
+public class AutoEvaluator {
+  private static final double kLoopSeconds = 0.02;
+  private static final double kAutoSeconds = 15.0;
+  /* How long to let the robot coast to a stop after the routine ends */
+  private static final double kSettleSeconds = 2.0;
+  private static final double kStoppedSpeed = 0.01;
+  /* Ranking cost weights: meters of error, per radian of heading error and per second */
+  private static final double kHeadingWeight = 0.5;
+  private static final double kTimeWeight = 0.02;
+  private static final double kOvertimePenalty = 100.0;
+
+  /** The outcome of one routine with one set of parameter scales. */
+  public static class Result {
+    public final String routine;
+    public final double speedScale;
+    public final double waitScale;
+    public final double positionError;
+    public final double headingErrorDegrees;
+    public final double seconds;
+    public final double peakModuleSpeed;
+    public final boolean overtime;
+
+    Result(String routine, double speedScale, double waitScale, double positionError,
+        double headingErrorDegrees, double seconds, double peakModuleSpeed, boolean overtime) {
+      this.routine = routine;
+      this.speedScale = speedScale;
+      this.waitScale = waitScale;
+      this.positionError = positionError;
+      this.headingErrorDegrees = headingErrorDegrees;
+      this.seconds = seconds;
+      this.peakModuleSpeed = peakModuleSpeed;
+      this.overtime = overtime;
+    }
+
+    /** Lower is better. Routines without a target are ranked by time and module speed alone. */
+    public double cost() {
+      double error = Double.isNaN(positionError)
+          ? 0
+          : positionError + kHeadingWeight * Math.toRadians(Math.abs(headingErrorDegrees));
+      return error + kTimeWeight * seconds + (overtime ? kOvertimePenalty : 0);
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    File deploy = new File(args.length > 0 ? args[0] : "src/main/deploy");
+    File report = new File(args.length > 1 ? args[1] : "build/reports/autoeval.csv");
+    double[] speedScales = scales(args.length > 2 ? args[2] : "0.8,0.9,1,1.1,1.2");
+    double[] waitScales = scales(args.length > 3 ? args[3] : "0.8,0.9,1,1.1,1.2");
+
+    pauseClock();
+    List<AutoRoutine> routines = AutoLibrary.loadAll(
+        new File(deploy, AutoConstants.kRoutineDirectory), null, System.err::println);
+    Pathfinder pathfinder = loadPathfinder(new File(deploy, AutoConstants.kFieldMapFile));
+
+    long startNanos = System.nanoTime();
+    List<Result> results = new ArrayList<>();
+    for (AutoRoutine routine : routines) {
+      for (double speedScale : speedScales) {
+        for (double waitScale : waitScales) {
+          results.add(evaluate(routine, speedScale, waitScale, pathfinder));
+        }
+      }
+    }
+    System.out.printf("Evaluated %d variants of %d routines in %.0f ms%n",
+        results.size(), routines.size(), (System.nanoTime() - startNanos) / 1e6);
+
+    results.sort(Comparator.comparing((Result r) -> r.routine).thenComparingDouble(Result::cost));
+    print(results);
+    write(results, report);
+  }
+
+  /**
+   * Starts the HAL in simulation and pauses its clock, which from then on only moves when a variant
+   * steps it. Call once before evaluating.
+   */
+  static void pauseClock() {
+    if (!HAL.initialize(500, 0)) {
+      throw new IllegalStateException("Could not initialize the HAL");
+    }
+    SimHooks.pauseTiming();
+  }
+
+  /** @return A pathfinder on the field map, or null if there is no map. */
+  static Pathfinder loadPathfinder(File map) throws IOException {
+    if (!map.isFile()) {
+      return null;
+    }
+    String text = new String(Files.readAllBytes(map.toPath()), StandardCharsets.UTF_8);
+    return new Pathfinder(
+        NavigationGrid.parse(text, AutoConstants.kNavGridResolution, AutoConstants.kRobotRadiusMeters),
+        AutoConstants.kMaxSpeedMetersPerSecond,
+        AutoConstants.kMaxAccelerationMetersPerSecondSquared,
+        AutoConstants.kThetaControllerConstraints);
+  }
+
+  /** Runs one routine with its drive speeds and waits scaled. Needs {@link #pauseClock} first. */
+  public static Result evaluate(AutoRoutine routine, double speedScale, double waitScale, Pathfinder pathfinder) {
+    Pose2d start = routine.start != null
+        ? new Pose2d(routine.start[0], routine.start[1], Rotation2d.fromDegrees(routine.start[2]))
+        : new Pose2d();
+    SimSwerveDrive drive = new SimSwerveDrive(new SwerveModel(start));
+    Command command = AutoLibrary.compile(scale(routine, speedScale, waitScale), drive, pathfinder);
+
+    double clock = 0;
+    boolean running = true;
+    command.initialize();
+    while (running && clock < kAutoSeconds) {
+      command.execute();
+      if (command.isFinished()) {
+        command.end(false);
+        running = false;
+      }
+      step(drive.getModel());
+      clock += kLoopSeconds;
+    }
+    if (running) {
+      // Out of autonomous time, where the scheduler cancels the routine.
+      command.end(true);
+    }
+    double finish = clock;
+    for (double t = 0; t < kSettleSeconds && !stopped(drive.getModel()); t += kLoopSeconds) {
+      step(drive.getModel());
+    }
+
+    double positionError = Double.NaN;
+    double headingError = Double.NaN;
+    if (routine.target != null) {
+      Pose2d pose = drive.getPose();
+      positionError = Math.hypot(pose.getX() - routine.target[0], pose.getY() - routine.target[1]);
+      headingError = MathUtil.inputModulus(pose.getRotation().getDegrees() - routine.target[2], -180, 180);
+    }
+    return new Result(routine.id, speedScale, waitScale, positionError, headingError,
+        finish, drive.getModel().getPeakModuleSpeed(), running);
+  }
+
+  /** @return A copy of the routine with its drive speeds and wait times scaled. */
+  static AutoRoutine scale(AutoRoutine routine, double speedScale, double waitScale) {
+    int[] ops = new int[routine.getStepCount()];
+    double[] args = new double[ops.length * AutoRoutine.kArgsPerStep];
+    for (int step = 0; step < ops.length; step++) {
+      ops[step] = routine.getOp(step);
+      for (int i = 0; i < AutoRoutine.kArgsPerStep; i++) {
+        double arg = routine.getArg(step, i);
+        if (ops[step] == AutoRoutine.kOpDrive && i < AutoRoutine.kArgFieldRelative) {
+          arg *= speedScale;
+        } else if (ops[step] == AutoRoutine.kOpWait && i == 0) {
+          arg *= waitScale;
+        }
+        args[step * AutoRoutine.kArgsPerStep + i] = arg;
+      }
+    }
+    return new AutoRoutine(routine.id, routine.name, routine.start, routine.target, ops, args);
+  }
+
+  /* One robot loop of the model, then the clock */
+  private static void step(SwerveModel model) {
+    model.step(kLoopSeconds);
+    SimHooks.stepTiming(kLoopSeconds);
+  }
+
+  private static boolean stopped(SwerveModel model) {
+    return Math.hypot(model.getMeasuredSpeeds().vxMetersPerSecond, model.getMeasuredSpeeds().vyMetersPerSecond)
+        < kStoppedSpeed && Math.abs(model.getMeasuredSpeeds().omegaRadiansPerSecond) < kStoppedSpeed;
+  }
+
+  private static double[] scales(String list) {
+    String[] parts = list.split(",");
+    double[] values = new double[parts.length];
+    for (int i = 0; i < parts.length; i++) {
+      values[i] = Double.parseDouble(parts[i].trim());
+    }
+    return values;
+  }
+
+  private static void print(List<Result> results) {
+    String routine = null;
+    int rank = 0;
+    for (Result r : results) {
+      if (!r.routine.equals(routine)) {
+        routine = r.routine;
+        rank = 0;
+        System.out.printf("%n%s%n%4s %6s %6s %9s %9s %7s %9s%n",
+            routine, "rank", "speed", "wait", "errorM", "errorDeg", "timeS", "peakMps");
+      }
+      System.out.printf("%4d %6.2f %6.2f %9.3f %9.1f %7.2f %9.2f%s%n",
+          ++rank, r.speedScale, r.waitScale, r.positionError, r.headingErrorDegrees, r.seconds,
+          r.peakModuleSpeed, r.overtime ? "  overtime" : "");
+    }
+  }
+
+  private static void write(List<Result> results, File report) throws IOException {
+    File parent = report.getAbsoluteFile().getParentFile();
+    if (parent != null) {
+      parent.mkdirs();
+    }
+    try (PrintWriter out = new PrintWriter(report, StandardCharsets.UTF_8)) {
+      out.println("routine,speedScale,waitScale,positionErrorM,headingErrorDeg,seconds,peakModuleMps,overtime,cost");
+      for (Result r : results) {
+        out.printf("%s,%.3f,%.3f,%.4f,%.2f,%.3f,%.3f,%b,%.4f%n", r.routine, r.speedScale, r.waitScale,
+            r.positionError, r.headingErrorDegrees, r.seconds, r.peakModuleSpeed, r.overtime, r.cost());
+      }
+    }
+    System.out.println("\nWrote " + report);
+  }
+}
@@ -0,0 +1,66 @@
+package frc.robot.sim;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import frc.lib.math.Pathfinder;
+import frc.robot.Constants.AutoConstants;
+import frc.robot.autos.AutoLibrary;
+import frc.robot.autos.AutoRoutine;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs autonomous routines through {@link AutoEvaluator}, which drives the compiled command groups
+ * against the simulated drivetrain: the deploy routines have to finish inside autonomous, and turn
+ * and goto steps have to get where they are asked.
+ */
+class AutoEvaluatorTest {
+  private static final File kDeploy = new File("src/main/deploy");
+
+  private static Pathfinder pathfinder;
+
+  @BeforeAll
+  static void setUp() throws IOException {
+    AutoEvaluator.pauseClock();
+    pathfinder = AutoEvaluator.loadPathfinder(new File(kDeploy, AutoConstants.kFieldMapFile));
+    assertNotNull(pathfinder, "no field map");
+  }
+
+  @Test
+  void deployRoutinesFinishInAutonomous() {
+    List<AutoRoutine> routines = AutoLibrary.loadAll(
+        new File(kDeploy, AutoConstants.kRoutineDirectory), null, message -> { throw new AssertionError(message); });
+    assertFalse(routines.isEmpty(), "no routines");
+    for (AutoRoutine routine : routines) {
+      AutoEvaluator.Result result = AutoEvaluator.evaluate(routine, 1, 1, pathfinder);
+      assertFalse(result.overtime, routine.id + ": still running at the end of autonomous");
+    }
+  }
+
+  @Test
+  void turnStepReachesTheHeading() {
+    AutoRoutine routine = AutoRoutine.parse("turn", "target 0 0 90\nturn 90 3\n");
+    AutoEvaluator.Result result = AutoEvaluator.evaluate(routine, 1, 1, pathfinder);
+    assertFalse(result.overtime);
+    assertTrue(result.seconds < 3, "turn timed out");
+    // TurnToAngleCommand stops within 2 degrees, then the robot coasts a little.
+    assertTrue(Math.abs(result.headingErrorDegrees) < 5, "ended " + result.headingErrorDegrees + " degrees off");
+  }
+
+  @Test
+  void gotoStepEndsAtTheGoal() {
+    // From the community, around the charge station.
+    AutoRoutine routine = AutoRoutine.parse("goto", "start 2.2 4.6 0\ntarget 6.5 2.75 90\ngoto 6.5 2.75 90\n");
+    AutoEvaluator.Result result = AutoEvaluator.evaluate(routine, 1, 1, pathfinder);
+    assertFalse(result.overtime);
+    assertTrue(result.positionError < 2 * AutoConstants.kTrajectoryPositionTolerance,
+        "ended " + result.positionError + " m from the goal");
+    assertTrue(Math.abs(Math.toRadians(result.headingErrorDegrees)) < 2 * AutoConstants.kTrajectoryHeadingTolerance,
+        "ended " + result.headingErrorDegrees + " degrees off");
+  }
+}
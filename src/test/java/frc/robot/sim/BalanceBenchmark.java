@@ -0,0 +1,172 @@
+package frc.robot.sim;
+
+import frc.lib.math.BalanceController;
+import frc.robot.Constants.BalanceConstants;
+import frc.robot.commands.BalanceCommand;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Runs {@link BalanceController} against {@link ChargeStationSim} the way {@link BalanceCommand}
+ * does (a new output every 20 ms, wheels locked once balanced) and measures the settle time: from
+ * the start of the command until the station is level for good. Scenarios cover driving on forward
+ * and backward from either side, starting on the station, and stiffer and looser hinges. The IMU
+ * readings get noise with a fixed seed.
+ *
+ * <p>Prints the scenarios with the gains in {@link BalanceConstants}, then the gain combinations
+ * ranked by their worst settle time, with and without the tipping rate cut off. Run it with {@code
+ * ./gradlew benchmarkBalance}.
+ */
+public class BalanceBenchmark {
+  private static final double kLoopPeriod = 0.02;
+  private static final double kSimPeriod = 0.001;
+  private static final double kRunSeconds = 12.0;
+  private static final double kPitchNoise = 0.2; // degrees
+  private static final double kRateNoise = 1.0; // degrees per second
+
+  private static final double[] kSweepP = {0.01, 0.02, 0.03, 0.04, 0.06, 0.08};
+  private static final double[] kSweepD = {0.0, 0.003, 0.006, 0.01, 0.015, 0.02};
+  /* Infinite turns the tipping cut off off */
+  private static final double[] kSweepTippingRate = {5, 10, 20, Double.POSITIVE_INFINITY};
+
+  /** A starting situation. */
+  static class Scenario {
+    final String name;
+    final double position;
+    final double facing;
+    final double approachSpeed;
+    final double angleDegrees;
+    final double hingeDamping;
+
+    Scenario(String name, double position, double facing, double approachSpeed, double angleDegrees,
+        double hingeDamping) {
+      this.name = name;
+      this.position = position;
+      this.facing = facing;
+      this.approachSpeed = approachSpeed;
+      this.angleDegrees = angleDegrees;
+      this.hingeDamping = hingeDamping;
+    }
+  }
+
+  /** What one run did. */
+  static class Result {
+    /* NaN if the station did not end level */
+    double settleSeconds = Double.NaN;
+    double balancedSeconds = Double.NaN;
+    double overshootDegrees = 0;
+    int swings = 0;
+  }
+
+  private static final double kApproach = BalanceConstants.kApproachSpeed;
+  static final Scenario[] kScenarios = {
+    new Scenario("front first", -2.0, 1, kApproach, 15, Double.NaN),
+    new Scenario("back first", -2.0, -1, -kApproach, 15, Double.NaN),
+    new Scenario("far side", 2.0, -1, kApproach, -15, Double.NaN),
+    new Scenario("on station", -0.35, 1, 0, 15, Double.NaN),
+    new Scenario("loose hinge", -2.0, 1, kApproach, 15, 30.0),
+    new Scenario("stiff hinge", -2.0, 1, kApproach, 15, 120.0),
+  };
+
+  public static void main(String[] args) {
+    System.out.printf("kP %.3f kD %.4f tipping rate %.0f deg/s%n",
+        BalanceConstants.kP, BalanceConstants.kD, BalanceConstants.kTippingRate);
+    System.out.printf("%-12s %10s %12s %14s %8s%n", "scenario", "settle s", "balanced s", "overshoot deg", "swings");
+    for (Scenario scenario : kScenarios) {
+      Result result = run(scenario, BalanceConstants.kP, BalanceConstants.kD, BalanceConstants.kTippingRate);
+      System.out.printf("%-12s %10s %12s %14.1f %8d%n", scenario.name, format(result.settleSeconds),
+          format(result.balancedSeconds), result.overshootDegrees, result.swings);
+    }
+
+    List<double[]> ranked = new ArrayList<>();
+    for (double tippingRate : kSweepTippingRate) {
+      for (double kP : kSweepP) {
+        for (double kD : kSweepD) {
+          double worst = 0;
+          double sum = 0;
+          for (Scenario scenario : kScenarios) {
+            double settle = run(scenario, kP, kD, tippingRate).settleSeconds;
+            if (Double.isNaN(settle)) {
+              settle = Double.POSITIVE_INFINITY;
+            }
+            worst = Math.max(worst, settle);
+            sum += settle;
+          }
+          ranked.add(new double[] {kP, kD, tippingRate, worst, sum / kScenarios.length});
+        }
+      }
+    }
+    ranked.sort(Comparator.comparingDouble((double[] row) -> row[3]).thenComparingDouble(row -> row[4]));
+    System.out.println();
+    System.out.printf("%8s %8s %10s %10s %10s%n", "kP", "kD", "tipping", "worst s", "mean s");
+    for (double[] row : ranked.subList(0, Math.min(20, ranked.size()))) {
+      System.out.printf("%8.3f %8.4f %10s %10s %10s%n", row[0], row[1],
+          Double.isInfinite(row[2]) ? "off" : String.format("%.0f", row[2]), format(row[3]), format(row[4]));
+    }
+  }
+
+  /** Runs one scenario from the start of the command to the end of the run. */
+  static Result run(Scenario scenario, double kP, double kD, double tippingRate) {
+    ChargeStationSim sim = new ChargeStationSim(
+        scenario.position, scenario.facing, scenario.angleDegrees, scenario.hingeDamping);
+    BalanceController controller = new BalanceController(
+        BalanceConstants.kMaxSpeed,
+        tippingRate,
+        BalanceConstants.kLevelTolerance,
+        BalanceConstants.kSettleSeconds,
+        BalanceConstants.kClimbingDegrees);
+    controller.setGains(kP, kD);
+    controller.reset(scenario.approachSpeed);
+    Random random = new Random(2023);
+
+    Result result = new Result();
+    double levelSince = Double.NaN;
+    boolean wasLevel = false;
+    double lastSide = 0;
+    int steps = (int) Math.round(kLoopPeriod / kSimPeriod);
+    for (double t = 0; t < kRunSeconds; t += kLoopPeriod) {
+      double pitch = sim.getPitchDegrees() + kPitchNoise * random.nextGaussian();
+      double rate = sim.getPitchRate() + kRateNoise * random.nextGaussian();
+      double speed = controller.calculate(pitch, rate, t);
+      if (controller.isBalanced()) {
+        sim.lock();
+        if (Double.isNaN(result.balancedSeconds)) {
+          result.balancedSeconds = t;
+        }
+      } else {
+        sim.drive(speed);
+      }
+      for (int i = 0; i < steps; i++) {
+        sim.update(kSimPeriod);
+      }
+
+      double station = sim.getStationDegrees();
+      boolean level = Math.abs(station) < BalanceConstants.kLevelTolerance;
+      if (level && !wasLevel) {
+        levelSince = t + kLoopPeriod;
+      }
+      if (!level && !Double.isNaN(levelSince)) {
+        // Left level after having reached it once.
+        result.overshootDegrees = Math.max(result.overshootDegrees, Math.abs(station));
+      }
+      if (!level) {
+        double side = Math.signum(station);
+        if (lastSide != 0 && side != lastSide) {
+          result.swings++;
+        }
+        lastSide = side;
+      }
+      wasLevel = level;
+    }
+    if (wasLevel) {
+      result.settleSeconds = levelSince;
+    }
+    return result;
+  }
+
+  private static String format(double seconds) {
+    return Double.isNaN(seconds) || Double.isInfinite(seconds) ? "never" : String.format("%.2f", seconds);
+  }
+}
@@ -0,0 +1,29 @@
+package frc.robot.sim;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import frc.robot.Constants.BalanceConstants;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs every {@link BalanceBenchmark} scenario with the gains in {@link BalanceConstants}. Each has
+ * to lock the wheels on a level station in time to spare in the endgame, without rocking it past
+ * level on the way.
+ */
+class BalanceBenchmarkTest {
+  private static final double kMaxSettleSeconds = 5.0;
+
+  @Test
+  void everyScenarioSettles() {
+    for (BalanceBenchmark.Scenario scenario : BalanceBenchmark.kScenarios) {
+      BalanceBenchmark.Result result = BalanceBenchmark.run(
+          scenario, BalanceConstants.kP, BalanceConstants.kD, BalanceConstants.kTippingRate);
+      assertTrue(result.settleSeconds <= kMaxSettleSeconds,
+          scenario.name + ": settled after " + result.settleSeconds + " s");
+      assertTrue(result.balancedSeconds <= kMaxSettleSeconds,
+          scenario.name + ": locked after " + result.balancedSeconds + " s");
+      assertEquals(0, result.swings, scenario.name + ": swings");
+    }
+  }
+}
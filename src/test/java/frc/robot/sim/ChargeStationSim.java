@@ -0,0 +1,177 @@
+package frc.robot.sim;
+
+import frc.robot.Constants;
+import frc.robot.Constants.LiftConstants;
+import frc.robot.Constants.SuperstructureConstants;
+
+/**
+ * The 2023 charge station with the robot driving straight across it, in the vertical plane. The
+ * platform tilts on a center hinge between hard stops at 15 degrees; a ramp on each side runs from
+ * the carpet up to the platform edge. The robot is two axles a wheelbase apart, each carrying half
+ * its weight: an axle on the platform pushes on it at its distance from the hinge, and an axle on a
+ * ramp puts part of its share on the platform edge, the rest on the carpet. The hinge has viscous
+ * and static friction, so a robot close enough to the hinge leaves the platform still. The robot's
+ * pitch is the slope between the surface heights under its axles, so it changes smoothly as it
+ * climbs.
+ *
+ * <p>The drive follows the commanded velocity with a first order lag and an acceleration limit,
+ * and lets a fraction of the slope's pull through, as a velocity loop does. Locked wheels hold the
+ * robot in place. Positions run along the field, x = 0 over the hinge, and the platform angle is
+ * positive with the +x end raised. No HAL or hardware classes are used.
+ */
+public class ChargeStationSim {
+  private static final double kGravity = 9.81;
+
+  /* Station geometry */
+  private static final double kHalfPlatform = 0.61; // meters, 48.25 in deep
+  private static final double kRampLength = 0.36; // meters, horizontal
+  private static final double kHingeHeight = 0.23; // meters, platform top when level
+  private static final double kMaxAngle = Math.toRadians(15.0);
+
+  /* Platform mass properties, about the hinge */
+  private static final double kPlatformInertia = 4.0; // kg m^2
+  private static final double kDefaultHingeDamping = 60.0; // N m s / rad
+  private static final double kHingeFriction = 15.0; // N m, holds the robot within about 3 cm of the hinge
+
+  /* Drive response along the carpet */
+  private static final double kDriveTimeConstant = 0.08; // seconds
+  private static final double kMaxAcceleration = 6.0; // meters per second squared, tipping limited
+  private static final double kSlopeLeak = 0.1; // fraction of g sin(slope) the velocity loop lets through
+
+  private final double mass = SuperstructureConstants.kChassisMass + LiftConstants.Mod5.kCarriageMass;
+  private final double halfWheelBase = Constants.Swerve.wheelBase / 2.0;
+  private final double hingeDamping;
+  /* +1 with the robot's front toward +x, -1 toward -x */
+  private final double facing;
+
+  private double angle;
+  private double angleRate;
+  private double position;
+  private double velocity;
+  private double command;
+  private boolean locked;
+  private double pitch;
+  private double pitchRate;
+
+  /**
+   * @param position Where the robot's center starts, in meters from the hinge.
+   * @param facing +1 with the robot's front toward +x, -1 toward -x.
+   * @param angleDegrees Starting platform angle, positive with the +x end raised.
+   * @param hingeDamping Hinge friction in N m s / rad, or NaN for the default.
+   */
+  public ChargeStationSim(double position, double facing, double angleDegrees, double hingeDamping) {
+    this.position = position;
+    this.facing = Math.signum(facing);
+    this.hingeDamping = Double.isNaN(hingeDamping) ? kDefaultHingeDamping : hingeDamping;
+    angle = Math.toRadians(angleDegrees);
+    pitch = robotPitch();
+  }
+
+  /** @param speed Robot relative forward velocity, in meters per second. */
+  public void drive(double speed) {
+    command = speed * facing;
+    locked = false;
+  }
+
+  /** Puts the wheels in the X formation; the robot stays where it is. */
+  public void lock() {
+    command = 0;
+    velocity = 0;
+    locked = true;
+  }
+
+  /** Advances the simulation. Call at about 1 ms. */
+  public void update(double dtSeconds) {
+    double slope = slopeAngle(position);
+    if (!locked) {
+      double change = (command - velocity) * Math.min(1.0, dtSeconds / kDriveTimeConstant);
+      double maxChange = kMaxAcceleration * dtSeconds;
+      velocity += Math.max(-maxChange, Math.min(maxChange, change));
+      velocity -= kSlopeLeak * kGravity * Math.sin(slope) * dtSeconds;
+      position += velocity * dtSeconds;
+    }
+
+    double torque = axleTorque(position - halfWheelBase) + axleTorque(position + halfWheelBase);
+    double inertia = kPlatformInertia + axleInertia(position - halfWheelBase) + axleInertia(position + halfWheelBase);
+    // Static friction holds the platform until the torque overcomes it.
+    if (angleRate != 0 || Math.abs(torque) > kHingeFriction) {
+      double friction = Math.copySign(kHingeFriction, angleRate != 0 ? angleRate : torque);
+      double newRate = angleRate + (torque - friction - hingeDamping * angleRate) / inertia * dtSeconds;
+      // Friction stops the platform, it does not turn it around.
+      angleRate = angleRate != 0 && newRate * angleRate < 0 ? 0 : newRate;
+    }
+    angle += angleRate * dtSeconds;
+    if (Math.abs(angle) >= kMaxAngle) {
+      angle = Math.copySign(kMaxAngle, angle);
+      if (angle * angleRate > 0) {
+        angleRate = 0;
+      }
+    }
+
+    double newPitch = robotPitch();
+    pitchRate = (newPitch - pitch) / dtSeconds;
+    pitch = newPitch;
+  }
+
+  /* Torque about the hinge from one axle's share of the weight, +x end raising positive */
+  private double axleTorque(double x) {
+    double weight = mass * kGravity / 2.0;
+    if (Math.abs(x) <= kHalfPlatform) {
+      return -weight * x * Math.cos(angle);
+    }
+    double alongRamp = kHalfPlatform + kRampLength - Math.abs(x);
+    if (alongRamp > 0) {
+      // The ramp is a beam between the carpet and the platform edge.
+      return -weight * alongRamp / kRampLength * Math.copySign(kHalfPlatform, x) * Math.cos(angle);
+    }
+    return 0;
+  }
+
+  private double axleInertia(double x) {
+    return Math.abs(x) <= kHalfPlatform ? mass / 2.0 * x * x : 0;
+  }
+
+  private double surfaceHeight(double x) {
+    if (Math.abs(x) <= kHalfPlatform) {
+      return kHingeHeight + x * Math.sin(angle);
+    }
+    double alongRamp = kHalfPlatform + kRampLength - Math.abs(x);
+    if (alongRamp > 0) {
+      double edge = kHingeHeight + Math.copySign(kHalfPlatform, x) * Math.sin(angle);
+      return edge * alongRamp / kRampLength;
+    }
+    return 0;
+  }
+
+  /* Slope of the surface under the robot, rising toward +x positive */
+  private double slopeAngle(double x) {
+    return Math.atan2(surfaceHeight(x + halfWheelBase) - surfaceHeight(x - halfWheelBase), 2 * halfWheelBase);
+  }
+
+  private double robotPitch() {
+    return facing * Math.toDegrees(slopeAngle(position));
+  }
+
+  /** @return The robot's pitch, positive nose up, in degrees. */
+  public double getPitchDegrees() {
+    return pitch;
+  }
+
+  /** @return The robot's pitch rate, in degrees per second. */
+  public double getPitchRate() {
+    return pitchRate;
+  }
+
+  /** @return The platform angle, positive with the +x end raised, in degrees. */
+  public double getStationDegrees() {
+    return Math.toDegrees(angle);
+  }
+
+  public double getPositionMeters() {
+    return position;
+  }
+
+  public double getVelocityMetersPerSecond() {
+    return velocity;
+  }
+}
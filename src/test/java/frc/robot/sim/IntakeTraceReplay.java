@@ -0,0 +1,193 @@
+package frc.robot.sim;
+
+import frc.lib.math.CurrentSpikeDetector;
+import frc.robot.Constants.IntakeConstants.Mod4;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Replays intake current traces through {@link CurrentSpikeDetector} with the constants in {@link
+ * Mod4} and reports, for each debounce time, the detection latency on traces with a game piece and
+ * the false positives on all of them. Run it with {@code ./gradlew replayIntakeTraces}.
+ *
+ * <p>A trace is a text file of {@code time,amps} lines for one pull, starting when the motor was
+ * switched on. {@code /Intake/current} from the data log (see {@code Mod4.kRecordCurrentTraces})
+ * exported to CSV and cut into one file per pull has this shape. A line {@code # acquired <time>}
+ * marks when the piece actually hit the rollers, from video or by hand; a trace without it had no
+ * piece. Other lines that do not parse are skipped.
+ *
+ * <p>Arguments: [trace directory] [debounce times], where the debounce times are a comma separated
+ * list in seconds. Without a directory, synthetic traces with a fixed seed are used.
+ */
+public class IntakeTraceReplay {
+  private static final double kSyntheticPeriod = 0.005;
+  private static final int kSyntheticTraces = 200;
+
+  /** One recorded pull. */
+  static class Trace {
+    final double[] time;
+    final double[] amps;
+    /* NaN if no piece came in */
+    final double acquired;
+
+    Trace(double[] time, double[] amps, double acquired) {
+      this.time = time;
+      this.amps = amps;
+      this.acquired = acquired;
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    List<Trace> traces = args.length > 0 ? load(new File(args[0])) : synthesize(new Random(2023));
+    double[] debounces = args.length > 1
+        ? parseList(args[1])
+        : new double[] {0.0, 0.02, Mod4.kDetectionDebounceSeconds, 0.06, 0.1, 0.15};
+
+    int withPiece = 0;
+    for (Trace trace : traces) {
+      if (!Double.isNaN(trace.acquired)) {
+        withPiece++;
+      }
+    }
+    System.out.printf("%d traces, %d with a game piece%n", traces.size(), withPiece);
+    System.out.printf("%10s %10s %12s %12s %10s %16s%n",
+        "debounce s", "detected", "mean lat ms", "max lat ms", "missed", "false positives");
+    for (double debounce : debounces) {
+      Stats stats = replay(traces, debounce);
+      System.out.printf("%10.3f %10d %12.1f %12.1f %10d %16d%n", debounce, stats.detected,
+          stats.detected > 0 ? stats.latencySum / stats.detected * 1000.0 : Double.NaN, stats.latencyMax * 1000.0,
+          stats.missed, stats.falsePositives);
+    }
+  }
+
+  /** Detections on a set of traces at one debounce time. */
+  static class Stats {
+    int detected = 0;
+    int missed = 0;
+    int falsePositives = 0;
+    double latencySum = 0;
+    double latencyMax = 0;
+  }
+
+  static Stats replay(List<Trace> traces, double debounce) {
+    CurrentSpikeDetector detector = new CurrentSpikeDetector(
+        Mod4.kCurrentFilterTimeConstant,
+        Mod4.kBaselineTimeConstant,
+        Mod4.kSpikeThresholdAmps,
+        Mod4.kInrushIgnoreSeconds,
+        debounce);
+    Stats stats = new Stats();
+    for (Trace trace : traces) {
+      double detectedAt = run(detector, trace);
+      boolean hasPiece = !Double.isNaN(trace.acquired);
+      if (Double.isNaN(detectedAt)) {
+        if (hasPiece) {
+          stats.missed++;
+        }
+      } else if (!hasPiece || detectedAt < trace.acquired) {
+        stats.falsePositives++;
+      } else {
+        double latency = detectedAt - trace.acquired;
+        stats.detected++;
+        stats.latencySum += latency;
+        stats.latencyMax = Math.max(stats.latencyMax, latency);
+      }
+    }
+    return stats;
+  }
+
+  /** @return When the detector fired, or NaN if it did not. */
+  private static double run(CurrentSpikeDetector detector, Trace trace) {
+    detector.reset(trace.time[0]);
+    for (int i = 0; i < trace.time.length; i++) {
+      if (detector.update(trace.time[i], trace.amps[i])) {
+        return trace.time[i];
+      }
+    }
+    return Double.NaN;
+  }
+
+  private static List<Trace> load(File directory) throws IOException {
+    File[] files = directory.listFiles((dir, name) -> name.endsWith(".csv"));
+    if (files == null || files.length == 0) {
+      throw new IOException("no .csv traces in " + directory);
+    }
+    List<Trace> traces = new ArrayList<>();
+    for (File file : files) {
+      List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+      double[] time = new double[lines.size()];
+      double[] amps = new double[lines.size()];
+      int count = 0;
+      double acquired = Double.NaN;
+      for (String line : lines) {
+        line = line.trim();
+        if (line.startsWith("# acquired")) {
+          acquired = Double.parseDouble(line.substring("# acquired".length()).trim());
+          continue;
+        }
+        String[] fields = line.split(",");
+        if (fields.length < 2) {
+          continue;
+        }
+        try {
+          time[count] = Double.parseDouble(fields[0].trim());
+          amps[count] = Double.parseDouble(fields[1].trim());
+          count++;
+        } catch (NumberFormatException e) {
+          // A header or a comment.
+        }
+      }
+      if (count > 0) {
+        traces.add(new Trace(Arrays.copyOf(time, count), Arrays.copyOf(amps, count), acquired));
+      }
+    }
+    return traces;
+  }
+
+  /**
+   * Pulls with a start up inrush, commutation noise and a free spinning current that differs from
+   * run to run. Two thirds take in a piece, which loads the rollers within about 50 ms; the rest
+   * sometimes brush a bumper or the carpet, a short bump that should not count.
+   */
+  static List<Trace> synthesize(Random random) {
+    List<Trace> traces = new ArrayList<>();
+    int samples = (int) Math.round(3.0 / kSyntheticPeriod);
+    for (int n = 0; n < kSyntheticTraces; n++) {
+      double freeAmps = 4.0 + 3.0 * random.nextDouble();
+      double pieceAmps = 10.0 + 8.0 * random.nextDouble();
+      double acquired = n % 3 == 2 ? Double.NaN : 0.5 + 2.0 * random.nextDouble();
+      double bump = Double.isNaN(acquired) && random.nextBoolean() ? 0.5 + 2.0 * random.nextDouble() : Double.NaN;
+      double[] time = new double[samples];
+      double[] amps = new double[samples];
+      for (int i = 0; i < samples; i++) {
+        double t = i * kSyntheticPeriod;
+        double current = freeAmps + 35.0 * Math.exp(-t / 0.05) + 0.8 * random.nextGaussian();
+        if (t >= acquired) {
+          current += pieceAmps * Math.min(1.0, (t - acquired) / 0.05);
+        }
+        if (t >= bump && t < bump + 0.03) {
+          current += 12.0;
+        }
+        time[i] = t;
+        amps[i] = Math.max(0.0, current);
+      }
+      traces.add(new Trace(time, amps, acquired));
+    }
+    return traces;
+  }
+
+  private static double[] parseList(String list) {
+    String[] parts = list.split(",");
+    double[] values = new double[parts.length];
+    for (int i = 0; i < parts.length; i++) {
+      values[i] = Double.parseDouble(parts[i].trim());
+    }
+    return values;
+  }
+}
@@ -0,0 +1,29 @@
+package frc.robot.sim;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import frc.robot.Constants.IntakeConstants.Mod4;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Replays the synthetic intake traces from {@link IntakeTraceReplay} at the debounce in {@link
+ * Mod4}: every piece has to be caught, in time to stop the rollers before it is pulled through, and
+ * no inrush or bump may count as one.
+ */
+class IntakeTraceReplayTest {
+  /* Allowed past the debounce, for the load to build up through the current filter */
+  private static final double kMaxExtraLatency = 0.1;
+
+  @Test
+  void detectsEveryPieceAndNothingElse() {
+    List<IntakeTraceReplay.Trace> traces = IntakeTraceReplay.synthesize(new Random(2023));
+    IntakeTraceReplay.Stats stats = IntakeTraceReplay.replay(traces, Mod4.kDetectionDebounceSeconds);
+    assertEquals(0, stats.missed, "missed pieces");
+    assertEquals(0, stats.falsePositives, "false positives");
+    assertTrue(stats.latencyMax <= Mod4.kDetectionDebounceSeconds + kMaxExtraLatency,
+        "slowest detection " + stats.latencyMax + " s after the piece came in");
+  }
+}
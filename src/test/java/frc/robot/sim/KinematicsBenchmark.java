@@ -0,0 +1,67 @@
+package frc.robot.sim;
+
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import frc.lib.math.FastSwerveKinematics;
+import frc.robot.Constants;
+
+/**
+ * Times {@link FastSwerveKinematics} against WPILib for the layout in {@link Constants.Swerve}. That
+ * the two agree is checked by {@code FastSwerveKinematicsTest}. Run it with {@code ./gradlew
+ * benchmarkKinematics}.
+ */
+public class KinematicsBenchmark {
+  private static final int kBenchmarkIterations = 2_000_000;
+
+  public static void main(String[] args) {
+    SwerveDriveKinematics wpilib = new SwerveDriveKinematics(Constants.Swerve.moduleLocations);
+    FastSwerveKinematics fast = new FastSwerveKinematics(Constants.Swerve.moduleLocations);
+    benchmark(wpilib, fast);
+  }
+
+  private static void benchmark(SwerveDriveKinematics wpilib, FastSwerveKinematics fast) {
+    double[] speeds = new double[4];
+    double[] angles = new double[4];
+    double[] chassis = new double[3];
+    SwerveModuleState[] states = wpilib.toSwerveModuleStates(new ChassisSpeeds(1, 2, 3));
+    fast.toModuleStates(1, 2, 3, speeds, angles);
+
+    // Warm up both paths before timing.
+    double sink = 0;
+    for (int round = 0; round < 2; round++) {
+      long wpilibInverse = System.nanoTime();
+      for (int n = 0; n < kBenchmarkIterations; n++) {
+        sink += wpilib.toSwerveModuleStates(new ChassisSpeeds(n * 1e-6, 1, 0.5))[0].speedMetersPerSecond;
+      }
+      long fastInverse = System.nanoTime();
+      for (int n = 0; n < kBenchmarkIterations; n++) {
+        fast.toModuleStates(n * 1e-6, 1, 0.5, speeds, angles);
+        sink += speeds[0];
+      }
+      long wpilibForward = System.nanoTime();
+      for (int n = 0; n < kBenchmarkIterations; n++) {
+        sink += wpilib.toChassisSpeeds(states).vxMetersPerSecond;
+      }
+      long fastForward = System.nanoTime();
+      for (int n = 0; n < kBenchmarkIterations; n++) {
+        fast.toChassisSpeeds(speeds, angles, chassis);
+        sink += chassis[0];
+      }
+      long end = System.nanoTime();
+
+      if (round == 1) {
+        report("inverse", fastInverse - wpilibInverse, wpilibForward - fastInverse);
+        report("forward", fastForward - wpilibForward, end - fastForward);
+      }
+    }
+    System.out.println("(checksum " + sink + ")");
+  }
+
+  private static void report(String name, long wpilibNanos, long fastNanos) {
+    double wpilibPerCall = (double) wpilibNanos / kBenchmarkIterations;
+    double fastPerCall = (double) fastNanos / kBenchmarkIterations;
+    System.out.printf("%s: WPILib %.1f ns/call, fast %.1f ns/call, %.1fx%n",
+        name, wpilibPerCall, fastPerCall, wpilibPerCall / fastPerCall);
+  }
+}
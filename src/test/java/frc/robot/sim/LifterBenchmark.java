@@ -0,0 +1,81 @@
+package frc.robot.sim;
+
+import edu.wpi.first.math.trajectory.TrapezoidProfile;
+import frc.robot.Constants.LiftConstants.Mod5;
+import frc.robot.subsystems.Lifter;
+
+/**
+ * Moves the simulated lift from stowed to each named height twice: profiled the way {@link Lifter}
+ * does it (a setpoint every 20 ms, the Spark MAX loop at 1 kHz) and open loop at the manual duty
+ * cycle until the operator would let go. Prints the time each takes and how far the profiled move
+ * overshoots. A profiled move is given {@link #kSettleTimeout} past the end of its profile to come
+ * to rest within tolerance. Run it with {@code ./gradlew benchmarkLifter}.
+ */
+public class LifterBenchmark {
+  private static final double kLoopPeriod = 0.02;
+  private static final double kSimPeriod = 0.001;
+  private static final double kTimeout = 120.0;
+  static final double kSettleTimeout = 1.0;
+
+  /** What one profiled move did. */
+  static class Move {
+    double profileSeconds;
+    /* NaN if it did not settle in time */
+    double settleSeconds = Double.NaN;
+    double overshootMeters = 0;
+  }
+
+  public static void main(String[] args) {
+    System.out.printf("%-6s %8s %10s %12s %12s %12s%n",
+        "height", "meters", "profile s", "profiled s", "overshoot mm", "open loop s");
+    for (Lifter.Height height : Lifter.Height.values()) {
+      if (height.meters <= Mod5.kLifterMinHeight) {
+        continue;
+      }
+      Move profiled = profiled(height.meters);
+      double openLoop = openLoop(height.meters);
+      System.out.printf("%-6s %8.3f %10.2f %12s %12.1f %12s%n", height, height.meters, profiled.profileSeconds,
+          format(profiled.settleSeconds), profiled.overshootMeters * 1000.0, format(openLoop));
+    }
+  }
+
+  /** Moves from stowed to a height along the profile. */
+  static Move profiled(double goal) {
+    LifterSim sim = new LifterSim();
+    TrapezoidProfile profile = new TrapezoidProfile(Lifter.kConstraints, new TrapezoidProfile.State(goal, 0),
+        new TrapezoidProfile.State(sim.getPositionMeters(), 0));
+    Move move = new Move();
+    move.profileSeconds = profile.totalTime();
+    for (double t = 0; t < move.profileSeconds + kSettleTimeout; t += kLoopPeriod) {
+      TrapezoidProfile.State setpoint = profile.calculate(t);
+      sim.setPositionReference(setpoint.position, Lifter.feedforwardVolts(setpoint.velocity));
+      for (int i = 0; i < Math.round(kLoopPeriod / kSimPeriod); i++) {
+        sim.update(kSimPeriod);
+      }
+      move.overshootMeters = Math.max(move.overshootMeters, sim.getPositionMeters() - goal);
+      if (profile.isFinished(t) && Math.abs(sim.getPositionMeters() - goal) < Mod5.kHeightTolerance
+          && Math.abs(sim.getVelocityMetersPerSecond()) < 0.01) {
+        move.settleSeconds = t + kLoopPeriod;
+        break;
+      }
+    }
+    return move;
+  }
+
+  /** @return The time for the manual duty cycle to first reach the height. */
+  private static double openLoop(double goal) {
+    LifterSim sim = new LifterSim();
+    sim.setDuty(Mod5.kManualDuty);
+    for (double t = 0; t < kTimeout; t += kSimPeriod) {
+      sim.update(kSimPeriod);
+      if (sim.getPositionMeters() >= goal) {
+        return t + kSimPeriod;
+      }
+    }
+    return Double.NaN;
+  }
+
+  private static String format(double seconds) {
+    return Double.isNaN(seconds) ? "timeout" : String.format("%.2f", seconds);
+  }
+}
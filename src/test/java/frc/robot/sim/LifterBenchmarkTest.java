@@ -0,0 +1,27 @@
+package frc.robot.sim;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import frc.robot.Constants.LiftConstants.Mod5;
+import frc.robot.subsystems.Lifter;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs the profiled {@link LifterBenchmark} move to each named height. The Spark MAX loop has to
+ * keep up with the profile, so the lift comes to rest at the height soon after the profile ends,
+ * and it must not overshoot by more than the height tolerance.
+ */
+class LifterBenchmarkTest {
+  @Test
+  void profiledMovesSettleWithoutOvershoot() {
+    for (Lifter.Height height : Lifter.Height.values()) {
+      if (height.meters <= Mod5.kLifterMinHeight) {
+        continue;
+      }
+      LifterBenchmark.Move move = LifterBenchmark.profiled(height.meters);
+      assertTrue(!Double.isNaN(move.settleSeconds), height + ": not settled " + LifterBenchmark.kSettleTimeout
+          + " s after a " + move.profileSeconds + " s profile");
+      assertTrue(move.overshootMeters < Mod5.kHeightTolerance, height + ": overshot by " + move.overshootMeters + " m");
+    }
+  }
+}
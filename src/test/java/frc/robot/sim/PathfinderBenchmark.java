@@ -0,0 +1,149 @@
+package frc.robot.sim;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import frc.lib.math.NavigationGrid;
+import frc.lib.math.Pathfinder;
+import frc.robot.Constants.AutoConstants;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Times {@link Pathfinder#plan} on the field map against {@link AutoConstants#kPlanBudgetMillis}.
+ * Queries go between random free points with a fixed seed, after a warm up so the JIT has compiled
+ * the search, and each is planned both on a cache miss and on a hit. A few fixed queries from one
+ * end of the field to the other, through the lanes beside the charge stations, are timed the same
+ * way. Each time is the fastest of {@link #kRepeats} runs, so a desktop scheduler or
+ * collector pause does not pass for a slow query.
+ *
+ * <p>Prints the median, 99th percentile and worst time of each kind. These are desktop times and a
+ * roboRIO is several times slower, so the worst case needs a margin to match. {@code
+ * PathfinderBenchmarkTest} holds them to the budget; run this with {@code ./gradlew
+ * benchmarkPathfinder} for the numbers, or pass another map as the argument.
+ */
+public class PathfinderBenchmark {
+  private static final int kQueries = 5_000;
+  private static final int kRepeats = 3;
+
+  /* Start and goal x, y pairs from one end of the field to the other */
+  private static final double[][] kLongQueries = {
+    {2.2, 2.7, 14.3, 2.7},
+    {2.2, 0.7, 14.3, 7.3},
+    {2.2, 7.3, 14.3, 0.7},
+    {3.9, 1.0, 12.6, 4.6},
+  };
+
+  /** Plan times of one run, in milliseconds, each the fastest of {@link #kRepeats}. */
+  static class Timings {
+    final double[] misses;
+    final double[] hits;
+    final double[] longQueries = new double[kLongQueries.length];
+    int unreachable = 0;
+    int cacheHits;
+    int cacheMisses;
+
+    Timings(int queries) {
+      misses = new double[queries];
+      hits = new double[queries];
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    File map = new File(args.length > 0 ? args[0] : "src/main/deploy/" + AutoConstants.kFieldMapFile);
+    NavigationGrid grid = NavigationGrid.load(map, AutoConstants.kNavGridResolution, AutoConstants.kRobotRadiusMeters);
+    System.out.printf("%s: %d x %d cells of %.2f m%n", map, grid.width, grid.height, grid.resolution);
+    Timings timings = time(grid, kQueries);
+
+    System.out.printf("%-12s %10s %10s %10s%n", "plan", "median ms", "p99 ms", "worst ms");
+    print("cache miss", timings.misses);
+    print("cache hit", timings.hits);
+    print("long", timings.longQueries);
+    System.out.printf("%d of %d random queries had no path, %d cache hits, %d misses%n",
+        timings.unreachable, kQueries, timings.cacheHits, timings.cacheMisses);
+    double worst = Math.max(max(timings.misses), Math.max(max(timings.hits), max(timings.longQueries)));
+    System.out.printf("Worst %.3f ms against a %.1f ms budget%n", worst, AutoConstants.kPlanBudgetMillis);
+  }
+
+  /**
+   * Times random queries between free points, with a fixed seed, after as many again to warm up,
+   * then the long queries.
+   */
+  static Timings time(NavigationGrid grid, int queries) {
+    Pathfinder pathfinder = newPathfinder(grid);
+    Random random = new Random(2023);
+    for (int i = 0; i < queries; i++) {
+      pathfinder.plan(randomFreePose(grid, random), randomFreePose(grid, random));
+    }
+
+    Timings timings = new Timings(queries);
+    for (int i = 0; i < queries; i++) {
+      Pose2d start = randomFreePose(grid, random);
+      Pose2d goal = randomFreePose(grid, random);
+      if (pathfinder.plan(start, goal) == null) {
+        timings.unreachable++;
+      }
+      timings.misses[i] = missMillis(grid, start, goal);
+      timings.hits[i] = Double.POSITIVE_INFINITY;
+      for (int r = 0; r < kRepeats; r++) {
+        pathfinder.plan(start, goal);
+        timings.hits[i] = Math.min(timings.hits[i], pathfinder.getLastPlanMillis());
+      }
+    }
+    timings.cacheHits = pathfinder.getCacheHits();
+    timings.cacheMisses = pathfinder.getCacheMisses();
+
+    for (int i = 0; i < kLongQueries.length; i++) {
+      double[] query = kLongQueries[i];
+      timings.longQueries[i] = missMillis(grid, new Pose2d(query[0], query[1], new Rotation2d()),
+          new Pose2d(query[2], query[3], Rotation2d.fromDegrees(180)));
+    }
+    return timings;
+  }
+
+  private static Pathfinder newPathfinder(NavigationGrid grid) {
+    return new Pathfinder(grid, AutoConstants.kMaxSpeedMetersPerSecond,
+        AutoConstants.kMaxAccelerationMetersPerSecondSquared, AutoConstants.kThetaControllerConstraints);
+  }
+
+  /* Plans on fresh planners, so the search is not skipped by the cache. */
+  private static double missMillis(NavigationGrid grid, Pose2d start, Pose2d goal) {
+    double fastest = Double.POSITIVE_INFINITY;
+    for (int r = 0; r < kRepeats; r++) {
+      Pathfinder cold = newPathfinder(grid);
+      cold.plan(start, goal);
+      fastest = Math.min(fastest, cold.getLastPlanMillis());
+    }
+    return fastest;
+  }
+
+  private static Pose2d randomFreePose(NavigationGrid grid, Random random) {
+    double x;
+    double y;
+    do {
+      x = random.nextDouble() * grid.width * grid.resolution;
+      y = random.nextDouble() * grid.height * grid.resolution;
+    } while (grid.isBlocked(x, y));
+    return new Pose2d(x, y, Rotation2d.fromRadians((random.nextDouble() * 2 - 1) * Math.PI));
+  }
+
+  private static void print(String name, double[] millis) {
+    System.out.printf("%-12s %10.3f %10.3f %10.3f%n", name, percentile(millis, 0.5), percentile(millis, 0.99),
+        max(millis));
+  }
+
+  static double percentile(double[] values, double fraction) {
+    double[] sorted = values.clone();
+    Arrays.sort(sorted);
+    return sorted[Math.min(sorted.length - 1, (int) (sorted.length * fraction))];
+  }
+
+  static double max(double[] values) {
+    double max = Double.NEGATIVE_INFINITY;
+    for (double value : values) {
+      max = Math.max(max, value);
+    }
+    return max;
+  }
+}
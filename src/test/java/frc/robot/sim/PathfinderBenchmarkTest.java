@@ -0,0 +1,34 @@
+package frc.robot.sim;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import frc.lib.math.NavigationGrid;
+import frc.robot.Constants.AutoConstants;
+import java.io.File;
+import java.io.IOException;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Holds the plan times from {@link PathfinderBenchmark} to {@link AutoConstants#kPlanBudgetMillis}:
+ * the 99th percentile of random queries, on cache misses and hits, and every long query. The odd
+ * random query past the percentile is left to the robot's own diagnostics, since a shared build
+ * machine can stall any one of them.
+ */
+class PathfinderBenchmarkTest {
+  private static final int kQueries = 1_000;
+
+  @Test
+  void plansFitTheBudget() throws IOException {
+    NavigationGrid grid = NavigationGrid.load(new File("src/main/deploy/" + AutoConstants.kFieldMapFile),
+        AutoConstants.kNavGridResolution, AutoConstants.kRobotRadiusMeters);
+    PathfinderBenchmark.Timings timings = PathfinderBenchmark.time(grid, kQueries);
+
+    double budget = AutoConstants.kPlanBudgetMillis;
+    double misses = PathfinderBenchmark.percentile(timings.misses, 0.99);
+    double hits = PathfinderBenchmark.percentile(timings.hits, 0.99);
+    double longQueries = PathfinderBenchmark.max(timings.longQueries);
+    assertTrue(misses <= budget, "cache miss p99 " + misses + " ms");
+    assertTrue(hits <= budget, "cache hit p99 " + hits + " ms");
+    assertTrue(longQueries <= budget, "long query " + longQueries + " ms");
+  }
+}
@@ -0,0 +1,77 @@
+package frc.robot.sim;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.wpilibj.Timer;
+import frc.robot.subsystems.SwerveDrive;
+
+/**
+ * A {@link SwerveDrive} backed by a {@link SwerveModel}, so the robot's autonomous commands can run
+ * off the robot. Odometry and the gyro are perfect: the pose and yaw are the model's, and resetting
+ * odometry puts the model there. Locking the wheels stops the model, which does not model the X
+ * formation itself. The charge station is not modeled (see {@link BalanceBenchmark}), so there is
+ * no pitch to measure. It is not registered with the {@code CommandScheduler}; whoever runs the
+ * commands also steps the model.
+ */
+public class SimSwerveDrive implements SwerveDrive {
+  private final SwerveModel model;
+
+  public SimSwerveDrive(SwerveModel model) {
+    this.model = model;
+  }
+
+  public SwerveModel getModel() {
+    return model;
+  }
+
+  @Override
+  public void drive(Translation2d translation, double rotation, boolean fieldRelative, boolean isOpenLoop) {
+    model.drive(translation.getX(), translation.getY(), rotation, fieldRelative);
+  }
+
+  @Override
+  public void setChassisSpeeds(double vx, double vy, double omega) {
+    model.drive(vx, vy, omega, false);
+  }
+
+  @Override
+  public void setX() {
+    model.drive(0, 0, 0, false);
+  }
+
+  @Override
+  public Pose2d getPose() {
+    return model.getPose();
+  }
+
+  @Override
+  public void resetOdometry(Pose2d pose) {
+    model.setPose(pose);
+  }
+
+  @Override
+  public Rotation2d getYaw() {
+    return model.getPose().getRotation();
+  }
+
+  @Override
+  public double getPitchDegrees() {
+    return 0;
+  }
+
+  @Override
+  public double getPitchRate() {
+    return 0;
+  }
+
+  @Override
+  public double getImuTimestamp() {
+    return Timer.getFPGATimestamp();
+  }
+
+  @Override
+  public boolean canMeasurePitch() {
+    return false;
+  }
+}
@@ -0,0 +1,87 @@
+package frc.robot.sim;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Twist2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import frc.robot.Constants;
+
+/**
+ * Kinematic model of the drivetrain in {@link Constants.Swerve}, for running autonomous routines
+ * off the robot. Each module steers at a limited rate and its wheel speed follows the command
+ * within {@link Constants.Swerve#maxDriveAcceleration}, the limit the robot applies before any
+ * thermal derate, standing in for traction and motor torque; the chassis then moves by the forward
+ * kinematics of what the modules actually do. It does not model wheel slip or the motors
+ * themselves. No HAL or hardware classes are used.
+ */
+public class SwerveModel {
+  /* NEO through the 12.8:1 steering reduction, with some margin */
+  private static final double kMaxSteerRate = 30.0; // radians per second
+
+  private final SwerveDriveKinematics kinematics = Constants.Swerve.swerveKinematics;
+  private final SwerveModuleState[] actual = new SwerveModuleState[4];
+  private Pose2d pose;
+  private ChassisSpeeds command = new ChassisSpeeds();
+  private ChassisSpeeds measured = new ChassisSpeeds();
+  private double peakModuleSpeed = 0;
+
+  public SwerveModel(Pose2d start) {
+    pose = start;
+    for (int i = 0; i < actual.length; i++) {
+      actual[i] = new SwerveModuleState();
+    }
+  }
+
+  /** Same meaning as {@code Swerve.drive}, with a perfect gyro for field relative driving. */
+  public void drive(double vx, double vy, double omega, boolean fieldRelative) {
+    command = fieldRelative
+        ? ChassisSpeeds.fromFieldRelativeSpeeds(vx, vy, omega, pose.getRotation())
+        : new ChassisSpeeds(vx, vy, omega);
+  }
+
+  /** Advances the model by one loop. */
+  public void step(double dt) {
+    SwerveModuleState[] desired = kinematics.toSwerveModuleStates(command);
+    SwerveDriveKinematics.desaturateWheelSpeeds(desired, Constants.Swerve.maxSpeed);
+    for (int i = 0; i < actual.length; i++) {
+      SwerveModuleState target = SwerveModuleState.optimize(desired[i], actual[i].angle);
+      double angleError = target.angle.minus(actual[i].angle).getRadians();
+      double steer = Math.max(-kMaxSteerRate * dt, Math.min(kMaxSteerRate * dt, angleError));
+      Rotation2d angle = actual[i].angle.plus(Rotation2d.fromRadians(steer));
+
+      // Wheels push along where the module points, not where it was asked to point.
+      double targetSpeed = target.speedMetersPerSecond * Math.cos(angleError - steer);
+      double maxChange = Constants.Swerve.maxDriveAcceleration * dt;
+      double speed = actual[i].speedMetersPerSecond
+          + Math.max(-maxChange, Math.min(maxChange, targetSpeed - actual[i].speedMetersPerSecond));
+      actual[i] = new SwerveModuleState(speed, angle);
+      peakModuleSpeed = Math.max(peakModuleSpeed, Math.abs(speed));
+    }
+
+    measured = kinematics.toChassisSpeeds(actual);
+    pose = pose.exp(new Twist2d(
+        measured.vxMetersPerSecond * dt,
+        measured.vyMetersPerSecond * dt,
+        measured.omegaRadiansPerSecond * dt));
+  }
+
+  public Pose2d getPose() {
+    return pose;
+  }
+
+  /** Puts the robot down somewhere else, as the field crew would. The modules keep their state. */
+  public void setPose(Pose2d pose) {
+    this.pose = pose;
+  }
+
+  /** @return The robot relative chassis speeds the modules produced on the last step. */
+  public ChassisSpeeds getMeasuredSpeeds() {
+    return measured;
+  }
+
+  public double getPeakModuleSpeed() {
+    return peakModuleSpeed;
+  }
+}
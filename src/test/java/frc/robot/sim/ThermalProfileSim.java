@@ -0,0 +1,162 @@
+package frc.robot.sim;
+
+import edu.wpi.first.math.system.plant.DCMotor;
+import frc.lib.math.MotorThermalModel;
+import frc.robot.Constants;
+import frc.robot.subsystems.SwerveModule;
+
+/**
+ * Drives a drive motor's {@link MotorThermalModel} with a synthetic match current profile, the way
+ * {@link SwerveModule} does: updated with the measured current every 20 ms and corrected from the
+ * motor's temperature sensor every {@link Constants.Swerve#thermalSensorPeriodLoops} loops. The
+ * motor itself is a second model with its heat capacities and air resistance 15% off, so the
+ * correction has something to correct, and its sensor reads the housing in whole degrees.
+ *
+ * <p>The profile repeats a 10 s cycle of a sprint, a cruise, a stop, a push and some idling, for
+ * three matches with a short break between. Derating only lowers the acceleration limit, so it
+ * turns the sprints into longer ones on less current (the same speed is reached later) and leaves
+ * the pushes alone.
+ *
+ * <p>Prints a trace every 10 s with derating, then the peak motor winding temperature, time over
+ * the limit and model error with and without derating. Run it with {@code ./gradlew
+ * simulateThermal}.
+ */
+public class ThermalProfileSim {
+  private static final double kLoopPeriod = 0.02;
+  private static final double kPrintPeriod = 10.0;
+  private static final int kMatches = 3;
+  private static final double kMatchSeconds = 150.0;
+  private static final double kBreakSeconds = 60.0;
+  /* How far the motor's real heat capacities and air resistance are from the model's */
+  private static final double kPlantError = 0.15;
+
+  /* One cycle of the profile: phase lengths in seconds and currents in amps */
+  private static final double kCycleSeconds = 10.0;
+  private static final double kSprintSeconds = 0.5;
+  private static final double kSprintAmps = Constants.Swerve.driveContinuousCurrentLimit;
+  private static final double kCruiseSeconds = 2.0;
+  private static final double kCruiseAmps = 15.0;
+  private static final double kStopSeconds = 0.4;
+  private static final double kStopAmps = 50.0;
+  private static final double kPushSeconds = 1.0;
+  private static final double kPushAmps = 50.0;
+
+  /** What one run did. */
+  static class Result {
+    double peakWindingCelsius = Double.NEGATIVE_INFINITY;
+    double secondsOverLimit = 0;
+    double maxModelError = 0;
+    double minDerate = 1.0;
+    double firstDerateSeconds = Double.NaN;
+    double sprintSeconds = 0;
+  }
+
+  public static void main(String[] args) {
+    System.out.printf("%8s %10s %10s %10s %10s %8s%n",
+        "t s", "motor C", "sensor C", "model C", "predict C", "derate");
+    Result derated = run(true, true);
+    Result plain = run(false, false);
+    System.out.println();
+    System.out.printf("%-12s %10s %10s %12s %10s %12s %10s%n",
+        "derating", "peak C", "over s", "model err C", "min derate", "first s", "sprint s");
+    print("on", derated);
+    print("off", plain);
+  }
+
+  private static void print(String name, Result result) {
+    System.out.printf("%-12s %10.1f %10.1f %12.1f %10.2f %12s %10.1f%n", name, result.peakWindingCelsius,
+        result.secondsOverLimit, result.maxModelError, result.minDerate,
+        Double.isNaN(result.firstDerateSeconds) ? "never" : String.format("%.1f", result.firstDerateSeconds),
+        result.sprintSeconds);
+  }
+
+  /**
+   * Runs the whole profile.
+   *
+   * @param derate Whether the derate stretches the sprints.
+   * @param trace Whether to print a line every 10 s.
+   */
+  static Result run(boolean derate, boolean trace) {
+    MotorThermalModel model = newModel(0);
+    MotorThermalModel plant = newModel(kPlantError);
+    Result result = new Result();
+    double sensorCelsius = Constants.Swerve.thermalAmbientCelsius;
+    int sensorCounter = 0;
+    double totalSeconds = kMatches * kMatchSeconds + (kMatches - 1) * kBreakSeconds;
+    double nextPrint = 0;
+    for (int loop = 0; loop * kLoopPeriod < totalSeconds; loop++) {
+      double t = loop * kLoopPeriod;
+      double scale = derate ? model.getDerate() : 1.0;
+      double amps = current(t, scale);
+      if (isSprinting(t, scale)) {
+        result.sprintSeconds += kLoopPeriod;
+      }
+
+      plant.update(amps, kLoopPeriod, 0);
+      model.update(amps, kLoopPeriod, Constants.Swerve.thermalHorizonSeconds);
+      if (++sensorCounter >= Constants.Swerve.thermalSensorPeriodLoops) {
+        sensorCounter = 0;
+        sensorCelsius = Math.rint(plant.getHousingCelsius());
+        model.correct(sensorCelsius);
+      }
+
+      double winding = plant.getWindingCelsius();
+      result.peakWindingCelsius = Math.max(result.peakWindingCelsius, winding);
+      if (winding > Constants.Swerve.thermalLimitCelsius) {
+        result.secondsOverLimit += kLoopPeriod;
+      }
+      result.maxModelError = Math.max(result.maxModelError, Math.abs(model.getWindingCelsius() - winding));
+      result.minDerate = Math.min(result.minDerate, model.getDerate());
+      if (model.getDerate() < 1 && Double.isNaN(result.firstDerateSeconds)) {
+        result.firstDerateSeconds = t;
+      }
+      if (trace && t >= nextPrint) {
+        nextPrint += kPrintPeriod;
+        System.out.printf("%8.0f %10.1f %10.0f %10.1f %10.1f %8.2f%n", t, winding, sensorCelsius,
+            model.getWindingCelsius(), model.getPredictedCelsius(), model.getDerate());
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @param scale The derate: a sprint draws this share of its current for the inverse share longer,
+   *     taken out of the idle time.
+   * @return The drive current at time t.
+   */
+  private static double current(double t, double scale) {
+    double cycleTime = cycleTime(t);
+    double[] lengths = {kSprintSeconds / scale, kCruiseSeconds, kStopSeconds, kPushSeconds};
+    double[] amps = {kSprintAmps * scale, kCruiseAmps, kStopAmps, kPushAmps};
+    for (int i = 0; i < lengths.length; i++) {
+      if (cycleTime < lengths[i]) {
+        return amps[i];
+      }
+      cycleTime -= lengths[i];
+    }
+    return 0;
+  }
+
+  private static boolean isSprinting(double t, double scale) {
+    return cycleTime(t) < kSprintSeconds / scale;
+  }
+
+  /* Time into the present cycle, or infinite between matches */
+  private static double cycleTime(double t) {
+    double matchTime = t % (kMatchSeconds + kBreakSeconds);
+    return matchTime < kMatchSeconds ? matchTime % kCycleSeconds : Double.POSITIVE_INFINITY;
+  }
+
+  private static MotorThermalModel newModel(double error) {
+    return new MotorThermalModel(
+        DCMotor.getNEO(1).rOhms,
+        Constants.Swerve.thermalWindingCapacitance * (1 - error),
+        Constants.Swerve.thermalHousingCapacitance * (1 - error),
+        Constants.Swerve.thermalWindingToHousing,
+        Constants.Swerve.thermalHousingToAmbient * (1 + error),
+        Constants.Swerve.thermalDerateStartCelsius,
+        Constants.Swerve.thermalLimitCelsius,
+        Constants.Swerve.thermalMinDerate,
+        Constants.Swerve.thermalAmbientCelsius);
+  }
+}
@@ -0,0 +1,40 @@
+package frc.robot.sim;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import frc.robot.Constants;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs {@link ThermalProfileSim} with and without derating. Derating has to keep the motor cooler
+ * and the model has to track a motor that differs from it, through its sensor corrections.
+ */
+class ThermalProfileSimTest {
+  /* The plant is 15% off and the sensor reads whole degrees of the housing */
+  private static final double kMaxModelError = 3.0;
+
+  private final ThermalProfileSim.Result derated = ThermalProfileSim.run(true, false);
+  private final ThermalProfileSim.Result plain = ThermalProfileSim.run(false, false);
+
+  @Test
+  void deratingKeepsTheMotorCooler() {
+    assertTrue(derated.peakWindingCelsius < plain.peakWindingCelsius,
+        "peak " + derated.peakWindingCelsius + " C derated, " + plain.peakWindingCelsius + " C without");
+    assertTrue(derated.secondsOverLimit <= plain.secondsOverLimit,
+        derated.secondsOverLimit + " s over the limit derated, " + plain.secondsOverLimit + " s without");
+    assertTrue(derated.minDerate < 1, "never derated");
+    assertTrue(derated.minDerate >= Constants.Swerve.thermalMinDerate, "derated below the minimum");
+  }
+
+  @Test
+  void deratingStretchesTheSprints() {
+    assertTrue(derated.sprintSeconds > plain.sprintSeconds,
+        derated.sprintSeconds + " s sprinting derated, " + plain.sprintSeconds + " s without");
+  }
+
+  @Test
+  void modelTracksTheMotor() {
+    assertTrue(derated.maxModelError < kMaxModelError, "model off by " + derated.maxModelError + " C");
+    assertTrue(plain.maxModelError < kMaxModelError, "model off by " + plain.maxModelError + " C");
+  }
+}
@@ -0,0 +1,328 @@
+package frc.robot.sim;
+
+import frc.lib.math.ModuleVelocityEstimator;
+import frc.robot.Constants;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Replays drive module traces through {@link ModuleVelocityEstimator} with the constants in {@link
+ * Constants.Swerve} and compares its velocity with the Spark MAX velocity reading: the lag (the
+ * shift that best lines each up with the reference velocity) and the RMS error without shifting.
+ * Run it with {@code ./gradlew replayVelocityTraces}.
+ *
+ * <p>A trace is a text file of {@code time,position,velocity,volts} lines, one per control loop:
+ * the position and velocity the Spark MAX last sent and the voltage commanded after reading them.
+ * {@code /Swerve/Module N/velocityTrace} from the data log (see {@code
+ * Constants.Swerve.recordVelocityTraces}) exported to CSV has this shape. The reference is the
+ * velocity from differencing the position frames over a window centered on each sample, which has
+ * no lag but could not be computed online.
+ *
+ * <p>Arguments: [trace directory]. Without one, synthetic traces with a fixed seed are used. They
+ * come from a drive whose kS/kV/kA are off from the constants by up to 15%, pushed around by
+ * random disturbances, with the Spark MAX velocity averaging and 20 ms status frames emulated, and
+ * are compared against the true velocity and acceleration instead.
+ */
+public class VelocityEstimatorReplay {
+  private static final double kSimPeriod = 0.001;
+  private static final double kPollPeriod = Constants.Swerve.controlLoopPeriod;
+  private static final int kSyntheticTraces = 20;
+  private static final double kSyntheticSeconds = 20.0;
+  /* Half width of the centered difference for the reference velocity */
+  private static final double kReferenceHalfWindow = 0.04;
+  private static final double kMaxLag = 0.15;
+
+  /** One recorded run of a module. */
+  static class Trace {
+    final double[] time;
+    final double[] position;
+    final double[] velocity;
+    final double[] volts;
+    /* Null unless synthetic */
+    final double[] trueVelocity;
+    final double[] trueAcceleration;
+
+    Trace(double[] time, double[] position, double[] velocity, double[] volts, double[] trueVelocity,
+        double[] trueAcceleration) {
+      this.time = time;
+      this.position = position;
+      this.velocity = velocity;
+      this.volts = volts;
+      this.trueVelocity = trueVelocity;
+      this.trueAcceleration = trueAcceleration;
+    }
+  }
+
+  /** Averages over a set of traces, of the Spark MAX velocity and of the estimate. */
+  static class Comparison {
+    /* Lag in seconds, RMS error in m/s averaged over the traces, and the largest error */
+    final double[] spark = new double[3];
+    final double[] estimate = new double[3];
+    /* In m/s^2, NaN without a true acceleration to compare with */
+    double accelerationRms = Double.NaN;
+    double sparkAccelerationRms = Double.NaN;
+  }
+
+  public static void main(String[] args) throws IOException {
+    List<Trace> traces = args.length > 0 ? load(new File(args[0])) : synthesize(new Random(2023));
+    System.out.printf("%d traces%n", traces.size());
+    System.out.printf("%-10s %10s %14s %14s%n", "velocity", "lag ms", "RMS err m/s", "max err m/s");
+    Comparison comparison = compare(traces);
+    print("spark max", comparison.spark);
+    print("estimate", comparison.estimate);
+    if (!Double.isNaN(comparison.accelerationRms)) {
+      System.out.printf("%nacceleration RMS error m/s^2: estimate %.2f, differenced spark velocity %.2f%n",
+          comparison.accelerationRms, comparison.sparkAccelerationRms);
+    }
+  }
+
+  static Comparison compare(List<Trace> traces) {
+    Comparison comparison = new Comparison();
+    double accelSquared = 0;
+    double sparkAccelSquared = 0;
+    int accelSamples = 0;
+    for (Trace trace : traces) {
+      double[] reference = trace.trueVelocity != null ? trace.trueVelocity : referenceVelocity(trace);
+      double[] estimate = new double[trace.time.length];
+      double[] acceleration = new double[trace.time.length];
+      replay(trace, estimate, acceleration);
+      accumulate(comparison.spark, trace.time, trace.velocity, reference);
+      accumulate(comparison.estimate, trace.time, estimate, reference);
+      if (trace.trueAcceleration != null) {
+        for (int i = 1; i < trace.time.length; i++) {
+          double sparkAccel = (trace.velocity[i] - trace.velocity[i - 1]) / (trace.time[i] - trace.time[i - 1]);
+          accelSquared += square(acceleration[i] - trace.trueAcceleration[i]);
+          sparkAccelSquared += square(sparkAccel - trace.trueAcceleration[i]);
+          accelSamples++;
+        }
+      }
+    }
+    for (double[] stats : new double[][] {comparison.spark, comparison.estimate}) {
+      stats[0] /= traces.size();
+      stats[1] /= traces.size();
+    }
+    if (accelSamples > 0) {
+      comparison.accelerationRms = Math.sqrt(accelSquared / accelSamples);
+      comparison.sparkAccelerationRms = Math.sqrt(sparkAccelSquared / accelSamples);
+    }
+    return comparison;
+  }
+
+  /** Runs the estimator over a trace the way SwerveModule does. */
+  static void replay(Trace trace, double[] velocity, double[] acceleration) {
+    ModuleVelocityEstimator estimator = new ModuleVelocityEstimator(
+        Constants.Swerve.velocityEstimatorAccelStdDev,
+        Constants.Swerve.velocityEstimatorPositionStdDev,
+        Constants.Swerve.velocityEstimatorTimingStdDev,
+        Constants.Swerve.drivePositionFramePeriod);
+    estimator.setPlant(Constants.Swerve.driveKS, Constants.Swerve.driveKV, Constants.Swerve.driveKA);
+    for (int i = 0; i < trace.time.length; i++) {
+      estimator.update(trace.time[i], trace.position[i]);
+      velocity[i] = estimator.getVelocity();
+      acceleration[i] = estimator.getAcceleration();
+      estimator.setVoltage(trace.volts[i]);
+    }
+  }
+
+  /* Adds the lag, squared error sum, sample count and max error of one trace */
+  private static void accumulate(double[] stats, double[] time, double[] signal, double[] reference) {
+    double bestLag = 0;
+    double bestError = Double.POSITIVE_INFINITY;
+    for (double lag = 0; lag <= kMaxLag; lag += 0.001) {
+      double error = rmsError(time, signal, reference, lag);
+      if (error < bestError) {
+        bestError = error;
+        bestLag = lag;
+      }
+    }
+    stats[0] += bestLag;
+    stats[1] += rmsError(time, signal, reference, 0);
+    for (int i = 0; i < time.length; i++) {
+      stats[2] = Math.max(stats[2], Math.abs(signal[i] - reference[i]));
+    }
+  }
+
+  /** @return The RMS difference between the signal and the reference from lag seconds earlier. */
+  private static double rmsError(double[] time, double[] signal, double[] reference, double lag) {
+    double sum = 0;
+    int count = 0;
+    for (int i = 0; i < time.length; i++) {
+      double t = time[i] - lag;
+      if (t < time[0] + kMaxLag || time[i] > time[time.length - 1] - kMaxLag) {
+        continue;
+      }
+      sum += square(signal[i] - interpolate(time, reference, t));
+      count++;
+    }
+    return count > 0 ? Math.sqrt(sum / count) : Double.NaN;
+  }
+
+  private static void print(String name, double[] stats) {
+    System.out.printf("%-10s %10.1f %14.3f %14.3f%n", name, stats[0] * 1000.0, stats[1], stats[2]);
+  }
+
+  /** Centered difference of the position, from the samples where a new frame arrived. */
+  private static double[] referenceVelocity(Trace trace) {
+    List<Double> frameTimes = new ArrayList<>();
+    List<Double> framePositions = new ArrayList<>();
+    for (int i = 0; i < trace.time.length; i++) {
+      if (i == 0 || trace.position[i] != trace.position[i - 1]) {
+        frameTimes.add(trace.time[i]);
+        framePositions.add(trace.position[i]);
+      }
+    }
+    double[] times = frameTimes.stream().mapToDouble(Double::doubleValue).toArray();
+    double[] positions = framePositions.stream().mapToDouble(Double::doubleValue).toArray();
+    double[] reference = new double[trace.time.length];
+    for (int i = 0; i < trace.time.length; i++) {
+      double t = trace.time[i];
+      reference[i] = (interpolate(times, positions, t + kReferenceHalfWindow)
+          - interpolate(times, positions, t - kReferenceHalfWindow)) / (2 * kReferenceHalfWindow);
+    }
+    return reference;
+  }
+
+  private static double interpolate(double[] time, double[] values, double t) {
+    int index = Arrays.binarySearch(time, t);
+    if (index >= 0) {
+      return values[index];
+    }
+    int upper = -index - 1;
+    if (upper <= 0) {
+      return values[0];
+    }
+    if (upper >= time.length) {
+      return values[time.length - 1];
+    }
+    double fraction = (t - time[upper - 1]) / (time[upper] - time[upper - 1]);
+    return values[upper - 1] + (values[upper] - values[upper - 1]) * fraction;
+  }
+
+  private static double square(double value) {
+    return value * value;
+  }
+
+  private static List<Trace> load(File directory) throws IOException {
+    File[] files = directory.listFiles((dir, name) -> name.endsWith(".csv"));
+    if (files == null || files.length == 0) {
+      throw new IOException("no .csv traces in " + directory);
+    }
+    List<Trace> traces = new ArrayList<>();
+    for (File file : files) {
+      List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+      double[][] columns = new double[4][lines.size()];
+      int count = 0;
+      for (String line : lines) {
+        String[] fields = line.split(",");
+        if (fields.length < 4) {
+          continue;
+        }
+        try {
+          for (int c = 0; c < 4; c++) {
+            columns[c][count] = Double.parseDouble(fields[c].trim());
+          }
+          count++;
+        } catch (NumberFormatException e) {
+          // A header or a comment.
+        }
+      }
+      if (count > 0) {
+        traces.add(new Trace(Arrays.copyOf(columns[0], count), Arrays.copyOf(columns[1], count),
+            Arrays.copyOf(columns[2], count), Arrays.copyOf(columns[3], count), null, null));
+      }
+    }
+    return traces;
+  }
+
+  /**
+   * A module driven closed loop through random speed targets. The Spark MAX velocity is the change
+   * in position over 32 ms, averaged over the last 8 ms, as the NEO hall sensor defaults do; both
+   * status frames go out every 20 ms, at their own phases.
+   */
+  static List<Trace> synthesize(Random random) {
+    double countsPerMeter = Constants.Swerve.numberOfSensorCountsPerRevolution
+        / Constants.Swerve.driveConversionPositionFactor;
+    double kP = Constants.Swerve.driveKP * Constants.Swerve.voltageComp;
+    int polls = (int) Math.round(kSyntheticSeconds / kPollPeriod);
+    int pollSteps = (int) Math.round(kPollPeriod / kSimPeriod);
+    int frameSteps = (int) Math.round(Constants.Swerve.drivePositionFramePeriod / kSimPeriod);
+
+    List<Trace> traces = new ArrayList<>();
+    for (int n = 0; n < kSyntheticTraces; n++) {
+      double kS = Constants.Swerve.driveKS * (1 + 0.3 * (random.nextDouble() - 0.5));
+      double kV = Constants.Swerve.driveKV * (1 + 0.3 * (random.nextDouble() - 0.5));
+      double kA = Constants.Swerve.driveKA * (1 + 0.3 * (random.nextDouble() - 0.5));
+      int positionPhase = random.nextInt(frameSteps);
+      int velocityPhase = random.nextInt(frameSteps);
+
+      double[] time = new double[polls];
+      double[] position = new double[polls];
+      double[] velocity = new double[polls];
+      double[] volts = new double[polls];
+      double[] trueVelocity = new double[polls];
+      double[] trueAcceleration = new double[polls];
+      double[] history = new double[64];
+      double[] deltas = new double[8];
+
+      double p = 0, v = 0, a = 0;
+      double target = 0, setpoint = 0, nextTarget = 0;
+      double disturbance = 0, disturbanceEnd = 0;
+      double sparkVelocity = 0, framePosition = 0, frameVelocity = 0;
+      double commanded = 0, feedforward = 0;
+      int step = 0;
+      for (int poll = 0; poll < polls; poll++) {
+        for (int s = 0; s < pollSteps; s++, step++) {
+          double t = step * kSimPeriod;
+          // The Spark MAX loop runs on its own velocity at 1 kHz.
+          double applied = Math.max(-12, Math.min(12, feedforward + kP * (setpoint - sparkVelocity)));
+          if (t >= disturbanceEnd) {
+            disturbance = random.nextDouble() < 0.002 ? 8.0 * random.nextGaussian() : 0.0;
+            disturbanceEnd = t + 0.05;
+          }
+          double friction = Math.abs(v) > 1e-3 ? Math.copySign(kS, v) : Math.copySign(Math.min(kS, Math.abs(applied)), applied);
+          a = (applied - friction - kV * v) / kA + disturbance;
+          v += (a + 0.5 * random.nextGaussian()) * kSimPeriod;
+          p += v * kSimPeriod;
+
+          history[step % history.length] = p;
+          double delta = step >= 32 ? (p - history[(step - 32) % history.length]) / 0.032 : 0;
+          deltas[step % deltas.length] = delta;
+          sparkVelocity = Arrays.stream(deltas).average().orElse(0);
+          if (step % frameSteps == positionPhase) {
+            framePosition = Math.floor(p * countsPerMeter) / countsPerMeter;
+          }
+          if (step % frameSteps == velocityPhase) {
+            frameVelocity = sparkVelocity;
+          }
+        }
+
+        double t = step * kSimPeriod;
+        if (t >= nextTarget) {
+          target = random.nextDouble() < 0.2 ? 0 : 4.0 * (2 * random.nextDouble() - 1);
+          nextTarget = t + 0.5 + random.nextDouble();
+        }
+        double accel = Math.max(-8 * kPollPeriod, Math.min(8 * kPollPeriod, target - setpoint)) / kPollPeriod;
+        setpoint += accel * kPollPeriod;
+        // What SwerveModule knows it commanded: the feedforward plus the P term on the reading.
+        feedforward = (Math.abs(setpoint) > 1e-3 ? Math.copySign(Constants.Swerve.driveKS, setpoint) : 0)
+            + Constants.Swerve.driveKV * setpoint + Constants.Swerve.driveKA * accel;
+        commanded = Math.max(-12, Math.min(12, feedforward + kP * (setpoint - frameVelocity)));
+
+        time[poll] = t;
+        position[poll] = framePosition;
+        velocity[poll] = frameVelocity;
+        volts[poll] = commanded;
+        trueVelocity[poll] = v;
+        trueAcceleration[poll] = a;
+      }
+      traces.add(new Trace(time, position, velocity, volts, trueVelocity, trueAcceleration));
+    }
+    return traces;
+  }
+}
@@ -0,0 +1,35 @@
+package frc.robot.sim;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Replays the synthetic drive traces from {@link VelocityEstimatorReplay}. The estimate is only
+ * worth its cost if it lags the true velocity less than the Spark MAX reading does, is closer to it,
+ * and gives a better acceleration than differencing that reading.
+ */
+class VelocityEstimatorReplayTest {
+  private static final VelocityEstimatorReplay.Comparison comparison =
+      VelocityEstimatorReplay.compare(VelocityEstimatorReplay.synthesize(new Random(2023)));
+
+  @Test
+  void estimateLagsLessThanTheSparkMax() {
+    assertTrue(comparison.estimate[0] < comparison.spark[0],
+        "estimate lags " + comparison.estimate[0] + " s, Spark MAX " + comparison.spark[0] + " s");
+  }
+
+  @Test
+  void estimateIsCloserThanTheSparkMax() {
+    assertTrue(comparison.estimate[1] < comparison.spark[1],
+        "estimate RMS error " + comparison.estimate[1] + " m/s, Spark MAX " + comparison.spark[1] + " m/s");
+  }
+
+  @Test
+  void estimatedAccelerationBeatsDifferencing() {
+    assertTrue(comparison.accelerationRms < comparison.sparkAccelerationRms,
+        "estimate RMS error " + comparison.accelerationRms + " m/s^2, differenced "
+            + comparison.sparkAccelerationRms + " m/s^2");
+  }
+}